@@ -0,0 +1,91 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache;
+
+import org.ehcache.function.BiFunction;
+import org.ehcache.spi.loaderwriter.CacheLoaderWriter;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+/**
+ * Asynchronous view of a {@link Cache}.
+ * <P>
+ *   Operations that can be answered without involving the {@link CacheLoaderWriter} complete on the calling thread,
+ *   and return an already completed {@link Future}. All others run on the executor the view was created with.
+ *   Exceptions the equivalent {@link Cache} operation would throw are reported through
+ *   {@link Future#get()}, wrapped in a {@link java.util.concurrent.ExecutionException}.
+ * </P>
+ *
+ * @param <K> the type of the keys used to access data within this cache
+ * @param <V> the type of the values held within this cache
+ */
+public interface AsyncCache<K, V> {
+
+  /**
+   * Retrieve the value currently mapped to the provided key, loading it if absent.
+   * <P>
+   *   Concurrent calls missing on the same key share a single load, and thus the same {@link Future}.
+   * </P>
+   *
+   * @param key the key to query the value for
+   * @return a future of the value mapped to the key, or null if none
+   *
+   * @throws java.lang.NullPointerException if the provided key is null
+   * @see Cache#get(Object)
+   */
+  Future<V> getAsync(K key);
+
+  /**
+   * Associates the provided value to the given key
+   *
+   * @param key the key, may not be null
+   * @param value the value, may not be null
+   * @return a future completing once the mapping is installed
+   *
+   * @throws java.lang.NullPointerException if either key or value is null
+   * @see Cache#put(Object, Object)
+   */
+  Future<Void> putAsync(K key, V value);
+
+  /**
+   * Retrieves all values associated with the given keys, loading the absent ones.
+   *
+   * @param keys keys to query for
+   * @return a future of a map from keys to values, with null values for the keys that could not be loaded
+   *
+   * @throws java.lang.NullPointerException if the {@code Set} or any of the contained keys are {@code null}.
+   * @see Cache#getAll(Set)
+   */
+  Future<Map<K, V>> getAllAsync(Set<? extends K> keys);
+
+  /**
+   * Atomically computes a new value for the given key, from the value currently mapped to it.
+   * <P>
+   *   A {@code null} value returned by the function removes the mapping. The new value is written through the
+   *   {@link CacheLoaderWriter} if the cache has one.
+   * </P>
+   *
+   * @param key the key to compute the value for
+   * @param remappingFunction the function computing the new value from the key and the current value, or null if none
+   * @return a future of the new value associated with the key, or null if none
+   *
+   * @throws java.lang.NullPointerException if either key or function is null
+   */
+  Future<V> computeAsync(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction);
+}
@@ -20,6 +20,8 @@ import org.ehcache.exceptions.BulkCacheLoadingException;
 import org.ehcache.exceptions.BulkCacheWritingException;
 import org.ehcache.exceptions.CacheLoadingException;
 import org.ehcache.exceptions.CacheWritingException;
+import org.ehcache.function.BiFunction;
+import org.ehcache.function.Function;
 import org.ehcache.spi.loaderwriter.CacheLoaderWriter;
 
 import java.util.Map;
@@ -189,6 +191,73 @@ public interface Cache<K, V> extends Iterable<Cache.Entry<K,V>> {
   */
   boolean replace(K key, V oldValue, V newValue) throws CacheLoadingException, CacheWritingException;
 
+  /**
+   * Atomically computes a new value for the given key, from the value currently associated with it.
+   * <P>
+   *   If no value is associated with the key, the {@link CacheLoaderWriter} associated with this cache, if any, is
+   *   invoked to load it first. A changed value is written through the {@link CacheLoaderWriter}, a {@code null} one
+   *   deleting the mapping. The function may be invoked while the mapping is locked, and must not access the cache.
+   * </P>
+   *
+   * @param key the key to compute the value for
+   * @param remappingFunction the function computing the new value from the key and the current value, or null if none
+   * @return the value now associated with the key, or {@code null} if none
+   *
+   * @throws NullPointerException if either key or function is null
+   * @throws CacheLoadingException if the {@link CacheLoaderWriter}
+   * associated with this cache was invoked and threw an {@link Exception} while loading
+   * the value for the key
+   * @throws CacheWritingException if the {@link CacheLoaderWriter}
+   * associated with this cache threw an {@link Exception}
+   * while writing the value for the given key to underlying system of record.
+   */
+  V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) throws CacheLoadingException, CacheWritingException;
+
+  /**
+   * If no value is associated with the given key, atomically computes and associates one.
+   * <P>
+   *   The {@link CacheLoaderWriter} associated with this cache, if any, is invoked first, and the function only if it
+   *   returns {@code null}. A value computed by the function is written through the {@link CacheLoaderWriter}; a
+   *   {@code null} one leaves the key unmapped.
+   * </P>
+   *
+   * @param key the key to compute the value for
+   * @param mappingFunction the function computing the value from the key
+   * @return the value now associated with the key, or {@code null} if none
+   *
+   * @throws NullPointerException if either key or function is null
+   * @throws CacheLoadingException if the {@link CacheLoaderWriter}
+   * associated with this cache was invoked and threw an {@link Exception} while loading
+   * the value for the key
+   * @throws CacheWritingException if the {@link CacheLoaderWriter}
+   * associated with this cache threw an {@link Exception}
+   * while writing the value for the given key to underlying system of record.
+   */
+  V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) throws CacheLoadingException, CacheWritingException;
+
+  /**
+   * Associates the given value to the key if it has none, or else the result of merging it with the current one.
+   * <P>
+   *   Equivalent to {@link #compute(Object, BiFunction)} with a function returning {@code value} when there is no
+   *   current value, and applying {@code remappingFunction} to the current value and {@code value} otherwise.
+   * </P>
+   *
+   * @param key the key to merge the value for
+   * @param value the value to associate, or merge with the current one
+   * @param remappingFunction the function merging the current value with the given one, or returning null to remove
+   *                          the mapping
+   * @return the value now associated with the key, or {@code null} if none
+   *
+   * @throws NullPointerException if either key, value or function is null
+   * @throws CacheLoadingException if the {@link CacheLoaderWriter}
+   * associated with this cache was invoked and threw an {@link Exception} while loading
+   * the value for the key
+   * @throws CacheWritingException if the {@link CacheLoaderWriter}
+   * associated with this cache threw an {@link Exception}
+   * while writing the value for the given key to underlying system of record.
+   */
+  V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) throws CacheLoadingException, CacheWritingException;
+
   /**
    * Exposes the {@link org.ehcache.config.CacheRuntimeConfiguration} associated with this Cache instance.
    *
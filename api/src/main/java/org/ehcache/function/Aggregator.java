@@ -0,0 +1,59 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache.function;
+
+/**
+ * Folds mappings into a result, one partition at a time.
+ * <P>
+ *   Each partition of the scanned mappings is folded into its own accumulator, starting from {@link #identity()},
+ *   possibly concurrently with the other partitions. The partial results are then merged with
+ *   {@link #combine(Object, Object)}. As {@link #accumulate(Object, Object, Object)} may run while the partition is
+ *   locked, it should be cheap and must not access the cache.
+ * </P>
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ * @param <A> the type of the accumulated result
+ */
+public interface Aggregator<K, V, A> {
+
+  /**
+   * Returns a new, empty, accumulator.
+   *
+   * @return the accumulator a partition starts from
+   */
+  A identity();
+
+  /**
+   * Folds a mapping into an accumulator.
+   *
+   * @param accumulator the accumulator of the partition
+   * @param key the key of the mapping
+   * @param value the value of the mapping, or {@code null} when only keys are scanned
+   * @return the updated accumulator
+   */
+  A accumulate(A accumulator, K key, V value);
+
+  /**
+   * Merges the accumulators of two partitions.
+   *
+   * @param left the first accumulator
+   * @param right the second accumulator
+   * @return the merged accumulator
+   */
+  A combine(A left, A right);
+}
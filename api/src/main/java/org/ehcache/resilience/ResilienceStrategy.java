@@ -314,6 +314,47 @@ public interface ResilienceStrategy<K, V> {
    */
   boolean replaceFailure(K key, V value, V newValue, CacheAccessException e, CacheLoadingException f);
 
+  /**
+   * Called when a {@link Cache#compute(java.lang.Object, org.ehcache.function.BiFunction)},
+   * {@link Cache#computeIfAbsent(java.lang.Object, org.ehcache.function.Function)} or
+   * {@link Cache#merge(java.lang.Object, java.lang.Object, org.ehcache.function.BiFunction)}
+   * fails due to an underlying store failure.
+   *
+   * @param key the key being computed
+   * @param computed the value computed against the {@link CacheLoaderWriter}, if any, or {@code null}
+   * @param e the triggered failure
+   * @return the value to return from the operation
+   */
+  V computeFailure(K key, V computed, CacheAccessException e);
+
+  /**
+   * Called when a {@link Cache#compute(java.lang.Object, org.ehcache.function.BiFunction)},
+   * {@link Cache#computeIfAbsent(java.lang.Object, org.ehcache.function.Function)} or
+   * {@link Cache#merge(java.lang.Object, java.lang.Object, org.ehcache.function.BiFunction)}
+   * fails due to an underlying store failure, and the associated cache write
+   * operation also failed.
+   *
+   * @param key the key being computed
+   * @param e the cache failure
+   * @param f the writer failure
+   * @return the value to return from the operation
+   */
+  V computeFailure(K key, CacheAccessException e, CacheWritingException f);
+
+  /**
+   * Called when a {@link Cache#compute(java.lang.Object, org.ehcache.function.BiFunction)},
+   * {@link Cache#computeIfAbsent(java.lang.Object, org.ehcache.function.Function)} or
+   * {@link Cache#merge(java.lang.Object, java.lang.Object, org.ehcache.function.BiFunction)}
+   * fails due to an underlying store failure, and the associated cache load
+   * operation also failed.
+   *
+   * @param key the key being computed
+   * @param e the cache failure
+   * @param f the loader failure
+   * @return the value to return from the operation
+   */
+  V computeFailure(K key, CacheAccessException e, CacheLoadingException f);
+
   /**
    * Called when a {@link Cache#getAll(java.util.Set)} fails on a cache
    * without a cache loader due to an underlying store failure.
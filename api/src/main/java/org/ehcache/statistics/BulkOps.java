@@ -33,6 +33,11 @@ public enum BulkOps {
   /**
    * The "remove all" bulk operation
    */
-  REMOVE_ALL;
+  REMOVE_ALL,
+
+  /**
+   * The "bulk load" operation, bypassing listeners and the writer
+   */
+  BULK_LOAD;
 
 }
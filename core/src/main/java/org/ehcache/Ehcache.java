@@ -17,6 +17,8 @@
 package org.ehcache;
 
 import org.ehcache.config.CacheRuntimeConfiguration;
+import org.ehcache.config.loaderwriter.RefreshAheadConfiguration;
+import org.ehcache.config.loaderwriter.StaleWhileRevalidateConfiguration;
 import org.ehcache.event.CacheEvent;
 import org.ehcache.events.CacheEventNotificationService;
 import org.ehcache.events.CacheEvents;
@@ -27,13 +29,20 @@ import org.ehcache.exceptions.CacheAccessException;
 import org.ehcache.exceptions.CacheLoadingException;
 import org.ehcache.exceptions.CacheWritingException;
 import org.ehcache.expiry.Duration;
+import org.ehcache.function.Aggregator;
 import org.ehcache.function.BiFunction;
 import org.ehcache.function.Function;
 import org.ehcache.function.NullaryFunction;
+import org.ehcache.internal.SystemTimeSource;
+import org.ehcache.internal.TimeSource;
 import org.ehcache.resilience.LoggingRobustResilienceStrategy;
 import org.ehcache.resilience.RecoveryCache;
 import org.ehcache.resilience.ResilienceStrategy;
 import org.ehcache.spi.LifeCycled;
+import org.ehcache.spi.ServiceLocator;
+import org.ehcache.spi.cache.CacheStoreHelper;
+import org.ehcache.spi.cache.RecoverableStore;
+import org.ehcache.spi.cache.ScannableStore;
 import org.ehcache.spi.cache.Store;
 import org.ehcache.spi.cache.Store.ValueHolder;
 import org.ehcache.spi.loaderwriter.CacheLoaderWriter;
@@ -61,8 +70,14 @@ import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -87,6 +102,9 @@ public class Ehcache<K, V> implements Cache<K, V>, UserManagedCache<K, V> {
   private final RuntimeConfiguration<K, V> runtimeConfiguration;
   private final CacheEventNotificationService<K, V> eventNotificationService;
   private final Jsr107CacheImpl jsr107Cache;
+  private final RefreshAhead refreshAhead;
+  private final long gracePeriod;
+  private final TimeSource timeSource;
   private final boolean useLoaderInAtomics;
   protected final Logger logger;
   
@@ -98,6 +116,10 @@ public class Ehcache<K, V> implements Cache<K, V>, UserManagedCache<K, V> {
   private final OperationObserver<PutIfAbsentOutcome> putIfAbsentObserver = operation(PutIfAbsentOutcome.class).named("putIfAbsent").of(this).tag("cache").build();
   private final OperationObserver<ReplaceOutcome> replaceObserver = operation(ReplaceOutcome.class).named("replace").of(this).tag("cache").build();  
   private final ConcurrentMap<BulkOps, AtomicLong> bulkMethodEntries = new ConcurrentHashMap<BulkOps, AtomicLong>();
+  // loads started by the asynchronous views, joined by all of them
+  private final ConcurrentMap<K, FutureTask<V>> pendingLoads = new ConcurrentHashMap<K, FutureTask<V>>();
+
+  static final int BULK_LOAD_BATCH_SIZE = 1024;
 
   private static final NullaryFunction<Boolean> REPLACE_FALSE = new NullaryFunction<Boolean>() {
     @Override
@@ -106,6 +128,13 @@ public class Ehcache<K, V> implements Cache<K, V>, UserManagedCache<K, V> {
     }
   };
 
+  private static final NullaryFunction<Boolean> ALWAYS_TRUE = new NullaryFunction<Boolean>() {
+    @Override
+    public Boolean apply() {
+      return Boolean.TRUE;
+    }
+  };
+
   public Ehcache(RuntimeConfiguration<K, V> runtimeConfiguration, final Store<K, V> store, Logger logger) {
     this(runtimeConfiguration, store, null,logger);
   }
@@ -130,6 +159,13 @@ public class Ehcache<K, V> implements Cache<K, V>, UserManagedCache<K, V> {
   Ehcache(RuntimeConfiguration<K, V> runtimeConfiguration, Store<K, V> store,
             CacheLoaderWriter<? super K, V> cacheLoaderWriter,
             CacheEventNotificationService<K, V> eventNotifier, boolean useLoaderInAtomics, Logger logger, StatusTransitioner statusTransitioner) {
+    this(runtimeConfiguration, store, cacheLoaderWriter, eventNotifier, useLoaderInAtomics, logger, statusTransitioner, null, null);
+  }
+
+  Ehcache(RuntimeConfiguration<K, V> runtimeConfiguration, Store<K, V> store,
+            CacheLoaderWriter<? super K, V> cacheLoaderWriter,
+            CacheEventNotificationService<K, V> eventNotifier, boolean useLoaderInAtomics, Logger logger, StatusTransitioner statusTransitioner,
+            TimeSource timeSource, Executor loaderExecutor) {
     this.store = store;
     StatisticsManager.associate(store).withParent(this);
     this.cacheLoaderWriter = cacheLoaderWriter;
@@ -147,6 +183,22 @@ public class Ehcache<K, V> implements Cache<K, V>, UserManagedCache<K, V> {
     this.runtimeConfiguration = runtimeConfiguration;
     this.jsr107Cache = new Jsr107CacheImpl();
 
+    Object[] serviceConfigurations = runtimeConfiguration.getServiceConfigurations().toArray();
+    RefreshAheadConfiguration refreshAheadConfiguration = ServiceLocator.findSingletonAmongst(RefreshAheadConfiguration.class, serviceConfigurations);
+    StaleWhileRevalidateConfiguration staleWhileRevalidateConfiguration = ServiceLocator.findSingletonAmongst(StaleWhileRevalidateConfiguration.class, serviceConfigurations);
+    if (staleWhileRevalidateConfiguration == null) {
+      this.gracePeriod = 0L;
+    } else {
+      this.gracePeriod = staleWhileRevalidateConfiguration.gracePeriod(TimeUnit.MILLISECONDS);
+    }
+    this.timeSource = timeSource == null ? SystemTimeSource.INSTANCE : timeSource;
+    if ((refreshAheadConfiguration != null || staleWhileRevalidateConfiguration != null)
+        && cacheLoaderWriter != null && timeSource != null && loaderExecutor != null) {
+      this.refreshAhead = new RefreshAhead(refreshAheadConfiguration, timeSource, loaderExecutor);
+    } else {
+      this.refreshAhead = null;
+    }
+
     this.useLoaderInAtomics = useLoaderInAtomics;
     this.logger=logger;
     this.statusTransitioner = statusTransitioner;
@@ -194,7 +246,11 @@ public class Ehcache<K, V> implements Cache<K, V>, UserManagedCache<K, V> {
         return null;
       } else {
         getObserver.end(cacheLoaderWriter == null ? GetOutcome.HIT_NO_LOADER : GetOutcome.HIT_WITH_LOADER);
-        return valueHolder.value();
+        V value = valueHolder.value();
+        if (refreshAhead != null) {
+          refreshAhead.onHit(key, value, valueHolder);
+        }
+        return value;
       }
     } catch (CacheAccessException e) {
       try {
@@ -282,11 +338,41 @@ public class Ehcache<K, V> implements Cache<K, V>, UserManagedCache<K, V> {
     return Duration.ZERO.equals(duration); 
   }
   
+  /*
+   * Whether the store only keeps the mapping for the grace period of stale-while-revalidate, the store's expiration
+   * time including it: get alone serves such mappings, every other operation sees them as expired.
+   */
+  private boolean isStale(ValueHolder<V> valueHolder) {
+    if (gracePeriod == 0L) {
+      return false;
+    }
+    long expirationTime = valueHolder.expirationTime(TimeUnit.MILLISECONDS);
+    return expirationTime != ValueHolder.NO_EXPIRE && timeSource.getTimeMillis() >= expirationTime - gracePeriod;
+  }
+
+  /*
+   * Expires the mapping of the key if stale, before an operation that must not see it. Like get, the lookup counts as
+   * an access for expiries that reset on access.
+   */
+  private void discardStale(K key) throws CacheAccessException {
+    if (gracePeriod == 0L) {
+      return;
+    }
+    ValueHolder<V> valueHolder = store.get(key);
+    if (valueHolder != null && isStale(valueHolder)) {
+      V value = valueHolder.value();
+      if (store.remove(key, value)) {
+        eventNotificationService.onEvent(CacheEvents.expiry(key, value, this));
+      }
+    }
+  }
+
   @Override
   public boolean containsKey(final K key) {
     statusTransitioner.checkAvailable();
     checkNonNull(key);
     try {
+      discardStale(key);
       return store.containsKey(key);
     } catch (CacheAccessException e) {
       return resilienceStrategy.containsKeyFailure(key, e);
@@ -376,8 +462,9 @@ public class Ehcache<K, V> implements Cache<K, V>, UserManagedCache<K, V> {
     final Map<K, V> successes;
     final Map<K, Exception> failures;
     if (cacheLoaderWriter != null) {
-      successes = new HashMap<K, V>();
-      failures = new HashMap<K, Exception>();
+      // the store may run the compute function concurrently for distinct keys
+      successes = Collections.synchronizedMap(new HashMap<K, V>());
+      failures = new ConcurrentHashMap<K, Exception>();
     } else {
       successes = Collections.emptyMap();
       failures = Collections.emptyMap();
@@ -422,6 +509,9 @@ public class Ehcache<K, V> implements Cache<K, V>, UserManagedCache<K, V> {
 
     Map<K, V> result = new HashMap<K, V>();
     try {
+      for (K key : keys) {
+        discardStale(key);
+      }
       Map<K, Store.ValueHolder<V>> computedMap = store.bulkComputeIfAbsent(keys, computeFunction);
 
       int hits = 0;
@@ -479,15 +569,15 @@ public class Ehcache<K, V> implements Cache<K, V>, UserManagedCache<K, V> {
     final Set<K> successes;
     final Map<K, Exception> failures;
     if (cacheLoaderWriter != null) {
-      successes = new HashSet<K>();
-      failures = new HashMap<K, Exception>();
+      successes = Collections.newSetFromMap(new ConcurrentHashMap<K, Boolean>());
+      failures = new ConcurrentHashMap<K, Exception>();
     } else {
       successes = Collections.emptySet();
       failures = Collections.emptyMap();
     }
     
     // Copy all entries to write into a Map
-    final Map<K, V> entriesToRemap = new HashMap<K, V>();
+    final Map<K, V> entriesToRemap = new ConcurrentHashMap<K, V>();
     for (Map.Entry<? extends K, ? extends V> entry: entries.entrySet()) {
       // If a key/value is null, throw NPE, nothing gets mutated
       if (entry.getKey() == null || entry.getValue() == null) {
@@ -559,6 +649,128 @@ public class Ehcache<K, V> implements Cache<K, V>, UserManagedCache<K, V> {
     }
   }
 
+  /**
+   * Folds all mappings of this cache with the given aggregator, inside the {@link Store}.
+   * <P>
+   *   Stores able to do so scan their segments in parallel, handing each mapping to the aggregator without wrapping
+   *   it in a {@link Cache.Entry}; other stores are scanned sequentially through their iterator. No events are fired,
+   *   no statistics are recorded and the {@link CacheLoaderWriter} is not involved. The result is not a snapshot:
+   *   concurrent updates may or may not be seen.
+   * </P>
+   *
+   * @param aggregator the aggregator folding the mappings
+   * @param <A> the type of the result
+   * @return the combined result, or the aggregator's identity if the store failed
+   *
+   * @throws NullPointerException if the aggregator is {@code null}
+   */
+  public <A> A aggregate(Aggregator<? super K, ? super V, A> aggregator) {
+    return scan(aggregator, false);
+  }
+
+  /**
+   * Folds the keys of all mappings of this cache with the given aggregator, inside the {@link Store}.
+   * <P>
+   *   Like {@link #aggregate(Aggregator)}, except that values are neither decoded nor handed to the aggregator, which
+   *   receives {@code null} instead. Keys of mappings that expired but were not yet evicted may be included.
+   * </P>
+   *
+   * @param aggregator the aggregator folding the keys
+   * @param <A> the type of the result
+   * @return the combined result, or the aggregator's identity if the store failed
+   *
+   * @throws NullPointerException if the aggregator is {@code null}
+   */
+  public <A> A aggregateKeys(Aggregator<? super K, ? super V, A> aggregator) {
+    return scan(aggregator, true);
+  }
+
+  private <A> A scan(Aggregator<? super K, ? super V, A> aggregator, boolean keysOnly) {
+    statusTransitioner.checkAvailable();
+    checkNonNull(aggregator);
+    try {
+      if (gracePeriod != 0L) {
+        // only the expiration times of the mappings tell the stale ones apart
+        A accumulator = aggregator.identity();
+        Store.Iterator<Entry<K, ValueHolder<V>>> iterator = store.iterator();
+        while (iterator.hasNext()) {
+          Entry<K, ValueHolder<V>> entry = iterator.next();
+          if (!isStale(entry.getValue())) {
+            accumulator = aggregator.accumulate(accumulator, entry.getKey(), keysOnly ? null : entry.getValue().value());
+          }
+        }
+        return accumulator;
+      }
+      if (store instanceof ScannableStore) {
+        return ((ScannableStore<K, V>) store).scan(aggregator, keysOnly);
+      }
+      return CacheStoreHelper.scan(store, aggregator, keysOnly);
+    } catch (CacheAccessException e) {
+      resilienceStrategy.iteratorFailure(e);
+      return aggregator.identity();
+    }
+  }
+
+  /**
+   * Loads the given entries straight into the {@link Store}, for warming or rebuilding this cache.
+   * <P>
+   *   Unlike {@link #putAll(java.util.Map)}, no events are fired, the {@link CacheLoaderWriter} is not written to and
+   *   only the number of entries loaded is recorded, under {@link BulkOps#BULK_LOAD}. Entries are pushed to the store
+   *   in batches of {@value #BULK_LOAD_BATCH_SIZE}, which offheap and disk stores process segment by segment in
+   *   parallel. Existing mappings for the loaded keys are overwritten.
+   * </P>
+   * <P>
+   *   This operation is not atomic: if it fails, the batches already handed to the store remain loaded.
+   * </P>
+   *
+   * @param entries the entries to load
+   * @return the number of entries loaded
+   *
+   * @throws NullPointerException if the iterator, or any key or value it returns, is {@code null}
+   */
+  public long bulkLoad(final Iterator<? extends Map.Entry<? extends K, ? extends V>> entries) {
+    statusTransitioner.checkAvailable();
+    checkNonNull(entries);
+    long loaded = 0;
+    while (entries.hasNext()) {
+      final Map<K, V> batch = new HashMap<K, V>();
+      while (entries.hasNext() && batch.size() < BULK_LOAD_BATCH_SIZE) {
+        Map.Entry<? extends K, ? extends V> entry = entries.next();
+        checkNonNull(entry.getKey(), entry.getValue());
+        batch.put(entry.getKey(), entry.getValue());
+      }
+      loaded += bulkLoadBatch(batch);
+    }
+    addBulkMethodEntriesCount(BulkOps.BULK_LOAD, loaded);
+    return loaded;
+  }
+
+  private int bulkLoadBatch(final Map<K, V> batch) {
+    final AtomicInteger loadedCount = new AtomicInteger();
+    try {
+      store.bulkCompute(batch.keySet(), new Function<Iterable<? extends Map.Entry<? extends K, ? extends V>>, Iterable<? extends Map.Entry<? extends K, ? extends V>>>() {
+        @Override
+        public Iterable<? extends Map.Entry<? extends K, ? extends V>> apply(Iterable<? extends Map.Entry<? extends K, ? extends V>> entries) {
+          Map<K, V> mutations = new LinkedHashMap<K, V>();
+          for (Map.Entry<? extends K, ? extends V> entry : entries) {
+            K key = entry.getKey();
+            V newValue = batch.get(key);
+            if (newValueAlreadyExpired(key, entry.getValue(), newValue)) {
+              mutations.put(key, null);
+            } else {
+              loadedCount.incrementAndGet();
+              mutations.put(key, newValue);
+            }
+          }
+          return mutations.entrySet();
+        }
+      });
+    } catch (CacheAccessException e) {
+      resilienceStrategy.putAllFailure(batch, e);
+    }
+    return loadedCount.get();
+  }
+
   private void tryRemoveFailedKeys(Map<? extends K, ? extends V> entries, Map<K, Exception> failures, BulkCacheWritingException cacheWritingException) {
     try {
       store.bulkCompute(failures.keySet(), new Function<Iterable<? extends Map.Entry<? extends K, ? extends V>>, Iterable<? extends Map.Entry<? extends K, ? extends V>>>() {
@@ -621,14 +833,14 @@ public class Ehcache<K, V> implements Cache<K, V>, UserManagedCache<K, V> {
     final Set<K> successes;
     final Map<K, Exception> failures;
     if (cacheLoaderWriter != null) {
-      successes = new HashSet<K>();
-      failures = new HashMap<K, Exception>();
+      successes = Collections.newSetFromMap(new ConcurrentHashMap<K, Boolean>());
+      failures = new ConcurrentHashMap<K, Exception>();
     } else {
       successes = Collections.emptySet();
       failures = Collections.emptyMap();
     }
 
-    final Map<K, ? extends V> entriesToRemove = new HashMap<K, V>();
+    final Map<K, ? extends V> entriesToRemove = Collections.synchronizedMap(new HashMap<K, V>());
     for (K key: keys) {
       if (key == null) {
         throw new NullPointerException();
@@ -761,6 +973,7 @@ public class Ehcache<K, V> implements Cache<K, V>, UserManagedCache<K, V> {
     });
 
     try {
+      discardStale(key);
       ValueHolder<V> inCache = store.computeIfAbsent(key, mappingFunction);
       if (installed.get()) {
         putIfAbsentObserver.end(PutIfAbsentOutcome.PUT);
@@ -838,6 +1051,7 @@ public class Ehcache<K, V> implements Cache<K, V>, UserManagedCache<K, V> {
       }
     });
     try {
+      discardStale(key);
       store.compute(key, remappingFunction, REPLACE_FALSE);
       if (removed.get()) {
         conditionalRemoveObserver.end(ConditionalRemoveOutcome.SUCCESS);
@@ -913,6 +1127,7 @@ public class Ehcache<K, V> implements Cache<K, V>, UserManagedCache<K, V> {
     });
 
     try {
+      discardStale(key);
       store.compute(key, remappingFunction);
       if (old.get() != null) {
         replaceObserver.end(ReplaceOutcome.HIT);
@@ -986,6 +1201,7 @@ public class Ehcache<K, V> implements Cache<K, V>, UserManagedCache<K, V> {
       }
     });
     try {
+      discardStale(key);
       store.compute(key, remappingFunction, REPLACE_FALSE);
       if (success.get()) {
         replaceObserver.end(ReplaceOutcome.HIT);
@@ -1017,11 +1233,201 @@ public class Ehcache<K, V> implements Cache<K, V>, UserManagedCache<K, V> {
     }
   }
 
+  @Override
+  public V compute(final K key, final BiFunction<? super K, ? super V, ? extends V> remappingFunction) throws CacheLoadingException, CacheWritingException {
+    statusTransitioner.checkAvailable();
+    checkNonNull(key, remappingFunction);
+    putObserver.begin();
+    removeObserver.begin();
+    // only one of the observers sees the operation happen, the other one ends as a no-op
+    final AtomicReference<PutOutcome> putOutcome = new AtomicReference<PutOutcome>(PutOutcome.NOOP);
+    final AtomicReference<RemoveOutcome> removeOutcome = new AtomicReference<RemoveOutcome>(RemoveOutcome.NOOP);
+
+    final BiFunction<K, V, V> fn = memoize(new BiFunction<K, V, V>() {
+      @Override
+      public V apply(final K k, V inCache) {
+        if (inCache == null && useLoaderInAtomics && cacheLoaderWriter != null) {
+          try {
+            inCache = cacheLoaderWriter.load(k);
+          } catch (Exception e) {
+            throw newCacheLoadingException(e);
+          }
+        }
+
+        V newValue = remappingFunction.apply(k, inCache);
+        if (newValue == inCache) {
+          return inCache;
+        }
+
+        if (cacheLoaderWriter != null) {
+          try {
+            if (newValue != null) {
+              cacheLoaderWriter.write(k, newValue);
+            } else {
+              cacheLoaderWriter.delete(k);
+            }
+          } catch (Exception e) {
+            throw newCacheWritingException(e);
+          }
+        }
+
+        if (newValue == null) {
+          removeOutcome.set(RemoveOutcome.SUCCESS);
+          eventNotificationService.onEvent(CacheEvents.removal(k, inCache, Ehcache.this));
+          return null;
+        }
+
+        if (newValueAlreadyExpired(k, inCache, newValue)) {
+          return null;
+        }
+
+        putOutcome.set(PutOutcome.ADDED);
+        eventNotificationService.onEvent(inCache == null ?
+            CacheEvents.creation(k, newValue, Ehcache.this) : CacheEvents.update(k, inCache, newValue, Ehcache.this));
+        return newValue;
+      }
+    });
+
+    try {
+      discardStale(key);
+      ValueHolder<V> valueHolder = store.compute(key, fn, REPLACE_FALSE);
+      return valueHolder == null ? null : valueHolder.value();
+    } catch (CacheAccessException e) {
+      try {
+        V computed;
+        try {
+          computed = fn.apply(key, null);
+        } catch (CacheLoadingException f) {
+          return resilienceStrategy.computeFailure(key, e, f);
+        } catch (CacheWritingException f) {
+          return resilienceStrategy.computeFailure(key, e, f);
+        }
+        return resilienceStrategy.computeFailure(key, computed, e);
+      } finally {
+        putOutcome.set(PutOutcome.FAILURE);
+        removeOutcome.set(RemoveOutcome.FAILURE);
+      }
+    } catch (RuntimeException e) {
+      putOutcome.set(PutOutcome.FAILURE);
+      removeOutcome.set(RemoveOutcome.FAILURE);
+      throw e;
+    } finally {
+      putObserver.end(putOutcome.get());
+      removeObserver.end(removeOutcome.get());
+    }
+  }
+
+  @Override
+  public V computeIfAbsent(final K key, final Function<? super K, ? extends V> mappingFunction) throws CacheLoadingException, CacheWritingException {
+    statusTransitioner.checkAvailable();
+    checkNonNull(key, mappingFunction);
+    putObserver.begin();
+    final AtomicReference<PutOutcome> putOutcome = new AtomicReference<PutOutcome>(PutOutcome.NOOP);
+
+    final Function<K, V> fn = memoize(new Function<K, V>() {
+      @Override
+      public V apply(final K k) {
+        if (useLoaderInAtomics && cacheLoaderWriter != null) {
+          try {
+            V loaded = cacheLoaderWriter.load(k);
+            if (loaded != null) {
+              return loaded; // populate the cache
+            }
+          } catch (Exception e) {
+            throw newCacheLoadingException(e);
+          }
+        }
+
+        V value = mappingFunction.apply(k);
+        if (value == null) {
+          return null;
+        }
+
+        if (cacheLoaderWriter != null) {
+          try {
+            cacheLoaderWriter.write(k, value);
+          } catch (Exception e) {
+            throw newCacheWritingException(e);
+          }
+        }
+
+        if (newValueAlreadyExpired(k, null, value)) {
+          return null;
+        }
+
+        putOutcome.set(PutOutcome.ADDED);
+        eventNotificationService.onEvent(CacheEvents.creation(k, value, Ehcache.this));
+        return value;
+      }
+    });
+
+    try {
+      discardStale(key);
+      ValueHolder<V> inCache = store.computeIfAbsent(key, fn);
+      return inCache == null ? null : inCache.value();
+    } catch (CacheAccessException e) {
+      try {
+        V computed;
+        try {
+          computed = fn.apply(key);
+        } catch (CacheLoadingException f) {
+          return resilienceStrategy.computeFailure(key, e, f);
+        } catch (CacheWritingException f) {
+          return resilienceStrategy.computeFailure(key, e, f);
+        }
+        return resilienceStrategy.computeFailure(key, computed, e);
+      } finally {
+        putOutcome.set(PutOutcome.FAILURE);
+      }
+    } catch (RuntimeException e) {
+      putOutcome.set(PutOutcome.FAILURE);
+      throw e;
+    } finally {
+      putObserver.end(putOutcome.get());
+    }
+  }
+
+  @Override
+  public V merge(final K key, final V value, final BiFunction<? super V, ? super V, ? extends V> remappingFunction) throws CacheLoadingException, CacheWritingException {
+    checkNonNull(key, value, remappingFunction);
+    return compute(key, new BiFunction<K, V, V>() {
+      @Override
+      public V apply(K k, V inCache) {
+        return inCache == null ? value : remappingFunction.apply(inCache, value);
+      }
+    });
+  }
+
   @Override
   public CacheRuntimeConfiguration<K, V> getRuntimeConfiguration() {
     return runtimeConfiguration;
   }
 
+  /**
+   * Returns a {@link Future} that completes once this cache's store has recovered all its persisted mappings.
+   * <P>
+   *   Stores that recover in the background keep serving the cache while this future is pending, but every lookup
+   *   misses, and mutations, including the installation of values loaded by the {@link CacheLoaderWriter}, wait for
+   *   the recovery to complete.
+   *   Caches that do not recover in the background return an already completed future.
+   * </P>
+   *
+   * @return the readiness future
+   */
+  public Future<Void> getReadiness() {
+    if (store instanceof RecoverableStore) {
+      return ((RecoverableStore) store).getRecoveryFuture();
+    }
+    FutureTask<Void> ready = new FutureTask<Void>(new Runnable() {
+      @Override
+      public void run() {
+        // nothing to recover
+      }
+    }, null);
+    ready.run();
+    return ready;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -1082,6 +1488,21 @@ public class Ehcache<K, V> implements Cache<K, V>, UserManagedCache<K, V> {
   Jsr107Cache<K, V> getJsr107Cache() {
     return jsr107Cache;
   }
+
+  /**
+   * Returns an {@link AsyncCache} view of this cache.
+   * <P>
+   *   Operations involving the {@link CacheLoaderWriter} run on the given executor, all others complete on the
+   *   calling thread.
+   * </P>
+   *
+   * @param executor the executor running the loads and writes
+   * @return an asynchronous view of this cache
+   */
+  public AsyncCache<K, V> asAsync(Executor executor) {
+    checkNonNull(executor);
+    return new AsyncCacheImpl(executor);
+  }
   
   CacheLoaderWriter<? super K, V> getCacheLoaderWriter() {
     return this.cacheLoaderWriter;
@@ -1355,12 +1776,255 @@ public class Ehcache<K, V> implements Cache<K, V>, UserManagedCache<K, V> {
     }
   }
   
+  /**
+   * Reloads mappings accessed close to their expiration, so that hot keys don't expire and block readers on a load,
+   * as well as the stale mappings stores keep during their grace period.
+   */
+  private final class RefreshAhead {
+
+    private final TimeSource timeSource;
+    private final Executor executor;
+    private final float refreshFactor;
+    private final Semaphore permits;
+    private final ConcurrentMap<K, Boolean> refreshing = new ConcurrentHashMap<K, Boolean>();
+
+    RefreshAhead(RefreshAheadConfiguration refreshAheadConfiguration, TimeSource timeSource, Executor executor) {
+      this.timeSource = timeSource;
+      this.executor = executor;
+      if (refreshAheadConfiguration == null) {
+        this.refreshFactor = 0f;
+        this.permits = new Semaphore(RefreshAheadConfiguration.DEFAULT_MAX_CONCURRENT_REFRESHES);
+      } else {
+        this.refreshFactor = refreshAheadConfiguration.refreshFactor();
+        this.permits = new Semaphore(refreshAheadConfiguration.maxConcurrentRefreshes());
+      }
+    }
+
+    void onHit(final K key, final V value, ValueHolder<V> valueHolder) {
+      long expirationTime = valueHolder.expirationTime(TimeUnit.MILLISECONDS);
+      if (expirationTime == ValueHolder.NO_EXPIRE) {
+        return;
+      }
+      // the store's expiration time includes the grace period, the mapping is stale past this one
+      long staleTime = expirationTime - gracePeriod;
+      long lifetime = currentLifetime(key, value, valueHolder, staleTime);
+      if (staleTime - timeSource.getTimeMillis() > lifetime * refreshFactor) {
+        return;
+      }
+      if (refreshing.putIfAbsent(key, Boolean.TRUE) != null) {
+        return;
+      }
+      if (!permits.tryAcquire()) {
+        // too many refreshes running, the mapping will be loaded by a get once expired if need be
+        refreshing.remove(key);
+        return;
+      }
+      try {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              refresh(key, value);
+            } finally {
+              permits.release();
+              refreshing.remove(key);
+            }
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        permits.release();
+        refreshing.remove(key);
+      }
+    }
+
+    /*
+     * Length of the interval the mapping is currently fresh for: an expiry resetting on access restarts it on every
+     * access, any other runs from the creation, or last update, of the mapping.
+     */
+    private long currentLifetime(K key, V value, ValueHolder<V> valueHolder, long staleTime) {
+      Duration accessExpiry = runtimeConfiguration.getExpiry().getExpiryForAccess(key, value);
+      if (accessExpiry != null && !accessExpiry.isForever()) {
+        return accessExpiry.getTimeUnit().toMillis(accessExpiry.getAmount());
+      }
+      return staleTime - valueHolder.creationTime(TimeUnit.MILLISECONDS);
+    }
+
+    private void refresh(K key, final V value) {
+      final V loaded;
+      cacheLoadingObserver.begin();
+      try {
+        loaded = cacheLoaderWriter.load(key);
+        cacheLoadingObserver.end(CacheLoadingOutcome.SUCCESS);
+      } catch (Exception e) {
+        cacheLoadingObserver.end(CacheLoadingOutcome.FAILURE);
+        logger.warn("Background reload failed, the current value is kept until it expires", e);
+        return;
+      }
+      try {
+        store.compute(key, new BiFunction<K, V, V>() {
+          @Override
+          public V apply(K mappedKey, V mappedValue) {
+            // leave mappings that were removed or updated since the refresh started alone
+            if (mappedValue == null || !mappedValue.equals(value)) {
+              return mappedValue;
+            }
+            return loaded;
+          }
+        }, ALWAYS_TRUE);
+      } catch (CacheAccessException e) {
+        logger.warn("Background reload failed to install the reloaded value", e);
+      }
+    }
+  }
+
+  private final class AsyncCacheImpl implements AsyncCache<K, V> {
+
+    private final Executor executor;
+
+    AsyncCacheImpl(Executor executor) {
+      this.executor = executor;
+    }
+
+    @Override
+    public Future<V> getAsync(final K key) {
+      statusTransitioner.checkAvailable();
+      checkNonNull(key);
+      if (cacheLoaderWriter == null) {
+        return runInline(new Callable<V>() {
+          @Override
+          public V call() {
+            return get(key);
+          }
+        });
+      }
+
+      FutureTask<V> pending = pendingLoads.get(key);
+      if (pending != null) {
+        return pending;
+      }
+      try {
+        ValueHolder<V> valueHolder = store.get(key);
+        if (valueHolder != null) {
+          getObserver.begin();
+          getObserver.end(GetOutcome.HIT_WITH_LOADER);
+          V value = valueHolder.value();
+          if (refreshAhead != null) {
+            refreshAhead.onHit(key, value, valueHolder);
+          }
+          return completed(value);
+        }
+      } catch (CacheAccessException e) {
+        // the load below goes through get, and thus through the resilience strategy
+      }
+
+      FutureTask<V> load = new FutureTask<V>(new Callable<V>() {
+        @Override
+        public V call() {
+          return get(key);
+        }
+      }) {
+        // leave the pending loads before publishing the outcome, so that a later getAsync never joins a completed load
+        @Override
+        protected void set(V v) {
+          pendingLoads.remove(key, this);
+          super.set(v);
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+          pendingLoads.remove(key, this);
+          super.setException(t);
+        }
+
+        @Override
+        protected void done() {
+          // cancelled
+          pendingLoads.remove(key, this);
+        }
+      };
+      pending = pendingLoads.putIfAbsent(key, load);
+      if (pending != null) {
+        return pending;
+      }
+      try {
+        executor.execute(load);
+      } catch (RuntimeException e) {
+        // don't leave the callers that joined this load waiting forever
+        load.cancel(false);
+        throw e;
+      }
+      return load;
+    }
+
+    @Override
+    public Future<Void> putAsync(final K key, final V value) {
+      statusTransitioner.checkAvailable();
+      checkNonNull(key, value);
+      return runWithLoaderWriter(new Callable<Void>() {
+        @Override
+        public Void call() {
+          put(key, value);
+          return null;
+        }
+      });
+    }
+
+    @Override
+    public Future<Map<K, V>> getAllAsync(final Set<? extends K> keys) {
+      statusTransitioner.checkAvailable();
+      checkNonNullContent(keys);
+      return runWithLoaderWriter(new Callable<Map<K, V>>() {
+        @Override
+        public Map<K, V> call() {
+          return getAll(keys);
+        }
+      });
+    }
+
+    @Override
+    public Future<V> computeAsync(final K key, final BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+      statusTransitioner.checkAvailable();
+      checkNonNull(key, remappingFunction);
+      return runWithLoaderWriter(new Callable<V>() {
+        @Override
+        public V call() {
+          return jsr107Cache.compute(key, remappingFunction, REPLACE_FALSE, ALWAYS_TRUE, ALWAYS_TRUE);
+        }
+      });
+    }
+
+    private <T> Future<T> runWithLoaderWriter(Callable<T> operation) {
+      if (cacheLoaderWriter == null) {
+        return runInline(operation);
+      }
+      FutureTask<T> task = new FutureTask<T>(operation);
+      executor.execute(task);
+      return task;
+    }
+
+    private <T> Future<T> runInline(Callable<T> operation) {
+      FutureTask<T> task = new FutureTask<T>(operation);
+      task.run();
+      return task;
+    }
+
+    private <T> Future<T> completed(final T value) {
+      return runInline(new Callable<T>() {
+        @Override
+        public T call() {
+          return value;
+        }
+      });
+    }
+  }
+
   private class CacheEntryIterator implements Iterator<Entry<K, V>> {
 
     private final Store.Iterator<Entry<K, Store.ValueHolder<V>>> iterator;
     private final boolean quiet;
     private boolean cacheAccessError = false;
     private Cache.Entry<K, ValueHolder<V>> current;
+    private Cache.Entry<K, ValueHolder<V>> prefetched;
 
     public CacheEntryIterator(boolean quiet) {
       this.quiet = quiet;
@@ -1387,14 +2051,36 @@ public class Ehcache<K, V> implements Cache<K, V>, UserManagedCache<K, V> {
         return false;
       }
       
+      if (prefetched != null) {
+        return true;
+      }
       try {
-        return iterator.hasNext();
+        while (iterator.hasNext()) {
+          Cache.Entry<K, ValueHolder<V>> entry = iterator.next();
+          if (!isStale(entry.getValue())) {
+            prefetched = entry;
+            return true;
+          }
+        }
+        return false;
       } catch (CacheAccessException e) {
         cacheAccessError(e);
         return false;
       }
     }
 
+    private Cache.Entry<K, ValueHolder<V>> nextFresh() throws CacheAccessException {
+      Cache.Entry<K, ValueHolder<V>> entry = prefetched;
+      if (entry != null) {
+        prefetched = null;
+        return entry;
+      }
+      do {
+        entry = iterator.next();
+      } while (isStale(entry.getValue()));
+      return entry;
+    }
+
     @Override
     public Entry<K, V> next() {
       statusTransitioner.checkAvailable();
@@ -1405,7 +2091,7 @@ public class Ehcache<K, V> implements Cache<K, V>, UserManagedCache<K, V> {
       
       if (!quiet) getObserver.begin();
       try {
-        current = iterator.next();
+        current = nextFresh();
         if (!quiet) getObserver.end(GetOutcome.HIT_NO_LOADER);
       } catch (CacheAccessException e) {
         if (!quiet) getObserver.end(GetOutcome.FAILURE);
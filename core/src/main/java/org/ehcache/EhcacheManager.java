@@ -22,6 +22,8 @@ import org.ehcache.config.Configuration;
 import org.ehcache.config.ResourcePool;
 import org.ehcache.config.ResourceType;
 import org.ehcache.config.StoreConfigurationImpl;
+import org.ehcache.config.loaderwriter.RefreshAheadConfiguration;
+import org.ehcache.config.loaderwriter.StaleWhileRevalidateConfiguration;
 import org.ehcache.event.CacheEventListener;
 import org.ehcache.event.CacheEventListenerConfiguration;
 import org.ehcache.event.CacheEventListenerProvider;
@@ -29,6 +31,8 @@ import org.ehcache.events.CacheEventNotificationListenerServiceProvider;
 import org.ehcache.events.CacheEventNotificationService;
 import org.ehcache.events.CacheManagerListener;
 import org.ehcache.exceptions.CachePersistenceException;
+import org.ehcache.internal.TimeSource;
+import org.ehcache.internal.TimeSourceService;
 import org.ehcache.management.ManagementRegistry;
 import org.ehcache.spi.LifeCycled;
 import org.ehcache.spi.ServiceLocator;
@@ -46,6 +50,7 @@ import org.ehcache.spi.service.LocalPersistenceService.PersistenceSpaceIdentifie
 import org.ehcache.spi.service.Service;
 import org.ehcache.spi.service.ServiceCreationConfiguration;
 import org.ehcache.spi.service.ServiceDependencies;
+import org.ehcache.spi.service.ThreadPoolsService;
 import org.ehcache.util.ClassLoading;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -67,6 +72,7 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.ehcache.config.ResourceType.Core.DISK;
@@ -251,21 +257,29 @@ public class EhcacheManager implements PersistentCacheManager {
     final Store.Provider storeProvider = serviceLocator.getService(Store.Provider.class);
     if (config.getResourcePools().getResourceTypeSet().contains(ResourceType.Core.DISK)) {
       LocalPersistenceService persistenceService = serviceLocator.getService(LocalPersistenceService.class);
-      
-      if (!config.getResourcePools().getPoolForResource(ResourceType.Core.DISK).isPersistent()) {
+      boolean persistent = config.getResourcePools().getPoolForResource(ResourceType.Core.DISK).isPersistent();
+
+      if (persistenceService == null) {
+        if (persistent) {
+          throw new IllegalStateException("No LocalPersistenceService could be found - did you configure it at the CacheManager level?");
+        }
+        // transient disk tiers not relying on a persistence space, such as swap tiers, do without it
+      } else {
+        if (!persistent) {
+          try {
+            persistenceService.destroyPersistenceSpace(alias);
+          } catch (CachePersistenceException cpex) {
+            throw new RuntimeException("Unable to clean-up persistence space for non-restartable cache " + alias, cpex);
+          }
+        }
         try {
-          persistenceService.destroyPersistenceSpace(alias);
+          PersistenceSpaceIdentifier space = persistenceService.getOrCreatePersistenceSpace(alias);
+          serviceConfigs = Arrays.copyOf(serviceConfigs, serviceConfigs.length + 1);
+          serviceConfigs[serviceConfigs.length - 1] = space;
         } catch (CachePersistenceException cpex) {
-          throw new RuntimeException("Unable to clean-up persistence space for non-restartable cache " + alias, cpex);
+          throw new RuntimeException("Unable to create persistence space for cache " + alias, cpex);
         }
       }
-      try {
-        PersistenceSpaceIdentifier space = persistenceService.getOrCreatePersistenceSpace(alias);
-        serviceConfigs = Arrays.copyOf(serviceConfigs, serviceConfigs.length + 1);
-        serviceConfigs[serviceConfigs.length - 1] = space;
-      } catch (CachePersistenceException cpex) {
-        throw new RuntimeException("Unable to create persistence space for cache " + alias, cpex);
-      }
     }
     Serializer<K> keySerializer = null;
     Serializer<V> valueSerializer = null;
@@ -296,7 +310,16 @@ public class EhcacheManager implements PersistentCacheManager {
         }
       }
     }
-    Store.Configuration<K, V> storeConfiguration = new StoreConfigurationImpl<K, V>(config, keySerializer, valueSerializer);
+    StaleWhileRevalidateConfiguration staleWhileRevalidateConfiguration = ServiceLocator.findSingletonAmongst(StaleWhileRevalidateConfiguration.class, config.getServiceConfigurations().toArray());
+    Store.Configuration<K, V> storeConfiguration;
+    if (staleWhileRevalidateConfiguration == null) {
+      storeConfiguration = new StoreConfigurationImpl<K, V>(config, keySerializer, valueSerializer);
+    } else {
+      // stores keep the mappings for the grace period, Ehcache tells the stale ones apart
+      storeConfiguration = new StoreConfigurationImpl<K, V>(config.getKeyType(), config.getValueType(),
+          config.getEvictionVeto(), config.getEvictionPrioritizer(), config.getClassLoader(),
+          staleWhileRevalidateConfiguration.<K, V>withGracePeriod(config.getExpiry()), config.getResourcePools(), keySerializer, valueSerializer);
+    }
     final Store<K, V> store = storeProvider.createStore(storeConfiguration, serviceConfigs);
 
     lifeCycledList.add(new LifeCycled() {
@@ -374,8 +397,24 @@ public class EhcacheManager implements PersistentCacheManager {
     
     RuntimeConfiguration<K, V> runtimeConfiguration = new RuntimeConfiguration<K, V>(config, evtService);
     runtimeConfiguration.addCacheConfigurationListener(store.getConfigurationChangeListeners());
+    TimeSource timeSource = null;
+    Executor loaderExecutor = null;
+    if (staleWhileRevalidateConfiguration != null && decorator == null) {
+      throw new IllegalStateException("Stale-while-revalidate of cache " + alias + " needs a CacheLoaderWriter");
+    }
+    if (decorator != null && (staleWhileRevalidateConfiguration != null
+        || ServiceLocator.findSingletonAmongst(RefreshAheadConfiguration.class, config.getServiceConfigurations().toArray()) != null)) {
+      TimeSourceService timeSourceService = serviceLocator.getService(TimeSourceService.class);
+      ThreadPoolsService threadPoolsService = serviceLocator.getService(ThreadPoolsService.class);
+      if (timeSourceService == null || threadPoolsService == null) {
+        throw new IllegalStateException("Background reloads of cache " + alias + " need both a TimeSourceService and a ThreadPoolsService");
+      }
+      timeSource = timeSourceService.getTimeSource();
+      loaderExecutor = threadPoolsService.getCacheLoadingExecutor();
+    }
+    Logger logger = LoggerFactory.getLogger(Ehcache.class + "-" + alias);
     final Ehcache<K, V> ehCache = new Ehcache<K, V>(runtimeConfiguration, store, decorator, evtService,
-        useLoaderInAtomics, LoggerFactory.getLogger(Ehcache.class + "-" + alias));
+        useLoaderInAtomics, logger, new StatusTransitioner(logger), timeSource, loaderExecutor);
 
     final ManagementRegistry managementRegistry = serviceLocator.getService(ManagementRegistry.class);
     final EhcacheStatsSettings ehcacheStatsSettings = new EhcacheStatsSettings(alias, Collections.<String, Object>singletonMap("Setting", "CacheName"));
@@ -598,7 +637,9 @@ public class EhcacheManager implements PersistentCacheManager {
 
   private void destroyPersistenceSpace(String alias) throws CachePersistenceException {
     LocalPersistenceService persistenceService = serviceLocator.getService(LocalPersistenceService.class);
-    persistenceService.destroyPersistenceSpace(alias);
+    if (persistenceService != null) {
+      persistenceService.destroyPersistenceSpace(alias);
+    }
   }
 
   // for tests at the moment
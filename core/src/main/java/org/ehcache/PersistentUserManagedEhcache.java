@@ -24,6 +24,8 @@ import org.ehcache.exceptions.BulkCacheWritingException;
 import org.ehcache.exceptions.CacheLoadingException;
 import org.ehcache.exceptions.CachePersistenceException;
 import org.ehcache.exceptions.CacheWritingException;
+import org.ehcache.function.BiFunction;
+import org.ehcache.function.Function;
 import org.ehcache.spi.LifeCycled;
 import org.ehcache.spi.cache.Store;
 import org.ehcache.spi.loaderwriter.CacheLoaderWriter;
@@ -185,6 +187,21 @@ public class PersistentUserManagedEhcache<K, V> implements PersistentUserManaged
     return ehcache.replace(key, oldValue, newValue);
   }
 
+  @Override
+  public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) throws CacheLoadingException, CacheWritingException {
+    return ehcache.compute(key, remappingFunction);
+  }
+
+  @Override
+  public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) throws CacheLoadingException, CacheWritingException {
+    return ehcache.computeIfAbsent(key, mappingFunction);
+  }
+
+  @Override
+  public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) throws CacheLoadingException, CacheWritingException {
+    return ehcache.merge(key, value, remappingFunction);
+  }
+
   @Override
   public CacheRuntimeConfiguration<K, V> getRuntimeConfiguration() {
     return ehcache.getRuntimeConfiguration();
@@ -0,0 +1,79 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache.config.loaderwriter;
+
+import org.ehcache.spi.loaderwriter.CacheLoaderWriterProvider;
+import org.ehcache.spi.service.ServiceConfiguration;
+
+/**
+ * Enables refresh-ahead on a cache with a {@link org.ehcache.spi.loaderwriter.CacheLoaderWriter}.
+ * <P>
+ *   A {@code get} hitting a mapping that is within the configured fraction of its lifetime from expiring returns the
+ *   current value, and triggers an asynchronous reload of it. At most the configured number of reloads run
+ *   concurrently per cache; accesses beyond that are served without triggering one.
+ * </P>
+ */
+public class RefreshAheadConfiguration implements ServiceConfiguration<CacheLoaderWriterProvider> {
+
+  public static final float DEFAULT_REFRESH_FACTOR = 0.2f;
+  public static final int DEFAULT_MAX_CONCURRENT_REFRESHES = 16;
+
+  private float refreshFactor = DEFAULT_REFRESH_FACTOR;
+  private int maxConcurrentRefreshes = DEFAULT_MAX_CONCURRENT_REFRESHES;
+
+  public float refreshFactor() {
+    return refreshFactor;
+  }
+
+  /**
+   * Sets the fraction of a mapping's lifetime, counted back from its expiration time, during which accessing it
+   * triggers a reload.
+   *
+   * @param refreshFactor the fraction, strictly between 0 and 1
+   * @return this configuration
+   */
+  public RefreshAheadConfiguration refreshFactor(float refreshFactor) {
+    if (!(refreshFactor > 0f && refreshFactor < 1f)) {
+      throw new IllegalArgumentException("Refresh factor must be between 0 and 1, was " + refreshFactor);
+    }
+    this.refreshFactor = refreshFactor;
+    return this;
+  }
+
+  public int maxConcurrentRefreshes() {
+    return maxConcurrentRefreshes;
+  }
+
+  /**
+   * Sets the maximum number of reloads a cache runs at any one time.
+   *
+   * @param maxConcurrentRefreshes the limit, must be at least 1
+   * @return this configuration
+   */
+  public RefreshAheadConfiguration maxConcurrentRefreshes(int maxConcurrentRefreshes) {
+    if (maxConcurrentRefreshes < 1) {
+      throw new IllegalArgumentException("Max concurrent refreshes must be at least 1, was " + maxConcurrentRefreshes);
+    }
+    this.maxConcurrentRefreshes = maxConcurrentRefreshes;
+    return this;
+  }
+
+  @Override
+  public Class<CacheLoaderWriterProvider> getServiceType() {
+    return CacheLoaderWriterProvider.class;
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache.config.loaderwriter;
+
+import org.ehcache.expiry.Duration;
+import org.ehcache.expiry.Expiry;
+import org.ehcache.spi.loaderwriter.CacheLoaderWriterProvider;
+import org.ehcache.spi.service.ServiceConfiguration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps mappings of a cache with a {@link org.ehcache.spi.loaderwriter.CacheLoaderWriter} for a grace period after
+ * they expire.
+ * <P>
+ *   A {@code get} hitting a mapping in its grace period returns the stale value immediately, and reloads it in the
+ *   background, bounded like the reloads of {@link RefreshAheadConfiguration}. Should the reload fail, the stale value
+ *   keeps being served until the grace period ends. Other operations see such mappings as expired.
+ * </P>
+ */
+public class StaleWhileRevalidateConfiguration implements ServiceConfiguration<CacheLoaderWriterProvider> {
+
+  private final long gracePeriodMillis;
+
+  public StaleWhileRevalidateConfiguration(long gracePeriod, TimeUnit unit) {
+    if (gracePeriod <= 0) {
+      throw new IllegalArgumentException("Grace period must be positive, was " + gracePeriod);
+    }
+    this.gracePeriodMillis = unit.toMillis(gracePeriod);
+  }
+
+  public long gracePeriod(TimeUnit unit) {
+    return unit.convert(gracePeriodMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Extends the durations of the given expiry by the grace period, so that stores keep the mappings past their
+   * expiration. Mappings expiring immediately, or never, are left alone.
+   *
+   * @param expiry the expiry configured on the cache
+   * @return the expiry to configure the store with
+   */
+  public <K, V> Expiry<K, V> withGracePeriod(final Expiry<? super K, ? super V> expiry) {
+    return new Expiry<K, V>() {
+      @Override
+      public Duration getExpiryForCreation(K key, V value) {
+        return extend(expiry.getExpiryForCreation(key, value));
+      }
+
+      @Override
+      public Duration getExpiryForAccess(K key, V value) {
+        return extend(expiry.getExpiryForAccess(key, value));
+      }
+
+      @Override
+      public Duration getExpiryForUpdate(K key, V oldValue, V newValue) {
+        return extend(expiry.getExpiryForUpdate(key, oldValue, newValue));
+      }
+    };
+  }
+
+  private Duration extend(Duration duration) {
+    if (duration == null || duration.isForever() || Duration.ZERO.equals(duration)) {
+      return duration;
+    }
+    return new Duration(duration.getTimeUnit().toMillis(duration.getAmount()) + gracePeriodMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public Class<CacheLoaderWriterProvider> getServiceType() {
+    return CacheLoaderWriterProvider.class;
+  }
+}
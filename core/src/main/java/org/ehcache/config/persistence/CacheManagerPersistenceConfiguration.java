@@ -23,20 +23,60 @@ import org.ehcache.config.CacheManagerConfiguration;
 import org.ehcache.spi.service.LocalPersistenceService;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * @author Alex Snaps
  */
 public class CacheManagerPersistenceConfiguration implements PersistenceConfiguration, CacheManagerConfiguration<PersistentCacheManager> {
 
-  private final File rootDirectory;
+  private final List<File> rootDirectories;
+  private final StripingPolicy stripingPolicy;
 
   public CacheManagerPersistenceConfiguration(final File rootDirectory) {
-    this.rootDirectory = rootDirectory;
+    this.rootDirectories = Collections.singletonList(rootDirectory);
+    this.stripingPolicy = StripingPolicy.ROUND_ROBIN;
+  }
+
+  /**
+   * Creates a persistence configuration striping persistent data over several root directories, typically each on its
+   * own device.
+   * <P>
+   *   Persistence spaces are registered in the first root directory, which also holds the index files of the disk
+   *   stores. The data files of the disk store segments are spread over all the root directories following the given
+   *   policy.
+   * </P>
+   *
+   * @param stripingPolicy how data files get spread over the root directories
+   * @param rootDirectory the first root directory
+   * @param otherRootDirectories the other root directories
+   */
+  public CacheManagerPersistenceConfiguration(final StripingPolicy stripingPolicy, final File rootDirectory, final File... otherRootDirectories) {
+    if (stripingPolicy == null) {
+      throw new NullPointerException("Striping policy cannot be null");
+    }
+    List<File> directories = new ArrayList<File>();
+    directories.add(rootDirectory);
+    directories.addAll(Arrays.asList(otherRootDirectories));
+    this.rootDirectories = Collections.unmodifiableList(directories);
+    this.stripingPolicy = stripingPolicy;
   }
 
   public File getRootDirectory() {
-    return rootDirectory;
+    return rootDirectories.get(0);
+  }
+
+  @Override
+  public List<File> getRootDirectories() {
+    return rootDirectories;
+  }
+
+  @Override
+  public StripingPolicy getStripingPolicy() {
+    return stripingPolicy;
   }
 
   @Override
@@ -19,6 +19,8 @@ package org.ehcache.config.persistence;
 import org.ehcache.spi.service.LocalPersistenceService;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * DefaultPersistenceConfiguration
@@ -36,6 +38,16 @@ public class DefaultPersistenceConfiguration implements PersistenceConfiguration
     return rootDirectory;
   }
 
+  @Override
+  public List<File> getRootDirectories() {
+    return Collections.singletonList(rootDirectory);
+  }
+
+  @Override
+  public StripingPolicy getStripingPolicy() {
+    return StripingPolicy.ROUND_ROBIN;
+  }
+
   @Override
   public Class<LocalPersistenceService> getServiceType() {
     return LocalPersistenceService.class;
@@ -20,10 +20,41 @@ import org.ehcache.spi.service.LocalPersistenceService;
 import org.ehcache.spi.service.ServiceCreationConfiguration;
 
 import java.io.File;
+import java.util.List;
 
 /**
  * PersistenceConfiguration
  */
 public interface PersistenceConfiguration extends ServiceCreationConfiguration<LocalPersistenceService> {
+
+  /**
+   * How the files of a persistence context get spread over the root directories.
+   */
+  enum StripingPolicy {
+    /**
+     * Stripes are dealt to the root directories in turn, each context starting on the directory following the one
+     * the previous context started on.
+     */
+    ROUND_ROBIN,
+    /**
+     * Stripes are dealt to the root directories in proportion to the space left on their file systems.
+     */
+    FREE_SPACE
+  }
+
+  /**
+   * Returns the root directory holding the persistence spaces and their indexes.
+   *
+   * @return the first of the root directories
+   */
   File getRootDirectory();
+
+  /**
+   * Returns all the root directories persistent data can be striped over, starting with {@link #getRootDirectory()}.
+   *
+   * @return the root directories
+   */
+  List<File> getRootDirectories();
+
+  StripingPolicy getStripingPolicy();
 }
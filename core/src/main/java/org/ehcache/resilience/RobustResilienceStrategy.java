@@ -165,6 +165,24 @@ public abstract class RobustResilienceStrategy<K, V> implements ResilienceStrate
     throw f;
   }
 
+  @Override
+  public V computeFailure(K key, V computed, CacheAccessException e) {
+    cleanup(key, e);
+    return computed;
+  }
+
+  @Override
+  public V computeFailure(K key, CacheAccessException e, CacheWritingException f) {
+    cleanup(key, e);
+    throw f;
+  }
+
+  @Override
+  public V computeFailure(K key, CacheAccessException e, CacheLoadingException f) {
+    cleanup(key, e);
+    throw f;
+  }
+
   @Override
   public Map<K, V> getAllFailure(Iterable<? extends K> keys, CacheAccessException e) {
     cleanup(keys, e);
@@ -17,6 +17,8 @@
 package org.ehcache.spi.cache;
 
 import org.ehcache.Cache;
+import org.ehcache.exceptions.CacheAccessException;
+import org.ehcache.function.Aggregator;
 import org.ehcache.internal.TimeSource;
 
 import java.util.concurrent.TimeUnit;
@@ -59,4 +61,17 @@ public final class CacheStoreHelper {
       }
     };
   }
+
+  /**
+   * Folds the mappings of a store that is not a {@link ScannableStore}, sequentially through its iterator.
+   */
+  public static <K, V, A> A scan(final Store<K, V> store, final Aggregator<? super K, ? super V, A> aggregator, final boolean keysOnly) throws CacheAccessException {
+    A accumulator = aggregator.identity();
+    Store.Iterator<Cache.Entry<K, Store.ValueHolder<V>>> iterator = store.iterator();
+    while (iterator.hasNext()) {
+      Cache.Entry<K, Store.ValueHolder<V>> entry = iterator.next();
+      accumulator = aggregator.accumulate(accumulator, entry.getKey(), keysOnly ? null : entry.getValue().value());
+    }
+    return accumulator;
+  }
 }
@@ -0,0 +1,40 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache.spi.cache;
+
+import java.util.concurrent.Future;
+
+/**
+ * Implemented by {@link Store}s that can complete the recovery of their persisted state after having been initialized.
+ * <P>
+ *   While recovery is in progress such a store is usable: reads behave as if it was empty, while mutations wait for
+ *   recovery to complete.
+ * </P>
+ */
+public interface RecoverableStore {
+
+  /**
+   * Returns a {@link Future} that completes once the store serves all its recovered mappings.
+   * <P>
+   *   The future fails if recovery failed, in which case the store keeps behaving as if it was empty and rejects
+   *   mutations. Cancelling the returned future has no effect on the recovery.
+   * </P>
+   *
+   * @return the recovery future
+   */
+  Future<Void> getRecoveryFuture();
+}
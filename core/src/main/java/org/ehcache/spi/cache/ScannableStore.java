@@ -0,0 +1,42 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache.spi.cache;
+
+import org.ehcache.exceptions.CacheAccessException;
+import org.ehcache.function.Aggregator;
+
+/**
+ * Implemented by {@link Store}s that can fold their mappings directly, partition by partition, without exposing each
+ * of them through a {@link Store.Iterator}.
+ */
+public interface ScannableStore<K, V> {
+
+  /**
+   * Folds all non-expired mappings of this store with the given aggregator.
+   * <P>
+   *   Partitions may be folded concurrently. When only keys are scanned the values are not decoded, and mappings that
+   *   expired but were not yet evicted may be included.
+   * </P>
+   *
+   * @param aggregator the aggregator folding the mappings
+   * @param keysOnly whether to only scan keys, the aggregator then receiving {@code null} values
+   * @param <A> the type of the result
+   * @return the combined result of all partitions
+   * @throws CacheAccessException if scanning any partition failed
+   */
+  <A> A scan(Aggregator<? super K, ? super V, A> aggregator, boolean keysOnly) throws CacheAccessException;
+}
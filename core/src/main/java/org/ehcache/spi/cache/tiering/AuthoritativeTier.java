@@ -21,6 +21,9 @@ import org.ehcache.spi.cache.Store;
 import org.ehcache.spi.service.Service;
 import org.ehcache.spi.service.ServiceConfiguration;
 
+import java.util.Map;
+import java.util.Set;
+
 /**
  * Authoritative tier, according to Montreal design.
 
@@ -42,6 +45,13 @@ public interface AuthoritativeTier<K, V> extends Store<K, V> {
    */
   ValueHolder<V> computeIfAbsentAndFault(K key, Function<? super K, ? extends V> mappingFunction) throws CacheAccessException;
 
+  /**
+   * Marks the mappings as not evictable and performs bulkComputeIfAbsent() atomically, key by key.
+   * @throws CacheAccessException if the mappings can't be retrieved or updated.
+   * @return a map of all the keys to their value holder, or null.
+   */
+  Map<K, ValueHolder<V>> bulkComputeIfAbsentAndFault(Set<? extends K> keys, Function<Iterable<? extends K>, Iterable<? extends Map.Entry<? extends K, ? extends V>>> mappingFunction) throws CacheAccessException;
+
   /**
    * This marks the entry as evictable again.
    * The ValueHolder must be an instance returned by the CachingTier.
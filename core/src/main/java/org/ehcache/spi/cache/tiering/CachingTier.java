@@ -23,6 +23,9 @@ import org.ehcache.spi.cache.Store;
 import org.ehcache.spi.service.Service;
 import org.ehcache.spi.service.ServiceConfiguration;
 
+import java.util.Map;
+import java.util.Set;
+
 /**
  * Caching tier, according to Montreal design.
  *
@@ -40,6 +43,17 @@ public interface CachingTier<K, V> extends ConfigurationChangeSupport {
    */
   Store.ValueHolder<V> getOrComputeIfAbsent(K key, Function<K, Store.ValueHolder<V>> source) throws CacheAccessException;
 
+  /**
+   * Either return the value holders currently in the caching tier, or compute and store the ones that aren't present,
+   * as if {@link #getOrComputeIfAbsent(Object, Function)} was called for each key.
+   * Implementations are free to hand all missing keys to the source at once.
+   * @param keys the keys.
+   * @param source the function that computes the value holders of missing keys, keys it maps to no value holder being absent.
+   * @return a map of all the keys to their value holder, or null.
+   * @throws CacheAccessException
+   */
+  Map<K, Store.ValueHolder<V>> bulkGetOrComputeIfAbsent(Set<? extends K> keys, Function<Iterable<? extends K>, Map<K, Store.ValueHolder<V>>> source) throws CacheAccessException;
+
   /**
    * Remove a mapping.
    * @param key the key.
@@ -47,6 +61,14 @@ public interface CachingTier<K, V> extends ConfigurationChangeSupport {
    */
   void invalidate(K key) throws CacheAccessException;
 
+  /**
+   * Remove the mappings of all the given keys, as if {@link #invalidate(Object)} was called for each of them.
+   * Implementations are free to batch the removals, e.g. invalidating all keys of a segment under a single lock.
+   * @param keys the keys.
+   * @throws CacheAccessException
+   */
+  void bulkInvalidate(Set<? extends K> keys) throws CacheAccessException;
+
   /**
    * Remove a mapping, then call a function under the same lock scope irrespectively of a mapping being there or not.
    * @param key the key.
@@ -23,6 +23,8 @@ import org.ehcache.spi.cache.Store;
 import org.ehcache.spi.service.Service;
 import org.ehcache.spi.service.ServiceConfiguration;
 
+import java.util.Set;
+
 /**
  * Lower caching tier, according to Montreal design.
  *
@@ -40,6 +42,14 @@ public interface LowerCachingTier<K, V> extends ConfigurationChangeSupport {
    */
   Store.ValueHolder<V> getOrComputeIfAbsent(K key, Function<K, Store.ValueHolder<V>> source) throws CacheAccessException;
 
+  /**
+   * Return the value holder currently in the caching tier, leaving it there.
+   * @param key the key.
+   * @return the value holder, or null.
+   * @throws CacheAccessException
+   */
+  Store.ValueHolder<V> get(K key) throws CacheAccessException;
+
   /**
    * Return the value holder currently in the caching tier and remove it.
    * @param key the key.
@@ -55,6 +65,14 @@ public interface LowerCachingTier<K, V> extends ConfigurationChangeSupport {
    */
   void invalidate(K key) throws CacheAccessException;
 
+  /**
+   * Remove the mappings of all the given keys, as if {@link #invalidate(Object)} was called for each of them.
+   * Implementations are free to batch the removals, e.g. invalidating all keys of a segment under a single lock.
+   * @param keys the keys.
+   * @throws CacheAccessException
+   */
+  void bulkInvalidate(Set<? extends K> keys) throws CacheAccessException;
+
   /**
    * Remove a mapping, then call a function under the same lock scope irrespectively of a mapping being there or not.
    * @param key the key.
@@ -17,10 +17,24 @@
 package org.ehcache.spi.service;
 
 import java.io.File;
+import java.util.List;
 
 /**
  * FileBased
  */
 public interface FileBasedPersistenceContext {
   File getDirectory();
+
+  /**
+   * Returns the directories a context should spread the given number of stripes over.
+   * <P>
+   *   Element {@code i} of the returned list is the directory stripe {@code i} should go to. The same directory is
+   *   returned for several stripes when there are fewer root directories than stripes, and {@link #getDirectory()} for
+   *   all of them when there is only one root directory.
+   * </P>
+   *
+   * @param stripes the number of stripes
+   * @return the directory of each stripe
+   */
+  List<File> getStripeDirectories(int stripes);
 }
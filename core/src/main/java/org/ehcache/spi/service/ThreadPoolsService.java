@@ -30,4 +30,6 @@ public interface ThreadPoolsService extends Service {
 
   ExecutorService getEventsUnorderedDeliveryExecutor();
 
+  ExecutorService getCacheLoadingExecutor();
+
 }
@@ -70,4 +70,17 @@ public class ThreadPoolUtil {
       }
     });
   }
+
+  public static ExecutorService createCacheLoadingExecutor() {
+    return Executors.newCachedThreadPool(new ThreadFactory() {
+      private AtomicInteger cnt = new AtomicInteger(0);
+
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "Cache Loading Thread-" + cnt.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
 }
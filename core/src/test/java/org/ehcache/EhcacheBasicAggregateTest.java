@@ -0,0 +1,103 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache;
+
+import org.ehcache.exceptions.CacheAccessException;
+import org.ehcache.function.Aggregator;
+import org.ehcache.spi.cache.ScannableStore;
+import org.ehcache.spi.cache.Store;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Provides testing of the AGGREGATE operations on an {@code Ehcache}.
+ */
+@SuppressWarnings("unchecked")
+public class EhcacheBasicAggregateTest extends EhcacheBasicCrudBase {
+
+  private static final Aggregator<String, String, Integer> TOTAL_LENGTH = new Aggregator<String, String, Integer>() {
+    @Override
+    public Integer identity() {
+      return 0;
+    }
+
+    @Override
+    public Integer accumulate(Integer accumulator, String key, String value) {
+      return accumulator + key.length() + (value == null ? 0 : value.length());
+    }
+
+    @Override
+    public Integer combine(Integer left, Integer right) {
+      return left + right;
+    }
+  };
+
+  @Test
+  public void testAggregateIteratesStoresNotScannable() throws Exception {
+    final Map<String, String> entries = new HashMap<String, String>();
+    entries.put("a", "12");
+    entries.put("bb", "345");
+    this.store = spy(new FakeStore(entries));
+    final Ehcache<String, String> ehcache = this.getEhcache();
+
+    assertThat(ehcache.aggregate(TOTAL_LENGTH), is(8));
+    assertThat(ehcache.aggregateKeys(TOTAL_LENGTH), is(3));
+  }
+
+  @Test
+  public void testAggregateDelegatesToScannableStore() throws Exception {
+    this.store = mock(Store.class, withSettings().extraInterfaces(ScannableStore.class));
+    when(((ScannableStore<String, String>) this.store).scan(TOTAL_LENGTH, true)).thenReturn(42);
+    final Ehcache<String, String> ehcache = this.getEhcache();
+
+    assertThat(ehcache.aggregateKeys(TOTAL_LENGTH), is(42));
+    verify((ScannableStore<String, String>) this.store).scan(eq(TOTAL_LENGTH), eq(true));
+  }
+
+  @Test
+  public void testAggregateStoreAccessException() throws Exception {
+    this.store = mock(Store.class, withSettings().extraInterfaces(ScannableStore.class));
+    when(((ScannableStore<String, String>) this.store).scan(TOTAL_LENGTH, false)).thenThrow(new CacheAccessException("oops"));
+    final Ehcache<String, String> ehcache = this.getEhcache();
+
+    assertThat(ehcache.aggregate(TOTAL_LENGTH), is(0));
+    verify(this.spiedResilienceStrategy).iteratorFailure(any(CacheAccessException.class));
+  }
+
+  private Ehcache<String, String> getEhcache() {
+    RuntimeConfiguration<String, String> runtimeConfiguration = new RuntimeConfiguration<String, String>(CACHE_CONFIGURATION, null);
+    final Ehcache<String, String> ehcache
+        = new Ehcache<String, String>(runtimeConfiguration, this.store, LoggerFactory.getLogger(Ehcache.class + "-" + "EhcacheBasicAggregateTest"));
+    ehcache.init();
+    assertThat("cache not initialized", ehcache.getStatus(), is(Status.AVAILABLE));
+    this.spiedResilienceStrategy = this.setResilienceStrategySpy(ehcache);
+    return ehcache;
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache;
+
+import org.ehcache.spi.loaderwriter.CacheLoaderWriter;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Provides testing of the {@link AsyncCache} view of an {@code Ehcache}.
+ */
+public class EhcacheBasicAsyncTest extends EhcacheBasicCrudBase {
+
+  @Mock
+  protected CacheLoaderWriter<String, String> cacheLoaderWriter;
+
+  @Test
+  public void testGetAsyncNoCacheLoaderWriterCompletesInline() throws Exception {
+    this.store = spy(new FakeStore(Collections.singletonMap("key", "value")));
+    Executor executor = mock(Executor.class);
+
+    final AsyncCache<String, String> asyncCache = this.getEhcache(null).asAsync(executor);
+
+    Future<String> future = asyncCache.getAsync("key");
+    assertThat(future.isDone(), is(true));
+    assertThat(future.get(), is(equalTo("value")));
+    assertThat(asyncCache.getAsync("absent").get(), is(nullValue()));
+    verifyZeroInteractions(executor);
+  }
+
+  @Test
+  public void testGetAsyncStoreHitCompletesInline() throws Exception {
+    this.store = spy(new FakeStore(Collections.singletonMap("key", "value")));
+    Executor executor = mock(Executor.class);
+
+    final AsyncCache<String, String> asyncCache = this.getEhcache(this.cacheLoaderWriter).asAsync(executor);
+
+    Future<String> future = asyncCache.getAsync("key");
+    assertThat(future.isDone(), is(true));
+    assertThat(future.get(), is(equalTo("value")));
+    verifyZeroInteractions(executor, this.cacheLoaderWriter);
+  }
+
+  @Test
+  public void testGetAsyncConcurrentMissesShareTheLoad() throws Exception {
+    final FakeStore fakeStore = new FakeStore(Collections.<String, String>emptyMap());
+    this.store = spy(fakeStore);
+    when(this.cacheLoaderWriter.load("key")).thenReturn("loaded");
+    QueuingExecutor executor = new QueuingExecutor();
+
+    final AsyncCache<String, String> asyncCache = this.getEhcache(this.cacheLoaderWriter).asAsync(executor);
+
+    Future<String> first = asyncCache.getAsync("key");
+    Future<String> second = asyncCache.getAsync("key");
+    assertThat(second, is(sameInstance(first)));
+    assertThat(first.isDone(), is(false));
+
+    executor.runAll();
+    assertThat(first.get(), is(equalTo("loaded")));
+    verify(this.cacheLoaderWriter, times(1)).load(eq("key"));
+    assertThat(fakeStore.getEntryMap().get("key"), is(equalTo("loaded")));
+
+    Future<String> third = asyncCache.getAsync("key");
+    assertThat(third.isDone(), is(true));
+    assertThat(third.get(), is(equalTo("loaded")));
+  }
+
+  @Test
+  public void testViewsShareThePendingLoadButGetDoesNot() throws Exception {
+    final FakeStore fakeStore = new FakeStore(Collections.<String, String>emptyMap());
+    this.store = spy(fakeStore);
+    when(this.cacheLoaderWriter.load("key")).thenReturn("loaded");
+    QueuingExecutor executor = new QueuingExecutor();
+
+    final Ehcache<String, String> ehcache = this.getEhcache(this.cacheLoaderWriter);
+
+    Future<String> first = ehcache.asAsync(executor).getAsync("key");
+    Future<String> second = ehcache.asAsync(executor).getAsync("key");
+    assertThat(second, is(sameInstance(first)));
+
+    // a get neither waits for the pending load nor misses the writes preceding it
+    ehcache.put("key", "written");
+    assertThat(ehcache.get("key"), is(equalTo("written")));
+
+    executor.runAll();
+    assertThat(first.get(), is(equalTo("written")));
+    verify(this.cacheLoaderWriter, never()).load(eq("key"));
+  }
+
+  @Test
+  public void testPutAsyncWithCacheLoaderWriterRunsOnExecutor() throws Exception {
+    final FakeStore fakeStore = new FakeStore(Collections.<String, String>emptyMap());
+    this.store = spy(fakeStore);
+    QueuingExecutor executor = new QueuingExecutor();
+
+    final AsyncCache<String, String> asyncCache = this.getEhcache(this.cacheLoaderWriter).asAsync(executor);
+
+    Future<Void> future = asyncCache.putAsync("key", "value");
+    assertThat(future.isDone(), is(false));
+    verifyZeroInteractions(this.cacheLoaderWriter);
+
+    executor.runAll();
+    future.get();
+    verify(this.cacheLoaderWriter).write(eq("key"), eq("value"));
+    assertThat(fakeStore.getEntryMap().get("key"), is(equalTo("value")));
+  }
+
+  private Ehcache<String, String> getEhcache(final CacheLoaderWriter<String, String> cacheLoaderWriter) {
+    RuntimeConfiguration<String, String> runtimeConfiguration = new RuntimeConfiguration<String, String>(CACHE_CONFIGURATION, null);
+    final Ehcache<String, String> ehcache = new Ehcache<String, String>(runtimeConfiguration, this.store, cacheLoaderWriter, LoggerFactory.getLogger(Ehcache.class + "-" + "EhcacheBasicAsyncTest"));
+    ehcache.init();
+    assertThat("cache not initialized", ehcache.getStatus(), is(Status.AVAILABLE));
+    this.spiedResilienceStrategy = this.setResilienceStrategySpy(ehcache);
+    return ehcache;
+  }
+
+  private static class QueuingExecutor implements Executor {
+
+    private final List<Runnable> queue = new ArrayList<Runnable>();
+
+    @Override
+    public void execute(Runnable command) {
+      queue.add(command);
+    }
+
+    void runAll() {
+      for (Runnable runnable : queue) {
+        runnable.run();
+      }
+      queue.clear();
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache;
+
+import org.ehcache.event.CacheEvent;
+import org.ehcache.function.Function;
+import org.ehcache.spi.loaderwriter.CacheLoaderWriter;
+import org.ehcache.statistics.BulkOps;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.ehcache.EhcacheBasicBulkUtil.KEY_SET_A;
+import static org.ehcache.EhcacheBasicBulkUtil.KEY_SET_B;
+import static org.ehcache.EhcacheBasicBulkUtil.KEY_SET_C;
+import static org.ehcache.EhcacheBasicBulkUtil.fanIn;
+import static org.ehcache.EhcacheBasicBulkUtil.getAltEntryMap;
+import static org.ehcache.EhcacheBasicBulkUtil.getEntryMap;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+/**
+ * Provides testing of the bulk load operation of {@code Ehcache}.
+ */
+public class EhcacheBasicBulkLoadTest extends EhcacheEventsTestBase {
+
+  @Mock
+  protected CacheLoaderWriter<String, String> cacheLoaderWriter;
+
+  @Test
+  public void testBulkLoadIteratorNull() throws Exception {
+    buildStore(getEntryMap(KEY_SET_A));
+    final Ehcache<String, String> ehcache = getEhcache("testBulkLoadIteratorNull");
+    try {
+      ehcache.bulkLoad(null);
+      fail();
+    } catch (NullPointerException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testBulkLoadBypassesListenersAndWriter() throws Exception {
+    buildStore(getEntryMap(KEY_SET_A, KEY_SET_B));
+    final Ehcache<String, String> ehcache = getEhcache(this.cacheLoaderWriter, "testBulkLoadBypassesListenersAndWriter");
+    final Map<String, String> loaded = getAltEntryMap("new_", fanIn(KEY_SET_A, KEY_SET_C));
+
+    assertThat(ehcache.bulkLoad(loaded.entrySet().iterator()), is((long) loaded.size()));
+
+    for (Map.Entry<String, String> entry : loaded.entrySet()) {
+      assertThat(ehcache.get(entry.getKey()), is(equalTo(entry.getValue())));
+    }
+    verify(cacheEventListener, never()).onEvent(Matchers.<CacheEvent<String, String>>any());
+    verifyZeroInteractions(this.cacheLoaderWriter);
+    assertThat(ehcache.getBulkMethodEntries().get(BulkOps.BULK_LOAD).get(), is((long) loaded.size()));
+    assertThat(ehcache.getBulkMethodEntries().containsKey(BulkOps.PUT_ALL), is(false));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testBulkLoadPushesEntriesInBatches() throws Exception {
+    buildStore(new HashMap<String, String>());
+    final Ehcache<String, String> ehcache = getEhcache("testBulkLoadPushesEntriesInBatches");
+    final Map<String, String> loaded = new HashMap<String, String>();
+    for (int i = 0; i < Ehcache.BULK_LOAD_BATCH_SIZE + 1; i++) {
+      loaded.put("key" + i, "value" + i);
+    }
+
+    assertThat(ehcache.bulkLoad(loaded.entrySet().iterator()), is((long) loaded.size()));
+    verify(this.store, times(2)).bulkCompute(any(Set.class), any(Function.class));
+  }
+}
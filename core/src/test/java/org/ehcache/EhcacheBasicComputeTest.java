@@ -0,0 +1,202 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache;
+
+import org.ehcache.exceptions.CacheAccessException;
+import org.ehcache.function.BiFunction;
+import org.ehcache.function.Function;
+import org.ehcache.spi.loaderwriter.CacheLoaderWriter;
+import org.ehcache.statistics.CacheOperationOutcomes;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.EnumSet;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Provides testing of basic COMPUTE, COMPUTE_IF_ABSENT and MERGE operations on an {@code Ehcache}.
+ */
+public class EhcacheBasicComputeTest extends EhcacheBasicCrudBase {
+
+  private static final BiFunction<String, String, String> APPEND = new BiFunction<String, String, String>() {
+    @Override
+    public String apply(String key, String value) {
+      return value == null ? "1" : value + "1";
+    }
+  };
+
+  @Mock
+  protected CacheLoaderWriter<String, String> cacheLoaderWriter;
+
+  @Test
+  public void testComputeNullKey() throws Exception {
+    final Ehcache<String, String> ehcache = this.getEhcache(null);
+    try {
+      ehcache.compute(null, APPEND);
+      fail();
+    } catch (NullPointerException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testComputeNoCacheLoaderWriter() throws Exception {
+    final FakeStore fakeStore = new FakeStore(Collections.singletonMap("key", "value"));
+    this.store = spy(fakeStore);
+    final Ehcache<String, String> ehcache = this.getEhcache(null);
+
+    assertThat(ehcache.compute("key", APPEND), is(equalTo("value1")));
+    assertThat(ehcache.compute("absent", APPEND), is(equalTo("1")));
+    assertThat(fakeStore.getEntryMap().get("key"), is(equalTo("value1")));
+    assertThat(fakeStore.getEntryMap().get("absent"), is(equalTo("1")));
+  }
+
+  @Test
+  public void testComputeAbsentLoadsThenWrites() throws Exception {
+    final FakeStore fakeStore = new FakeStore(Collections.<String, String>emptyMap());
+    this.store = spy(fakeStore);
+    when(this.cacheLoaderWriter.load("key")).thenReturn("loaded");
+    final Ehcache<String, String> ehcache = this.getEhcache(this.cacheLoaderWriter);
+
+    assertThat(ehcache.compute("key", APPEND), is(equalTo("loaded1")));
+    verify(this.cacheLoaderWriter).load(eq("key"));
+    verify(this.cacheLoaderWriter).write(eq("key"), eq("loaded1"));
+    assertThat(fakeStore.getEntryMap().get("key"), is(equalTo("loaded1")));
+  }
+
+  @Test
+  public void testComputeToNullDeletes() throws Exception {
+    final FakeStore fakeStore = new FakeStore(Collections.singletonMap("key", "value"));
+    this.store = spy(fakeStore);
+    final Ehcache<String, String> ehcache = this.getEhcache(this.cacheLoaderWriter);
+
+    assertThat(ehcache.compute("key", new BiFunction<String, String, String>() {
+      @Override
+      public String apply(String key, String value) {
+        return null;
+      }
+    }), is(nullValue()));
+    verify(this.cacheLoaderWriter).delete(eq("key"));
+    assertThat(fakeStore.getEntryMap().containsKey("key"), is(false));
+    validateStats(ehcache, EnumSet.of(CacheOperationOutcomes.RemoveOutcome.SUCCESS));
+    validateStats(ehcache, EnumSet.of(CacheOperationOutcomes.PutOutcome.NOOP));
+  }
+
+  @Test
+  public void testComputeUnchangedIsANoOp() throws Exception {
+    final FakeStore fakeStore = new FakeStore(Collections.singletonMap("key", "value"));
+    this.store = spy(fakeStore);
+    final Ehcache<String, String> ehcache = this.getEhcache(this.cacheLoaderWriter);
+
+    assertThat(ehcache.compute("key", new BiFunction<String, String, String>() {
+      @Override
+      public String apply(String key, String value) {
+        return value;
+      }
+    }), is(equalTo("value")));
+    verifyZeroInteractions(this.cacheLoaderWriter);
+    validateStats(ehcache, EnumSet.of(CacheOperationOutcomes.PutOutcome.NOOP));
+    validateStats(ehcache, EnumSet.of(CacheOperationOutcomes.RemoveOutcome.NOOP));
+  }
+
+  @Test
+  public void testComputeStoreAccessException() throws Exception {
+    final FakeStore fakeStore = new FakeStore(Collections.<String, String>emptyMap(), Collections.singleton("key"));
+    this.store = spy(fakeStore);
+    final Ehcache<String, String> ehcache = this.getEhcache(this.cacheLoaderWriter);
+
+    assertThat(ehcache.compute("key", APPEND), is(equalTo("1")));
+    verify(this.cacheLoaderWriter).write(eq("key"), eq("1"));
+    verify(this.spiedResilienceStrategy).computeFailure(eq("key"), eq("1"), any(CacheAccessException.class));
+  }
+
+  @Test
+  public void testComputeIfAbsentPresentSkipsFunctionAndWriter() throws Exception {
+    final FakeStore fakeStore = new FakeStore(Collections.singletonMap("key", "value"));
+    this.store = spy(fakeStore);
+    final Ehcache<String, String> ehcache = this.getEhcache(this.cacheLoaderWriter);
+
+    assertThat(ehcache.computeIfAbsent("key", new Function<String, String>() {
+      @Override
+      public String apply(String key) {
+        throw new AssertionError("Must not be called");
+      }
+    }), is(equalTo("value")));
+    verifyZeroInteractions(this.cacheLoaderWriter);
+  }
+
+  @Test
+  public void testComputeIfAbsentComputesWhenLoaderReturnsNull() throws Exception {
+    final FakeStore fakeStore = new FakeStore(Collections.<String, String>emptyMap());
+    this.store = spy(fakeStore);
+    final Ehcache<String, String> ehcache = this.getEhcache(this.cacheLoaderWriter);
+
+    assertThat(ehcache.computeIfAbsent("key", new Function<String, String>() {
+      @Override
+      public String apply(String key) {
+        return "computed";
+      }
+    }), is(equalTo("computed")));
+    verify(this.cacheLoaderWriter).load(eq("key"));
+    verify(this.cacheLoaderWriter).write(eq("key"), eq("computed"));
+    assertThat(fakeStore.getEntryMap().get("key"), is(equalTo("computed")));
+  }
+
+  @Test
+  public void testMerge() throws Exception {
+    final FakeStore fakeStore = new FakeStore(Collections.<String, String>emptyMap());
+    this.store = spy(fakeStore);
+    final Ehcache<String, String> ehcache = this.getEhcache(this.cacheLoaderWriter);
+    final BiFunction<String, String, String> concat = new BiFunction<String, String, String>() {
+      @Override
+      public String apply(String current, String value) {
+        return current + value;
+      }
+    };
+
+    assertThat(ehcache.merge("key", "a", concat), is(equalTo("a")));
+    assertThat(ehcache.merge("key", "b", concat), is(equalTo("ab")));
+    verify(this.cacheLoaderWriter).write(eq("key"), eq("a"));
+    verify(this.cacheLoaderWriter).write(eq("key"), eq("ab"));
+    verify(this.cacheLoaderWriter, never()).delete(any(String.class));
+    assertThat(fakeStore.getEntryMap().get("key"), is(equalTo("ab")));
+  }
+
+  private Ehcache<String, String> getEhcache(final CacheLoaderWriter<String, String> cacheLoaderWriter) {
+    RuntimeConfiguration<String, String> runtimeConfiguration = new RuntimeConfiguration<String, String>(CACHE_CONFIGURATION, null);
+    final Ehcache<String, String> ehcache
+        = new Ehcache<String, String>(runtimeConfiguration, this.store, cacheLoaderWriter, LoggerFactory.getLogger(Ehcache.class + "-" + "EhcacheBasicComputeTest"));
+    ehcache.init();
+    assertThat("cache not initialized", ehcache.getStatus(), is(Status.AVAILABLE));
+    this.spiedResilienceStrategy = this.setResilienceStrategySpy(ehcache);
+    return ehcache;
+  }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache;
+
+import org.ehcache.config.CacheConfiguration;
+import org.ehcache.config.CacheConfigurationBuilder;
+import org.ehcache.config.loaderwriter.RefreshAheadConfiguration;
+import org.ehcache.config.loaderwriter.StaleWhileRevalidateConfiguration;
+import org.ehcache.event.CacheEvent;
+import org.ehcache.event.EventType;
+import org.ehcache.events.CacheEventNotificationService;
+import org.ehcache.expiry.Duration;
+import org.ehcache.expiry.Expirations;
+import org.ehcache.function.BiFunction;
+import org.ehcache.function.NullaryFunction;
+import org.ehcache.internal.TimeSource;
+import org.ehcache.spi.cache.Store;
+import org.ehcache.spi.loaderwriter.CacheLoaderWriter;
+import org.ehcache.spi.service.ServiceConfiguration;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Provides testing of the background reloads of refresh-ahead and stale-while-revalidate on an {@code Ehcache}.
+ */
+@SuppressWarnings("unchecked")
+public class EhcacheRefreshAheadTest {
+
+  private final List<Runnable> tasks = new ArrayList<Runnable>();
+  private final Executor executor = new Executor() {
+    @Override
+    public void execute(Runnable command) {
+      tasks.add(command);
+    }
+  };
+  private long now;
+  private final TimeSource timeSource = new TimeSource() {
+    @Override
+    public long getTimeMillis() {
+      return now;
+    }
+  };
+
+  private Store<String, String> store;
+  private CacheLoaderWriter<String, String> cacheLoaderWriter;
+  private Ehcache<String, String> ehcache;
+
+  @Before
+  public void setUp() throws Exception {
+    store = mock(Store.class);
+    cacheLoaderWriter = mock(CacheLoaderWriter.class);
+
+    Store.ValueHolder<String> valueHolder = mock(Store.ValueHolder.class);
+    when(valueHolder.value()).thenReturn("value");
+    when(valueHolder.creationTime(TimeUnit.MILLISECONDS)).thenReturn(0L);
+    when(valueHolder.expirationTime(TimeUnit.MILLISECONDS)).thenReturn(100L);
+    when(store.computeIfAbsent(eq("key"), any(org.ehcache.function.Function.class))).thenReturn(valueHolder);
+  }
+
+  @Test
+  public void testGetFarFromExpirationDoesNotRefresh() throws Exception {
+    ehcache = createEhcache(new RefreshAheadConfiguration().refreshFactor(0.2f).maxConcurrentRefreshes(1));
+    now = 50L;
+    assertThat(ehcache.get("key"), is(equalTo("value")));
+    assertThat(tasks.isEmpty(), is(true));
+  }
+
+  @Test
+  public void testGetCloseToExpirationServesValueAndRefreshesOnce() throws Exception {
+    ehcache = createEhcache(new RefreshAheadConfiguration().refreshFactor(0.2f).maxConcurrentRefreshes(1));
+    when(cacheLoaderWriter.load("key")).thenReturn("reloaded");
+    now = 85L;
+
+    assertThat(ehcache.get("key"), is(equalTo("value")));
+    assertThat(ehcache.get("key"), is(equalTo("value")));
+    assertThat(tasks.size(), is(1));
+    verify(cacheLoaderWriter, never()).load("key");
+
+    tasks.get(0).run();
+    verify(cacheLoaderWriter).load("key");
+    ArgumentCaptor<BiFunction> remapping = ArgumentCaptor.forClass(BiFunction.class);
+    verify(store).compute(eq("key"), remapping.capture(), any(NullaryFunction.class));
+    assertThat(remapping.getValue().apply("key", "value"), is((Object) "reloaded"));
+    assertThat(remapping.getValue().apply("key", "updated"), is((Object) "updated"));
+
+    tasks.clear();
+    ehcache.get("key");
+    assertThat(tasks.size(), is(1));
+  }
+
+  @Test
+  public void testTimeToIdleRefreshesOnlyCloseToTheIdleTimeout() throws Exception {
+    ehcache = createEhcache(CacheConfigurationBuilder.newCacheConfigurationBuilder()
+        .withExpiry(Expirations.timeToIdleExpiration(new Duration(100L, TimeUnit.MILLISECONDS)))
+        .add(new RefreshAheadConfiguration().refreshFactor(0.2f).maxConcurrentRefreshes(1))
+        .buildConfig(String.class, String.class));
+    Store.ValueHolder<String> valueHolder = mock(Store.ValueHolder.class);
+    when(valueHolder.value()).thenReturn("value");
+    when(valueHolder.creationTime(TimeUnit.MILLISECONDS)).thenReturn(0L);
+    when(store.computeIfAbsent(eq("key"), any(org.ehcache.function.Function.class))).thenReturn(valueHolder);
+
+    // accessed all along: far older than the idle timeout, but just as far from expiring as when created
+    now = 10000L;
+    when(valueHolder.expirationTime(TimeUnit.MILLISECONDS)).thenReturn(10100L);
+    assertThat(ehcache.get("key"), is(equalTo("value")));
+    assertThat(tasks.isEmpty(), is(true));
+
+    when(valueHolder.expirationTime(TimeUnit.MILLISECONDS)).thenReturn(10015L);
+    assertThat(ehcache.get("key"), is(equalTo("value")));
+    assertThat(tasks.size(), is(1));
+  }
+
+  @Test
+  public void testGetOfMappingInGracePeriodServesStaleValueAndReloads() throws Exception {
+    // the store expires the mapping at 100, which includes the 40ms grace period
+    ehcache = createEhcache(new StaleWhileRevalidateConfiguration(40L, TimeUnit.MILLISECONDS));
+
+    now = 55L;
+    assertThat(ehcache.get("key"), is(equalTo("value")));
+    assertThat(tasks.isEmpty(), is(true));
+
+    now = 65L;
+    assertThat(ehcache.get("key"), is(equalTo("value")));
+    assertThat(tasks.size(), is(1));
+    verify(cacheLoaderWriter, never()).load("key");
+  }
+
+  @Test
+  public void testStaleValueKeptWhenReloadFails() throws Exception {
+    ehcache = createEhcache(new StaleWhileRevalidateConfiguration(40L, TimeUnit.MILLISECONDS));
+    when(cacheLoaderWriter.load("key")).thenThrow(new Exception("backend down"));
+
+    now = 65L;
+    assertThat(ehcache.get("key"), is(equalTo("value")));
+    tasks.get(0).run();
+    verify(store, never()).compute(eq("key"), any(BiFunction.class), any(NullaryFunction.class));
+    assertThat(ehcache.get("key"), is(equalTo("value")));
+  }
+
+  @Test
+  public void testOperationsOtherThanGetSeeMappingInGracePeriodAsExpired() throws Exception {
+    CacheEventNotificationService<String, String> eventNotifier = mock(CacheEventNotificationService.class);
+    ehcache = createEhcache(CacheConfigurationBuilder.newCacheConfigurationBuilder()
+        .add(new StaleWhileRevalidateConfiguration(40L, TimeUnit.MILLISECONDS))
+        .buildConfig(String.class, String.class), eventNotifier);
+    Store.ValueHolder<String> stale = valueHolder("value", 100L);
+    when(store.get("key")).thenReturn(stale);
+    when(store.remove("key", "value")).thenReturn(true);
+
+    now = 55L;
+    ehcache.containsKey("key");
+    verify(store, never()).remove("key", "value");
+
+    now = 65L;
+    ehcache.putIfAbsent("key", "other");
+    verify(store).remove("key", "value");
+    ArgumentCaptor<CacheEvent> event = ArgumentCaptor.forClass(CacheEvent.class);
+    verify(eventNotifier).onEvent(event.capture());
+    assertThat(event.getValue().getType(), is(EventType.EXPIRED));
+    assertThat(event.getValue().getOldValue(), is((Object) "value"));
+
+    Store.Iterator<Cache.Entry<String, Store.ValueHolder<String>>> iterator = mock(Store.Iterator.class);
+    when(iterator.hasNext()).thenReturn(true, true, false);
+    Cache.Entry<String, Store.ValueHolder<String>> staleEntry = entry("key", stale);
+    Cache.Entry<String, Store.ValueHolder<String>> freshEntry = entry("fresh", valueHolder("value", 200L));
+    when(iterator.next()).thenReturn(staleEntry, freshEntry);
+    when(store.iterator()).thenReturn(iterator);
+
+    Iterator<Cache.Entry<String, String>> entries = ehcache.iterator();
+    assertThat(entries.hasNext(), is(true));
+    assertThat(entries.next().getKey(), is("fresh"));
+    assertThat(entries.hasNext(), is(false));
+  }
+
+  private static Store.ValueHolder<String> valueHolder(String value, long expirationTime) {
+    Store.ValueHolder<String> valueHolder = mock(Store.ValueHolder.class);
+    when(valueHolder.value()).thenReturn(value);
+    when(valueHolder.expirationTime(TimeUnit.MILLISECONDS)).thenReturn(expirationTime);
+    return valueHolder;
+  }
+
+  private static Cache.Entry<String, Store.ValueHolder<String>> entry(String key, Store.ValueHolder<String> valueHolder) {
+    Cache.Entry<String, Store.ValueHolder<String>> entry = mock(Cache.Entry.class);
+    when(entry.getKey()).thenReturn(key);
+    when(entry.getValue()).thenReturn(valueHolder);
+    return entry;
+  }
+
+  private Ehcache<String, String> createEhcache(ServiceConfiguration<?> serviceConfiguration) {
+    return createEhcache(CacheConfigurationBuilder.newCacheConfigurationBuilder()
+        .add(serviceConfiguration)
+        .buildConfig(String.class, String.class));
+  }
+
+  private Ehcache<String, String> createEhcache(CacheConfiguration<String, String> config) {
+    return createEhcache(config, null);
+  }
+
+  private Ehcache<String, String> createEhcache(CacheConfiguration<String, String> config, CacheEventNotificationService<String, String> eventNotifier) {
+    Ehcache<String, String> cache = new Ehcache<String, String>(new RuntimeConfiguration<String, String>(config, null), store, cacheLoaderWriter,
+        eventNotifier, true, LoggerFactory.getLogger(Ehcache.class + "-EhcacheRefreshAheadTest"),
+        new StatusTransitioner(LoggerFactory.getLogger(Ehcache.class + "-EhcacheRefreshAheadTest")), timeSource, executor);
+    cache.init();
+    return cache;
+  }
+}
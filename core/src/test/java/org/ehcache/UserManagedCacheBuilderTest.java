@@ -19,6 +19,8 @@ package org.ehcache;
 import org.ehcache.config.CacheRuntimeConfiguration;
 import org.ehcache.config.UserManagedCacheConfiguration;
 import org.ehcache.exceptions.BulkCacheWritingException;
+import org.ehcache.function.BiFunction;
+import org.ehcache.function.Function;
 import org.ehcache.spi.ServiceLocator;
 import org.junit.Test;
 import org.slf4j.LoggerFactory;
@@ -131,6 +133,21 @@ public class UserManagedCacheBuilderTest {
       throw new UnsupportedOperationException("Implement me!");
     }
 
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+      throw new UnsupportedOperationException("Implement me!");
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+      throw new UnsupportedOperationException("Implement me!");
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+      throw new UnsupportedOperationException("Implement me!");
+    }
+
     @Override
     public CacheRuntimeConfiguration<K, V> getRuntimeConfiguration() {
       throw new UnsupportedOperationException("Implement me!");
@@ -157,7 +157,7 @@ import org.ehcache.internal.concurrent.JSR166Helper.*;
  * @since 1.7
  * @author Doug Lea
  */
-class ForkJoinPool extends AbstractExecutorService {
+public class ForkJoinPool extends AbstractExecutorService {
 
     /*
      * Implementation Overview
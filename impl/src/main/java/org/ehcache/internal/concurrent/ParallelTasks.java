@@ -0,0 +1,95 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache.internal.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs groups of independent tasks in parallel and waits for all of them.
+ */
+public final class ParallelTasks {
+
+  private ParallelTasks() {
+    // no instances
+  }
+
+  /**
+   * Runs the tasks on a pool created for this call only, with at most {@code parallelism} threads.
+   *
+   * @param parallelism the maximum number of tasks run concurrently
+   * @param tasks the tasks to run
+   * @param <T> the task result type
+   * @return the results of the tasks, in task order
+   * @throws ExecutionException the failure of the first failed task, in task order
+   * @throws InterruptedException if interrupted while waiting for the tasks
+   * @see #invokeAll(ExecutorService, Collection)
+   */
+  public static <T> List<T> invokeAll(int parallelism, Collection<? extends Callable<T>> tasks) throws ExecutionException, InterruptedException {
+    ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(tasks.size(), parallelism)));
+    try {
+      return invokeAll(pool, tasks);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Runs the tasks on the given executor.
+   * <P>
+   *   This only returns, or throws, once every task completed, so a failed task never leaves others still running.
+   * </P>
+   *
+   * @param executor the executor to run the tasks on
+   * @param tasks the tasks to run
+   * @param <T> the task result type
+   * @return the results of the tasks, in task order
+   * @throws ExecutionException the failure of the first failed task, in task order
+   * @throws InterruptedException if interrupted while waiting for the tasks
+   */
+  public static <T> List<T> invokeAll(ExecutorService executor, Collection<? extends Callable<T>> tasks) throws ExecutionException, InterruptedException {
+    List<T> results = new ArrayList<T>(tasks.size());
+    for (Future<T> future : executor.invokeAll(tasks)) {
+      results.add(future.get());
+    }
+    return results;
+  }
+
+  /**
+   * Rethrows the cause of a task failure if it is unchecked or of the given checked type, and returns otherwise.
+   *
+   * @param e the task failure
+   * @param type the checked exception type to rethrow
+   * @param <E> the checked exception type
+   * @throws E the cause of {@code e}, if it is of type {@code type}
+   */
+  public static <E extends Exception> void rethrowCause(ExecutionException e, Class<E> type) throws E {
+    Throwable cause = e.getCause();
+    if (type.isInstance(cause)) {
+      throw type.cast(cause);
+    } else if (cause instanceof RuntimeException) {
+      throw (RuntimeException) cause;
+    } else if (cause instanceof Error) {
+      throw (Error) cause;
+    }
+  }
+}
@@ -31,6 +31,7 @@ public class DefaultThreadPoolsService implements ThreadPoolsService {
   private volatile ScheduledExecutorService statisticsExecutor;
   private volatile ExecutorService eventsOrderedDeliveryExecutor;
   private volatile ExecutorService eventsUnorderedDeliveryExecutor;
+  private volatile ExecutorService cacheLoadingExecutor;
 
   @Override
   public ScheduledExecutorService getStatisticsExecutor() {
@@ -56,11 +57,20 @@ public class DefaultThreadPoolsService implements ThreadPoolsService {
     return eventsUnorderedDeliveryExecutor;
   }
 
+  @Override
+  public ExecutorService getCacheLoadingExecutor() {
+    if (cacheLoadingExecutor == null) {
+      throw new IllegalStateException(getClass().getSimpleName() + " not started");
+    }
+    return cacheLoadingExecutor;
+  }
+
   @Override
   public void start(final ServiceProvider serviceProvider) {
     this.statisticsExecutor = ThreadPoolUtil.createStatisticsExecutor();
     this.eventsOrderedDeliveryExecutor = ThreadPoolUtil.createEventsOrderedDeliveryExecutor();
     this.eventsUnorderedDeliveryExecutor = ThreadPoolUtil.createEventsUnorderedDeliveryExecutor();
+    this.cacheLoadingExecutor = ThreadPoolUtil.createCacheLoadingExecutor();
 
   }
 
@@ -69,5 +79,6 @@ public class DefaultThreadPoolsService implements ThreadPoolsService {
     statisticsExecutor.shutdownNow();
     eventsOrderedDeliveryExecutor.shutdownNow();
     eventsUnorderedDeliveryExecutor.shutdownNow();
+    cacheLoadingExecutor.shutdownNow();
   }
 }
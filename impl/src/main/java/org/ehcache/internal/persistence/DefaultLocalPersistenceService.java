@@ -18,6 +18,7 @@ package org.ehcache.internal.persistence;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.ehcache.config.persistence.PersistenceConfiguration;
+import org.ehcache.config.persistence.PersistenceConfiguration.StripingPolicy;
 import org.ehcache.internal.concurrent.ConcurrentHashMap;
 import org.ehcache.spi.ServiceProvider;
 import org.ehcache.spi.service.FileBasedPersistenceContext;
@@ -34,10 +35,14 @@ import java.nio.charset.Charset;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.lang.Integer.toHexString;
 import static java.nio.charset.Charset.forName;
@@ -68,10 +73,12 @@ public class DefaultLocalPersistenceService implements LocalPersistenceService {
 
   private final ConcurrentMap<String, DefaultPersistenceSpaceIdentifier> knownPersistenceSpaces = new ConcurrentHashMap<String, DefaultPersistenceSpaceIdentifier>();
   private final File rootDirectory;
+  private final List<File> stripeRootDirectories;
+  private final StripingPolicy stripingPolicy;
+  private final AtomicInteger nextStripe = new AtomicInteger();
   private final File lockFile;
-  private FileLock lock;
-
-  private RandomAccessFile rw;
+  private final List<FileLock> locks = new ArrayList<FileLock>();
+  private final List<RandomAccessFile> lockFiles = new ArrayList<RandomAccessFile>();
 
   private static final Logger LOGGER = LoggerFactory.getLogger(DefaultLocalPersistenceService.class);
 
@@ -80,6 +87,8 @@ public class DefaultLocalPersistenceService implements LocalPersistenceService {
   public DefaultLocalPersistenceService(final PersistenceConfiguration persistenceConfiguration) {
     if(persistenceConfiguration != null) {
       rootDirectory = persistenceConfiguration.getRootDirectory();
+      stripeRootDirectories = persistenceConfiguration.getRootDirectories().subList(1, persistenceConfiguration.getRootDirectories().size());
+      stripingPolicy = persistenceConfiguration.getStripingPolicy();
     } else {
       throw new NullPointerException("PersistenceConfiguration cannot be null");
     }
@@ -89,12 +98,18 @@ public class DefaultLocalPersistenceService implements LocalPersistenceService {
   @Override
   public synchronized void start(final ServiceProvider serviceProvider) {
     if (!started) {
-      createLocationIfRequiredAndVerify(rootDirectory);
-      try {
-        rw = new RandomAccessFile(lockFile, "rw");
-        lock = rw.getChannel().lock();
-      } catch (IOException e) {
-        throw new RuntimeException("Couldn't lock rootDir: " + rootDirectory.getAbsolutePath(), e);
+      for (File directory : getRootDirectories()) {
+        createLocationIfRequiredAndVerify(directory);
+      }
+      for (File directory : getRootDirectories()) {
+        try {
+          RandomAccessFile rw = new RandomAccessFile(new File(directory, ".lock"), "rw");
+          lockFiles.add(rw);
+          locks.add(rw.getChannel().lock());
+        } catch (IOException e) {
+          releaseLocks();
+          throw new RuntimeException("Couldn't lock rootDir: " + directory.getAbsolutePath(), e);
+        }
       }
       started = true;
       LOGGER.debug("RootDirectory Locked");
@@ -104,23 +119,44 @@ public class DefaultLocalPersistenceService implements LocalPersistenceService {
   @Override
   public synchronized void stop() {
     if (started) {
-      try {
+      releaseLocks();
+      started = false;
+      LOGGER.debug("RootDirectory Unlocked");
+    }
+  }
+
+  private void releaseLocks() {
+    try {
+      for (FileLock lock : locks) {
         lock.release();
-        // Closing RandomAccessFile so that files gets deleted on windows and
-        // org.ehcache.internal.persistence.DefaultLocalPersistenceServiceTest.testLocksDirectoryAndUnlocks()
-        // passes on windows
+      }
+      // Closing RandomAccessFile so that files gets deleted on windows and
+      // org.ehcache.internal.persistence.DefaultLocalPersistenceServiceTest.testLocksDirectoryAndUnlocks()
+      // passes on windows
+      for (RandomAccessFile rw : lockFiles) {
         rw.close();
-        if (!lockFile.delete()) {
-          LOGGER.debug("Lock file was not deleted {}.", lockFile.getPath());
+      }
+      for (File directory : getRootDirectories()) {
+        File file = new File(directory, ".lock");
+        if (file.exists() && !file.delete()) {
+          LOGGER.debug("Lock file was not deleted {}.", file.getPath());
         }
-      } catch (IOException e) {
-        throw new RuntimeException("Couldn't unlock rootDir: " + rootDirectory.getAbsolutePath(), e);
       }
-      started = false;
-      LOGGER.debug("RootDirectory Unlocked");
+    } catch (IOException e) {
+      throw new RuntimeException("Couldn't unlock rootDir: " + rootDirectory.getAbsolutePath(), e);
+    } finally {
+      locks.clear();
+      lockFiles.clear();
     }
   }
 
+  private List<File> getRootDirectories() {
+    List<File> directories = new ArrayList<File>(stripeRootDirectories.size() + 1);
+    directories.add(rootDirectory);
+    directories.addAll(stripeRootDirectories);
+    return directories;
+  }
+
   static void createLocationIfRequiredAndVerify(final File rootDirectory) {
     if(!rootDirectory.exists()) {
       if(!rootDirectory.mkdirs()) {
@@ -164,11 +200,21 @@ public class DefaultLocalPersistenceService implements LocalPersistenceService {
     } else {
       destroy(name, space, true);
     }
+    for (File stripeRoot : stripeRootDirectories) {
+      File stripeDirectory = new File(stripeRoot, safeIdentifier(name));
+      if (stripeDirectory.exists() && !tryRecursiveDelete(stripeDirectory)) {
+        LOGGER.warn("Could not delete directory {} of context {}", stripeDirectory.getAbsolutePath(), name);
+      }
+    }
   }
 
   @Override
   public void destroyAllPersistenceSpaces() {
-    if(recursiveDeleteDirectoryContent(rootDirectory)){
+    boolean deleted = true;
+    for (File directory : getRootDirectories()) {
+      deleted &= recursiveDeleteDirectoryContent(directory);
+    }
+    if(deleted){
       LOGGER.info("Destroyed all file based persistence context");
     } else {
       LOGGER.warn("Could not delete all file based persistence context");
@@ -178,13 +224,23 @@ public class DefaultLocalPersistenceService implements LocalPersistenceService {
   @Override
   public FileBasedPersistenceContext createPersistenceContextWithin(PersistenceSpaceIdentifier space, String name) throws CachePersistenceException {
     if (knownPersistenceSpaces.containsValue(space)) {
-      File directory = new File(((DefaultPersistenceSpaceIdentifier) space).getDirectory(), name);
+      File spaceDirectory = ((DefaultPersistenceSpaceIdentifier) space).getDirectory();
+      File directory = new File(spaceDirectory, name);
+      List<File> directories = new ArrayList<File>(stripeRootDirectories.size() + 1);
+      directories.add(directory);
       try {
         create(directory);
+        for (File stripeRoot : stripeRootDirectories) {
+          File stripeSpaceDirectory = new File(stripeRoot, spaceDirectory.getName());
+          create(stripeSpaceDirectory);
+          File stripeDirectory = new File(stripeSpaceDirectory, name);
+          create(stripeDirectory);
+          directories.add(stripeDirectory);
+        }
       } catch (IOException ex) {
         throw new CachePersistenceException("Unable to create persistence context for " + name + " in " + space);
       }
-      return new DefaultFileBasedPersistenceContext(directory);
+      return new DefaultFileBasedPersistenceContext(directories, stripingPolicy, nextStripe.getAndIncrement());
     } else {
       throw new CachePersistenceException("Unknown space: " + space);
     }
@@ -355,8 +411,50 @@ public class DefaultLocalPersistenceService implements LocalPersistenceService {
 
   private static class DefaultFileBasedPersistenceContext extends FileHolder implements FileBasedPersistenceContext {
 
-    public DefaultFileBasedPersistenceContext(File directory) {
-      super(directory);
+    private final List<File> directories;
+    private final StripingPolicy stripingPolicy;
+    private final int firstStripe;
+
+    public DefaultFileBasedPersistenceContext(List<File> directories, StripingPolicy stripingPolicy, int firstStripe) {
+      super(directories.get(0));
+      this.directories = directories;
+      this.stripingPolicy = stripingPolicy;
+      this.firstStripe = firstStripe;
+    }
+
+    @Override
+    public List<File> getStripeDirectories(int stripes) {
+      if (directories.size() == 1) {
+        return Collections.nCopies(stripes, getDirectory());
+      }
+      List<File> stripeDirectories = new ArrayList<File>(stripes);
+      switch (stripingPolicy) {
+        case ROUND_ROBIN:
+          for (int i = 0; i < stripes; i++) {
+            stripeDirectories.add(directories.get((firstStripe + i) % directories.size()));
+          }
+          break;
+        case FREE_SPACE:
+          long[] usableSpace = new long[directories.size()];
+          int[] dealt = new int[directories.size()];
+          for (int d = 0; d < usableSpace.length; d++) {
+            usableSpace[d] = directories.get(d).getUsableSpace();
+          }
+          for (int i = 0; i < stripes; i++) {
+            int best = 0;
+            for (int d = 1; d < usableSpace.length; d++) {
+              if ((double) usableSpace[d] / (dealt[d] + 1) > (double) usableSpace[best] / (dealt[best] + 1)) {
+                best = d;
+              }
+            }
+            dealt[best]++;
+            stripeDirectories.add(directories.get(best));
+          }
+          break;
+        default:
+          throw new AssertionError("Unknown striping policy " + stripingPolicy);
+      }
+      return stripeDirectories;
     }
   }
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ehcache.internal.store;
+
+import org.ehcache.spi.cache.Store;
+import org.ehcache.spi.service.ServiceConfiguration;
+
+/**
+ * Configures how a store executes its bulk operations.
+ * <P>
+ *   The absent keys of a {@link Store#bulkComputeIfAbsent(java.util.Set, org.ehcache.function.Function) bulkComputeIfAbsent}
+ *   are first collected, then handed to the mapping function in batches of at most the configured size, so that a
+ *   {@code getAll} of many missing keys costs one {@code loadAll} call per batch rather than one per key. Honoured by
+ *   the heap, offheap and disk stores.
+ * </P>
+ * <P>
+ *   The offheap and disk stores can also split large bulk operations by segment, and process the segments
+ *   concurrently. The functions passed to such operations must then tolerate being called from several threads at
+ *   once.
+ * </P>
+ */
+public class BulkComputeConfiguration implements ServiceConfiguration<Store.Provider> {
+
+  public static final int DEFAULT_BATCH_SIZE = 256;
+  public static final int DEFAULT_PARALLEL_THRESHOLD = 1024;
+
+  private int batchSize = DEFAULT_BATCH_SIZE;
+  private int parallelism = 1;
+  private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+  public int batchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Sets the maximum number of absent keys passed to a single mapping function invocation.
+   *
+   * @param batchSize the batch size, must be at least 1
+   * @return this configuration
+   */
+  public BulkComputeConfiguration batchSize(int batchSize) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Bulk compute batch size must be at least 1, was " + batchSize);
+    }
+    this.batchSize = batchSize;
+    return this;
+  }
+
+  public int parallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Sets the maximum number of segments a single bulk operation processes concurrently.
+   *
+   * @param parallelism the number of threads, {@code 1} to process bulk operations on the calling thread only
+   * @return this configuration
+   */
+  public BulkComputeConfiguration parallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Bulk compute parallelism must be at least 1, was " + parallelism);
+    }
+    this.parallelism = parallelism;
+    return this;
+  }
+
+  public int parallelThreshold() {
+    return parallelThreshold;
+  }
+
+  /**
+   * Sets the number of keys below which bulk operations stay on the calling thread, even when parallelism is enabled.
+   *
+   * @param parallelThreshold the minimum key count of a parallel bulk operation
+   * @return this configuration
+   */
+  public BulkComputeConfiguration parallelThreshold(int parallelThreshold) {
+    if (parallelThreshold < 0) {
+      throw new IllegalArgumentException("Bulk compute parallel threshold cannot be negative, was " + parallelThreshold);
+    }
+    this.parallelThreshold = parallelThreshold;
+    return this;
+  }
+
+  @Override
+  public Class<Store.Provider> getServiceType() {
+    return Store.Provider.class;
+  }
+}
@@ -17,8 +17,13 @@ package org.ehcache.internal.store;
 
 import org.ehcache.config.ResourcePool;
 import org.ehcache.config.ResourceType;
+import org.ehcache.exceptions.CachePersistenceException;
 import org.ehcache.internal.store.disk.OffHeapDiskStore;
+import org.ehcache.internal.store.disk.SwapDiskStore;
+import org.ehcache.internal.store.disk.SwapDiskStoreConfiguration;
 import org.ehcache.internal.store.heap.OnHeapStore;
+import org.ehcache.internal.store.mapped.MappedReadOnlyStore;
+import org.ehcache.internal.store.mapped.MappedReadOnlyStoreConfiguration;
 import org.ehcache.internal.store.offheap.OffHeapStore;
 import org.ehcache.internal.store.tiering.CacheStore;
 import org.ehcache.internal.store.tiering.CacheStoreServiceConfiguration;
@@ -26,27 +31,45 @@ import org.ehcache.internal.store.tiering.CompoundCachingTier;
 import org.ehcache.internal.store.tiering.CompoundCachingTierServiceConfiguration;
 import org.ehcache.spi.ServiceProvider;
 import org.ehcache.spi.cache.Store;
+import org.ehcache.spi.cache.tiering.AuthoritativeTier;
+import org.ehcache.spi.cache.tiering.LowerCachingTier;
+import org.ehcache.spi.serialization.SerializationProvider;
+import org.ehcache.spi.service.FileBasedPersistenceContext;
+import org.ehcache.spi.service.LocalPersistenceService;
+import org.ehcache.spi.service.LocalPersistenceService.PersistenceSpaceIdentifier;
 import org.ehcache.spi.service.ServiceConfiguration;
 import org.ehcache.spi.service.ServiceDependencies;
 import org.ehcache.util.ConcurrentWeakIdentityHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ConcurrentMap;
 
+import static org.ehcache.spi.ServiceLocator.findSingletonAmongst;
+
 /**
+ * Creates the store of a cache out of the tiers matching its resource pools.
+ * <P>
+ *   A {@link CompoundCachingTierServiceConfiguration} provided with the cache configuration replaces the caching tiers
+ *   derived from the resource pools, allowing any chain of caching tiers to be stacked above the authoritative tier.
+ * </P>
+ *
  * @author Ludovic Orban
  */
 @ServiceDependencies({CacheStore.Provider.class, CompoundCachingTier.Provider.class,
-    OnHeapStore.Provider.class, OffHeapStore.Provider.class, OffHeapDiskStore.Provider.class})
+    OnHeapStore.Provider.class, OffHeapStore.Provider.class, OffHeapDiskStore.Provider.class, SwapDiskStore.Provider.class,
+    MappedReadOnlyStore.Provider.class,
+    SerializationProvider.class})
 public class DefaultStoreProvider implements Store.Provider {
   private static final Logger LOG = LoggerFactory.getLogger(DefaultStoreProvider.class);
 
   private volatile ServiceProvider serviceProvider;
   private final ConcurrentMap<Store<?, ?>, Store.Provider> providersMap = new ConcurrentWeakIdentityHashMap<Store<?, ?>, Store.Provider>();
+  private final ConcurrentMap<Store<?, ?>, StoreSnapshotter<?, ?>> snapshotters = new ConcurrentWeakIdentityHashMap<Store<?, ?>, StoreSnapshotter<?, ?>>();
 
   @Override
   public <K, V> Store<K, V> createStore(Store.Configuration<K, V> storeConfig, ServiceConfiguration<?>... serviceConfigs) {
@@ -58,27 +81,54 @@ public class DefaultStoreProvider implements Store.Provider {
 
     Store.Provider provider;
 
-    if (diskPool != null) {
+    MappedReadOnlyStoreConfiguration mappedConfig = findSingletonAmongst(MappedReadOnlyStoreConfiguration.class, (Object[]) serviceConfigs);
+    SwapDiskStoreConfiguration swapConfig = findSingletonAmongst(SwapDiskStoreConfiguration.class, (Object[]) serviceConfigs);
+    if (mappedConfig != null) {
       if (heapPool == null) {
-        throw new IllegalArgumentException("Cannot store to disk without heap resource");
+        throw new IllegalArgumentException("Cannot read from a mapped file without heap resource");
+      }
+      if (offHeapPool != null || diskPool != null) {
+        throw new IllegalArgumentException("A cache backed by a mapped file cannot use offheap or disk resources");
       }
       provider = serviceProvider.getService(CacheStore.Provider.class);
-      if (offHeapPool != null) {
-        enhancedServiceConfigs.add(new CompoundCachingTierServiceConfiguration().higherProvider(OnHeapStore.Provider.class)
-            .lowerProvider(OffHeapStore.Provider.class));
-        enhancedServiceConfigs.add(new CacheStoreServiceConfiguration().cachingTierProvider(CompoundCachingTier.Provider.class)
-            .authoritativeTierProvider(OffHeapDiskStore.Provider.class));
+      enhancedServiceConfigs.add(new CacheStoreServiceConfiguration().cachingTierProvider(OnHeapStore.Provider.class)
+          .authoritativeTierProvider(MappedReadOnlyStore.Provider.class));
+    } else if (diskPool != null || offHeapPool != null) {
+      if (heapPool == null) {
+        throw new IllegalArgumentException(diskPool != null ? "Cannot store to disk without heap resource" : "Cannot store to offheap without heap resource");
+      }
+
+      // tiers are stacked in resource order: heap on top, the largest resource being authoritative
+      List<Class<? extends LowerCachingTier.Provider>> lowerProviders = new ArrayList<Class<? extends LowerCachingTier.Provider>>();
+      Class<? extends AuthoritativeTier.Provider> authoritativeProvider;
+      if (diskPool != null) {
+        authoritativeProvider = OffHeapDiskStore.Provider.class;
+        if (swapConfig != null) {
+          if (diskPool.isPersistent()) {
+            throw new IllegalArgumentException("A swap disk tier cannot be used with a persistent disk resource");
+          }
+          authoritativeProvider = SwapDiskStore.Provider.class;
+        }
+        if (offHeapPool != null) {
+          lowerProviders.add(OffHeapStore.Provider.class);
+        }
       } else {
-        enhancedServiceConfigs.add(new CacheStoreServiceConfiguration().cachingTierProvider(OnHeapStore.Provider.class)
-            .authoritativeTierProvider(OffHeapDiskStore.Provider.class));
+        authoritativeProvider = OffHeapStore.Provider.class;
       }
-    } else if (offHeapPool != null) {
-      if (heapPool == null) {
-        throw new IllegalArgumentException("Cannot store to offheap without heap resource");
+
+      CompoundCachingTierServiceConfiguration chainConfig = findSingletonAmongst(CompoundCachingTierServiceConfiguration.class, (Object[]) serviceConfigs);
+      if (chainConfig == null && !lowerProviders.isEmpty()) {
+        chainConfig = new CompoundCachingTierServiceConfiguration().higherProvider(OnHeapStore.Provider.class);
+        for (Class<? extends LowerCachingTier.Provider> lowerProvider : lowerProviders) {
+          chainConfig.addLowerProvider(lowerProvider);
+        }
+        enhancedServiceConfigs.add(chainConfig);
       }
+
       provider = serviceProvider.getService(CacheStore.Provider.class);
-      enhancedServiceConfigs.add(new CacheStoreServiceConfiguration().cachingTierProvider(OnHeapStore.Provider.class)
-          .authoritativeTierProvider(OffHeapStore.Provider.class));
+      enhancedServiceConfigs.add(new CacheStoreServiceConfiguration()
+          .cachingTierProvider(chainConfig != null ? CompoundCachingTier.Provider.class : OnHeapStore.Provider.class)
+          .authoritativeTierProvider(authoritativeProvider));
     } else {
       // default to on-heap cache
       provider = serviceProvider.getService(OnHeapStore.Provider.class);
@@ -88,15 +138,60 @@ public class DefaultStoreProvider implements Store.Provider {
     if(providersMap.putIfAbsent(store, provider) != null) {
       throw new IllegalStateException("Instance of the Store already registered!");
     }
+
+    StoreSnapshotConfiguration snapshotConfig = findSingletonAmongst(StoreSnapshotConfiguration.class, (Object[]) serviceConfigs);
+    if (snapshotConfig != null) {
+      if (diskPool != null && swapConfig == null) {
+        LOG.warn("Ignoring snapshot configuration of {}: its content already is persisted by its disk tier", snapshotConfig.name());
+      } else {
+        snapshotters.put(store, createSnapshotter(store, storeConfig, snapshotConfig));
+      }
+    }
     return store;
   }
 
+  private <K, V> StoreSnapshotter<K, V> createSnapshotter(Store<K, V> store, Store.Configuration<K, V> storeConfig, StoreSnapshotConfiguration snapshotConfig) {
+    LocalPersistenceService localPersistenceService = serviceProvider.getService(LocalPersistenceService.class);
+    if (localPersistenceService == null) {
+      throw new IllegalStateException("No LocalPersistenceService could be found - did you configure it at the CacheManager level?");
+    }
+    try {
+      PersistenceSpaceIdentifier space = localPersistenceService.getOrCreatePersistenceSpace(snapshotConfig.name());
+      FileBasedPersistenceContext persistenceContext = localPersistenceService.createPersistenceContextWithin(space, "store-snapshot");
+      return new StoreSnapshotter<K, V>(store, storeConfig.getKeyType(), storeConfig.getValueType(), storeConfig.getClassLoader(),
+          serviceProvider.getService(SerializationProvider.class), space, persistenceContext, snapshotConfig);
+    } catch (CachePersistenceException e) {
+      throw new RuntimeException("Unable to create snapshot persistence context for " + snapshotConfig.name(), e);
+    }
+  }
+
+  /**
+   * Takes a snapshot of the store configured with a {@link StoreSnapshotConfiguration} of the given name.
+   *
+   * @param name the snapshot name
+   * @return the number of mappings written
+   * @throws IllegalArgumentException if no initialized store is configured with such a snapshot
+   * @throws IOException if the snapshot cannot be written
+   */
+  public long snapshot(String name) throws IOException {
+    for (StoreSnapshotter<?, ?> snapshotter : snapshotters.values()) {
+      if (snapshotter.getName().equals(name)) {
+        return snapshotter.snapshot();
+      }
+    }
+    throw new IllegalArgumentException("No store is configured with snapshot " + name);
+  }
+
   @Override
   public void releaseStore(Store<?, ?> resource) {
     Store.Provider provider = providersMap.get(resource);
     if (provider == null) {
       throw new IllegalArgumentException("Given store is not managed by this provider : " + resource);
     }
+    StoreSnapshotter<?, ?> snapshotter = snapshotters.remove(resource);
+    if (snapshotter != null) {
+      snapshotter.stop();
+    }
     provider.releaseStore(resource);
   }
 
@@ -107,6 +202,16 @@ public class DefaultStoreProvider implements Store.Provider {
       throw new IllegalArgumentException("Given store is not managed by this provider : " + resource);
     }
     provider.initStore(resource);
+    StoreSnapshotter<?, ?> snapshotter = snapshotters.get(resource);
+    if (snapshotter != null) {
+      try {
+        long restored = snapshotter.restore();
+        LOG.info("Restored {} mappings from snapshot {}", restored, snapshotter.getName());
+      } catch (IOException e) {
+        LOG.warn("Unable to restore snapshot {}, starting empty", snapshotter.getName(), e);
+      }
+      snapshotter.start();
+    }
   }
 
   @Override
@@ -118,5 +223,6 @@ public class DefaultStoreProvider implements Store.Provider {
   public void stop() {
     serviceProvider = null;
     providersMap.clear();
+    snapshotters.clear();
   }
 }
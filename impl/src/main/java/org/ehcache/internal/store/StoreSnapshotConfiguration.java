@@ -0,0 +1,119 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache.internal.store;
+
+import org.ehcache.spi.service.ServiceConfiguration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configures a cache without a disk tier to save its content to local files, and to load it back when created again.
+ * <P>
+ *   The snapshot is taken when the cache is closed, at a fixed interval if one is configured, and on demand through
+ *   {@link DefaultStoreProvider#snapshot(String)}. It is written in the persistence space of the given name, with
+ *   persistent serializers for the cache key and value types, which hence requires a
+ *   {@link org.ehcache.spi.service.LocalPersistenceService}.
+ * </P>
+ * <P>
+ *   Mappings are restored as fresh mappings: their expiry is computed anew when they are loaded.
+ * </P>
+ */
+public class StoreSnapshotConfiguration implements ServiceConfiguration<DefaultStoreProvider> {
+
+  private final String name;
+  private long snapshotInterval = 0;
+  private boolean snapshotOnClose = true;
+  private int partitions = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * Creates a snapshot configuration.
+   *
+   * @param name the name of the persistence space holding the snapshot, usually the cache alias
+   */
+  public StoreSnapshotConfiguration(String name) {
+    if (name == null) {
+      throw new NullPointerException("Snapshot name cannot be null");
+    }
+    this.name = name;
+  }
+
+  public String name() {
+    return name;
+  }
+
+  /**
+   * Returns the interval between two scheduled snapshots.
+   *
+   * @return the snapshot interval in nanoseconds, {@code 0} if snapshots are not scheduled
+   */
+  public long snapshotInterval() {
+    return snapshotInterval;
+  }
+
+  /**
+   * Sets the interval between two scheduled snapshots.
+   *
+   * @param interval the snapshot interval, {@code 0} to disable scheduled snapshots
+   * @param unit the interval unit
+   * @return this configuration
+   */
+  public StoreSnapshotConfiguration snapshotInterval(long interval, TimeUnit unit) {
+    if (interval < 0) {
+      throw new IllegalArgumentException("Snapshot interval cannot be negative, was " + interval);
+    }
+    this.snapshotInterval = unit.toNanos(interval);
+    return this;
+  }
+
+  public boolean snapshotOnClose() {
+    return snapshotOnClose;
+  }
+
+  /**
+   * Sets whether a snapshot is taken when the cache is closed.
+   *
+   * @param snapshotOnClose {@code true} to snapshot on close
+   * @return this configuration
+   */
+  public StoreSnapshotConfiguration snapshotOnClose(boolean snapshotOnClose) {
+    this.snapshotOnClose = snapshotOnClose;
+    return this;
+  }
+
+  public int partitions() {
+    return partitions;
+  }
+
+  /**
+   * Sets the number of files a snapshot is split into. Partitions are loaded concurrently on restore.
+   *
+   * @param partitions the partition count, must be at least 1
+   * @return this configuration
+   */
+  public StoreSnapshotConfiguration partitions(int partitions) {
+    if (partitions < 1) {
+      throw new IllegalArgumentException("Partition count must be at least 1, was " + partitions);
+    }
+    this.partitions = partitions;
+    return this;
+  }
+
+  @Override
+  public Class<DefaultStoreProvider> getServiceType() {
+    return DefaultStoreProvider.class;
+  }
+}
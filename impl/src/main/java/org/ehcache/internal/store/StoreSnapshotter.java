@@ -0,0 +1,363 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache.internal.store;
+
+import org.ehcache.Cache;
+import org.ehcache.exceptions.CacheAccessException;
+import org.ehcache.internal.concurrent.ParallelTasks;
+import org.ehcache.spi.cache.Store;
+import org.ehcache.spi.serialization.SerializationProvider;
+import org.ehcache.spi.serialization.Serializer;
+import org.ehcache.spi.serialization.UnsupportedTypeException;
+import org.ehcache.spi.service.FileBasedPersistenceContext;
+import org.ehcache.spi.service.LocalPersistenceService.PersistenceSpaceIdentifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Saves the content of a store to local files, and loads it back into a store.
+ * <P>
+ *   Mappings are written with serializers created within the snapshot persistence space, rather than with the
+ *   serializers of the store, so that they can be read back by another JVM. Serializers are created for, and closed
+ *   at the end of, every snapshot and restore: closing them saves the state they need to read the snapshot back.
+ * </P>
+ * <P>
+ *   A snapshot is split into partitions, one file each, mappings being assigned to partitions by key hash. Partitions
+ *   are written to temporary files first and only replace the previous snapshot once all are complete, the snapshot
+ *   descriptor file being written last. Restoring loads all partitions concurrently.
+ * </P>
+ * <P>
+ *   The snapshot is read from the store's iterator while it is in use: it is not a point in time image, but every
+ *   mapping that is neither added nor removed during the snapshot is part of it.
+ * </P>
+ */
+class StoreSnapshotter<K, V> {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(StoreSnapshotter.class);
+
+  private static final int SNAPSHOT_MAGIC = 0x45485353;
+  private static final int SNAPSHOT_VERSION = 1;
+  private static final int END_OF_PARTITION = -1;
+
+  private final Store<K, V> store;
+  private final Class<K> keyType;
+  private final Class<V> valueType;
+  private final ClassLoader classLoader;
+  private final SerializationProvider serializationProvider;
+  private final PersistenceSpaceIdentifier space;
+  private final FileBasedPersistenceContext persistenceContext;
+  private final StoreSnapshotConfiguration configuration;
+
+  private volatile ScheduledExecutorService scheduler;
+
+  StoreSnapshotter(Store<K, V> store, Class<K> keyType, Class<V> valueType, ClassLoader classLoader,
+                   SerializationProvider serializationProvider, PersistenceSpaceIdentifier space,
+                   FileBasedPersistenceContext persistenceContext, StoreSnapshotConfiguration configuration) {
+    this.store = store;
+    this.keyType = keyType;
+    this.valueType = valueType;
+    this.classLoader = classLoader;
+    this.serializationProvider = serializationProvider;
+    this.space = space;
+    this.persistenceContext = persistenceContext;
+    this.configuration = configuration;
+  }
+
+  String getName() {
+    return configuration.name();
+  }
+
+  /**
+   * Starts the scheduled snapshots, if an interval is configured.
+   */
+  void start() {
+    final long interval = configuration.snapshotInterval();
+    if (interval > 0) {
+      ScheduledExecutorService localScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "Ehcache store snapshot - " + getName());
+          t.setDaemon(true);
+          return t;
+        }
+      });
+      localScheduler.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            snapshot();
+          } catch (Exception e) {
+            LOGGER.warn("Scheduled snapshot of {} failed", getName(), e);
+          }
+        }
+      }, interval, interval, TimeUnit.NANOSECONDS);
+      scheduler = localScheduler;
+    }
+  }
+
+  /**
+   * Stops the scheduled snapshots, and takes a last one if configured to snapshot on close.
+   */
+  void stop() {
+    ScheduledExecutorService localScheduler = scheduler;
+    if (localScheduler != null) {
+      scheduler = null;
+      localScheduler.shutdownNow();
+    }
+    if (configuration.snapshotOnClose()) {
+      try {
+        snapshot();
+      } catch (Exception e) {
+        LOGGER.warn("Snapshot of {} on close failed", getName(), e);
+      }
+    }
+  }
+
+  /**
+   * Writes the current content of the store to a new snapshot, replacing the previous one.
+   *
+   * @return the number of mappings written
+   * @throws IOException if the snapshot cannot be written
+   */
+  synchronized long snapshot() throws IOException {
+    int partitions = configuration.partitions();
+    long count = 0;
+    Serializer<K> keySerializer = createKeySerializer();
+    Serializer<V> valueSerializer = null;
+    DataOutputStream[] outputs = new DataOutputStream[partitions];
+    try {
+      valueSerializer = createValueSerializer();
+      for (int i = 0; i < partitions; i++) {
+        outputs[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(getTemporaryPartitionFile(i))));
+      }
+      Store.Iterator<Cache.Entry<K, Store.ValueHolder<V>>> iterator = store.iterator();
+      while (iterator.hasNext()) {
+        Cache.Entry<K, Store.ValueHolder<V>> entry = iterator.next();
+        K key = entry.getKey();
+        DataOutputStream output = outputs[partitionFor(key, partitions)];
+        write(output, keySerializer.serialize(key));
+        write(output, valueSerializer.serialize(entry.getValue().value()));
+        count++;
+      }
+      for (DataOutputStream output : outputs) {
+        output.writeInt(END_OF_PARTITION);
+      }
+    } catch (CacheAccessException e) {
+      throw new IOException("Unable to read the content of " + getName(), e);
+    } finally {
+      for (DataOutputStream output : outputs) {
+        if (output != null) {
+          output.close();
+        }
+      }
+      close(keySerializer, valueSerializer);
+    }
+
+    File descriptor = getDescriptorFile();
+    if (descriptor.exists() && !descriptor.delete()) {
+      throw new IOException("Unable to delete previous snapshot descriptor " + descriptor.getAbsolutePath());
+    }
+    for (int i = 0; i < partitions; i++) {
+      File partition = getPartitionFile(i);
+      if ((partition.exists() && !partition.delete()) || !getTemporaryPartitionFile(i).renameTo(partition)) {
+        throw new IOException("Unable to put snapshot partition " + partition.getAbsolutePath() + " in place");
+      }
+    }
+    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(descriptor)));
+    try {
+      output.writeInt(SNAPSHOT_MAGIC);
+      output.writeInt(SNAPSHOT_VERSION);
+      output.writeLong(System.currentTimeMillis());
+      output.writeInt(partitions);
+      output.writeLong(count);
+    } finally {
+      output.close();
+    }
+    return count;
+  }
+
+  /**
+   * Loads the last complete snapshot, if any, into the store.
+   *
+   * @return the number of mappings loaded
+   * @throws IOException if the snapshot cannot be read
+   */
+  long restore() throws IOException {
+    File descriptor = getDescriptorFile();
+    if (!descriptor.isFile()) {
+      return 0;
+    }
+    int partitions;
+    DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(descriptor)));
+    try {
+      if (input.readInt() != SNAPSHOT_MAGIC) {
+        throw new IOException("Unrecognized snapshot format");
+      }
+      int version = input.readInt();
+      if (version != SNAPSHOT_VERSION) {
+        throw new IOException("Unsupported snapshot version " + version);
+      }
+      input.readLong();
+      partitions = input.readInt();
+    } finally {
+      input.close();
+    }
+
+    final AtomicLong count = new AtomicLong();
+    final Serializer<K> keySerializer = createKeySerializer();
+    Serializer<V> valueSerializer = null;
+    try {
+      valueSerializer = createValueSerializer();
+      List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(partitions);
+      for (int i = 0; i < partitions; i++) {
+        final File partition = getPartitionFile(i);
+        final Serializer<V> partitionValueSerializer = valueSerializer;
+        tasks.add(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            count.addAndGet(restorePartition(partition, keySerializer, partitionValueSerializer));
+            return null;
+          }
+        });
+      }
+      invokeAll(tasks);
+    } finally {
+      close(keySerializer, valueSerializer);
+    }
+    return count.get();
+  }
+
+  private Serializer<K> createKeySerializer() throws IOException {
+    try {
+      return serializationProvider.createKeySerializer(keyType, classLoader, space);
+    } catch (UnsupportedTypeException e) {
+      throw new IOException("No key serializer available for snapshot of " + getName(), e);
+    }
+  }
+
+  private Serializer<V> createValueSerializer() throws IOException {
+    try {
+      return serializationProvider.createValueSerializer(valueType, classLoader, space);
+    } catch (UnsupportedTypeException e) {
+      throw new IOException("No value serializer available for snapshot of " + getName(), e);
+    }
+  }
+
+  private static void close(Serializer<?> keySerializer, Serializer<?> valueSerializer) throws IOException {
+    try {
+      keySerializer.close();
+    } finally {
+      if (valueSerializer != null) {
+        valueSerializer.close();
+      }
+    }
+  }
+
+  private long restorePartition(File partition, Serializer<K> keySerializer, Serializer<V> valueSerializer) throws IOException {
+    long count = 0;
+    DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(partition)));
+    try {
+      while (true) {
+        ByteBuffer key = read(input);
+        if (key == null) {
+          return count;
+        }
+        ByteBuffer value = read(input);
+        store.put(keySerializer.read(key), valueSerializer.read(value));
+        count++;
+      }
+    } catch (ClassNotFoundException e) {
+      throw new IOException("Unable to deserialize snapshot of " + getName(), e);
+    } catch (CacheAccessException e) {
+      throw new IOException("Unable to restore snapshot of " + getName(), e);
+    } finally {
+      input.close();
+    }
+  }
+
+  private static int partitionFor(Object key, int partitions) {
+    int hash = key.hashCode();
+    hash ^= (hash >>> 16);
+    return (hash & Integer.MAX_VALUE) % partitions;
+  }
+
+  private static void write(DataOutputStream output, ByteBuffer buffer) throws IOException {
+    int length = buffer.remaining();
+    output.writeInt(length);
+    if (buffer.hasArray()) {
+      output.write(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+    } else {
+      byte[] bytes = new byte[length];
+      buffer.duplicate().get(bytes);
+      output.write(bytes);
+    }
+  }
+
+  private static ByteBuffer read(DataInputStream input) throws IOException {
+    int length = input.readInt();
+    if (length == END_OF_PARTITION) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    input.readFully(bytes);
+    return ByteBuffer.wrap(bytes);
+  }
+
+  private static void invokeAll(List<Callable<Void>> tasks) throws IOException {
+    try {
+      ParallelTasks.invokeAll(Runtime.getRuntime().availableProcessors(), tasks);
+    } catch (ExecutionException e) {
+      ParallelTasks.rethrowCause(e, IOException.class);
+      throw new IOException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while restoring snapshot partitions");
+    }
+  }
+
+  private File getDescriptorFile() {
+    return new File(persistenceContext.getDirectory(), "ehcache-snapshot");
+  }
+
+  private File getPartitionFile(int partition) {
+    return new File(persistenceContext.getDirectory(), "ehcache-snapshot." + partition);
+  }
+
+  private File getTemporaryPartitionFile(int partition) {
+    return new File(persistenceContext.getDirectory(), "ehcache-snapshot." + partition + ".tmp");
+  }
+}
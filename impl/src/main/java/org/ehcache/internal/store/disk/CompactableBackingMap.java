@@ -0,0 +1,459 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache.internal.store.disk;
+
+import org.ehcache.function.BiFunction;
+import org.ehcache.function.Function;
+import org.ehcache.internal.store.offheap.EhcacheOffHeapBackingMap;
+import org.terracotta.offheapstore.Segment;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Backing map of a disk store that can move all its mappings to a new map, one segment at a time, while in use.
+ * <P>
+ *   Every keyed operation holds the read lock of the migration lock matching its segment, while a segment migration
+ *   holds the matching write lock: operations on a segment being migrated are paused, all others proceed. Once a segment
+ *   has been migrated its operations are routed to the new map.
+ * </P>
+ */
+class CompactableBackingMap<K, V> extends AbstractMap<K, V> implements EhcacheOffHeapBackingMap<K, V> {
+
+  private final ReentrantReadWriteLock[] locks;
+  private final boolean[] migrated;
+
+  private volatile EhcachePersistentConcurrentOffHeapClockCache<K, V> current;
+  private volatile EhcachePersistentConcurrentOffHeapClockCache<K, V> target;
+
+  CompactableBackingMap(EhcachePersistentConcurrentOffHeapClockCache<K, V> current) {
+    this.current = current;
+    this.locks = new ReentrantReadWriteLock[current.getSegmentCount()];
+    for (int i = 0; i < locks.length; i++) {
+      locks[i] = new ReentrantReadWriteLock();
+    }
+    this.migrated = new boolean[locks.length];
+  }
+
+  int getSegmentCount() {
+    return locks.length;
+  }
+
+  /**
+   * Starts migrating to the given, empty, map.
+   *
+   * @param target the map to migrate to
+   */
+  void startMigration(EhcachePersistentConcurrentOffHeapClockCache<K, V> target) {
+    if (target.getSegmentCount() != locks.length) {
+      throw new IllegalArgumentException("Target map has " + target.getSegmentCount() + " segments, expected " + locks.length);
+    }
+    if (this.target != null) {
+      throw new IllegalStateException("Migration already in progress");
+    }
+    this.target = target;
+  }
+
+  /**
+   * Copies the segment at the given index to the migration target, and routes its operations there from then on.
+   *
+   * @param index the segment index
+   * @return the number of data bytes copied
+   */
+  long migrateSegment(int index) {
+    Lock lock = locks[index].writeLock();
+    lock.lock();
+    try {
+      long bytes = current.copySegmentTo(index, target);
+      migrated[index] = true;
+      return bytes;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Completes the migration once all segments have been migrated.
+   *
+   * @return the map migrated from, which no longer receives any operation
+   */
+  EhcachePersistentConcurrentOffHeapClockCache<K, V> finishMigration() {
+    lockAll();
+    try {
+      for (boolean segmentMigrated : migrated) {
+        if (!segmentMigrated) {
+          throw new IllegalStateException("Not all segments have been migrated");
+        }
+      }
+      EhcachePersistentConcurrentOffHeapClockCache<K, V> previous = current;
+      current = target;
+      target = null;
+      Arrays.fill(migrated, false);
+      return previous;
+    } finally {
+      unlockAll();
+    }
+  }
+
+  /**
+   * Abandons the migration, copying back the segments already migrated.
+   *
+   * @return the abandoned migration target, which no longer receives any operation
+   */
+  EhcachePersistentConcurrentOffHeapClockCache<K, V> abortMigration() {
+    lockAll();
+    try {
+      EhcachePersistentConcurrentOffHeapClockCache<K, V> abandoned = target;
+      for (int i = 0; i < migrated.length; i++) {
+        if (migrated[i]) {
+          abandoned.copySegmentTo(i, current);
+          migrated[i] = false;
+        }
+      }
+      target = null;
+      return abandoned;
+    } finally {
+      unlockAll();
+    }
+  }
+
+  /**
+   * Flushes the current map and, while migrating, the map being migrated to.
+   *
+   * @throws IOException if either map cannot be flushed
+   */
+  void flush() throws IOException {
+    EhcachePersistentConcurrentOffHeapClockCache<K, V> migrationTarget = target;
+    current.flush();
+    if (migrationTarget != null) {
+      migrationTarget.flush();
+    }
+  }
+
+  private void lockAll() {
+    for (ReentrantReadWriteLock lock : locks) {
+      lock.writeLock().lock();
+    }
+  }
+
+  private void unlockAll() {
+    for (int i = locks.length - 1; i >= 0; i--) {
+      locks[i].writeLock().unlock();
+    }
+  }
+
+  private int indexFor(Object key) {
+    return current.getIndexFor(key.hashCode());
+  }
+
+  /*
+   * Must be called while holding one of the locks of the given segment.
+   */
+  private EhcachePersistentConcurrentOffHeapClockCache<K, V> mapFor(int index) {
+    EhcachePersistentConcurrentOffHeapClockCache<K, V> migrationTarget = target;
+    if (migrationTarget != null && migrated[index]) {
+      return migrationTarget;
+    } else {
+      return current;
+    }
+  }
+
+  private Segment<K, V> segmentAt(int index) {
+    Lock lock = locks[index].readLock();
+    lock.lock();
+    try {
+      return mapFor(index).getSegments().get(index);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public V compute(K key, BiFunction<K, V, V> mappingFunction, boolean pin) {
+    int index = indexFor(key);
+    Lock lock = locks[index].readLock();
+    lock.lock();
+    try {
+      return mapFor(index).compute(key, mappingFunction, pin);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public V computeIfPresent(K key, BiFunction<K, V, V> mappingFunction) {
+    int index = indexFor(key);
+    Lock lock = locks[index].readLock();
+    lock.lock();
+    try {
+      return mapFor(index).computeIfPresent(key, mappingFunction);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean computeIfPinned(K key, BiFunction<K, V, V> remappingFunction, Function<V, Boolean> pinningFunction) {
+    int index = indexFor(key);
+    Lock lock = locks[index].readLock();
+    lock.lock();
+    try {
+      return mapFor(index).computeIfPinned(key, remappingFunction, pinningFunction);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public long nextIdFor(K key) {
+    int index = indexFor(key);
+    Lock lock = locks[index].readLock();
+    lock.lock();
+    try {
+      return mapFor(index).nextIdFor(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int segmentIndexFor(K key) {
+    return indexFor(key);
+  }
+
+  @Override
+  public V getAndPin(K key) {
+    int index = indexFor(key);
+    Lock lock = locks[index].readLock();
+    lock.lock();
+    try {
+      return mapFor(index).getAndPin(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Integer getAndSetMetadata(K key, int mask, int metadata) {
+    int index = indexFor(key);
+    Lock lock = locks[index].readLock();
+    lock.lock();
+    try {
+      return mapFor(index).getAndSetMetadata(key, mask, metadata);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public List<Segment<K, V>> getSegments() {
+    if (target == null) {
+      return current.getSegments();
+    }
+    List<Segment<K, V>> segments = new ArrayList<Segment<K, V>>(locks.length);
+    for (int i = 0; i < locks.length; i++) {
+      segments.add(segmentAt(i));
+    }
+    return segments;
+  }
+
+  @Override
+  public boolean shrinkOthers(int excludedHash) {
+    int index = current.getIndexFor(excludedHash);
+    Lock lock = locks[index].readLock();
+    lock.lock();
+    try {
+      return mapFor(index).shrinkOthers(excludedHash);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public V get(Object key) {
+    int index = indexFor(key);
+    Lock lock = locks[index].readLock();
+    lock.lock();
+    try {
+      return mapFor(index).get(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    int index = indexFor(key);
+    Lock lock = locks[index].readLock();
+    lock.lock();
+    try {
+      return mapFor(index).containsKey(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public V put(K key, V value) {
+    int index = indexFor(key);
+    Lock lock = locks[index].readLock();
+    lock.lock();
+    try {
+      return mapFor(index).put(key, value);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public V putIfAbsent(K key, V value) {
+    int index = indexFor(key);
+    Lock lock = locks[index].readLock();
+    lock.lock();
+    try {
+      return mapFor(index).putIfAbsent(key, value);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public V remove(Object key) {
+    int index = indexFor(key);
+    Lock lock = locks[index].readLock();
+    lock.lock();
+    try {
+      return mapFor(index).remove(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean remove(Object key, Object value) {
+    int index = indexFor(key);
+    Lock lock = locks[index].readLock();
+    lock.lock();
+    try {
+      return mapFor(index).remove(key, value);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean replace(K key, V oldValue, V newValue) {
+    int index = indexFor(key);
+    Lock lock = locks[index].readLock();
+    lock.lock();
+    try {
+      return mapFor(index).replace(key, oldValue, newValue);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public V replace(K key, V value) {
+    int index = indexFor(key);
+    Lock lock = locks[index].readLock();
+    lock.lock();
+    try {
+      return mapFor(index).replace(key, value);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    lockAll();
+    try {
+      current.clear();
+      if (target != null) {
+        target.clear();
+      }
+    } finally {
+      unlockAll();
+    }
+  }
+
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    if (target == null) {
+      return current.entrySet();
+    }
+    return new AbstractSet<Map.Entry<K, V>>() {
+      @Override
+      public Iterator<Map.Entry<K, V>> iterator() {
+        return new SegmentsIterator();
+      }
+
+      @Override
+      public int size() {
+        int size = 0;
+        for (int i = 0; i < locks.length; i++) {
+          size += segmentAt(i).size();
+        }
+        return size;
+      }
+    };
+  }
+
+  /*
+   * Iterates over the segments of whichever map each segment lives in when the iteration reaches it.
+   */
+  private class SegmentsIterator implements Iterator<Map.Entry<K, V>> {
+
+    private int nextSegment = 0;
+    private Iterator<Map.Entry<K, V>> segmentIterator;
+
+    @Override
+    public boolean hasNext() {
+      while (segmentIterator == null || !segmentIterator.hasNext()) {
+        if (nextSegment == locks.length) {
+          return false;
+        }
+        segmentIterator = segmentAt(nextSegment++).entrySet().iterator();
+      }
+      return true;
+    }
+
+    @Override
+    public Map.Entry<K, V> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return segmentIterator.next();
+    }
+
+    @Override
+    public void remove() {
+      segmentIterator.remove();
+    }
+  }
+}
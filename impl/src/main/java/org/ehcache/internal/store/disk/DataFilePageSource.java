@@ -0,0 +1,54 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache.internal.store.disk;
+
+import org.terracotta.offheapstore.disk.paging.MappedPageSource;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Page source of a data file shared by several segments.
+ * <P>
+ *   Flushing a segment does not force the file to disk: the owning map forces each of its data files once, through
+ *   {@link #force()}, after all its segments got flushed.
+ * </P>
+ */
+class DataFilePageSource extends MappedPageSource {
+
+  DataFilePageSource(File file, long size) throws IOException {
+    super(file, size);
+  }
+
+  DataFilePageSource(File file, boolean truncate, long size) throws IOException {
+    super(file, truncate, size);
+  }
+
+  @Override
+  public void flush() {
+    // forced once per file by force()
+  }
+
+  /**
+   * Forces the content of the data file to disk.
+   *
+   * @throws IOException if the file cannot be forced
+   */
+  void force() throws IOException {
+    super.flush();
+  }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache.internal.store.disk;
+
+import org.ehcache.exceptions.CacheAccessException;
+import org.ehcache.internal.store.disk.OffHeapDiskStoreServiceConfiguration.Durability;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Forces the writes made to a disk store data file to the storage device, according to a {@link Durability} policy.
+ * <P>
+ *   With {@link Durability#PERIODIC} the data file is flushed at a fixed rate by a background thread. With
+ *   {@link Durability#GROUP_COMMIT} writing threads block in {@link #commit()} until a flush started after their write
+ *   has completed. A single flusher thread serves all of them: every writer that commits while a flush is in progress,
+ *   or during the configured window, is made durable by the next flush, so concurrent writers share its cost.
+ * </P>
+ */
+class DiskFlusher {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DiskFlusher.class);
+
+  private final Durability durability;
+  private final long flushInterval;
+  private final long groupCommitWindow;
+  private final int groupCommitBatchSize;
+  private final Flushable target;
+  private final String name;
+  private final LatencyHistogram latencies = new LatencyHistogram();
+  private final AtomicLong failures = new AtomicLong();
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition commitRequested = lock.newCondition();
+  private final Condition commitCompleted = lock.newCondition();
+  private Batch pending;
+  private boolean running;
+
+  private volatile ScheduledExecutorService scheduler;
+  private volatile Thread flusher;
+
+  DiskFlusher(OffHeapDiskStoreServiceConfiguration config, Flushable target, String name) {
+    this.durability = config.durability();
+    this.flushInterval = config.flushInterval();
+    this.groupCommitWindow = config.groupCommitWindow();
+    this.groupCommitBatchSize = config.groupCommitBatchSize();
+    this.target = target;
+    this.name = name;
+  }
+
+  void start() {
+    switch (durability) {
+      case NONE:
+        break;
+      case PERIODIC:
+        startPeriodicFlush();
+        break;
+      case GROUP_COMMIT:
+        startGroupCommit();
+        break;
+      default:
+        throw new AssertionError("Unknown durability " + durability);
+    }
+  }
+
+  /**
+   * Stops flushing, first making the writes of all threads blocked in {@link #commit()} durable.
+   */
+  void stop() {
+    ScheduledExecutorService localScheduler = scheduler;
+    if (localScheduler != null) {
+      scheduler = null;
+      localScheduler.shutdown();
+      awaitTermination(localScheduler);
+    }
+    Thread localFlusher = flusher;
+    if (localFlusher != null) {
+      flusher = null;
+      lock.lock();
+      try {
+        running = false;
+        commitRequested.signalAll();
+      } finally {
+        lock.unlock();
+      }
+      joinUninterruptibly(localFlusher);
+      Batch last = takePending();
+      if (last != null) {
+        flush(last);
+      }
+    }
+  }
+
+  /**
+   * Blocks until the writes performed so far by the calling thread are durable, if the policy is
+   * {@link Durability#GROUP_COMMIT}, returns immediately otherwise.
+   *
+   * @throws CacheAccessException if the flush covering the writes failed
+   */
+  void commit() throws CacheAccessException {
+    if (durability != Durability.GROUP_COMMIT) {
+      return;
+    }
+    Batch batch;
+    lock.lock();
+    try {
+      if (!running) {
+        return;
+      }
+      batch = pending;
+      if (batch == null) {
+        batch = pending = new Batch();
+        commitRequested.signal();
+      }
+      if (++batch.size == groupCommitBatchSize) {
+        commitRequested.signal();
+      }
+      while (!batch.done) {
+        commitCompleted.awaitUninterruptibly();
+      }
+    } finally {
+      lock.unlock();
+    }
+    if (batch.failure != null) {
+      throw new CacheAccessException(batch.failure);
+    }
+  }
+
+  long getFlushCount() {
+    return latencies.getCount();
+  }
+
+  long getFlushFailureCount() {
+    return failures.get();
+  }
+
+  long getFlushTotalLatency() {
+    return latencies.getTotal();
+  }
+
+  long getFlushMaxLatency() {
+    return latencies.getMax();
+  }
+
+  long[] getFlushLatencyHistogram() {
+    return latencies.getBuckets();
+  }
+
+  private void startPeriodicFlush() {
+    ScheduledExecutorService localScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "Ehcache disk store flusher - " + name);
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    localScheduler.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          timedFlush();
+        } catch (IOException e) {
+          LOGGER.warn("Periodic flush of disk store in {} failed", name, e);
+        }
+      }
+    }, flushInterval, flushInterval, TimeUnit.NANOSECONDS);
+    scheduler = localScheduler;
+  }
+
+  private void startGroupCommit() {
+    lock.lock();
+    try {
+      running = true;
+    } finally {
+      lock.unlock();
+    }
+    Thread t = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        Batch batch;
+        while ((batch = awaitBatch()) != null) {
+          flush(batch);
+        }
+      }
+    }, "Ehcache disk store group commit - " + name);
+    t.setDaemon(true);
+    flusher = t;
+    t.start();
+  }
+
+  /*
+   * Waits for a first commit, then lingers for the group commit window unless the batch fills up first.
+   */
+  private Batch awaitBatch() {
+    lock.lock();
+    try {
+      while (running && pending == null) {
+        commitRequested.awaitUninterruptibly();
+      }
+      long remaining = groupCommitWindow;
+      while (running && remaining > 0 && pending.size < groupCommitBatchSize) {
+        try {
+          remaining = commitRequested.awaitNanos(remaining);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+      if (!running) {
+        return null;
+      }
+      Batch batch = pending;
+      pending = null;
+      return batch;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private Batch takePending() {
+    lock.lock();
+    try {
+      Batch batch = pending;
+      pending = null;
+      return batch;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void flush(Batch batch) {
+    IOException failure = null;
+    try {
+      timedFlush();
+    } catch (IOException e) {
+      LOGGER.warn("Group commit of disk store in {} failed", name, e);
+      failure = e;
+    }
+    lock.lock();
+    try {
+      batch.failure = failure;
+      batch.done = true;
+      commitCompleted.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void timedFlush() throws IOException {
+    long start = System.nanoTime();
+    try {
+      target.flush();
+    } catch (IOException e) {
+      failures.incrementAndGet();
+      throw e;
+    }
+    latencies.record(System.nanoTime() - start);
+  }
+
+  private static void awaitTermination(ScheduledExecutorService executor) {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+          return;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static void joinUninterruptibly(Thread thread) {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          thread.join();
+          return;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * The commits made durable by a single flush.
+   */
+  private static final class Batch {
+    private int size;
+    private boolean done;
+    private IOException failure;
+  }
+}
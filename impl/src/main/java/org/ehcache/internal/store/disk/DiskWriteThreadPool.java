@@ -21,33 +21,89 @@ import org.terracotta.offheapstore.util.Factory;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Hands out single threaded write executors to the storage engines of a disk store.
+ * <P>
+ *   Storage engines are created one per segment, in segment order, so segments get assigned to the writer threads
+ *   in a round-robin fashion. Each writer has a bounded queue: once it is full, the thread submitting a write
+ *   blocks until the writer catches up, rather than letting pending writes accumulate in memory. A submitter still
+ *   waiting when the writer shuts down gets its write rejected.
+ * </P>
+ */
 public class DiskWriteThreadPool implements Factory<ThreadPoolExecutor> {
 
+  public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+  private static final long SHUTDOWN_CHECK_INTERVAL_MILLIS = 100;
+
+  private static final RejectedExecutionHandler BLOCK_WHEN_FULL = new RejectedExecutionHandler() {
+    @Override
+    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+      boolean interrupted = false;
+      try {
+        while (true) {
+          if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Disk writer has been shut down");
+          }
+          try {
+            if (executor.getQueue().offer(r, SHUTDOWN_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+              break;
+            }
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+        // a shutdown racing the offer may leave no writer to ever run the task
+        if (executor.isShutdown() && executor.getQueue().remove(r)) {
+          throw new RejectedExecutionException("Disk writer has been shut down");
+        }
+      } finally {
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  };
+
   private final List<ThreadPoolExecutor> writers = new CopyOnWriteArrayList<ThreadPoolExecutor>();
   private final String                   name;
   private final int                      threads;
+  private final int                      queueSize;
 
   private int                            index   = 0;
 
   public DiskWriteThreadPool(String name, int threads) {
+    this(name, threads, DEFAULT_QUEUE_SIZE);
+  }
+
+  public DiskWriteThreadPool(String name, int threads, int queueSize) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Writer thread count must be at least 1, was " + threads);
+    }
+    if (queueSize < 1) {
+      throw new IllegalArgumentException("Writer queue size must be at least 1, was " + queueSize);
+    }
     this.name = name;
     this.threads = threads;
+    this.queueSize = queueSize;
   }
 
-  public ThreadPoolExecutor newInstance() {
+  public synchronized ThreadPoolExecutor newInstance() {
     ThreadPoolExecutor writer;
     if (writers.size() < threads) {
       final int threadIndex = writers.size();
-      writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+      writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(queueSize),
                                       new ThreadFactory() {
                                         public Thread newThread(Runnable r) {
                                           return new Thread(r, "Ehcache Disk Write Thread [" + name + "] - " + threadIndex);
                                         }
-                                      });
+                                      }, BLOCK_WHEN_FULL);
       writers.add(writer);
     } else {
       writer = writers.get(index++);
@@ -58,6 +114,10 @@ public class DiskWriteThreadPool implements Factory<ThreadPoolExecutor> {
     return writer;
   }
 
+  public int getWriterCount() {
+    return writers.size();
+  }
+
   public long getTotalQueueSize() {
     long size = 0;
     for (ThreadPoolExecutor e : writers) {
@@ -65,4 +125,29 @@ public class DiskWriteThreadPool implements Factory<ThreadPoolExecutor> {
     }
     return size;
   }
+
+  /**
+   * Stops all writers once their pending writes are done, so that closing the storage engines does not interrupt
+   * writes in progress.
+   */
+  public void drain() {
+    boolean interrupted = false;
+    try {
+      for (ThreadPoolExecutor e : writers) {
+        e.shutdown();
+        while (true) {
+          try {
+            e.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            break;
+          } catch (InterruptedException ie) {
+            interrupted = true;
+          }
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
 }
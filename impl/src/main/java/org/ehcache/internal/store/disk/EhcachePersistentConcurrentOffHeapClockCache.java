@@ -19,10 +19,21 @@ package org.ehcache.internal.store.disk;
 import org.ehcache.function.BiFunction;
 import org.ehcache.function.Function;
 import org.ehcache.internal.store.disk.factories.EhcachePersistentSegmentFactory;
+import org.ehcache.internal.store.disk.factories.StripedSegmentFactory;
+import org.terracotta.offheapstore.Segment;
 import org.terracotta.offheapstore.disk.persistent.AbstractPersistentConcurrentOffHeapCache;
+import org.terracotta.offheapstore.disk.persistent.Persistent;
+import org.terracotta.offheapstore.pinning.PinnableSegment;
+import org.terracotta.offheapstore.util.Factory;
 
 import java.io.IOException;
 import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.atomic.AtomicLong;
 import org.ehcache.internal.store.offheap.EhcacheOffHeapBackingMap;
 
@@ -33,19 +44,120 @@ import org.ehcache.internal.store.offheap.EhcacheOffHeapBackingMap;
 public class EhcachePersistentConcurrentOffHeapClockCache<K, V> extends AbstractPersistentConcurrentOffHeapCache<K, V> implements EhcacheOffHeapBackingMap<K, V> {
 
   private final AtomicLong[] counters;
+  private final List<DataFilePageSource> dataFiles;
 
   public EhcachePersistentConcurrentOffHeapClockCache(ObjectInput input, EhcachePersistentSegmentFactory<K, V> segmentFactory) throws IOException {
     this(segmentFactory, readSegmentCount(input));
   }
   
   public EhcachePersistentConcurrentOffHeapClockCache(EhcachePersistentSegmentFactory<K, V> segmentFactory, int concurrency) {
+    this((Factory<? extends PinnableSegment<K, V>>) segmentFactory, concurrency, Collections.<DataFilePageSource>emptyList());
+  }
+
+  /**
+   * Creates a map whose segments are spread over the stripes of the given factory.
+   * <P>
+   *   The segments of a stripe do not force its data file when flushed, {@link #flush()} forces each data file once
+   *   instead.
+   * </P>
+   *
+   * @param segmentFactory the segment factory
+   * @param concurrency the number of segments
+   * @param dataFiles the data file of each stripe
+   */
+  EhcachePersistentConcurrentOffHeapClockCache(StripedSegmentFactory<K, V> segmentFactory, int concurrency, List<DataFilePageSource> dataFiles) {
+    this((Factory<? extends PinnableSegment<K, V>>) segmentFactory, concurrency, dataFiles);
+  }
+
+  private EhcachePersistentConcurrentOffHeapClockCache(Factory<? extends PinnableSegment<K, V>> segmentFactory, int concurrency, List<DataFilePageSource> dataFiles) {
     super(segmentFactory, concurrency);
+    this.dataFiles = new ArrayList<DataFilePageSource>(dataFiles);
     counters = new AtomicLong[segments.length];
     for(int i = 0; i < segments.length; i++) {
       counters[i] = new AtomicLong();
     }
   }
 
+  @Override
+  public void flush() throws IOException {
+    super.flush();
+    for (DataFilePageSource dataFile : dataFiles) {
+      dataFile.force();
+    }
+  }
+
+  /**
+   * Reads the segment count {@link #persist(ObjectOutput)} writes ahead of the segments themselves.
+   *
+   * @param input the input to read from
+   * @return the number of persisted segments
+   * @throws IOException if the input does not hold a persisted map
+   */
+  static int readPersistedSegmentCount(ObjectInput input) throws IOException {
+    return readSegmentCount(input);
+  }
+
+  public int getSegmentCount() {
+    return segments.length;
+  }
+
+  /**
+   * Persists the segment at the given index on its own, so that segments can be written out independently.
+   *
+   * @param index the segment index
+   * @param output the output to persist the segment to
+   * @throws IOException if the segment cannot be written
+   */
+  public void persistSegment(int index, ObjectOutput output) throws IOException {
+    ((Persistent) segments[index]).persist(output);
+  }
+
+  /**
+   * Bootstraps the segment at the given index from the output of {@link #persistSegment(int, ObjectOutput)}.
+   * <P>
+   *   Distinct segments can be bootstrapped concurrently.
+   * </P>
+   *
+   * @param index the segment index
+   * @param input the input to bootstrap the segment from
+   * @throws IOException if the segment cannot be read
+   */
+  public void bootstrapSegment(int index, ObjectInput input) throws IOException {
+    ((Persistent) segments[index]).bootstrap(input);
+  }
+
+  /**
+   * Replaces the content of the segment at the given index in {@code target} with a copy of the mappings, and their
+   * metadata, of this map's segment at the same index.
+   * <P>
+   *   Both maps must have the same segment count, and the caller must prevent any concurrent mutation of the target
+   *   segment.
+   * </P>
+   *
+   * @param index the segment index
+   * @param target the map to copy the segment to
+   * @return the number of data bytes occupied by the copied mappings
+   */
+  public long copySegmentTo(int index, EhcachePersistentConcurrentOffHeapClockCache<K, V> target) {
+    if (target.getSegmentCount() != getSegmentCount()) {
+      throw new IllegalArgumentException("Target map has " + target.getSegmentCount() + " segments, expected " + getSegmentCount());
+    }
+    Segment<K, V> source = segments[index];
+    Lock lock = source.readLock();
+    lock.lock();
+    try {
+      target.segments[index].clear();
+      for (Map.Entry<K, V> entry : source.entrySet()) {
+        K key = entry.getKey();
+        target.segments[index].put(key, entry.getValue(), source.getMetadata(key, ~0));
+      }
+      target.counters[index].set(counters[index].get());
+      return source.getDataOccupiedMemory();
+    } finally {
+      lock.unlock();
+    }
+  }
+
   @Override
   public V compute(K key, BiFunction<K, V, V> mappingFunction, boolean pin) {
     EhcachePersistentSegmentFactory.EhcachePersistentSegment<K, V> segment = (EhcachePersistentSegmentFactory.EhcachePersistentSegment) segmentFor(key);
@@ -68,4 +180,9 @@ public class EhcachePersistentConcurrentOffHeapClockCache<K, V> extends Abstract
   public long nextIdFor(final K key) {
     return counters[getIndexFor(key.hashCode())].getAndIncrement();
   }
+
+  @Override
+  public int segmentIndexFor(K key) {
+    return getIndexFor(key.hashCode());
+  }
 }
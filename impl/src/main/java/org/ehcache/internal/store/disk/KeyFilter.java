@@ -0,0 +1,165 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache.internal.store.disk;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free bloom filter over the keys of a disk store, partitioned like the store segments.
+ * <P>
+ *   Keys are only ever added: a removed key keeps answering {@code true} until the filter is rebuilt, which only
+ *   degrades the false positive rate. A {@code false} answer from {@link #mightContain(Object)} is always exact.
+ * </P>
+ */
+class KeyFilter {
+
+  private static final int MAGIC = 0x45484b46;
+  private static final int VERSION = 1;
+
+  private final AtomicLongArray[] partitions;
+  private final int partitionBits;
+  private final int hashCount;
+
+  KeyFilter(int partitionCount, long expectedKeys, double falsePositiveProbability) {
+    this(partitionCount, partitionBits(partitionCount, expectedKeys, falsePositiveProbability),
+        hashCount(falsePositiveProbability));
+  }
+
+  private KeyFilter(int partitionCount, int partitionBits, int hashCount) {
+    this.partitions = new AtomicLongArray[partitionCount];
+    for (int i = 0; i < partitionCount; i++) {
+      partitions[i] = new AtomicLongArray(partitionBits >>> 6);
+    }
+    this.partitionBits = partitionBits;
+    this.hashCount = hashCount;
+  }
+
+  void add(Object key) {
+    int h1 = mix(key.hashCode());
+    int h2 = mix(h1 ^ 0x9e3779b9) | 1;
+    AtomicLongArray bits = partitions[(h2 >>> 1) % partitions.length];
+    for (int i = 0; i < hashCount; i++) {
+      int bit = ((h1 + i * h2) >>> 1) % partitionBits;
+      int word = bit >>> 6;
+      long mask = 1L << bit;
+      long current;
+      do {
+        current = bits.get(word);
+      } while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask));
+    }
+  }
+
+  boolean mightContain(Object key) {
+    int h1 = mix(key.hashCode());
+    int h2 = mix(h1 ^ 0x9e3779b9) | 1;
+    AtomicLongArray bits = partitions[(h2 >>> 1) % partitions.length];
+    for (int i = 0; i < hashCount; i++) {
+      int bit = ((h1 + i * h2) >>> 1) % partitionBits;
+      if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Estimates the probability of a key never added to this filter being reported as possibly present, from the
+   * proportion of bits set.
+   */
+  double estimatedFalsePositiveProbability() {
+    long set = 0;
+    for (AtomicLongArray bits : partitions) {
+      for (int i = 0; i < bits.length(); i++) {
+        set += Long.bitCount(bits.get(i));
+      }
+    }
+    return Math.pow((double) set / ((long) partitionBits * partitions.length), hashCount);
+  }
+
+  boolean hasSameShape(int partitionCount, long expectedKeys, double falsePositiveProbability) {
+    return partitions.length == partitionCount
+        && partitionBits == partitionBits(partitionCount, expectedKeys, falsePositiveProbability)
+        && hashCount == hashCount(falsePositiveProbability);
+  }
+
+  void writeTo(DataOutputStream output, long timestamp) throws IOException {
+    output.writeInt(MAGIC);
+    output.writeInt(VERSION);
+    output.writeLong(timestamp);
+    output.writeInt(partitions.length);
+    output.writeInt(partitionBits);
+    output.writeInt(hashCount);
+    for (AtomicLongArray bits : partitions) {
+      for (int i = 0; i < bits.length(); i++) {
+        output.writeLong(bits.get(i));
+      }
+    }
+  }
+
+  /**
+   * Reads a filter written by {@link #writeTo(DataOutputStream, long)} alongside the index having the given timestamp.
+   *
+   * @throws IOException if the stream does not hold such a filter
+   */
+  static KeyFilter readFrom(DataInputStream input, long timestamp) throws IOException {
+    if (input.readInt() != MAGIC) {
+      throw new IOException("Unrecognized key filter file format");
+    }
+    int version = input.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported key filter file version " + version);
+    }
+    if (input.readLong() != timestamp) {
+      throw new IOException("Key filter file does not match the index file");
+    }
+    int partitionCount = input.readInt();
+    int partitionBits = input.readInt();
+    int hashCount = input.readInt();
+    if (partitionCount <= 0 || partitionBits <= 0 || (partitionBits & 63) != 0 || hashCount <= 0) {
+      throw new IOException("Corrupt key filter file header");
+    }
+    KeyFilter filter = new KeyFilter(partitionCount, partitionBits, hashCount);
+    for (AtomicLongArray bits : filter.partitions) {
+      for (int i = 0; i < bits.length(); i++) {
+        bits.set(i, input.readLong());
+      }
+    }
+    return filter;
+  }
+
+  private static int partitionBits(int partitionCount, long expectedKeys, double falsePositiveProbability) {
+    double totalBits = -expectedKeys * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2));
+    long bits = (long) Math.ceil(totalBits / partitionCount);
+    return (int) Math.min(Integer.MAX_VALUE & ~63, Math.max(64, (bits + 63) & ~63L));
+  }
+
+  private static int hashCount(double falsePositiveProbability) {
+    return Math.max(1, (int) Math.round(-Math.log(falsePositiveProbability) / Math.log(2)));
+  }
+
+  private static int mix(int h) {
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+}
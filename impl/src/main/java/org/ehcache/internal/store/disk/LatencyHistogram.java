@@ -0,0 +1,70 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache.internal.store.disk;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of latencies, bucketed by powers of two of microseconds.
+ * <P>
+ *   Bucket {@code 0} counts latencies below one microsecond, bucket {@code i} latencies of at least
+ *   {@code 2^(i-1)} and less than {@code 2^i} microseconds. The last bucket also counts everything above its range.
+ * </P>
+ */
+class LatencyHistogram {
+
+  static final int BUCKET_COUNT = 32;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong total = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  void record(long nanos) {
+    long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+    int bucket = Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+    buckets.incrementAndGet(bucket);
+    count.incrementAndGet();
+    total.addAndGet(nanos);
+    long currentMax;
+    do {
+      currentMax = max.get();
+    } while (nanos > currentMax && !max.compareAndSet(currentMax, nanos));
+  }
+
+  long getCount() {
+    return count.get();
+  }
+
+  long getTotal() {
+    return total.get();
+  }
+
+  long getMax() {
+    return max.get();
+  }
+
+  long[] getBuckets() {
+    long[] snapshot = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      snapshot[i] = buckets.get(i);
+    }
+    return snapshot;
+  }
+}
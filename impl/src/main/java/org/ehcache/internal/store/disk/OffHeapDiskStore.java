@@ -16,22 +16,32 @@
 
 package org.ehcache.internal.store.disk;
 
+import org.ehcache.Cache;
 import org.ehcache.CacheConfigurationChangeListener;
 import org.ehcache.Status;
 import org.ehcache.config.EvictionVeto;
 import org.ehcache.config.ResourcePool;
 import org.ehcache.config.ResourceType;
 import org.ehcache.config.units.MemoryUnit;
+import org.ehcache.exceptions.CacheAccessException;
 import org.ehcache.exceptions.CachePersistenceException;
+import org.ehcache.function.Aggregator;
+import org.ehcache.function.BiFunction;
+import org.ehcache.function.Function;
+import org.ehcache.function.NullaryFunction;
 import org.ehcache.function.Predicate;
 import org.ehcache.function.Predicates;
 import org.ehcache.internal.TimeSource;
 import org.ehcache.internal.TimeSourceService;
+import org.ehcache.internal.concurrent.ParallelTasks;
+import org.ehcache.internal.store.BulkComputeConfiguration;
 import org.ehcache.internal.store.disk.factories.EhcachePersistentSegmentFactory;
+import org.ehcache.internal.store.disk.factories.StripedSegmentFactory;
 import org.ehcache.internal.store.offheap.OffHeapValueHolder;
 import org.ehcache.internal.store.offheap.portability.OffHeapValueHolderPortability;
 import org.ehcache.internal.store.offheap.portability.SerializerPortability;
 import org.ehcache.spi.ServiceProvider;
+import org.ehcache.spi.cache.RecoverableStore;
 import org.ehcache.spi.cache.Store;
 import org.ehcache.spi.cache.tiering.AuthoritativeTier;
 import org.ehcache.spi.serialization.SerializationProvider;
@@ -44,29 +54,47 @@ import org.ehcache.spi.service.SupplementaryService;
 import org.ehcache.util.ConcurrentWeakIdentityHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.terracotta.offheapstore.disk.paging.MappedPageSource;
 import org.terracotta.offheapstore.disk.persistent.Persistent;
 import org.terracotta.offheapstore.disk.persistent.PersistentPortability;
 import org.terracotta.offheapstore.disk.storage.FileBackedStorageEngine;
 import org.terracotta.offheapstore.storage.portability.Portability;
 import org.terracotta.offheapstore.util.Factory;
+import org.terracotta.statistics.StatisticsManager;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.Flushable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 import org.ehcache.internal.store.offheap.AbstractOffHeapStore;
 import org.ehcache.internal.store.offheap.EhcacheOffHeapBackingMap;
 import static org.ehcache.spi.ServiceLocator.findSingletonAmongst;
@@ -76,10 +104,20 @@ import org.ehcache.spi.service.LocalPersistenceService.PersistenceSpaceIdentifie
  *
  * @author Chris Dennis
  */
-public class OffHeapDiskStore<K, V> extends AbstractOffHeapStore<K, V> implements AuthoritativeTier<K, V> {
+public class OffHeapDiskStore<K, V> extends AbstractOffHeapStore<K, V> implements AuthoritativeTier<K, V>, RecoverableStore {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(OffHeapDiskStore.class);
 
+  private static final int INDEX_MAGIC = 0x45484453;
+  private static final int INDEX_VERSION = 2;
+  private static final int UNSTRIPED_INDEX_VERSION = 1;
+  private static final int DEFAULT_SEGMENT_COUNT = 16;
+  private static final String DATA_FILE_NAME = "ehcache-disk-store.data";
+  private static final String COMPACTED_DATA_FILE_NAME = "ehcache-disk-store.data.compacted";
+  private static final String PREVIOUS_DATA_FILE_NAME = "ehcache-disk-store.data.previous";
+  private static final long COMPACTION_CHECK_INTERVAL_SECONDS = 30;
+  private static final long MINIMUM_RECLAIMABLE_BYTES = 1024 * 1024;
+
   protected final AtomicReference<Status> status = new AtomicReference<Status>(Status.UNINITIALIZED);
 
   private final Predicate<Map.Entry<K, OffHeapValueHolder<V>>> evictionVeto;
@@ -87,11 +125,55 @@ public class OffHeapDiskStore<K, V> extends AbstractOffHeapStore<K, V> implement
   private final Serializer<V> valueSerializer;
   private final long sizeInBytes;
   private final FileBasedPersistenceContext fileBasedPersistenceContext;
+  private final int writerConcurrency;
+  private final int writeQueueSize;
+  private final boolean asynchronousRecovery;
+  private final double compactionThreshold;
+  private final long compactionRate;
+  private final boolean physicalOrderIteration;
+  private final long keyFilterExpectedMappings;
+  private final double keyFilterFalsePositiveProbability;
+  private final ReentrantLock compactionLock = new ReentrantLock();
+  private final ReentrantLock flushLock = new ReentrantLock();
+  private final DiskFlusher flusher;
+  private final AtomicLong compactionCount = new AtomicLong();
+  private final AtomicLong compactionReclaimedBytes = new AtomicLong();
+  private final AtomicLong compactionTotalPause = new AtomicLong();
+  private final AtomicLong compactionMaxPause = new AtomicLong();
+  private final AtomicLong keyFilterNegatives = new AtomicLong();
+  private final AtomicLong keyFilterFalsePositives = new AtomicLong();
 
   private volatile EhcachePersistentConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>> map;
+  private volatile RecoveringBackingMap<K, OffHeapValueHolder<V>> recoveringMap;
+  private volatile CompactableBackingMap<K, OffHeapValueHolder<V>> compactableMap;
+  private volatile ScheduledExecutorService compactionScheduler;
+  private volatile Future<Void> recovery;
+  private volatile DiskWriteThreadPool writeWorkers;
+  private volatile KeyFilter keyFilter;
+  private volatile File[] stripeDirectories;
+  private volatile int[] segmentStripes;
+  private volatile boolean keyFilterReady;
+  private volatile boolean dataFilesMisplaced;
 
   public OffHeapDiskStore(FileBasedPersistenceContext fileBasedPersistenceContext, final Configuration<K, V> config, TimeSource timeSource, long sizeInBytes) {
-    super("local-disk", config, timeSource);
+    this(fileBasedPersistenceContext, config, timeSource, sizeInBytes,
+        OffHeapDiskStoreServiceConfiguration.DEFAULT_WRITER_CONCURRENCY, DiskWriteThreadPool.DEFAULT_QUEUE_SIZE);
+  }
+
+  public OffHeapDiskStore(FileBasedPersistenceContext fileBasedPersistenceContext, final Configuration<K, V> config, TimeSource timeSource, long sizeInBytes,
+                          int writerConcurrency, int writeQueueSize) {
+    this(fileBasedPersistenceContext, config, timeSource, sizeInBytes,
+        new OffHeapDiskStoreServiceConfiguration().writerConcurrency(writerConcurrency).writeQueueSize(writeQueueSize));
+  }
+
+  public OffHeapDiskStore(FileBasedPersistenceContext fileBasedPersistenceContext, final Configuration<K, V> config, TimeSource timeSource, long sizeInBytes,
+                          OffHeapDiskStoreServiceConfiguration diskStoreConfig) {
+    this(fileBasedPersistenceContext, config, timeSource, sizeInBytes, diskStoreConfig, new BulkComputeConfiguration());
+  }
+
+  public OffHeapDiskStore(FileBasedPersistenceContext fileBasedPersistenceContext, final Configuration<K, V> config, TimeSource timeSource, long sizeInBytes,
+                          OffHeapDiskStoreServiceConfiguration diskStoreConfig, BulkComputeConfiguration bulkComputeConfig) {
+    super("local-disk", config, timeSource, bulkComputeConfig);
     this.fileBasedPersistenceContext = fileBasedPersistenceContext;
     EvictionVeto<? super K, ? super V> veto = config.getEvictionVeto();
     if (veto != null) {
@@ -102,6 +184,99 @@ public class OffHeapDiskStore<K, V> extends AbstractOffHeapStore<K, V> implement
     this.keySerializer = config.getKeySerializer();
     this.valueSerializer = config.getValueSerializer();
     this.sizeInBytes = sizeInBytes;
+    this.writerConcurrency = diskStoreConfig.writerConcurrency();
+    this.writeQueueSize = diskStoreConfig.writeQueueSize();
+    this.asynchronousRecovery = diskStoreConfig.asynchronousRecovery();
+    this.compactionThreshold = diskStoreConfig.compactionThreshold();
+    this.compactionRate = diskStoreConfig.compactionRate();
+    this.physicalOrderIteration = diskStoreConfig.physicalOrderIteration();
+    this.keyFilterExpectedMappings = diskStoreConfig.keyFilterExpectedMappings();
+    this.keyFilterFalsePositiveProbability = diskStoreConfig.keyFilterFalsePositiveProbability();
+    this.flusher = new DiskFlusher(diskStoreConfig, new Flushable() {
+      @Override
+      public void flush() throws IOException {
+        flushDataFile();
+      }
+    }, fileBasedPersistenceContext.getDirectory().getPath());
+
+    StatisticsManager.createPassThroughStatistic(this, "writeQueueSize", Collections.singleton("local-disk"), new Callable<Long>() {
+      @Override
+      public Long call() throws Exception {
+        return getWriteQueueSize();
+      }
+    });
+    StatisticsManager.createPassThroughStatistic(this, "fragmentationRatio", Collections.singleton("local-disk"), new Callable<Double>() {
+      @Override
+      public Double call() throws Exception {
+        return getFragmentationRatio();
+      }
+    });
+    StatisticsManager.createPassThroughStatistic(this, "compactionCount", Collections.singleton("local-disk"), new Callable<Long>() {
+      @Override
+      public Long call() throws Exception {
+        return getCompactionCount();
+      }
+    });
+    StatisticsManager.createPassThroughStatistic(this, "compactionReclaimedBytes", Collections.singleton("local-disk"), new Callable<Long>() {
+      @Override
+      public Long call() throws Exception {
+        return getCompactionReclaimedBytes();
+      }
+    });
+    StatisticsManager.createPassThroughStatistic(this, "compactionTotalPause", Collections.singleton("local-disk"), new Callable<Long>() {
+      @Override
+      public Long call() throws Exception {
+        return getCompactionTotalPause();
+      }
+    });
+    StatisticsManager.createPassThroughStatistic(this, "compactionMaxPause", Collections.singleton("local-disk"), new Callable<Long>() {
+      @Override
+      public Long call() throws Exception {
+        return getCompactionMaxPause();
+      }
+    });
+    StatisticsManager.createPassThroughStatistic(this, "flushCount", Collections.singleton("local-disk"), new Callable<Long>() {
+      @Override
+      public Long call() throws Exception {
+        return getFlushCount();
+      }
+    });
+    StatisticsManager.createPassThroughStatistic(this, "flushFailureCount", Collections.singleton("local-disk"), new Callable<Long>() {
+      @Override
+      public Long call() throws Exception {
+        return getFlushFailureCount();
+      }
+    });
+    StatisticsManager.createPassThroughStatistic(this, "flushTotalLatency", Collections.singleton("local-disk"), new Callable<Long>() {
+      @Override
+      public Long call() throws Exception {
+        return getFlushTotalLatency();
+      }
+    });
+    StatisticsManager.createPassThroughStatistic(this, "flushMaxLatency", Collections.singleton("local-disk"), new Callable<Long>() {
+      @Override
+      public Long call() throws Exception {
+        return getFlushMaxLatency();
+      }
+    });
+    StatisticsManager.createPassThroughStatistic(this, "keyFilterNegatives", Collections.singleton("local-disk"), new Callable<Long>() {
+      @Override
+      public Long call() throws Exception {
+        return getKeyFilterNegatives();
+      }
+    });
+    StatisticsManager.createPassThroughStatistic(this, "keyFilterFalsePositives", Collections.singleton("local-disk"), new Callable<Long>() {
+      @Override
+      public Long call() throws Exception {
+        return getKeyFilterFalsePositives();
+      }
+    });
+    StatisticsManager.createPassThroughStatistic(this, "keyFilterFalsePositiveRate", Collections.singleton("local-disk"), new Callable<Double>() {
+      @Override
+      public Double call() throws Exception {
+        return getKeyFilterFalsePositiveRate();
+      }
+    });
 
     if (!status.compareAndSet(Status.UNINITIALIZED, Status.AVAILABLE)) {
       throw new AssertionError();
@@ -113,11 +288,731 @@ public class OffHeapDiskStore<K, V> extends AbstractOffHeapStore<K, V> implement
     return Collections.emptyList();
   }
 
+  @Override
+  public Store.Iterator<Cache.Entry<K, ValueHolder<V>>> iterator() throws CacheAccessException {
+    if (physicalOrderIteration) {
+      return physicalOrderIterator();
+    } else {
+      return super.iterator();
+    }
+  }
+
+  /**
+   * Returns an iterator reading this store's mappings in the order they are laid out in the data file, whatever the
+   * configured iteration mode.
+   *
+   * @return a physical order iterator
+   */
+  public Store.Iterator<Cache.Entry<K, ValueHolder<V>>> physicalOrderIterator() {
+    return new OffHeapStoreIterator(new PhysicalOrderIterator<K, OffHeapValueHolder<V>>(backingMap().getSegments()));
+  }
+
+  /**
+   * Returns the number of writes queued across all the disk writer threads of this store.
+   *
+   * @return the pending write count
+   */
+  public long getWriteQueueSize() {
+    DiskWriteThreadPool workers = writeWorkers;
+    return workers == null ? 0L : workers.getTotalQueueSize();
+  }
+
+  /**
+   * Returns the ratio of the data files that is not occupied by live mappings.
+   *
+   * @return the fragmentation ratio, between 0 and 1
+   */
+  public double getFragmentationRatio() {
+    EhcachePersistentConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>> m = map;
+    long fileSize = getDataFilesLength();
+    if (m == null || fileSize == 0) {
+      return 0.0;
+    }
+    return Math.max(0.0, 1.0 - (double) m.getDataOccupiedMemory() / fileSize);
+  }
+
+  public long getCompactionCount() {
+    return compactionCount.get();
+  }
+
+  /**
+   * Returns the number of data file bytes given back to the file system by compaction.
+   *
+   * @return the reclaimed bytes
+   */
+  public long getCompactionReclaimedBytes() {
+    return compactionReclaimedBytes.get();
+  }
+
+  /**
+   * Returns the cumulated time, in nanoseconds, operations on a segment were paused while compaction copied it.
+   *
+   * @return the total pause time
+   */
+  public long getCompactionTotalPause() {
+    return compactionTotalPause.get();
+  }
+
+  /**
+   * Returns the longest time, in nanoseconds, operations on a segment were paused while compaction copied it.
+   *
+   * @return the maximum pause time
+   */
+  public long getCompactionMaxPause() {
+    return compactionMaxPause.get();
+  }
+
+  public long getFlushCount() {
+    return flusher.getFlushCount();
+  }
+
+  public long getFlushFailureCount() {
+    return flusher.getFlushFailureCount();
+  }
+
+  /**
+   * Returns the cumulated time, in nanoseconds, spent forcing the data file to the storage device.
+   *
+   * @return the total flush latency
+   */
+  public long getFlushTotalLatency() {
+    return flusher.getFlushTotalLatency();
+  }
+
+  /**
+   * Returns the longest time, in nanoseconds, forcing the data file to the storage device took.
+   *
+   * @return the maximum flush latency
+   */
+  public long getFlushMaxLatency() {
+    return flusher.getFlushMaxLatency();
+  }
+
+  /**
+   * Returns the distribution of the time taken by the flushes of the data file.
+   * <P>
+   *   Element {@code 0} counts the flushes that took less than one microsecond, element {@code i} those that took at
+   *   least {@code 2^(i-1)} and less than {@code 2^i} microseconds. The last element also counts all longer flushes.
+   * </P>
+   *
+   * @return the flush latency histogram
+   */
+  public long[] getFlushLatencyHistogram() {
+    return flusher.getFlushLatencyHistogram();
+  }
+
+  /**
+   * Returns the number of lookups the key filter answered without reading the store index.
+   *
+   * @return the key filter negative count
+   */
+  public long getKeyFilterNegatives() {
+    return keyFilterNegatives.get();
+  }
+
+  /**
+   * Returns the number of lookups that passed the key filter and then missed in the store.
+   *
+   * @return the key filter false positive count
+   */
+  public long getKeyFilterFalsePositives() {
+    return keyFilterFalsePositives.get();
+  }
+
+  /**
+   * Returns the observed proportion of lookups of absent keys that the key filter let through.
+   *
+   * @return the false positive rate, {@code 0} if no lookup missed yet
+   */
+  public double getKeyFilterFalsePositiveRate() {
+    long falsePositives = keyFilterFalsePositives.get();
+    long misses = falsePositives + keyFilterNegatives.get();
+    return misses == 0 ? 0.0 : (double) falsePositives / misses;
+  }
+
+  /**
+   * Returns the false positive probability of the key filter as estimated from its current occupancy.
+   *
+   * @return the estimated false positive probability, {@link Double#NaN} if the store has no key filter
+   */
+  public double getKeyFilterEstimatedFalsePositiveProbability() {
+    KeyFilter filter = keyFilter;
+    return filter == null ? Double.NaN : filter.estimatedFalsePositiveProbability();
+  }
+
+  @Override
+  protected boolean isRecovering() {
+    return map == null && compactableMap == null && recoveringMap != null;
+  }
+
+  @Override
+  protected boolean isDefinitelyAbsent(K key) {
+    KeyFilter filter = keyFilter;
+    if (filter != null && keyFilterReady && !filter.mightContain(key)) {
+      keyFilterNegatives.incrementAndGet();
+      return true;
+    }
+    return false;
+  }
+
+  private void recordKeyFilterMiss(K key) {
+    KeyFilter filter = keyFilter;
+    if (filter != null && keyFilterReady && filter.mightContain(key)) {
+      keyFilterFalsePositives.incrementAndGet();
+    }
+  }
+
+  /*
+   * Keys are added before being written, so that a concurrent lookup can never be denied by the filter once the
+   * mapping is visible.
+   */
+  private void addToKeyFilter(K key) {
+    KeyFilter filter = keyFilter;
+    if (filter != null) {
+      filter.add(key);
+    }
+  }
+
+  @Override
+  public ValueHolder<V> get(K key) {
+    ValueHolder<V> result = super.get(key);
+    if (result == null) {
+      recordKeyFilterMiss(key);
+    }
+    return result;
+  }
+
+  @Override
+  public boolean containsKey(K key) {
+    boolean contained = super.containsKey(key);
+    if (!contained) {
+      recordKeyFilterMiss(key);
+    }
+    return contained;
+  }
+
+  @Override
+  public ValueHolder<V> getAndFault(K key) throws CacheAccessException {
+    ValueHolder<V> result = super.getAndFault(key);
+    if (result == null) {
+      recordKeyFilterMiss(key);
+    }
+    return result;
+  }
+
+  @Override
+  public void put(K key, V value) throws CacheAccessException {
+    addToKeyFilter(key);
+    super.put(key, value);
+    flusher.commit();
+  }
+
+  @Override
+  public ValueHolder<V> putIfAbsent(K key, V value) throws NullPointerException, CacheAccessException {
+    addToKeyFilter(key);
+    ValueHolder<V> existing = super.putIfAbsent(key, value);
+    if (existing == null) {
+      flusher.commit();
+    }
+    return existing;
+  }
+
+  @Override
+  public void remove(K key) throws CacheAccessException {
+    super.remove(key);
+    flusher.commit();
+  }
+
+  @Override
+  public boolean remove(K key, V value) throws NullPointerException, CacheAccessException {
+    boolean removed = super.remove(key, value);
+    if (removed) {
+      flusher.commit();
+    }
+    return removed;
+  }
+
+  @Override
+  public ValueHolder<V> replace(K key, V value) throws NullPointerException, CacheAccessException {
+    ValueHolder<V> replaced = super.replace(key, value);
+    if (replaced != null) {
+      flusher.commit();
+    }
+    return replaced;
+  }
+
+  @Override
+  public boolean replace(K key, V oldValue, V newValue) throws NullPointerException, IllegalArgumentException, CacheAccessException {
+    boolean replaced = super.replace(key, oldValue, newValue);
+    if (replaced) {
+      flusher.commit();
+    }
+    return replaced;
+  }
+
+  @Override
+  public void clear() throws CacheAccessException {
+    super.clear();
+    flusher.commit();
+  }
+
+  @Override
+  public ValueHolder<V> compute(K key, BiFunction<? super K, ? super V, ? extends V> mappingFunction, NullaryFunction<Boolean> replaceEqual) throws CacheAccessException {
+    addToKeyFilter(key);
+    ValueHolder<V> computed = super.compute(key, mappingFunction, replaceEqual);
+    flusher.commit();
+    return computed;
+  }
+
+  @Override
+  public ValueHolder<V> computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) throws CacheAccessException {
+    addToKeyFilter(key);
+    InstallTracking<K, V> tracking = new InstallTracking<K, V>(mappingFunction);
+    ValueHolder<V> computed = super.computeIfAbsent(key, tracking);
+    if (tracking.installed) {
+      flusher.commit();
+    }
+    return computed;
+  }
+
+  @Override
+  public ValueHolder<V> computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction, NullaryFunction<Boolean> replaceEqual) throws CacheAccessException {
+    ValueHolder<V> computed = super.computeIfPresent(key, remappingFunction, replaceEqual);
+    flusher.commit();
+    return computed;
+  }
+
+  @Override
+  public ValueHolder<V> getAndRemove(K key) throws CacheAccessException {
+    ValueHolder<V> removed = super.getAndRemove(key);
+    if (removed != null) {
+      flusher.commit();
+    }
+    return removed;
+  }
+
+  @Override
+  public ValueHolder<V> computeIfAbsentAndFault(K key, Function<? super K, ? extends V> mappingFunction) throws CacheAccessException {
+    addToKeyFilter(key);
+    InstallTracking<K, V> tracking = new InstallTracking<K, V>(mappingFunction);
+    ValueHolder<V> computed = super.computeIfAbsentAndFault(key, tracking);
+    if (tracking.installed) {
+      flusher.commit();
+    }
+    return computed;
+  }
+
+  @Override
+  public Map<K, ValueHolder<V>> bulkCompute(Set<? extends K> keys, Function<Iterable<? extends Map.Entry<? extends K, ? extends V>>, Iterable<? extends Map.Entry<? extends K, ? extends V>>> remappingFunction, NullaryFunction<Boolean> replaceEqual) throws CacheAccessException {
+    for (K key : keys) {
+      addToKeyFilter(key);
+    }
+    Map<K, ValueHolder<V>> computed = super.bulkCompute(keys, remappingFunction, replaceEqual);
+    // a single commit covers every mapping the bulk operation wrote
+    flusher.commit();
+    return computed;
+  }
+
+  @Override
+  public Map<K, ValueHolder<V>> bulkComputeIfAbsent(Set<? extends K> keys, Function<Iterable<? extends K>, Iterable<? extends Map.Entry<? extends K, ? extends V>>> mappingFunction) throws CacheAccessException {
+    BulkInstallTracking tracking = new BulkInstallTracking(mappingFunction);
+    Map<K, ValueHolder<V>> computed = super.bulkComputeIfAbsent(keys, tracking);
+    if (tracking.installed) {
+      flusher.commit();
+    }
+    return computed;
+  }
+
+  @Override
+  public Map<K, ValueHolder<V>> bulkComputeIfAbsentAndFault(Set<? extends K> keys, Function<Iterable<? extends K>, Iterable<? extends Map.Entry<? extends K, ? extends V>>> mappingFunction) throws CacheAccessException {
+    BulkInstallTracking tracking = new BulkInstallTracking(mappingFunction);
+    Map<K, ValueHolder<V>> computed = super.bulkComputeIfAbsentAndFault(keys, tracking);
+    if (tracking.installed) {
+      flusher.commit();
+    }
+    return computed;
+  }
+
+  /*
+   * Mapping function of a computeIfAbsent recording whether it produced a value, as a hit on an existing mapping writes
+   * nothing that would need committing.
+   */
+  private static final class InstallTracking<K, V> implements Function<K, V> {
+
+    private final Function<? super K, ? extends V> mappingFunction;
+    private volatile boolean installed;
+
+    InstallTracking(Function<? super K, ? extends V> mappingFunction) {
+      this.mappingFunction = mappingFunction;
+    }
+
+    @Override
+    public V apply(K key) {
+      V value = mappingFunction.apply(key);
+      if (value != null) {
+        installed = true;
+      }
+      return value;
+    }
+  }
+
+  /*
+   * Mapping function of a bulkComputeIfAbsent adding the keys it produces values for to the key filter before they get
+   * installed, and recording whether it produced any, so that the whole bulk operation is committed once.
+   */
+  private final class BulkInstallTracking implements Function<Iterable<? extends K>, Iterable<? extends Map.Entry<? extends K, ? extends V>>> {
+
+    private final Function<Iterable<? extends K>, Iterable<? extends Map.Entry<? extends K, ? extends V>>> mappingFunction;
+    private volatile boolean installed;
+
+    BulkInstallTracking(Function<Iterable<? extends K>, Iterable<? extends Map.Entry<? extends K, ? extends V>>> mappingFunction) {
+      this.mappingFunction = mappingFunction;
+    }
+
+    @Override
+    public Iterable<? extends Map.Entry<? extends K, ? extends V>> apply(Iterable<? extends K> keys) {
+      List<Map.Entry<? extends K, ? extends V>> computed = new ArrayList<Map.Entry<? extends K, ? extends V>>();
+      for (Map.Entry<? extends K, ? extends V> entry : mappingFunction.apply(keys)) {
+        if (entry.getValue() != null) {
+          addToKeyFilter(entry.getKey());
+          installed = true;
+        }
+        computed.add(entry);
+      }
+      return computed;
+    }
+  }
+
+  /*
+   * Flushes the data file, or both data files while compacting. Compaction swaps data files while holding the flush
+   * lock, so that a data file is never flushed once closed.
+   */
+  private void flushDataFile() throws IOException {
+    flushLock.lock();
+    try {
+      CompactableBackingMap<K, OffHeapValueHolder<V>> compactable = compactableMap;
+      if (compactable != null) {
+        compactable.flush();
+      } else {
+        EhcachePersistentConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>> m = map;
+        if (m != null) {
+          m.flush();
+        }
+      }
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  /**
+   * Rewrites the live mappings of this store into a new, contiguous, data file that then replaces the current one.
+   * <P>
+   *   The store remains usable while compacting: segments are copied one at a time, operations on the segment being
+   *   copied waiting for the copy to complete. Copying is throttled to the configured compaction rate.
+   * </P>
+   *
+   * @return {@code true} if compaction ran, {@code false} if the store is not initialized or still recovering
+   * @throws IllegalStateException if compaction is not enabled on this store
+   * @throws IOException if the compacted data file cannot be created or put in place
+   */
+  public boolean compact() throws IOException {
+    if (Double.isNaN(compactionThreshold)) {
+      throw new IllegalStateException("Compaction is not enabled on this store");
+    }
+    compactionLock.lock();
+    try {
+      CompactableBackingMap<K, OffHeapValueHolder<V>> compactable = compactableMap;
+      if (compactable == null || dataFilesMisplaced) {
+        return false;
+      }
+      long sizeBefore = getDataFilesLength();
+      for (int stripe = 0; stripe < stripeDirectories.length; stripe++) {
+        File compactedFile = getCompactedDataFile(stripe);
+        if (compactedFile.exists() && !compactedFile.delete()) {
+          throw new IOException("Unable to delete stale compacted data file " + compactedFile.getAbsolutePath());
+        }
+      }
+
+      DiskWriteThreadPool previousWorkers = writeWorkers;
+      EhcachePersistentConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>> compacted = buildBackingMap(COMPACTED_DATA_FILE_NAME,
+          true, compactable.getSegmentCount(), sizeInBytes, keySerializer, valueSerializer, evictionVeto);
+      compactable.startMigration(compacted);
+      try {
+        for (int i = 0; i < compactable.getSegmentCount(); i++) {
+          long start = System.nanoTime();
+          long bytes = compactable.migrateSegment(i);
+          recordCompactionPause(System.nanoTime() - start);
+          throttleCompaction(bytes);
+        }
+      } catch (InterruptedException e) {
+        abortCompaction(compactable, previousWorkers);
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while compacting " + fileBasedPersistenceContext.getDirectory().getAbsolutePath());
+      } catch (RuntimeException e) {
+        abortCompaction(compactable, previousWorkers);
+        throw e;
+      }
+
+      // the index describes the layout of the current data files: never recover from it once they got replaced
+      File indexFile = getIndexFile();
+      if (indexFile.exists() && !indexFile.delete()) {
+        abortCompaction(compactable, previousWorkers);
+        throw new IOException("Unable to delete index file " + indexFile.getAbsolutePath());
+      }
+      flushLock.lock();
+      try {
+        EhcachePersistentConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>> previous = compactable.finishMigration();
+        map = compacted;
+        previous.flush();
+        previous.close();
+      } finally {
+        flushLock.unlock();
+      }
+      for (int stripe = 0; stripe < stripeDirectories.length; stripe++) {
+        try {
+          replaceDataFile(stripe);
+        } catch (IOException e) {
+          // the live map is not backed by the data files anymore, which no index may describe
+          dataFilesMisplaced = true;
+          throw e;
+        }
+      }
+      compactionCount.incrementAndGet();
+      compactionReclaimedBytes.addAndGet(Math.max(0L, sizeBefore - getDataFilesLength()));
+      return true;
+    } finally {
+      compactionLock.unlock();
+    }
+  }
+
+  /*
+   * Puts the compacted data file of a stripe in place of its data file. Renaming over an existing file is atomic where
+   * the platform supports it, elsewhere the data file is first moved aside, so that it never goes missing: recovery
+   * puts it back if a crash interrupts the swap.
+   */
+  private void replaceDataFile(int stripe) throws IOException {
+    File dataFile = getDataFile(stripe);
+    File compactedFile = getCompactedDataFile(stripe);
+    if (compactedFile.renameTo(dataFile)) {
+      return;
+    }
+    File previousFile = getPreviousDataFile(stripe);
+    if (!dataFile.renameTo(previousFile)) {
+      throw new IOException("Unable to replace " + dataFile.getAbsolutePath() + " with compacted data file " + compactedFile.getAbsolutePath());
+    }
+    if (!compactedFile.renameTo(dataFile)) {
+      if (!previousFile.renameTo(dataFile)) {
+        LOGGER.warn("Unable to restore data file {} from {}", dataFile.getAbsolutePath(), previousFile.getAbsolutePath());
+      }
+      throw new IOException("Unable to replace " + dataFile.getAbsolutePath() + " with compacted data file " + compactedFile.getAbsolutePath());
+    }
+    if (!previousFile.delete()) {
+      LOGGER.warn("Unable to delete replaced data file {}", previousFile.getAbsolutePath());
+    }
+  }
+
+  /*
+   * Cleans up after a compaction a crash interrupted: the compacted data files never hold the layout an index
+   * describes, while a data file moved aside during the swap does.
+   */
+  private void discardCompactionLeftovers() throws IOException {
+    for (int stripe = 0; stripe < stripeDirectories.length; stripe++) {
+      File dataFile = getDataFile(stripe);
+      File previousFile = getPreviousDataFile(stripe);
+      if (previousFile.exists()) {
+        if (dataFile.exists() && !dataFile.delete()) {
+          throw new IOException("Unable to delete partially replaced data file " + dataFile.getAbsolutePath());
+        }
+        if (!previousFile.renameTo(dataFile)) {
+          throw new IOException("Unable to restore data file " + dataFile.getAbsolutePath() + " from " + previousFile.getAbsolutePath());
+        }
+      }
+      File compactedFile = getCompactedDataFile(stripe);
+      if (compactedFile.exists() && !compactedFile.delete()) {
+        throw new IOException("Unable to delete stale compacted data file " + compactedFile.getAbsolutePath());
+      }
+    }
+  }
+
+  private void abortCompaction(CompactableBackingMap<K, OffHeapValueHolder<V>> compactable, DiskWriteThreadPool previousWorkers) {
+    flushLock.lock();
+    try {
+      EhcachePersistentConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>> abandoned = compactable.abortMigration();
+      writeWorkers = previousWorkers;
+      try {
+        abandoned.close();
+      } catch (IOException e) {
+        LOGGER.debug("Exception closing abandoned compacted data file", e);
+      }
+    } finally {
+      flushLock.unlock();
+    }
+    for (int stripe = 0; stripe < stripeDirectories.length; stripe++) {
+      File compactedFile = getCompactedDataFile(stripe);
+      if (!compactedFile.delete()) {
+        LOGGER.warn("Unable to delete abandoned compacted data file {}", compactedFile.getAbsolutePath());
+      }
+    }
+  }
+
+  private void recordCompactionPause(long pause) {
+    compactionTotalPause.addAndGet(pause);
+    long max;
+    do {
+      max = compactionMaxPause.get();
+    } while (pause > max && !compactionMaxPause.compareAndSet(max, pause));
+  }
+
+  private void throttleCompaction(long bytes) throws InterruptedException {
+    if (compactionRate != OffHeapDiskStoreServiceConfiguration.UNLIMITED_COMPACTION_RATE) {
+      TimeUnit.NANOSECONDS.sleep((long) (bytes * (double) TimeUnit.SECONDS.toNanos(1) / compactionRate));
+    }
+  }
+
+  private void startCompactionScheduler() {
+    final String directory = fileBasedPersistenceContext.getDirectory().getPath();
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "Ehcache disk store compaction - " + directory);
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    scheduler.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          long fileSize = getDataFilesLength();
+          double fragmentation = getFragmentationRatio();
+          if (fragmentation > compactionThreshold && fileSize * fragmentation >= MINIMUM_RECLAIMABLE_BYTES) {
+            compact();
+          }
+        } catch (Exception e) {
+          LOGGER.warn("Compaction of disk store in {} failed", directory, e);
+        }
+      }
+    }, COMPACTION_CHECK_INTERVAL_SECONDS, COMPACTION_CHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    compactionScheduler = scheduler;
+  }
+
+  private void stopCompaction() {
+    ScheduledExecutorService scheduler = compactionScheduler;
+    if (scheduler != null) {
+      compactionScheduler = null;
+      scheduler.shutdownNow();
+    }
+    compactionLock.lock();
+    try {
+      compactableMap = null;
+    } finally {
+      compactionLock.unlock();
+    }
+  }
+
+  /*
+   * Operations go through a CompactableBackingMap when compaction is enabled.
+   */
+  private EhcacheOffHeapBackingMap<K, OffHeapValueHolder<V>> wrapForCompaction(EhcachePersistentConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>> m) {
+    if (Double.isNaN(compactionThreshold)) {
+      return m;
+    } else {
+      return new CompactableBackingMap<K, OffHeapValueHolder<V>>(m);
+    }
+  }
+
+  private void install(EhcachePersistentConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>> m, EhcacheOffHeapBackingMap<K, OffHeapValueHolder<V>> active) {
+    if (active instanceof CompactableBackingMap) {
+      compactableMap = (CompactableBackingMap<K, OffHeapValueHolder<V>>) active;
+    }
+    map = m;
+  }
+
+  @Override
+  public Future<Void> getRecoveryFuture() {
+    Future<Void> future = recovery;
+    if (future == null) {
+      throw new IllegalStateException("Store is not initialized");
+    }
+    return new UncancellableFuture<Void>(future);
+  }
+
+  /**
+   * Waits for an asynchronous recovery to complete first, as scanning a store still recovering would silently miss all
+   * its mappings.
+   */
+  @Override
+  public <A> A scan(Aggregator<? super K, ? super V, A> aggregator, boolean keysOnly) throws CacheAccessException {
+    Future<Void> future = recovery;
+    if (future != null) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        throw new CacheAccessException(e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CacheAccessException(e);
+      }
+    }
+    return super.scan(aggregator, keysOnly);
+  }
+
+  /*
+   * Recovery runs on a dedicated thread, the store missing on reads and holding back mutations through a
+   * RecoveringBackingMap until the recovered map gets published.
+   */
+  private void recoverAsynchronously() {
+    final RecoveringBackingMap<K, OffHeapValueHolder<V>> recovering = new RecoveringBackingMap<K, OffHeapValueHolder<V>>();
+    recoveringMap = recovering;
+    FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        try {
+          EhcachePersistentConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>> recovered = getBackingMap(sizeInBytes, keySerializer, valueSerializer, evictionVeto);
+          EhcacheOffHeapBackingMap<K, OffHeapValueHolder<V>> active = wrapForCompaction(recovered);
+          boolean filterComplete = openKeyFilter(recovered);
+          recovering.publish(active);
+          install(recovered, active);
+          completeKeyFilter(recovered, filterComplete);
+          return null;
+        } catch (RuntimeException e) {
+          LOGGER.error("Recovery of disk store in {} failed, the store will remain empty and reject mutations.", fileBasedPersistenceContext.getDirectory(), e);
+          recovering.fail(e);
+          throw e;
+        } catch (Error e) {
+          recovering.fail(e);
+          throw e;
+        }
+      }
+    });
+    recovery = task;
+    Thread recoveryThread = new Thread(task, "Ehcache disk store recovery - " + fileBasedPersistenceContext.getDirectory().getPath());
+    recoveryThread.setDaemon(true);
+    recoveryThread.start();
+  }
+
+  private void awaitRecovery() throws IOException {
+    Future<Void> future = recovery;
+    if (future != null) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        // already logged by the recovering thread
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for disk store recovery");
+      }
+    }
+  }
+
+  private DiskWriteThreadPool createWriteWorkers() {
+    DiskWriteThreadPool workers = new DiskWriteThreadPool(fileBasedPersistenceContext.getDirectory().getPath(), writerConcurrency, writeQueueSize);
+    writeWorkers = workers;
+    return workers;
+  }
+
   private EhcachePersistentConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>> getBackingMap(long size, Serializer<K> keySerializer, Serializer<V> valueSerializer, Predicate<Map.Entry<K, OffHeapValueHolder<V>>> evictionVeto) {
-    File dataFile = getDataFile();
-    File indexFile = getIndexFile();
-    
-    if (dataFile.isFile() && indexFile.isFile()) {
+    if (getIndexFile().isFile()) {
       try {
         return recoverBackingMap(size, keySerializer, valueSerializer, evictionVeto);
       } catch (IOException ex) {
@@ -129,100 +1024,400 @@ public class OffHeapDiskStore<K, V> extends AbstractOffHeapStore<K, V> implement
   }
   
   private EhcachePersistentConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>> recoverBackingMap(long size, Serializer<K> keySerializer, Serializer<V> valueSerializer, Predicate<Map.Entry<K, OffHeapValueHolder<V>>> evictionVeto) throws IOException {
-    File dataFile = getDataFile();
     File indexFile = getIndexFile();
     
-    FileInputStream fin = new FileInputStream(indexFile);
+    DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
     try {
-      ObjectInputStream input = new ObjectInputStream(fin);
+      input.mark(2);
+      if (input.readShort() == ObjectStreamConstants.STREAM_MAGIC) {
+        input.reset();
+        return recoverLegacyBackingMap(new ObjectInputStream(input), size, keySerializer, valueSerializer, evictionVeto);
+      }
+      input.reset();
+      if (input.readInt() != INDEX_MAGIC) {
+        throw new IOException("Unrecognized index file format");
+      }
+      int version = input.readInt();
+      if (version != INDEX_VERSION && version != UNSTRIPED_INDEX_VERSION) {
+        throw new IOException("Unsupported index file version " + version);
+      }
       long dataTimestampFromIndex = input.readLong();
-      long dataTimestampFromFile = dataFile.lastModified();
-      long delta = dataTimestampFromFile - dataTimestampFromIndex;
-      if (delta < 0) {
-        LOGGER.info("The index for data file {} is more recent than the data file itself by {}ms : this is harmless.",
-                    dataFile.getName(), -delta);
-      } else if (delta > TimeUnit.SECONDS.toMillis(1)) {
-        LOGGER.warn("The index for data file {} is out of date by {}ms, probably due to an unclean shutdown. Creating a new empty store.",
-                    dataFile.getName(), delta);
+      int segmentCount = input.readInt();
+      if (version == UNSTRIPED_INDEX_VERSION) {
+        stripeDirectories = new File[] { fileBasedPersistenceContext.getDirectory() };
+        segmentStripes = new int[segmentCount];
+      } else {
+        readStripes(input, segmentCount);
+      }
+      discardCompactionLeftovers();
+
+      if (!isIndexCurrent(dataTimestampFromIndex)) {
         return createBackingMap(size, keySerializer, valueSerializer, evictionVeto);
-      } else if (delta > 0) {
-        LOGGER.info("The index for data file {} is out of date by {}ms, assuming this small delta is a result of the OS/filesystem.",
-                    dataFile.getName(), delta);
       }
 
-      MappedPageSource source = new MappedPageSource(dataFile, false, size);
-      try {
-        PersistentPortability<K> keyPortability = persistent(new SerializerPortability<K>(keySerializer));
-        PersistentPortability<OffHeapValueHolder<V>> elementPortability = persistent(new OffHeapValueHolderPortability<V>(valueSerializer));
-        DiskWriteThreadPool writeWorkers = new DiskWriteThreadPool("identifier", 1);
+      EhcachePersistentConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>> m = buildBackingMap(DATA_FILE_NAME, false,
+          segmentCount, size, keySerializer, valueSerializer, evictionVeto);
+      if (m.getSegmentCount() != segmentCount) {
+        throw new IOException("Index file references " + segmentCount + " segments, store was built with " + m.getSegmentCount());
+      }
 
-        Factory<FileBackedStorageEngine<K, OffHeapValueHolder<V>>> storageEngineFactory = FileBackedStorageEngine.createFactory(source,
-                keyPortability, elementPortability, writeWorkers, false);
+      bootstrapSegments(m);
+      return m;
+    } catch (Exception e) {
+      LOGGER.info("Index file was corrupt. Deleting data files in " + fileBasedPersistenceContext.getDirectory().getAbsolutePath() +". " + e.getMessage());
+      LOGGER.debug("Exception during recovery", e);
+      return createBackingMap(size, keySerializer, valueSerializer, evictionVeto);
+    } finally {
+      input.close();
+    }
+  }
 
-        EhcachePersistentSegmentFactory<K, OffHeapValueHolder<V>> factory = new EhcachePersistentSegmentFactory<K, OffHeapValueHolder<V>>(
-            source,
-            storageEngineFactory,
-            64,
-            evictionVeto,
-            mapEvictionListener, false);
-            EhcachePersistentConcurrentOffHeapClockCache m = new EhcachePersistentConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>>(input, factory);
+  /*
+   * Recovers from an index written before segments got persisted separately: a single object stream holding the data
+   * file timestamp followed by the whole map, all segments living in the one data file of the store directory. The
+   * index gets rewritten in the current format on close.
+   */
+  private EhcachePersistentConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>> recoverLegacyBackingMap(ObjectInputStream input, long size, Serializer<K> keySerializer, Serializer<V> valueSerializer, Predicate<Map.Entry<K, OffHeapValueHolder<V>>> evictionVeto) throws IOException {
+    long dataTimestampFromIndex = input.readLong();
+    int segmentCount = EhcachePersistentConcurrentOffHeapClockCache.readPersistedSegmentCount(input);
+    stripeDirectories = new File[] { fileBasedPersistenceContext.getDirectory() };
+    segmentStripes = new int[segmentCount];
+    discardCompactionLeftovers();
 
+    if (!isIndexCurrent(dataTimestampFromIndex)) {
+      return createBackingMap(size, keySerializer, valueSerializer, evictionVeto);
+    }
 
+    LOGGER.info("Upgrading the index format of data files in {}.", fileBasedPersistenceContext.getDirectory());
+    EhcachePersistentConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>> m = buildBackingMap(DATA_FILE_NAME, false,
+        segmentCount, size, keySerializer, valueSerializer, evictionVeto);
+    m.bootstrap(input);
+    return m;
+  }
 
+  /*
+   * Compares the timestamp recorded in the index with the data files: an index older than them by more than a second
+   * missed writes, probably due to an unclean shutdown.
+   */
+  private boolean isIndexCurrent(long dataTimestampFromIndex) throws IOException {
+    long dataTimestampFromFile = 0;
+    for (int stripe = 0; stripe < stripeDirectories.length; stripe++) {
+      File dataFile = getDataFile(stripe);
+      if (!dataFile.isFile()) {
+        throw new IOException("Missing data file " + dataFile.getAbsolutePath());
+      }
+      dataTimestampFromFile = Math.max(dataTimestampFromFile, dataFile.lastModified());
+    }
+    long delta = dataTimestampFromFile - dataTimestampFromIndex;
+    if (delta < 0) {
+      LOGGER.info("The index for data files in {} is more recent than the data files themselves by {}ms : this is harmless.",
+                  fileBasedPersistenceContext.getDirectory(), -delta);
+    } else if (delta > TimeUnit.SECONDS.toMillis(1)) {
+      LOGGER.warn("The index for data files in {} is out of date by {}ms, probably due to an unclean shutdown. Creating a new empty store.",
+                  fileBasedPersistenceContext.getDirectory(), delta);
+      return false;
+    } else if (delta > 0) {
+      LOGGER.info("The index for data files in {} is out of date by {}ms, assuming this small delta is a result of the OS/filesystem.",
+                  fileBasedPersistenceContext.getDirectory(), delta);
+    }
+    return true;
+  }
 
-        m.bootstrap(input);
-        return m;
-      } catch (IOException e) {
-        source.close();
-        throw e;
+  private void readStripes(DataInputStream input, int segmentCount) throws IOException {
+    int stripeCount = input.readInt();
+    if (stripeCount < 1 || stripeCount > segmentCount) {
+      throw new IOException("Index file references " + stripeCount + " stripes for " + segmentCount + " segments");
+    }
+    File[] directories = new File[stripeCount];
+    for (int stripe = 0; stripe < stripeCount; stripe++) {
+      directories[stripe] = new File(input.readUTF());
+    }
+    int[] stripes = new int[segmentCount];
+    for (int segment = 0; segment < segmentCount; segment++) {
+      stripes[segment] = input.readInt();
+      if (stripes[segment] < 0 || stripes[segment] >= stripeCount) {
+        throw new IOException("Index file references unknown stripe " + stripes[segment]);
+      }
+    }
+    stripeDirectories = directories;
+    segmentStripes = stripes;
+  }
+
+  /*
+   * Spreads the segments of a new store over the directories the persistence context hands out, segments sharing a
+   * directory sharing a data file.
+   */
+  private void assignStripes(int segmentCount) {
+    List<File> directories = new ArrayList<File>();
+    int[] stripes = new int[segmentCount];
+    List<File> segmentDirectories = fileBasedPersistenceContext.getStripeDirectories(segmentCount);
+    for (int segment = 0; segment < segmentCount; segment++) {
+      File directory = segmentDirectories.get(segment);
+      int stripe = directories.indexOf(directory);
+      if (stripe < 0) {
+        stripe = directories.size();
+        directories.add(directory);
+      }
+      stripes[segment] = stripe;
+    }
+    stripeDirectories = directories.toArray(new File[directories.size()]);
+    segmentStripes = stripes;
+  }
+
+  /*
+   * Segments are persisted in a file each and are independent of one another, so they get bootstrapped concurrently.
+   */
+  private void bootstrapSegments(final EhcachePersistentConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>> m) throws IOException {
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(m.getSegmentCount());
+    for (int i = 0; i < m.getSegmentCount(); i++) {
+      final int segment = i;
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(getSegmentIndexFile(segment))));
+          try {
+            m.bootstrapSegment(segment, input);
+          } finally {
+            input.close();
+          }
+          return null;
+        }
+      });
+    }
+    invokeAll(tasks);
+  }
+
+  private void persistIndex(final EhcachePersistentConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>> m) throws IOException {
+    long timestamp = System.currentTimeMillis();
+
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(m.getSegmentCount());
+    for (int i = 0; i < m.getSegmentCount(); i++) {
+      final int segment = i;
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          ObjectOutputStream output = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(getSegmentIndexFile(segment))));
+          try {
+            m.persistSegment(segment, output);
+          } finally {
+            output.close();
+          }
+          return null;
+        }
+      });
+    }
+    invokeAll(tasks);
+
+    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(getIndexFile())));
+    try {
+      output.writeInt(INDEX_MAGIC);
+      output.writeInt(INDEX_VERSION);
+      output.writeLong(timestamp);
+      output.writeInt(m.getSegmentCount());
+      File[] directories = stripeDirectories;
+      output.writeInt(directories.length);
+      for (File directory : directories) {
+        output.writeUTF(directory.getAbsolutePath());
+      }
+      for (int stripe : segmentStripes) {
+        output.writeInt(stripe);
       }
-    } catch (Exception e) {
-      LOGGER.info("Index file was corrupt. Deleting data file " + dataFile.getAbsolutePath() +". " + e.getMessage());
-      LOGGER.debug("Exception during recovery", e);
-      return createBackingMap(size, keySerializer, valueSerializer, evictionVeto);
     } finally {
-      fin.close();
+      output.close();
+    }
+
+    KeyFilter filter = keyFilter;
+    if (filter != null) {
+      DataOutputStream filterOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(getKeyFilterFile())));
+      try {
+        filter.writeTo(filterOutput, timestamp);
+      } finally {
+        filterOutput.close();
+      }
+    }
+  }
+
+  /*
+   * Installs the key filter before the map gets published, so that no write can bypass it. Returns whether the filter
+   * already holds all the recovered keys: either the one persisted with the index could be reused, or there are none.
+   */
+  private boolean openKeyFilter(EhcachePersistentConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>> m) {
+    if (keyFilterExpectedMappings <= 0) {
+      return true;
+    }
+    KeyFilter filter = null;
+    if (!m.isEmpty()) {
+      filter = loadKeyFilter(m.getSegmentCount());
+    }
+    boolean complete = filter != null || m.isEmpty();
+    if (filter == null) {
+      filter = new KeyFilter(m.getSegmentCount(), keyFilterExpectedMappings, keyFilterFalsePositiveProbability);
+    }
+    keyFilter = filter;
+    return complete;
+  }
+
+  private void completeKeyFilter(EhcachePersistentConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>> m, boolean complete) {
+    KeyFilter filter = keyFilter;
+    if (filter == null) {
+      return;
+    }
+    if (!complete) {
+      for (K key : m.keySet()) {
+        filter.add(key);
+      }
+    }
+    keyFilterReady = true;
+  }
+
+  private KeyFilter loadKeyFilter(int segmentCount) {
+    File filterFile = getKeyFilterFile();
+    if (!filterFile.isFile()) {
+      return null;
+    }
+    try {
+      long timestamp;
+      DataInputStream indexInput = new DataInputStream(new BufferedInputStream(new FileInputStream(getIndexFile())));
+      try {
+        indexInput.readInt();
+        indexInput.readInt();
+        timestamp = indexInput.readLong();
+      } finally {
+        indexInput.close();
+      }
+      DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(filterFile)));
+      try {
+        KeyFilter filter = KeyFilter.readFrom(input, timestamp);
+        if (!filter.hasSameShape(segmentCount, keyFilterExpectedMappings, keyFilterFalsePositiveProbability)) {
+          LOGGER.info("Key filter of {} was built with another configuration, rebuilding it.", fileBasedPersistenceContext.getDirectory());
+          return null;
+        }
+        if (filter.estimatedFalsePositiveProbability() > 2 * keyFilterFalsePositiveProbability) {
+          LOGGER.info("Key filter of {} is saturated by removed keys, rebuilding it.", fileBasedPersistenceContext.getDirectory());
+          return null;
+        }
+        return filter;
+      } finally {
+        input.close();
+      }
+    } catch (IOException e) {
+      LOGGER.info("Key filter of {} could not be read, rebuilding it. {}", fileBasedPersistenceContext.getDirectory(), e.getMessage());
+      return null;
+    }
+  }
+
+  private static void invokeAll(List<Callable<Void>> tasks) throws IOException {
+    try {
+      ParallelTasks.invokeAll(Runtime.getRuntime().availableProcessors(), tasks);
+    } catch (ExecutionException e) {
+      ParallelTasks.rethrowCause(e, IOException.class);
+      throw new IOException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while processing segment index files");
     }
   }
   
   private EhcachePersistentConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>> createBackingMap(long size, Serializer<K> keySerializer, Serializer<V> valueSerializer, Predicate<Map.Entry<K, OffHeapValueHolder<V>>> evictionVeto) {
-    MappedPageSource source;
+    assignStripes(DEFAULT_SEGMENT_COUNT);
     try {
-      source = new MappedPageSource(getDataFile(), size);
+      discardCompactionLeftovers();
+      return buildBackingMap(DATA_FILE_NAME, true, DEFAULT_SEGMENT_COUNT, size, keySerializer, valueSerializer, evictionVeto);
     } catch (IOException e) {
       // TODO proper exception
       throw new RuntimeException(e);
     }
+  }
+
+  /*
+   * Builds a map over one data file per stripe, each sized in proportion to the number of segments it holds.
+   */
+  private EhcachePersistentConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>> buildBackingMap(String dataFileName, boolean create, int segmentCount, long size, Serializer<K> keySerializer, Serializer<V> valueSerializer, Predicate<Map.Entry<K, OffHeapValueHolder<V>>> evictionVeto) throws IOException {
+    File[] directories = stripeDirectories;
+    int[] stripes = segmentStripes;
+    int[] stripeSegments = new int[directories.length];
+    for (int stripe : stripes) {
+      stripeSegments[stripe]++;
+    }
+
     PersistentPortability<K> keyPortability = persistent(new SerializerPortability<K>(keySerializer));
     PersistentPortability<OffHeapValueHolder<V>> elementPortability = persistent(new OffHeapValueHolderPortability<V>(valueSerializer));
-    DiskWriteThreadPool writeWorkers = new DiskWriteThreadPool("identifier", 1);
+    DiskWriteThreadPool writeWorkers = createWriteWorkers();
 
-    Factory<FileBackedStorageEngine<K, OffHeapValueHolder<V>>> storageEngineFactory = FileBackedStorageEngine.createFactory(source,
-        keyPortability, elementPortability, writeWorkers, true);
+    List<DataFilePageSource> sources = new ArrayList<DataFilePageSource>(directories.length);
+    List<EhcachePersistentSegmentFactory<K, OffHeapValueHolder<V>>> factories = new ArrayList<EhcachePersistentSegmentFactory<K, OffHeapValueHolder<V>>>(directories.length);
+    try {
+      for (int stripe = 0; stripe < directories.length; stripe++) {
+        File dataFile = new File(directories[stripe], dataFileName);
+        long stripeSize = (size * stripeSegments[stripe] + segmentCount - 1) / segmentCount;
+        DataFilePageSource source = create ? new DataFilePageSource(dataFile, stripeSize) : new DataFilePageSource(dataFile, false, stripeSize);
+        sources.add(source);
 
-    EhcachePersistentSegmentFactory<K, OffHeapValueHolder<V>> factory = new EhcachePersistentSegmentFactory<K, OffHeapValueHolder<V>>(
-        source,
-        storageEngineFactory,
-        64,
-        evictionVeto,
-        mapEvictionListener, true);
-    return new EhcachePersistentConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>>(factory, 16);
+        Factory<FileBackedStorageEngine<K, OffHeapValueHolder<V>>> storageEngineFactory = FileBackedStorageEngine.createFactory(source,
+            keyPortability, elementPortability, writeWorkers, create);
 
+        factories.add(new EhcachePersistentSegmentFactory<K, OffHeapValueHolder<V>>(
+            source,
+            storageEngineFactory,
+            64,
+            evictionVeto,
+            mapEvictionListener, create));
+      }
+      return new EhcachePersistentConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>>(
+          new StripedSegmentFactory<K, OffHeapValueHolder<V>>(factories, stripes), segmentCount, sources);
+    } catch (IOException e) {
+      for (DataFilePageSource source : sources) {
+        source.close();
+      }
+      throw e;
+    }
   }
 
   @Override
   protected EhcacheOffHeapBackingMap<K, OffHeapValueHolder<V>> backingMap() {
-    return map;
+    EhcacheOffHeapBackingMap<K, OffHeapValueHolder<V>> m = compactableMap;
+    if (m == null) {
+      m = map;
+    }
+    return m == null ? recoveringMap : m;
   }
 
-  private File getDataFile() {
-    return new File(fileBasedPersistenceContext.getDirectory(), "ehcache-disk-store.data");
+  private File getDataFile(int stripe) {
+    return new File(stripeDirectories[stripe], DATA_FILE_NAME);
+  }
+
+  private long getDataFilesLength() {
+    File[] directories = stripeDirectories;
+    if (directories == null) {
+      return 0L;
+    }
+    long length = 0L;
+    for (File directory : directories) {
+      length += new File(directory, DATA_FILE_NAME).length();
+    }
+    return length;
   }
 
   private File getIndexFile() {
     return new File(fileBasedPersistenceContext.getDirectory(), "ehcache-disk-store.index");
   }
 
+  private File getKeyFilterFile() {
+    return new File(fileBasedPersistenceContext.getDirectory(), "ehcache-disk-store.filter");
+  }
+
+  private File getCompactedDataFile(int stripe) {
+    return new File(stripeDirectories[stripe], COMPACTED_DATA_FILE_NAME);
+  }
+
+  private File getPreviousDataFile(int stripe) {
+    return new File(stripeDirectories[stripe], PREVIOUS_DATA_FILE_NAME);
+  }
+
+  private File getSegmentIndexFile(int segment) {
+    return new File(fileBasedPersistenceContext.getDirectory(), "ehcache-disk-store.index." + segment);
+  }
+
   @SupplementaryService
   @ServiceDependencies({TimeSourceService.class, SerializationProvider.class})
   public static class Provider implements Store.Provider, AuthoritativeTier.Provider {
@@ -249,11 +1444,19 @@ public class OffHeapDiskStore<K, V> extends AbstractOffHeapStore<K, V> implement
       }
 
       PersistenceSpaceIdentifier space = findSingletonAmongst(PersistenceSpaceIdentifier.class, (Object[]) serviceConfigs);
+      OffHeapDiskStoreServiceConfiguration diskStoreConfig = findSingletonAmongst(OffHeapDiskStoreServiceConfiguration.class, (Object[]) serviceConfigs);
+      if (diskStoreConfig == null) {
+        diskStoreConfig = new OffHeapDiskStoreServiceConfiguration();
+      }
+      BulkComputeConfiguration bulkComputeConfig = findSingletonAmongst(BulkComputeConfiguration.class, (Object[]) serviceConfigs);
+      if (bulkComputeConfig == null) {
+        bulkComputeConfig = new BulkComputeConfiguration();
+      }
       try {
         FileBasedPersistenceContext persistenceContext = localPersistenceService.createPersistenceContextWithin(space , "offheap-disk-store");
 
         OffHeapDiskStore<K, V> offHeapStore = new OffHeapDiskStore<K, V>(persistenceContext, storeConfig, timeSource, unit
-            .toBytes(offHeapPool.getSize()));
+            .toBytes(offHeapPool.getSize()), diskStoreConfig, bulkComputeConfig);
         createdStores.add(offHeapStore);
         return offHeapStore;
       } catch (CachePersistenceException cpex) {
@@ -274,18 +1477,27 @@ public class OffHeapDiskStore<K, V> extends AbstractOffHeapStore<K, V> implement
     }
 
     static <K, V> void close(final OffHeapDiskStore<K, V> resource) throws IOException {
+      resource.awaitRecovery();
+      resource.stopCompaction();
+      resource.flusher.stop();
+      resource.stopBulkComputePool();
+      resource.recovery = null;
+      resource.recoveringMap = null;
+      resource.keyFilterReady = false;
       EhcachePersistentConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>> localMap = resource.map;
       if (localMap != null) {
         resource.map = null;
         localMap.flush();
-        ObjectOutputStream output = new ObjectOutputStream(new FileOutputStream(resource.getIndexFile()));
-        try {
-          output.writeLong(System.currentTimeMillis());
-          localMap.persist(output);
-        } finally {
-          output.close();
+        if (resource.dataFilesMisplaced) {
+          LOGGER.warn("Data files in {} could not be replaced by their compacted copy, the store will start empty next time.",
+              resource.fileBasedPersistenceContext.getDirectory());
+          resource.dataFilesMisplaced = false;
+        } else {
+          resource.persistIndex(localMap);
         }
         localMap.close();
+        resource.writeWorkers = null;
+        resource.keyFilter = null;
       }
     }
 
@@ -298,7 +1510,27 @@ public class OffHeapDiskStore<K, V> extends AbstractOffHeapStore<K, V> implement
     }
 
     static <K, V> void init(final OffHeapDiskStore<K, V> resource) {
-      resource.map = resource.getBackingMap(resource.sizeInBytes, resource.keySerializer, resource.valueSerializer, resource.evictionVeto);
+      if (resource.asynchronousRecovery && resource.getIndexFile().isFile()) {
+        resource.recoverAsynchronously();
+      } else {
+        EhcachePersistentConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>> m = resource.getBackingMap(resource.sizeInBytes, resource.keySerializer, resource.valueSerializer, resource.evictionVeto);
+        boolean filterComplete = resource.openKeyFilter(m);
+        resource.install(m, resource.wrapForCompaction(m));
+        resource.completeKeyFilter(m, filterComplete);
+        FutureTask<Void> recovered = new FutureTask<Void>(new Runnable() {
+          @Override
+          public void run() {
+            // recovered synchronously
+          }
+        }, null);
+        recovered.run();
+        resource.recovery = recovered;
+      }
+      if (!Double.isNaN(resource.compactionThreshold)) {
+        resource.startCompactionScheduler();
+      }
+      resource.flusher.start();
+      resource.startBulkComputePool();
     }
 
     @Override
@@ -328,6 +1560,40 @@ public class OffHeapDiskStore<K, V> extends AbstractOffHeapStore<K, V> implement
     }
   }
 
+  private static final class UncancellableFuture<T> implements Future<T> {
+
+    private final Future<T> delegate;
+
+    UncancellableFuture(Future<T> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return false;
+    }
+
+    @Override
+    public boolean isDone() {
+      return delegate.isDone();
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+      return delegate.get();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+      return delegate.get(timeout, unit);
+    }
+  }
+
   /*
    * This is kind of a hack, but it's safe to use this if the regular portability 
    * is stateless.
@@ -18,11 +18,305 @@ package org.ehcache.internal.store.disk;
 
 import org.ehcache.spi.service.ServiceConfiguration;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * @author Chris Dennis
  */
 public class OffHeapDiskStoreServiceConfiguration implements ServiceConfiguration<OffHeapDiskStore.Provider> {
 
+  public static final int DEFAULT_WRITER_CONCURRENCY = 1;
+  public static final long UNLIMITED_COMPACTION_RATE = Long.MAX_VALUE;
+  public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+  public static final int DEFAULT_GROUP_COMMIT_BATCH_SIZE = 64;
+
+  /**
+   * How the writes made to a disk store are forced to the storage device.
+   */
+  public enum Durability {
+    /**
+     * Writes are only forced when the store is closed, the operating system flushing them at its own pace until then.
+     */
+    NONE,
+    /**
+     * Writes are forced at a fixed rate: on a crash, at most one flush interval worth of writes is lost.
+     */
+    PERIODIC,
+    /**
+     * Every mutation returns once its write is forced, concurrent mutations sharing a single flush.
+     */
+    GROUP_COMMIT
+  }
+
+  private int writerConcurrency = DEFAULT_WRITER_CONCURRENCY;
+  private int writeQueueSize = DiskWriteThreadPool.DEFAULT_QUEUE_SIZE;
+  private boolean asynchronousRecovery = false;
+  private double compactionThreshold = Double.NaN;
+  private long compactionRate = UNLIMITED_COMPACTION_RATE;
+  private boolean physicalOrderIteration = false;
+  private Durability durability = Durability.NONE;
+  private long flushInterval = TimeUnit.MILLISECONDS.toNanos(DEFAULT_FLUSH_INTERVAL_MILLIS);
+  private long groupCommitWindow = 0;
+  private int groupCommitBatchSize = DEFAULT_GROUP_COMMIT_BATCH_SIZE;
+  private long keyFilterExpectedMappings = 0;
+  private double keyFilterFalsePositiveProbability = Double.NaN;
+
+  public int writerConcurrency() {
+    return writerConcurrency;
+  }
+
+  /**
+   * Sets the number of threads writing to the disk store data file.
+   * <P>
+   *   Segments are spread over the writer threads, so there is no point in configuring more writers than the store
+   *   has segments.
+   * </P>
+   *
+   * @param writerConcurrency the number of writer threads, must be at least 1
+   * @return this configuration
+   */
+  public OffHeapDiskStoreServiceConfiguration writerConcurrency(int writerConcurrency) {
+    if (writerConcurrency < 1) {
+      throw new IllegalArgumentException("Writer concurrency must be at least 1, was " + writerConcurrency);
+    }
+    this.writerConcurrency = writerConcurrency;
+    return this;
+  }
+
+  public int writeQueueSize() {
+    return writeQueueSize;
+  }
+
+  /**
+   * Sets the maximum number of pending writes queued per writer thread, beyond which writing threads get blocked.
+   *
+   * @param writeQueueSize the per writer queue bound, must be at least 1
+   * @return this configuration
+   */
+  public OffHeapDiskStoreServiceConfiguration writeQueueSize(int writeQueueSize) {
+    if (writeQueueSize < 1) {
+      throw new IllegalArgumentException("Write queue size must be at least 1, was " + writeQueueSize);
+    }
+    this.writeQueueSize = writeQueueSize;
+    return this;
+  }
+
+  public boolean asynchronousRecovery() {
+    return asynchronousRecovery;
+  }
+
+  /**
+   * Sets whether a restarted disk store recovers its content in the background.
+   * <P>
+   *   When enabled, initializing the store does not wait for its index to be loaded: the cache is usable right away
+   *   but misses on every lookup until recovery completes, while mutations wait for recovery to complete.
+   *   Completion can be tracked through {@link org.ehcache.Ehcache#getReadiness()}.
+   * </P>
+   *
+   * @param asynchronousRecovery {@code true} to recover in the background
+   * @return this configuration
+   */
+  public OffHeapDiskStoreServiceConfiguration asynchronousRecovery(boolean asynchronousRecovery) {
+    this.asynchronousRecovery = asynchronousRecovery;
+    return this;
+  }
+
+  public boolean compactionEnabled() {
+    return !Double.isNaN(compactionThreshold);
+  }
+
+  public double compactionThreshold() {
+    return compactionThreshold;
+  }
+
+  /**
+   * Enables background compaction of the disk store data file.
+   * <P>
+   *   The store periodically checks the ratio of its data file not occupied by live mappings, and rewrites the live
+   *   mappings into a new, contiguous, data file once that ratio exceeds the given threshold. While compacting, the old
+   *   and the new data file both exist on disk.
+   * </P>
+   *
+   * @param fragmentationThreshold the fragmentation ratio triggering compaction, between 0 and 1 exclusive
+   * @return this configuration
+   */
+  public OffHeapDiskStoreServiceConfiguration compactionThreshold(double fragmentationThreshold) {
+    if (!(fragmentationThreshold > 0 && fragmentationThreshold < 1)) {
+      throw new IllegalArgumentException("Compaction threshold must be between 0 and 1 exclusive, was " + fragmentationThreshold);
+    }
+    this.compactionThreshold = fragmentationThreshold;
+    return this;
+  }
+
+  public long compactionRate() {
+    return compactionRate;
+  }
+
+  /**
+   * Limits the rate at which compaction copies live data, so that it competes less with regular store operations.
+   *
+   * @param bytesPerSecond the maximum copy rate, must be at least 1
+   * @return this configuration
+   */
+  public OffHeapDiskStoreServiceConfiguration compactionRate(long bytesPerSecond) {
+    if (bytesPerSecond < 1) {
+      throw new IllegalArgumentException("Compaction rate must be at least 1 byte per second, was " + bytesPerSecond);
+    }
+    this.compactionRate = bytesPerSecond;
+    return this;
+  }
+
+  public boolean physicalOrderIteration() {
+    return physicalOrderIteration;
+  }
+
+  /**
+   * Sets whether iterating over the disk store reads mappings in data file order rather than in hash order.
+   * <P>
+   *   Physical order iteration turns the random reads of a full scan into sequential ones, at the cost of snapshotting
+   *   the location of all mappings when the iterator is created. Mappings added after that point are not returned.
+   * </P>
+   *
+   * @param physicalOrderIteration {@code true} to iterate in data file order
+   * @return this configuration
+   */
+  public OffHeapDiskStoreServiceConfiguration physicalOrderIteration(boolean physicalOrderIteration) {
+    this.physicalOrderIteration = physicalOrderIteration;
+    return this;
+  }
+
+  public Durability durability() {
+    return durability;
+  }
+
+  /**
+   * Sets the durability policy of the disk store.
+   * <P>
+   *   Stronger policies trade throughput for durability: {@link Durability#PERIODIC} costs a flush per interval,
+   *   whatever the write rate, while {@link Durability#GROUP_COMMIT} adds the latency of a flush to every mutation,
+   *   its throughput depending on how many writers share each flush.
+   * </P>
+   *
+   * @param durability the durability policy
+   * @return this configuration
+   */
+  public OffHeapDiskStoreServiceConfiguration durability(Durability durability) {
+    if (durability == null) {
+      throw new NullPointerException("Durability cannot be null");
+    }
+    this.durability = durability;
+    return this;
+  }
+
+  /**
+   * Returns the flush interval of the {@link Durability#PERIODIC} policy.
+   *
+   * @return the flush interval in nanoseconds
+   */
+  public long flushInterval() {
+    return flushInterval;
+  }
+
+  /**
+   * Sets the interval between two flushes of the {@link Durability#PERIODIC} policy.
+   *
+   * @param interval the flush interval, must be positive
+   * @param unit the interval unit
+   * @return this configuration
+   */
+  public OffHeapDiskStoreServiceConfiguration flushInterval(long interval, TimeUnit unit) {
+    if (interval <= 0) {
+      throw new IllegalArgumentException("Flush interval must be positive, was " + interval);
+    }
+    this.flushInterval = unit.toNanos(interval);
+    return this;
+  }
+
+  /**
+   * Returns how long the {@link Durability#GROUP_COMMIT} policy waits for more writers before flushing.
+   *
+   * @return the group commit window in nanoseconds
+   */
+  public long groupCommitWindow() {
+    return groupCommitWindow;
+  }
+
+  /**
+   * Sets how long the {@link Durability#GROUP_COMMIT} policy waits, after a first writer commits, for other writers
+   * to join the same flush.
+   * <P>
+   *   The default window of zero flushes right away, writers committing during a flush being grouped into the next
+   *   one. A wider window gets more writers per flush, hence fewer flushes, at the cost of a higher commit latency.
+   * </P>
+   *
+   * @param window the group commit window, must not be negative
+   * @param unit the window unit
+   * @return this configuration
+   */
+  public OffHeapDiskStoreServiceConfiguration groupCommitWindow(long window, TimeUnit unit) {
+    if (window < 0) {
+      throw new IllegalArgumentException("Group commit window cannot be negative, was " + window);
+    }
+    this.groupCommitWindow = unit.toNanos(window);
+    return this;
+  }
+
+  public int groupCommitBatchSize() {
+    return groupCommitBatchSize;
+  }
+
+  /**
+   * Sets the number of waiting writers at which the {@link Durability#GROUP_COMMIT} policy flushes without waiting
+   * for the end of the group commit window.
+   *
+   * @param batchSize the batch size, must be at least 1
+   * @return this configuration
+   */
+  public OffHeapDiskStoreServiceConfiguration groupCommitBatchSize(int batchSize) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Group commit batch size must be at least 1, was " + batchSize);
+    }
+    this.groupCommitBatchSize = batchSize;
+    return this;
+  }
+
+  public boolean keyFilterEnabled() {
+    return keyFilterExpectedMappings > 0;
+  }
+
+  public long keyFilterExpectedMappings() {
+    return keyFilterExpectedMappings;
+  }
+
+  public double keyFilterFalsePositiveProbability() {
+    return keyFilterFalsePositiveProbability;
+  }
+
+  /**
+   * Enables an in-memory bloom filter over the keys of the disk store, letting lookups of absent keys return without
+   * reading the store index.
+   * <P>
+   *   The filter is sized once for the given number of mappings and persisted alongside the index when the store is
+   *   closed. Removed keys are only purged from it when it gets rebuilt, which happens on restart once its estimated false
+   *   positive probability exceeds twice the targeted one.
+   * </P>
+   *
+   * @param expectedMappings the number of mappings the filter is sized for, must be at least 1
+   * @param falsePositiveProbability the targeted probability of an absent key passing the filter, between 0 and 1 exclusive
+   * @return this configuration
+   */
+  public OffHeapDiskStoreServiceConfiguration keyFilter(long expectedMappings, double falsePositiveProbability) {
+    if (expectedMappings < 1) {
+      throw new IllegalArgumentException("Key filter expected mappings must be at least 1, was " + expectedMappings);
+    }
+    if (!(falsePositiveProbability > 0 && falsePositiveProbability < 1)) {
+      throw new IllegalArgumentException("Key filter false positive probability must be between 0 and 1 exclusive, was " + falsePositiveProbability);
+    }
+    this.keyFilterExpectedMappings = expectedMappings;
+    this.keyFilterFalsePositiveProbability = falsePositiveProbability;
+    return this;
+  }
+
   @Override
   public Class<OffHeapDiskStore.Provider> getServiceType() {
     return OffHeapDiskStore.Provider.class;
@@ -0,0 +1,133 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache.internal.store.disk;
+
+import org.terracotta.offheapstore.OffHeapHashMap;
+import org.terracotta.offheapstore.Segment;
+import org.terracotta.offheapstore.disk.storage.FileBackedStorageEngine;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Iterates over the mappings of disk store segments in the order they are laid out in the data file.
+ * <P>
+ *   The encodings of all mappings are snapshotted and sorted up front, so that mappings are then read at increasing
+ *   file offsets, turning random reads into sequential ones that the operating system can read ahead.
+ *   Each mapping is read under its segment's read lock, and skipped if it was removed or moved since the snapshot.
+ *   Mappings added after the snapshot are not returned.
+ * </P>
+ */
+class PhysicalOrderIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+
+  private final List<? extends Segment<K, V>> segments;
+  private final int segmentBits;
+  private final long[] locations;
+
+  private int position = 0;
+  private Map.Entry<K, V> next;
+
+  PhysicalOrderIterator(List<? extends Segment<K, V>> segments) {
+    this.segments = segments;
+    this.segmentBits = 32 - Integer.numberOfLeadingZeros(Math.max(1, segments.size() - 1));
+    this.locations = snapshot();
+  }
+
+  /*
+   * Each location packs a mapping encoding, which is its address in the data file, with its segment index in the low
+   * bits, so that sorting locations sorts mappings by address.
+   */
+  private long[] snapshot() {
+    long[] snapshot = new long[0];
+    int count = 0;
+    for (int i = 0; i < segments.size(); i++) {
+      Segment<K, V> segment = segments.get(i);
+      Lock lock = segment.readLock();
+      lock.lock();
+      try {
+        OffHeapHashMap<K, V> map = (OffHeapHashMap<K, V>) segment;
+        snapshot = Arrays.copyOf(snapshot, count + map.size());
+        for (Long encoding : map.encodingSet()) {
+          if (count == snapshot.length) {
+            snapshot = Arrays.copyOf(snapshot, count + 16);
+          }
+          if (encoding >>> (63 - segmentBits) != 0) {
+            throw new IllegalStateException("Encoding " + encoding + " is too large for physical order iteration");
+          }
+          snapshot[count++] = (encoding << segmentBits) | i;
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+    long[] sorted = Arrays.copyOf(snapshot, count);
+    Arrays.sort(sorted);
+    return sorted;
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (next == null && position < locations.length) {
+      long location = locations[position++];
+      next = read(segments.get((int) (location & ((1L << segmentBits) - 1))), location >>> segmentBits);
+    }
+    return next != null;
+  }
+
+  @Override
+  public Map.Entry<K, V> next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Map.Entry<K, V> entry = next;
+    next = null;
+    return entry;
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  @SuppressWarnings("unchecked")
+  private Map.Entry<K, V> read(Segment<K, V> segment, long encoding) {
+    Lock lock = segment.readLock();
+    lock.lock();
+    try {
+      OffHeapHashMap<K, V> map = (OffHeapHashMap<K, V>) segment;
+      FileBackedStorageEngine<K, V> engine = (FileBackedStorageEngine<K, V>) map.getStorageEngine();
+      int hash;
+      try {
+        hash = engine.readKeyHash(encoding);
+      } catch (RuntimeException e) {
+        // the storage backing a removed mapping may have been released since the snapshot
+        return null;
+      }
+      if (map.getSlotForHashAndEncoding(hash, encoding, ~0L) == null) {
+        return null;
+      }
+      return new AbstractMap.SimpleImmutableEntry<K, V>((K) engine.readKey(encoding, hash), (V) engine.readValue(encoding));
+    } finally {
+      lock.unlock();
+    }
+  }
+}
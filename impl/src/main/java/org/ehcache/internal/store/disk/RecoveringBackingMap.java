@@ -0,0 +1,264 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache.internal.store.disk;
+
+import org.ehcache.function.BiFunction;
+import org.ehcache.function.Function;
+import org.ehcache.internal.store.offheap.EhcacheOffHeapBackingMap;
+import org.terracotta.offheapstore.Segment;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Stands in for the backing map of a disk store while its index is recovered in the background.
+ * <P>
+ *   Until a recovered map is {@link #publish(EhcacheOffHeapBackingMap) published} reads miss, while mutations wait for
+ *   the recovered map and are then applied to it, so that no mutation is ever reported without having been stored.
+ *   Should recovery {@link #fail(Throwable) fail}, mutations throw an {@link IllegalStateException}. A clear is only
+ *   recorded, and applied to the recovered map before it is published. Once published, all operations are forwarded
+ *   to the recovered map.
+ * </P>
+ */
+class RecoveringBackingMap<K, V> extends AbstractMap<K, V> implements EhcacheOffHeapBackingMap<K, V> {
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final CountDownLatch done = new CountDownLatch(1);
+
+  private volatile boolean cleared;
+  private volatile EhcacheOffHeapBackingMap<K, V> recovered;
+  private volatile Throwable failure;
+
+  /**
+   * Applies a clear performed while recovering to the given map, forwards all operations to it and releases the
+   * waiting mutations.
+   *
+   * @param recovered the recovered map
+   */
+  void publish(EhcacheOffHeapBackingMap<K, V> recovered) {
+    Lock writeLock = lock.writeLock();
+    writeLock.lock();
+    try {
+      if (cleared) {
+        recovered.clear();
+      }
+      this.recovered = recovered;
+    } finally {
+      writeLock.unlock();
+    }
+    done.countDown();
+  }
+
+  /**
+   * Fails the waiting, and all future, mutations.
+   *
+   * @param cause the recovery failure
+   */
+  void fail(Throwable cause) {
+    failure = cause;
+    done.countDown();
+  }
+
+  private EhcacheOffHeapBackingMap<K, V> awaitRecovered() {
+    try {
+      done.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for disk store recovery", e);
+    }
+    EhcacheOffHeapBackingMap<K, V> map = recovered;
+    if (map == null) {
+      throw new IllegalStateException("Disk store recovery failed, mutations are not possible", failure);
+    }
+    return map;
+  }
+
+  @Override
+  public V compute(K key, BiFunction<K, V, V> mappingFunction, boolean pin) {
+    return awaitRecovered().compute(key, mappingFunction, pin);
+  }
+
+  @Override
+  public V computeIfPresent(K key, BiFunction<K, V, V> mappingFunction) {
+    return awaitRecovered().computeIfPresent(key, mappingFunction);
+  }
+
+  @Override
+  public boolean computeIfPinned(K key, BiFunction<K, V, V> remappingFunction, Function<V, Boolean> pinningFunction) {
+    return awaitRecovered().computeIfPinned(key, remappingFunction, pinningFunction);
+  }
+
+  @Override
+  public long nextIdFor(K key) {
+    return awaitRecovered().nextIdFor(key);
+  }
+
+  @Override
+  public int segmentIndexFor(K key) {
+    Lock readLock = lock.readLock();
+    readLock.lock();
+    try {
+      if (recovered != null) {
+        return recovered.segmentIndexFor(key);
+      }
+      return 0;
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  @Override
+  public V getAndPin(K key) {
+    Lock readLock = lock.readLock();
+    readLock.lock();
+    try {
+      if (recovered != null) {
+        return recovered.getAndPin(key);
+      }
+      return null;
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  @Override
+  public Integer getAndSetMetadata(K key, int mask, int metadata) {
+    Lock readLock = lock.readLock();
+    readLock.lock();
+    try {
+      if (recovered != null) {
+        return recovered.getAndSetMetadata(key, mask, metadata);
+      }
+      return null;
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  @Override
+  public List<Segment<K, V>> getSegments() {
+    Lock readLock = lock.readLock();
+    readLock.lock();
+    try {
+      if (recovered != null) {
+        return recovered.getSegments();
+      }
+      return Collections.emptyList();
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  @Override
+  public boolean shrinkOthers(int excludedHash) {
+    Lock readLock = lock.readLock();
+    readLock.lock();
+    try {
+      if (recovered != null) {
+        return recovered.shrinkOthers(excludedHash);
+      }
+      return false;
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  @Override
+  public V get(Object key) {
+    Lock readLock = lock.readLock();
+    readLock.lock();
+    try {
+      if (recovered != null) {
+        return recovered.get(key);
+      }
+      return null;
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public V put(K key, V value) {
+    return awaitRecovered().put(key, value);
+  }
+
+  @Override
+  public V putIfAbsent(K key, V value) {
+    return awaitRecovered().putIfAbsent(key, value);
+  }
+
+  @Override
+  public V remove(Object key) {
+    return awaitRecovered().remove(key);
+  }
+
+  @Override
+  public boolean remove(Object key, Object value) {
+    return awaitRecovered().remove(key, value);
+  }
+
+  @Override
+  public boolean replace(K key, V oldValue, V newValue) {
+    return awaitRecovered().replace(key, oldValue, newValue);
+  }
+
+  @Override
+  public V replace(K key, V value) {
+    return awaitRecovered().replace(key, value);
+  }
+
+  @Override
+  public void clear() {
+    Lock readLock = lock.readLock();
+    readLock.lock();
+    try {
+      if (recovered != null) {
+        recovered.clear();
+      } else {
+        cleared = true;
+      }
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    Lock readLock = lock.readLock();
+    readLock.lock();
+    try {
+      if (recovered != null) {
+        return recovered.entrySet();
+      }
+      return Collections.emptySet();
+    } finally {
+      readLock.unlock();
+    }
+  }
+}
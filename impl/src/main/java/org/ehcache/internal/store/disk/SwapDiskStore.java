@@ -0,0 +1,305 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ehcache.internal.store.disk;
+
+import org.ehcache.CacheConfigurationChangeListener;
+import org.ehcache.config.EvictionVeto;
+import org.ehcache.config.ResourcePool;
+import org.ehcache.config.ResourceType;
+import org.ehcache.config.units.MemoryUnit;
+import org.ehcache.exceptions.CacheAccessException;
+import org.ehcache.function.BiFunction;
+import org.ehcache.function.Predicate;
+import org.ehcache.function.Predicates;
+import org.ehcache.internal.TimeSource;
+import org.ehcache.internal.TimeSourceService;
+import org.ehcache.internal.store.BulkComputeConfiguration;
+import org.ehcache.internal.store.offheap.AbstractOffHeapStore;
+import org.ehcache.internal.store.offheap.EhcacheConcurrentOffHeapClockCache;
+import org.ehcache.internal.store.offheap.EhcacheOffHeapBackingMap;
+import org.ehcache.internal.store.offheap.OffHeapValueHolder;
+import org.ehcache.internal.store.offheap.factories.EhcacheSegmentFactory;
+import org.ehcache.internal.store.offheap.portability.OffHeapValueHolderPortability;
+import org.ehcache.internal.store.offheap.portability.SerializerPortability;
+import org.ehcache.spi.ServiceProvider;
+import org.ehcache.spi.cache.Store;
+import org.ehcache.spi.cache.tiering.AuthoritativeTier;
+import org.ehcache.spi.cache.tiering.LowerCachingTier;
+import org.ehcache.spi.serialization.SerializationProvider;
+import org.ehcache.spi.serialization.Serializer;
+import org.ehcache.spi.service.ServiceConfiguration;
+import org.ehcache.spi.service.ServiceDependencies;
+import org.ehcache.spi.service.SupplementaryService;
+import org.ehcache.util.ConcurrentWeakIdentityHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terracotta.offheapstore.disk.paging.MappedPageSource;
+import org.terracotta.offheapstore.disk.storage.FileBackedStorageEngine;
+import org.terracotta.offheapstore.pinning.PinnableSegment;
+import org.terracotta.offheapstore.storage.portability.Portability;
+import org.terracotta.offheapstore.util.Factory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.ehcache.spi.ServiceLocator.findSingletonAmongst;
+
+/**
+ * A transient disk store, using a temporary file as an extension of memory.
+ * <P>
+ *   Unlike the {@link OffHeapDiskStore}, a swap store never persists its index and is not recoverable: its file gets
+ *   created when the store is initialized and deleted when it is closed. It can either serve as the authoritative
+ *   tier of a cache that does not need restartability, or as a lower caching tier.
+ * </P>
+ */
+public class SwapDiskStore<K, V> extends AbstractOffHeapStore<K, V> {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SwapDiskStore.class);
+
+  private static final int DEFAULT_SEGMENT_COUNT = 16;
+
+  private final Predicate<Map.Entry<K, OffHeapValueHolder<V>>> evictionVeto;
+  private final Serializer<K> keySerializer;
+  private final Serializer<V> valueSerializer;
+  private final long sizeInBytes;
+  private final File directory;
+  private final int writerConcurrency;
+
+  private volatile File swapFile;
+  private volatile MappedPageSource source;
+  private volatile DiskWriteThreadPool writeWorkers;
+  private volatile EhcacheConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>> map;
+
+  public SwapDiskStore(final Configuration<K, V> config, TimeSource timeSource, long sizeInBytes, SwapDiskStoreConfiguration swapConfig) {
+    this(config, timeSource, sizeInBytes, swapConfig, new BulkComputeConfiguration());
+  }
+
+  public SwapDiskStore(final Configuration<K, V> config, TimeSource timeSource, long sizeInBytes, SwapDiskStoreConfiguration swapConfig,
+                       BulkComputeConfiguration bulkComputeConfig) {
+    super("local-disk", config, timeSource, bulkComputeConfig);
+    EvictionVeto<? super K, ? super V> veto = config.getEvictionVeto();
+    if (veto != null) {
+      evictionVeto = wrap(veto, timeSource);
+    } else {
+      evictionVeto = Predicates.none();
+    }
+    this.keySerializer = config.getKeySerializer();
+    this.valueSerializer = config.getValueSerializer();
+    this.sizeInBytes = sizeInBytes;
+    this.directory = swapConfig.directory();
+    this.writerConcurrency = swapConfig.writerConcurrency();
+  }
+
+  @Override
+  public List<CacheConfigurationChangeListener> getConfigurationChangeListeners() {
+    return Collections.emptyList();
+  }
+
+  File getSwapFile() {
+    return swapFile;
+  }
+
+  private EhcacheConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>> createBackingMap(MappedPageSource source, Serializer<K> keySerializer, Serializer<V> valueSerializer, Predicate<Map.Entry<K, OffHeapValueHolder<V>>> evictionVeto) {
+    Portability<K> keyPortability = new SerializerPortability<K>(keySerializer);
+    Portability<OffHeapValueHolder<V>> elementPortability = new OffHeapValueHolderPortability<V>(valueSerializer);
+    writeWorkers = new DiskWriteThreadPool(source.getFile().getName(), writerConcurrency);
+    Factory<FileBackedStorageEngine<K, OffHeapValueHolder<V>>> storageEngineFactory = FileBackedStorageEngine.createFactory(source,
+        keyPortability, elementPortability, writeWorkers, true);
+
+    Factory<? extends PinnableSegment<K, OffHeapValueHolder<V>>> segmentFactory = new EhcacheSegmentFactory<K, OffHeapValueHolder<V>>(
+        source,
+        storageEngineFactory,
+        64,
+        evictionVeto,
+        mapEvictionListener);
+    return new EhcacheConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>>(segmentFactory, DEFAULT_SEGMENT_COUNT);
+  }
+
+  @Override
+  protected EhcacheOffHeapBackingMap<K, OffHeapValueHolder<V>> backingMap() {
+    return map;
+  }
+
+  @Override
+  protected void computeIfPresentAll(Set<? extends K> keys, BiFunction<K, OffHeapValueHolder<V>, OffHeapValueHolder<V>> mappingFunction) {
+    map.computeIfPresentAll(keys, mappingFunction);
+  }
+
+  @SupplementaryService
+  @ServiceDependencies({TimeSourceService.class, SerializationProvider.class})
+  public static class Provider implements Store.Provider, AuthoritativeTier.Provider, LowerCachingTier.Provider {
+
+    private volatile ServiceProvider serviceProvider;
+    private final Set<Store<?, ?>> createdStores = Collections.newSetFromMap(new ConcurrentWeakIdentityHashMap<Store<?, ?>, Boolean>());
+
+    @Override
+    public <K, V> SwapDiskStore<K, V> createStore(Configuration<K, V> storeConfig, ServiceConfiguration<?>... serviceConfigs) {
+      if (serviceProvider == null) {
+        throw new NullPointerException("ServiceProvider is null in SwapDiskStore.Provider.");
+      }
+      TimeSource timeSource = serviceProvider.getService(TimeSourceService.class).getTimeSource();
+
+      ResourcePool diskPool = storeConfig.getResourcePools().getPoolForResource(ResourceType.Core.DISK);
+      if (!(diskPool.getUnit() instanceof MemoryUnit)) {
+        throw new IllegalArgumentException("SwapDiskStore only supports resources configuration expressed in \"memory\" unit");
+      }
+      if (diskPool.isPersistent()) {
+        throw new IllegalArgumentException("SwapDiskStore cannot back a persistent disk resource");
+      }
+      MemoryUnit unit = (MemoryUnit)diskPool.getUnit();
+
+      SwapDiskStoreConfiguration swapConfig = findSingletonAmongst(SwapDiskStoreConfiguration.class, (Object[]) serviceConfigs);
+      if (swapConfig == null) {
+        swapConfig = new SwapDiskStoreConfiguration();
+      }
+      BulkComputeConfiguration bulkComputeConfig = findSingletonAmongst(BulkComputeConfiguration.class, (Object[]) serviceConfigs);
+      if (bulkComputeConfig == null) {
+        bulkComputeConfig = new BulkComputeConfiguration();
+      }
+
+      SwapDiskStore<K, V> swapStore = new SwapDiskStore<K, V>(storeConfig, timeSource, unit.toBytes(diskPool.getSize()), swapConfig, bulkComputeConfig);
+      createdStores.add(swapStore);
+      return swapStore;
+    }
+
+    @Override
+    public void releaseStore(Store<?, ?> resource) {
+      if (!createdStores.contains(resource)) {
+        throw new IllegalArgumentException("Given store is not managed by this provider : " + resource);
+      }
+      close((SwapDiskStore)resource);
+    }
+
+    static <K, V> void close(final SwapDiskStore<K, V> resource) {
+      resource.stopBulkComputePool();
+      EhcacheConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>> localMap = resource.map;
+      if (localMap != null) {
+        resource.map = null;
+        resource.writeWorkers.drain();
+        resource.writeWorkers = null;
+        localMap.destroy();
+      }
+      MappedPageSource localSource = resource.source;
+      if (localSource != null) {
+        resource.source = null;
+        try {
+          localSource.close();
+        } catch (IOException e) {
+          LOGGER.warn("Unable to close swap file {}", localSource.getFile(), e);
+        }
+      }
+      File localFile = resource.swapFile;
+      if (localFile != null) {
+        resource.swapFile = null;
+        if (!localFile.delete() && localFile.exists()) {
+          LOGGER.warn("Unable to delete swap file {}", localFile);
+        }
+      }
+    }
+
+    @Override
+    public void initStore(Store<?, ?> resource) {
+      if (!createdStores.contains(resource)) {
+        throw new IllegalArgumentException("Given store is not managed by this provider : " + resource);
+      }
+      init((SwapDiskStore)resource);
+    }
+
+    static <K, V> void init(final SwapDiskStore<K, V> resource) {
+      try {
+        File file = File.createTempFile("ehcache-swap-", ".data", resource.directory);
+        file.deleteOnExit();
+        resource.swapFile = file;
+        resource.source = new MappedPageSource(file, resource.sizeInBytes);
+      } catch (IOException e) {
+        close(resource);
+        throw new RuntimeException("Unable to create swap file in " + resource.directory, e);
+      }
+      resource.map = resource.createBackingMap(resource.source, resource.keySerializer, resource.valueSerializer, resource.evictionVeto);
+      resource.startBulkComputePool();
+    }
+
+    @Override
+    public void start(ServiceProvider serviceProvider) {
+      this.serviceProvider = serviceProvider;
+    }
+
+    @Override
+    public void stop() {
+      this.serviceProvider = null;
+      createdStores.clear();
+    }
+
+    @Override
+    public <K, V> AuthoritativeTier<K, V> createAuthoritativeTier(Configuration<K, V> storeConfig, ServiceConfiguration<?>... serviceConfigs) {
+      return createStore(storeConfig, serviceConfigs);
+    }
+
+    @Override
+    public void releaseAuthoritativeTier(AuthoritativeTier<?, ?> resource) {
+      releaseStore(resource);
+    }
+
+    @Override
+    public void initAuthoritativeTier(AuthoritativeTier<?, ?> resource) {
+      initStore(resource);
+    }
+
+    @Override
+    public <K, V> LowerCachingTier<K, V> createCachingTier(Configuration<K, V> storeConfig, ServiceConfiguration<?>... serviceConfigs) {
+      return createStore(storeConfig, serviceConfigs);
+    }
+
+    @Override
+    public void releaseCachingTier(LowerCachingTier<?, ?> resource) {
+      if (!createdStores.contains(resource)) {
+        throw new IllegalArgumentException("Given caching tier is not managed by this provider : " + resource);
+      }
+      flushToLowerTier((SwapDiskStore<Object, ?>) resource);
+      releaseStore((Store<?, ?>) resource);
+    }
+
+    private void flushToLowerTier(SwapDiskStore<Object, ?> resource) {
+      CacheAccessException lastFailure = null;
+      int failureCount = 0;
+      for (Object key : resource.backingMap().keySet()) {
+        try {
+          resource.invalidate(key);
+        } catch (CacheAccessException cae) {
+          lastFailure = cae;
+          failureCount++;
+          LOGGER.warn("Error flushing '{}' to lower tier", key, cae);
+        }
+      }
+      if (lastFailure != null) {
+        throw new RuntimeException("Failed to flush some mappings to lower tier, " +
+            failureCount + " could not be flushed. This error represents the last failure.", lastFailure);
+      }
+    }
+
+    @Override
+    public void initCachingTier(LowerCachingTier<?, ?> resource) {
+      if (!createdStores.contains(resource)) {
+        throw new IllegalArgumentException("Given caching tier is not managed by this provider : " + resource);
+      }
+      initStore((Store<?, ?>) resource);
+    }
+  }
+}
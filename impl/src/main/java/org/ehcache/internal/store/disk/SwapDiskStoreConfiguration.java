@@ -0,0 +1,71 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ehcache.internal.store.disk;
+
+import org.ehcache.spi.service.ServiceConfiguration;
+
+import java.io.File;
+
+/**
+ * Turns the disk tier of a cache into a transient swap tier, backed by a temporary file.
+ * <P>
+ *   A swap tier never writes an index and does not rely on the {@link org.ehcache.spi.service.LocalPersistenceService}:
+ *   its file is deleted when the cache is closed, so it can only be used with a non persistent disk resource.
+ * </P>
+ */
+public class SwapDiskStoreConfiguration implements ServiceConfiguration<SwapDiskStore.Provider> {
+
+  private File directory;
+  private int writerConcurrency = OffHeapDiskStoreServiceConfiguration.DEFAULT_WRITER_CONCURRENCY;
+
+  public File directory() {
+    return directory;
+  }
+
+  /**
+   * Sets the directory the swap file is created in, the default temporary directory being used otherwise.
+   *
+   * @param directory the swap directory
+   * @return this configuration
+   */
+  public SwapDiskStoreConfiguration directory(File directory) {
+    this.directory = directory;
+    return this;
+  }
+
+  public int writerConcurrency() {
+    return writerConcurrency;
+  }
+
+  /**
+   * Sets the number of threads writing to the swap file.
+   *
+   * @param writerConcurrency the number of writer threads, must be at least 1
+   * @return this configuration
+   */
+  public SwapDiskStoreConfiguration writerConcurrency(int writerConcurrency) {
+    if (writerConcurrency < 1) {
+      throw new IllegalArgumentException("Writer concurrency must be at least 1, was " + writerConcurrency);
+    }
+    this.writerConcurrency = writerConcurrency;
+    return this;
+  }
+
+  @Override
+  public Class<SwapDiskStore.Provider> getServiceType() {
+    return SwapDiskStore.Provider.class;
+  }
+}
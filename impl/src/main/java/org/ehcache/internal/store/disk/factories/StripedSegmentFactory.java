@@ -0,0 +1,54 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache.internal.store.disk.factories;
+
+import org.terracotta.offheapstore.pinning.PinnableSegment;
+import org.terracotta.offheapstore.util.Factory;
+
+import java.util.List;
+
+/**
+ * Creates each segment of a map from the segment factory of the stripe holding it.
+ * <P>
+ *   Segments are created in index order when the map gets built, so this factory can only be used for a single map.
+ * </P>
+ */
+public class StripedSegmentFactory<K, V> implements Factory<PinnableSegment<K, V>> {
+
+  private final List<EhcachePersistentSegmentFactory<K, V>> stripeFactories;
+  private final int[] segmentStripes;
+  private int nextSegment;
+
+  /**
+   * Creates a factory for a map with as many segments as there are elements in {@code segmentStripes}.
+   *
+   * @param stripeFactories the segment factory of each stripe
+   * @param segmentStripes the stripe of each segment
+   */
+  public StripedSegmentFactory(List<EhcachePersistentSegmentFactory<K, V>> stripeFactories, int[] segmentStripes) {
+    this.stripeFactories = stripeFactories;
+    this.segmentStripes = segmentStripes.clone();
+  }
+
+  @Override
+  public synchronized EhcachePersistentSegmentFactory.EhcachePersistentSegment<K, V> newInstance() {
+    if (nextSegment >= segmentStripes.length) {
+      throw new IllegalStateException("All " + segmentStripes.length + " segments were already created");
+    }
+    return stripeFactories.get(segmentStripes[nextSegment++]).newInstance();
+  }
+}
@@ -39,6 +39,7 @@ import org.ehcache.function.Predicates;
 import org.ehcache.internal.TimeSource;
 import org.ehcache.internal.TimeSourceService;
 import org.ehcache.internal.concurrent.ConcurrentHashMap;
+import org.ehcache.internal.store.BulkComputeConfiguration;
 import org.ehcache.internal.store.heap.service.OnHeapStoreServiceConfiguration;
 import org.ehcache.spi.ServiceProvider;
 import org.ehcache.spi.cache.CacheStoreHelper;
@@ -99,6 +100,7 @@ public class OnHeapStore<K, V> implements Store<K,V>, CachingTier<K, V> {
   private final Comparator<? extends Map.Entry<? super K, ? extends OnHeapValueHolder<? super V>>> evictionPrioritizer;
   private final Expiry<? super K, ? super V> expiry;
   private final TimeSource timeSource;
+  private final int bulkComputeBatchSize;
   private volatile StoreEventListener<K, V> eventListener = CacheEvents.nullStoreEventListener();
   private volatile InvalidationListener<K, V> invalidationListener;
 
@@ -128,6 +130,10 @@ public class OnHeapStore<K, V> implements Store<K,V>, CachingTier<K, V> {
   };
 
   public OnHeapStore(final Configuration<K, V> config, TimeSource timeSource, boolean storeByValue) {
+    this(config, timeSource, storeByValue, new BulkComputeConfiguration());
+  }
+
+  public OnHeapStore(final Configuration<K, V> config, TimeSource timeSource, boolean storeByValue, BulkComputeConfiguration bulkComputeConfig) {
     ResourcePool heapPool = config.getResourcePools().getPoolForResource(ResourceType.Core.HEAP);
     if (heapPool == null) {
       throw new IllegalArgumentException("OnHeap store must be configured with a resource of type 'heap'");
@@ -141,6 +147,7 @@ public class OnHeapStore<K, V> implements Store<K,V>, CachingTier<K, V> {
       prioritizer = Eviction.Prioritizer.LRU;
     }
     this.timeSource = timeSource;
+    this.bulkComputeBatchSize = bulkComputeConfig.batchSize();
     this.evictionVeto = wrap(config.getEvictionVeto(), timeSource);
     this.evictionPrioritizer = wrap(prioritizer, timeSource);
     this.keyType = config.getKeyType();
@@ -480,39 +487,16 @@ public class OnHeapStore<K, V> implements Store<K,V>, CachingTier<K, V> {
       if (cachedValue == null) {
         // todo: not hinting enforceCapacity() about the mapping we just added makes it likely that it will be the eviction target
         enforceCapacity(1);
-        try {
-          ValueHolder<V> value = fault.get();
-          final OnHeapValueHolder<V> newValue;
-          if(value != null) {
-            if (valueSerializer != null) {
-              newValue = new ByValueOnHeapValueHolder<V>(value, valueSerializer);
-            } else {
-              newValue = new ByRefOnHeapValueHolder<V>(value);
-            }
-            newValue.accessed(now, expiry.getExpiryForAccess(key, value.value()));
-          } else {
-            backEnd.remove(key, fault);
-            return null;
-          }
+        return resolveFault(key, fault, now);
+      }
+    }
 
-          if (backEnd.replace(key, fault, newValue)) {
-            return getValue(newValue);
-          } else {
-            ValueHolder<V> p = getValue(backEnd.remove(key));
-            if (p != null) {
-              notifyInvalidation(key, p);
-              if (p.isExpired(now, TimeUnit.MILLISECONDS)) {
-                return null;
-              } else {
-                return p;
-              }
-            }
-            return newValue;
-          }
-        } catch (Throwable e) {
-          backEnd.remove(key, fault);
-          throw new CacheAccessException(e);
-        }
+    if (cachedValue instanceof Fault) {
+      // another thread is faulting that mapping in, wait for it rather than loading it again
+      try {
+        return getValue(cachedValue);
+      } catch (Throwable e) {
+        throw new CacheAccessException(e);
       }
     }
 
@@ -527,6 +511,105 @@ public class OnHeapStore<K, V> implements Store<K,V>, CachingTier<K, V> {
     return getValue(cachedValue);
   }
 
+  /**
+   * Resolves a fault this thread installed, replacing it with the mapping it faulted in.
+   */
+  private ValueHolder<V> resolveFault(K key, Fault<V> fault, long now) throws CacheAccessException {
+    MapWrapper<K, V> backEnd = map;
+    try {
+      ValueHolder<V> value = fault.get();
+      final OnHeapValueHolder<V> newValue;
+      if(value != null) {
+        if (valueSerializer != null) {
+          newValue = new ByValueOnHeapValueHolder<V>(value, valueSerializer);
+        } else {
+          newValue = new ByRefOnHeapValueHolder<V>(value);
+        }
+        newValue.accessed(now, expiry.getExpiryForAccess(key, value.value()));
+      } else {
+        backEnd.remove(key, fault);
+        return null;
+      }
+
+      if (backEnd.replace(key, fault, newValue)) {
+        return getValue(newValue);
+      } else {
+        ValueHolder<V> p = getValue(backEnd.remove(key));
+        if (p != null) {
+          notifyInvalidation(key, p);
+          if (p.isExpired(now, TimeUnit.MILLISECONDS)) {
+            return null;
+          } else {
+            return p;
+          }
+        }
+        return newValue;
+      }
+    } catch (Throwable e) {
+      backEnd.remove(key, fault);
+      throw new CacheAccessException(e);
+    }
+  }
+
+  @Override
+  public Map<K, ValueHolder<V>> bulkGetOrComputeIfAbsent(Set<? extends K> keys, final Function<Iterable<? extends K>, Map<K, ValueHolder<V>>> source) throws CacheAccessException {
+    MapWrapper<K, V> backEnd = map;
+    final long now = timeSource.getTimeMillis();
+
+    // fault in all missing keys at once: the batch only calls the source when the first of its faults gets resolved,
+    // by this thread or by any other one hitting one of them
+    final FaultBatch<K, V> batch = new FaultBatch<K, V>(source);
+    Map<K, Fault<V>> faults = new HashMap<K, Fault<V>>();
+    List<K> presentKeys = new ArrayList<K>();
+    try {
+      for (final K key : keys) {
+        if (backEnd.get(key) == null) {
+          Fault<V> fault = new Fault<V>(new NullaryFunction<ValueHolder<V>>() {
+            @Override
+            public ValueHolder<V> apply() {
+              return batch.get(key);
+            }
+          });
+          if (backEnd.putIfAbsent(key, fault) == null) {
+            batch.add(key);
+            faults.put(key, fault);
+            continue;
+          }
+        }
+        presentKeys.add(key);
+      }
+    } finally {
+      batch.seal();
+    }
+
+    Map<K, ValueHolder<V>> result = new HashMap<K, ValueHolder<V>>();
+    if (!faults.isEmpty()) {
+      CacheAccessException failure = null;
+      for (Map.Entry<K, Fault<V>> entry : faults.entrySet()) {
+        // every fault must be resolved, lest it stays in the map forever
+        try {
+          result.put(entry.getKey(), resolveFault(entry.getKey(), entry.getValue(), now));
+        } catch (CacheAccessException cae) {
+          failure = cae;
+        }
+      }
+      // only evict once the faults got resolved: evicting an unresolved one would hand it over to lower tiers
+      enforceCapacity(faults.size());
+      if (failure != null) {
+        throw failure;
+      }
+    }
+    for (final K key : presentKeys) {
+      result.put(key, getOrComputeIfAbsent(key, new Function<K, ValueHolder<V>>() {
+        @Override
+        public ValueHolder<V> apply(K k) {
+          return source.apply(Collections.singleton(k)).get(k);
+        }
+      }));
+    }
+    return result;
+  }
+
   @Override
   public void invalidate(final K key) throws CacheAccessException {
     map.computeIfPresent(key, new BiFunction<K, OnHeapValueHolder<V>, OnHeapValueHolder<V>>() {
@@ -538,6 +621,14 @@ public class OnHeapStore<K, V> implements Store<K,V>, CachingTier<K, V> {
     });
   }
 
+  @Override
+  public void bulkInvalidate(Set<? extends K> keys) throws CacheAccessException {
+    // the heap map locks per bin, there is no coarser lock to batch the invalidations under
+    for (K key : keys) {
+      invalidate(key);
+    }
+  }
+
   @Override
   public void invalidate(K key, final NullaryFunction<K> function) throws CacheAccessException {
     map.compute(key, new BiFunction<K, OnHeapValueHolder<V>, OnHeapValueHolder<V>>() {
@@ -687,6 +778,62 @@ public class OnHeapStore<K, V> implements Store<K,V>, CachingTier<K, V> {
     }
   }
 
+  /**
+   * The keys faulted in by a single {@link #bulkGetOrComputeIfAbsent(Set, Function)}, loaded all at once.
+   *
+   * @param <K>
+   * @param <V>
+   */
+  private static class FaultBatch<K, V> {
+
+    private final Function<Iterable<? extends K>, Map<K, ValueHolder<V>>> source;
+    private final List<K> keys = new ArrayList<K>();
+    private boolean sealed;
+    private Map<K, ValueHolder<V>> loaded;
+    private RuntimeException failure;
+
+    FaultBatch(Function<Iterable<? extends K>, Map<K, ValueHolder<V>>> source) {
+      this.source = source;
+    }
+
+    synchronized void add(K key) {
+      keys.add(key);
+    }
+
+    synchronized void seal() {
+      sealed = true;
+      notifyAll();
+    }
+
+    synchronized ValueHolder<V> get(K key) {
+      boolean interrupted = false;
+      try {
+        while (!sealed) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+      } finally {
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      if (loaded == null && failure == null) {
+        try {
+          loaded = source.apply(keys);
+        } catch (RuntimeException e) {
+          failure = e;
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+      return loaded.get(key);
+    }
+  }
+
   @Override
   public ValueHolder<V> compute(final K key, final BiFunction<? super K, ? super V, ? extends V> mappingFunction) throws CacheAccessException {
     return compute(key, mappingFunction, REPLACE_EQUALS_TRUE);
@@ -803,27 +950,36 @@ public class OnHeapStore<K, V> implements Store<K,V>, CachingTier<K, V> {
   public Map<K, ValueHolder<V>> bulkComputeIfAbsent(Set<? extends K> keys, final Function<Iterable<? extends K>, Iterable<? extends Map.Entry<? extends K, ? extends V>>> mappingFunction) throws CacheAccessException {
     Map<K, ValueHolder<V>> result = new HashMap<K, ValueHolder<V>>();
 
-    for (final K key : keys) {
-      final ValueHolder<V> newValue = computeIfAbsent(key, new Function<K, V>() {
-        @Override
-        public V apply(final K k) {
-          final Iterable<K> keySet = Collections.singleton(k);
-          final Iterable<? extends Map.Entry<? extends K, ? extends V>> entries = mappingFunction.apply(keySet);
-          final java.util.Iterator<? extends Map.Entry<? extends K, ? extends V>> iterator = entries.iterator();
-          final Map.Entry<? extends K, ? extends V> next = iterator.next();
-          
-          K computedKey = next.getKey();
-          V computedValue = next.getValue();
-          checkKey(computedKey);
-          if (computedValue == null) {
-            return null;
+    // collect all absent keys first, so that the mapping function gets called once per batch rather than once per key
+    List<K> absentKeys = new ArrayList<K>();
+    for (K key : keys) {
+      checkKey(key);
+      ValueHolder<V> present = internalGet(key, true);
+      if (present == null) {
+        absentKeys.add(key);
+      } else {
+        result.put(key, present);
+      }
+    }
+
+    for (int from = 0; from < absentKeys.size(); from += bulkComputeBatchSize) {
+      List<K> batch = absentKeys.subList(from, Math.min(from + bulkComputeBatchSize, absentKeys.size()));
+      Map<K, V> computed = new HashMap<K, V>();
+      for (Map.Entry<? extends K, ? extends V> entry : mappingFunction.apply(batch)) {
+        checkKey(entry.getKey());
+        computed.put(entry.getKey(), entry.getValue());
+      }
+
+      for (K key : batch) {
+        final V computedValue = computed.get(key);
+        // a mapping installed concurrently while the batch was computed wins over the computed one
+        result.put(key, computeIfAbsent(key, new Function<K, V>() {
+          @Override
+          public V apply(K k) {
+            return computedValue;
           }
-          
-          checkValue(computedValue);
-          return computedValue;
-        }
-      });
-      result.put(key, newValue);
+        }));
+      }
     }
     return result;
   }
@@ -1022,9 +1178,13 @@ public class OnHeapStore<K, V> implements Store<K,V>, CachingTier<K, V> {
     public <K, V> OnHeapStore<K, V> createStore(final Configuration<K, V> storeConfig, final ServiceConfiguration<?>... serviceConfigs) {
       OnHeapStoreServiceConfiguration onHeapStoreServiceConfig = findSingletonAmongst(OnHeapStoreServiceConfiguration.class, (Object[])serviceConfigs);
       boolean storeByValue = onHeapStoreServiceConfig != null && onHeapStoreServiceConfig.storeByValue();
+      BulkComputeConfiguration bulkComputeConfig = findSingletonAmongst(BulkComputeConfiguration.class, (Object[])serviceConfigs);
+      if (bulkComputeConfig == null) {
+        bulkComputeConfig = new BulkComputeConfiguration();
+      }
 
       TimeSource timeSource = serviceProvider.getService(TimeSourceService.class).getTimeSource();
-      OnHeapStore<K, V> onHeapStore = new OnHeapStore<K, V>(storeConfig, timeSource, storeByValue);
+      OnHeapStore<K, V> onHeapStore = new OnHeapStore<K, V>(storeConfig, timeSource, storeByValue, bulkComputeConfig);
       createdStores.add(onHeapStore);
       return onHeapStore;
     }
@@ -0,0 +1,213 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache.internal.store.mapped;
+
+import org.ehcache.spi.serialization.Serializer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read access to a file built by {@link MappedReadOnlyFileBuilder}, memory mapped in chunks of at most 1GB.
+ * <P>
+ *   The file starts with a 32 byte header: magic, version, entry count, end of the record area, slot count. Records
+ *   follow, each being the key hash, the key length and the value length as {@code int}s, then the key and the value
+ *   bytes. The slot table comes last, aligned on 8 bytes: an open addressing, linear probing, hash table of record
+ *   offsets, {@code 0} marking empty slots.
+ * </P>
+ * <P>
+ *   All reads go through the mapped buffers, so processes mapping the same file share the operating system page cache
+ *   rather than each holding a copy of the data.
+ * </P>
+ */
+class MappedReadOnlyFile<K, V> {
+
+  static final int MAGIC = 0x45484d52;
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 32;
+  static final int RECORD_HEADER_SIZE = 12;
+
+  private static final int CHUNK_SHIFT = 30;
+  private static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+
+  private final File file;
+  private final Serializer<K> keySerializer;
+  private final Serializer<V> valueSerializer;
+  private final RandomAccessFile raf;
+  private final MappedByteBuffer[] chunks;
+  private final long entryCount;
+  private final long dataEnd;
+  private final long tableOffset;
+  private final int slotMask;
+
+  MappedReadOnlyFile(File file, Serializer<K> keySerializer, Serializer<V> valueSerializer) throws IOException {
+    this.file = file;
+    this.keySerializer = keySerializer;
+    this.valueSerializer = valueSerializer;
+    this.raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      long size = channel.size();
+      if (size < HEADER_SIZE) {
+        throw new IOException("File " + file.getAbsolutePath() + " is too short to be a mapped cache file");
+      }
+      chunks = new MappedByteBuffer[(int) ((size + CHUNK_SIZE - 1) >>> CHUNK_SHIFT)];
+      for (int i = 0; i < chunks.length; i++) {
+        long position = ((long) i) << CHUNK_SHIFT;
+        chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(CHUNK_SIZE, size - position));
+      }
+      if (getInt(0) != MAGIC) {
+        throw new IOException("File " + file.getAbsolutePath() + " is not a mapped cache file");
+      }
+      int version = getInt(4);
+      if (version != VERSION) {
+        throw new IOException("Unsupported mapped cache file version " + version + " in " + file.getAbsolutePath());
+      }
+      entryCount = getLong(8);
+      dataEnd = getLong(16);
+      int slotCount = getInt(24);
+      if (Integer.bitCount(slotCount) != 1) {
+        throw new IOException("Corrupt slot count " + slotCount + " in " + file.getAbsolutePath());
+      }
+      slotMask = slotCount - 1;
+      tableOffset = align(dataEnd);
+      if (tableOffset + 8L * slotCount > size) {
+        throw new IOException("Mapped cache file " + file.getAbsolutePath() + " is truncated");
+      }
+    } catch (IOException e) {
+      raf.close();
+      throw e;
+    }
+  }
+
+  File getFile() {
+    return file;
+  }
+
+  long getEntryCount() {
+    return entryCount;
+  }
+
+  /**
+   * Returns the offset of the record holding the given key.
+   *
+   * @param key the key to look up
+   * @return the record offset, or {@code -1} if the key is not in the file
+   */
+  long find(K key) throws ClassNotFoundException {
+    int hash = key.hashCode();
+    int slot = spread(hash) & slotMask;
+    while (true) {
+      long record = getLong(tableOffset + 8L * slot);
+      if (record == 0) {
+        return -1;
+      }
+      if (getInt(record) == hash && keySerializer.equals(key, getBytes(record + RECORD_HEADER_SIZE, getInt(record + 4)))) {
+        return record;
+      }
+      slot = (slot + 1) & slotMask;
+    }
+  }
+
+  long firstRecord() {
+    return HEADER_SIZE < dataEnd ? HEADER_SIZE : -1;
+  }
+
+  /**
+   * Returns the offset of the record following the given one in the file.
+   *
+   * @param record a record offset
+   * @return the next record offset, or {@code -1} if the given record is the last one
+   */
+  long nextRecord(long record) {
+    long next = record + RECORD_HEADER_SIZE + getInt(record + 4) + getInt(record + 8);
+    return next < dataEnd ? next : -1;
+  }
+
+  K readKey(long record) throws ClassNotFoundException {
+    return keySerializer.read(getBytes(record + RECORD_HEADER_SIZE, getInt(record + 4)));
+  }
+
+  V readValue(long record) throws ClassNotFoundException {
+    int keyLength = getInt(record + 4);
+    return valueSerializer.read(getBytes(record + RECORD_HEADER_SIZE + keyLength, getInt(record + 8)));
+  }
+
+  /**
+   * Closes the file. The mappings themselves are released once garbage collected.
+   */
+  void close() throws IOException {
+    raf.close();
+  }
+
+  static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  static long align(long offset) {
+    return (offset + 7) & ~7L;
+  }
+
+  private int getInt(long position) {
+    ByteBuffer chunk = chunks[(int) (position >>> CHUNK_SHIFT)];
+    int offset = (int) (position & (CHUNK_SIZE - 1));
+    if (offset + 4 <= chunk.limit()) {
+      return chunk.getInt(offset);
+    } else {
+      return getBytes(position, 4).getInt();
+    }
+  }
+
+  private long getLong(long position) {
+    ByteBuffer chunk = chunks[(int) (position >>> CHUNK_SHIFT)];
+    int offset = (int) (position & (CHUNK_SIZE - 1));
+    if (offset + 8 <= chunk.limit()) {
+      return chunk.getLong(offset);
+    } else {
+      return getBytes(position, 8).getLong();
+    }
+  }
+
+  /*
+   * Returns a read only view of the given bytes, which are only copied when they straddle two chunks.
+   */
+  private ByteBuffer getBytes(long position, int length) {
+    ByteBuffer chunk = chunks[(int) (position >>> CHUNK_SHIFT)];
+    int offset = (int) (position & (CHUNK_SIZE - 1));
+    if (offset + length <= chunk.limit()) {
+      ByteBuffer view = chunk.duplicate();
+      view.limit(offset + length).position(offset);
+      return view.slice().asReadOnlyBuffer();
+    } else {
+      ByteBuffer copy = ByteBuffer.allocate(length);
+      while (copy.hasRemaining()) {
+        ByteBuffer source = chunks[(int) ((position + copy.position()) >>> CHUNK_SHIFT)].duplicate();
+        source.position((int) ((position + copy.position()) & (CHUNK_SIZE - 1)));
+        if (source.remaining() > copy.remaining()) {
+          source.limit(source.position() + copy.remaining());
+        }
+        copy.put(source);
+      }
+      copy.flip();
+      return copy;
+    }
+  }
+}
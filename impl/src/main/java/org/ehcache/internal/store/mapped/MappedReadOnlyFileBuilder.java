@@ -0,0 +1,154 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache.internal.store.mapped;
+
+import org.ehcache.spi.serialization.Serializer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Offline builder of the files served by {@link MappedReadOnlyStore}.
+ * <P>
+ *   Mappings are streamed to the file as they are added, only their key hash and file offset being kept in memory
+ *   until {@link #build()} appends the slot table. Keys must be unique, and the serializers must produce the same
+ *   binary form in every JVM, as the file is read with the serializers of the caches it is published to.
+ * </P>
+ */
+public class MappedReadOnlyFileBuilder<K, V> {
+
+  private static final int MAXIMUM_MAPPINGS = 1 << 29;
+
+  private final File file;
+  private final Serializer<K> keySerializer;
+  private final Serializer<V> valueSerializer;
+  private final DataOutputStream output;
+
+  private int[] hashes = new int[1024];
+  private long[] offsets = new long[1024];
+  private int count = 0;
+  private long position = MappedReadOnlyFile.HEADER_SIZE;
+  private boolean built = false;
+
+  public MappedReadOnlyFileBuilder(File file, Serializer<K> keySerializer, Serializer<V> valueSerializer) throws IOException {
+    this.file = file;
+    this.keySerializer = keySerializer;
+    this.valueSerializer = valueSerializer;
+    this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    output.write(new byte[MappedReadOnlyFile.HEADER_SIZE]);
+  }
+
+  /**
+   * Appends a mapping to the file.
+   *
+   * @param key the key, which must not already have been added
+   * @param value the value
+   * @return this builder
+   * @throws IOException if the mapping cannot be written
+   */
+  public MappedReadOnlyFileBuilder<K, V> put(K key, V value) throws IOException {
+    if (built) {
+      throw new IllegalStateException("File " + file.getAbsolutePath() + " has already been built");
+    }
+    if (count == MAXIMUM_MAPPINGS) {
+      throw new IllegalStateException("Too many mappings for a single file");
+    }
+    ByteBuffer keyBytes = keySerializer.serialize(key);
+    ByteBuffer valueBytes = valueSerializer.serialize(value);
+    int hash = key.hashCode();
+    if (count == hashes.length) {
+      hashes = Arrays.copyOf(hashes, count * 2);
+      offsets = Arrays.copyOf(offsets, count * 2);
+    }
+    hashes[count] = hash;
+    offsets[count] = position;
+    count++;
+
+    output.writeInt(hash);
+    output.writeInt(keyBytes.remaining());
+    output.writeInt(valueBytes.remaining());
+    position += MappedReadOnlyFile.RECORD_HEADER_SIZE;
+    position += write(keyBytes);
+    position += write(valueBytes);
+    return this;
+  }
+
+  /**
+   * Writes the slot table and the header, completing the file.
+   *
+   * @throws IOException if the file cannot be completed
+   */
+  public void build() throws IOException {
+    if (built) {
+      throw new IllegalStateException("File " + file.getAbsolutePath() + " has already been built");
+    }
+    built = true;
+    long dataEnd = position;
+    int slotCount = Integer.highestOneBit(Math.max(2, count * 2 - 1)) << 1;
+    long[] slots = new long[slotCount];
+    int mask = slotCount - 1;
+    for (int i = 0; i < count; i++) {
+      int slot = MappedReadOnlyFile.spread(hashes[i]) & mask;
+      while (slots[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      slots[slot] = offsets[i];
+    }
+    hashes = null;
+    offsets = null;
+    try {
+      for (long padding = MappedReadOnlyFile.align(dataEnd) - dataEnd; padding > 0; padding--) {
+        output.writeByte(0);
+      }
+      for (long slot : slots) {
+        output.writeLong(slot);
+      }
+    } finally {
+      output.close();
+    }
+
+    RandomAccessFile header = new RandomAccessFile(file, "rw");
+    try {
+      header.writeInt(MappedReadOnlyFile.MAGIC);
+      header.writeInt(MappedReadOnlyFile.VERSION);
+      header.writeLong(count);
+      header.writeLong(dataEnd);
+      header.writeInt(slotCount);
+      header.getFD().sync();
+    } finally {
+      header.close();
+    }
+  }
+
+  private int write(ByteBuffer buffer) throws IOException {
+    int length = buffer.remaining();
+    if (buffer.hasArray()) {
+      output.write(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+    } else {
+      byte[] bytes = new byte[length];
+      buffer.duplicate().get(bytes);
+      output.write(bytes);
+    }
+    return length;
+  }
+}
@@ -0,0 +1,399 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache.internal.store.mapped;
+
+import org.ehcache.Cache;
+import org.ehcache.CacheConfigurationChangeListener;
+import org.ehcache.events.StoreEventListener;
+import org.ehcache.exceptions.CacheAccessException;
+import org.ehcache.function.BiFunction;
+import org.ehcache.function.Function;
+import org.ehcache.function.NullaryFunction;
+import org.ehcache.spi.ServiceProvider;
+import org.ehcache.spi.cache.Store;
+import org.ehcache.spi.cache.tiering.AuthoritativeTier;
+import org.ehcache.spi.serialization.SerializationProvider;
+import org.ehcache.spi.service.ServiceConfiguration;
+import org.ehcache.spi.service.ServiceDependencies;
+import org.ehcache.spi.service.SupplementaryService;
+import org.ehcache.util.ConcurrentWeakIdentityHashMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.ehcache.spi.ServiceLocator.findSingletonAmongst;
+
+/**
+ * Read only authoritative tier serving the mappings of a memory mapped file built by {@link MappedReadOnlyFileBuilder}.
+ * <P>
+ *   Opening the store only maps the file: no mapping is read until requested, and reads are served from the operating
+ *   system page cache, which is shared by all processes mapping the same file. Mappings never expire, and any attempt to
+ *   add, change or remove one fails with an {@link UnsupportedOperationException}.
+ * </P>
+ */
+public class MappedReadOnlyStore<K, V> implements AuthoritativeTier<K, V> {
+
+  private final Configuration<K, V> config;
+  private final File file;
+
+  private volatile MappedReadOnlyFile<K, V> mappedFile;
+  private volatile long creationTime;
+
+  public MappedReadOnlyStore(Configuration<K, V> config, File file) {
+    if (config.getKeySerializer() == null || config.getValueSerializer() == null) {
+      throw new IllegalArgumentException("MappedReadOnlyStore requires both a key and a value serializer");
+    }
+    this.config = config;
+    this.file = file;
+  }
+
+  @Override
+  public ValueHolder<V> get(K key) throws CacheAccessException {
+    checkKey(key);
+    MappedReadOnlyFile<K, V> localFile = mappedFile();
+    try {
+      long record = localFile.find(key);
+      if (record < 0) {
+        return null;
+      }
+      return new MappedValueHolder<V>(record, localFile.readValue(record), creationTime);
+    } catch (ClassNotFoundException e) {
+      throw new CacheAccessException(e);
+    }
+  }
+
+  @Override
+  public boolean containsKey(K key) throws CacheAccessException {
+    checkKey(key);
+    try {
+      return mappedFile().find(key) >= 0;
+    } catch (ClassNotFoundException e) {
+      throw new CacheAccessException(e);
+    }
+  }
+
+  @Override
+  public ValueHolder<V> getAndFault(K key) throws CacheAccessException {
+    return get(key);
+  }
+
+  @Override
+  public ValueHolder<V> computeIfAbsentAndFault(K key, Function<? super K, ? extends V> mappingFunction) throws CacheAccessException {
+    return computeIfAbsent(key, mappingFunction);
+  }
+
+  @Override
+  public Map<K, ValueHolder<V>> bulkComputeIfAbsentAndFault(Set<? extends K> keys, Function<Iterable<? extends K>, Iterable<? extends Map.Entry<? extends K, ? extends V>>> mappingFunction) throws CacheAccessException {
+    return bulkComputeIfAbsent(keys, mappingFunction);
+  }
+
+  @Override
+  public boolean flush(K key, ValueHolder<V> valueHolder) {
+    return true;
+  }
+
+  @Override
+  public void put(K key, V value) throws CacheAccessException {
+    throw readOnly();
+  }
+
+  @Override
+  public ValueHolder<V> putIfAbsent(K key, V value) throws CacheAccessException {
+    ValueHolder<V> existing = get(key);
+    if (existing == null) {
+      throw readOnly();
+    }
+    return existing;
+  }
+
+  @Override
+  public void remove(K key) throws CacheAccessException {
+    throw readOnly();
+  }
+
+  @Override
+  public boolean remove(K key, V value) throws CacheAccessException {
+    throw readOnly();
+  }
+
+  @Override
+  public ValueHolder<V> replace(K key, V value) throws CacheAccessException {
+    throw readOnly();
+  }
+
+  @Override
+  public boolean replace(K key, V oldValue, V newValue) throws CacheAccessException {
+    throw readOnly();
+  }
+
+  @Override
+  public void clear() throws CacheAccessException {
+    throw readOnly();
+  }
+
+  @Override
+  public void enableStoreEventNotifications(StoreEventListener<K, V> listener) {
+    // mappings never change, there are no events to notify
+  }
+
+  @Override
+  public void disableStoreEventNotifications() {
+    // mappings never change, there are no events to notify
+  }
+
+  @Override
+  public Iterator<Cache.Entry<K, ValueHolder<V>>> iterator() throws CacheAccessException {
+    final MappedReadOnlyFile<K, V> localFile = mappedFile();
+    return new Iterator<Cache.Entry<K, ValueHolder<V>>>() {
+
+      private long next = localFile.firstRecord();
+
+      @Override
+      public boolean hasNext() {
+        return next >= 0;
+      }
+
+      @Override
+      public Cache.Entry<K, ValueHolder<V>> next() throws CacheAccessException {
+        if (next < 0) {
+          throw new NoSuchElementException();
+        }
+        long record = next;
+        next = localFile.nextRecord(record);
+        try {
+          final K key = localFile.readKey(record);
+          final ValueHolder<V> valueHolder = new MappedValueHolder<V>(record, localFile.readValue(record), creationTime);
+          return new Cache.Entry<K, ValueHolder<V>>() {
+            @Override
+            public K getKey() {
+              return key;
+            }
+
+            @Override
+            public ValueHolder<V> getValue() {
+              return valueHolder;
+            }
+
+            @Override
+            public long getLastAccessTime(TimeUnit unit) {
+              return valueHolder.lastAccessTime(unit);
+            }
+
+            @Override
+            public long getCreationTime(TimeUnit unit) {
+              return valueHolder.creationTime(unit);
+            }
+
+            @Override
+            public float getHitRate(TimeUnit unit) {
+              return valueHolder.hitRate(System.currentTimeMillis(), unit);
+            }
+          };
+        } catch (ClassNotFoundException e) {
+          throw new CacheAccessException(e);
+        }
+      }
+    };
+  }
+
+  /**
+   * Computes a new value for a mapping: only succeeds if the function leaves the mapping unchanged, that is returns a
+   * value equal to the mapped one.
+   */
+  @Override
+  public ValueHolder<V> compute(K key, BiFunction<? super K, ? super V, ? extends V> mappingFunction) throws CacheAccessException {
+    ValueHolder<V> existing = get(key);
+    V computed = mappingFunction.apply(key, existing == null ? null : existing.value());
+    if (existing == null ? computed != null : !existing.value().equals(computed)) {
+      throw readOnly();
+    }
+    return existing;
+  }
+
+  @Override
+  public ValueHolder<V> compute(K key, BiFunction<? super K, ? super V, ? extends V> mappingFunction, NullaryFunction<Boolean> replaceEqual) throws CacheAccessException {
+    return compute(key, mappingFunction);
+  }
+
+  @Override
+  public ValueHolder<V> computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) throws CacheAccessException {
+    ValueHolder<V> existing = get(key);
+    if (existing == null && mappingFunction.apply(key) != null) {
+      throw readOnly();
+    }
+    return existing;
+  }
+
+  @Override
+  public ValueHolder<V> computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) throws CacheAccessException {
+    ValueHolder<V> existing = get(key);
+    if (existing != null && !existing.value().equals(remappingFunction.apply(key, existing.value()))) {
+      throw readOnly();
+    }
+    return existing;
+  }
+
+  @Override
+  public ValueHolder<V> computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction, NullaryFunction<Boolean> replaceEqual) throws CacheAccessException {
+    return computeIfPresent(key, remappingFunction);
+  }
+
+  @Override
+  public Map<K, ValueHolder<V>> bulkCompute(Set<? extends K> keys, Function<Iterable<? extends Map.Entry<? extends K, ? extends V>>, Iterable<? extends Map.Entry<? extends K, ? extends V>>> remappingFunction) throws CacheAccessException {
+    throw readOnly();
+  }
+
+  @Override
+  public Map<K, ValueHolder<V>> bulkCompute(Set<? extends K> keys, Function<Iterable<? extends Map.Entry<? extends K, ? extends V>>, Iterable<? extends Map.Entry<? extends K, ? extends V>>> remappingFunction, NullaryFunction<Boolean> replaceEqual) throws CacheAccessException {
+    throw readOnly();
+  }
+
+  @Override
+  public Map<K, ValueHolder<V>> bulkComputeIfAbsent(Set<? extends K> keys, Function<Iterable<? extends K>, Iterable<? extends Map.Entry<? extends K, ? extends V>>> mappingFunction) throws CacheAccessException {
+    Map<K, ValueHolder<V>> result = new HashMap<K, ValueHolder<V>>();
+    for (K key : keys) {
+      ValueHolder<V> existing = get(key);
+      if (existing == null) {
+        throw readOnly();
+      }
+      result.put(key, existing);
+    }
+    return result;
+  }
+
+  @Override
+  public List<CacheConfigurationChangeListener> getConfigurationChangeListeners() {
+    return Collections.emptyList();
+  }
+
+  /**
+   * Returns the number of mappings in the file backing this store.
+   *
+   * @return the mapping count
+   */
+  public long getMappingCount() {
+    return mappedFile().getEntryCount();
+  }
+
+  private MappedReadOnlyFile<K, V> mappedFile() {
+    MappedReadOnlyFile<K, V> localFile = mappedFile;
+    if (localFile == null) {
+      throw new IllegalStateException("Store is not initialized");
+    }
+    return localFile;
+  }
+
+  private void checkKey(K key) {
+    if (key == null) {
+      throw new NullPointerException();
+    }
+    if (!config.getKeyType().isAssignableFrom(key.getClass())) {
+      throw new ClassCastException("Invalid key type, expected : " + config.getKeyType().getName() + " but was : " + key.getClass().getName());
+    }
+  }
+
+  private UnsupportedOperationException readOnly() {
+    return new UnsupportedOperationException("Cache backed by " + file.getAbsolutePath() + " is read only");
+  }
+
+  @SupplementaryService
+  @ServiceDependencies({SerializationProvider.class})
+  public static class Provider implements Store.Provider, AuthoritativeTier.Provider {
+
+    private final Set<Store<?, ?>> createdStores = Collections.newSetFromMap(new ConcurrentWeakIdentityHashMap<Store<?, ?>, Boolean>());
+
+    @Override
+    public <K, V> MappedReadOnlyStore<K, V> createStore(Configuration<K, V> storeConfig, ServiceConfiguration<?>... serviceConfigs) {
+      MappedReadOnlyStoreConfiguration mappedConfig = findSingletonAmongst(MappedReadOnlyStoreConfiguration.class, (Object[]) serviceConfigs);
+      if (mappedConfig == null) {
+        throw new IllegalArgumentException("MappedReadOnlyStore cannot be created without a MappedReadOnlyStoreConfiguration");
+      }
+      MappedReadOnlyStore<K, V> store = new MappedReadOnlyStore<K, V>(storeConfig, mappedConfig.getFile());
+      createdStores.add(store);
+      return store;
+    }
+
+    @Override
+    public void releaseStore(Store<?, ?> resource) {
+      if (!createdStores.remove(resource)) {
+        throw new IllegalArgumentException("Given store is not managed by this provider : " + resource);
+      }
+      try {
+        close((MappedReadOnlyStore<?, ?>) resource);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    static void close(MappedReadOnlyStore<?, ?> resource) throws IOException {
+      MappedReadOnlyFile<?, ?> localFile = resource.mappedFile;
+      if (localFile != null) {
+        resource.mappedFile = null;
+        localFile.close();
+      }
+    }
+
+    @Override
+    public void initStore(Store<?, ?> resource) {
+      if (!createdStores.contains(resource)) {
+        throw new IllegalArgumentException("Given store is not managed by this provider : " + resource);
+      }
+      try {
+        init((MappedReadOnlyStore<?, ?>) resource);
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to map " + ((MappedReadOnlyStore<?, ?>) resource).file.getAbsolutePath(), e);
+      }
+    }
+
+    static <K, V> void init(MappedReadOnlyStore<K, V> resource) throws IOException {
+      resource.creationTime = resource.file.lastModified();
+      resource.mappedFile = new MappedReadOnlyFile<K, V>(resource.file, resource.config.getKeySerializer(), resource.config.getValueSerializer());
+    }
+
+    @Override
+    public void start(ServiceProvider serviceProvider) {
+      // no-op
+    }
+
+    @Override
+    public void stop() {
+      createdStores.clear();
+    }
+
+    @Override
+    public <K, V> AuthoritativeTier<K, V> createAuthoritativeTier(Configuration<K, V> storeConfig, ServiceConfiguration<?>... serviceConfigs) {
+      return createStore(storeConfig, serviceConfigs);
+    }
+
+    @Override
+    public void releaseAuthoritativeTier(AuthoritativeTier<?, ?> resource) {
+      releaseStore(resource);
+    }
+
+    @Override
+    public void initAuthoritativeTier(AuthoritativeTier<?, ?> resource) {
+      initStore(resource);
+    }
+  }
+}
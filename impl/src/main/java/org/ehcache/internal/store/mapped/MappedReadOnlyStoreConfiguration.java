@@ -0,0 +1,49 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache.internal.store.mapped;
+
+import org.ehcache.spi.service.ServiceConfiguration;
+
+import java.io.File;
+
+/**
+ * Configures a cache to be backed by a read only file built by {@link MappedReadOnlyFileBuilder}.
+ * <P>
+ *   The cache then has a heap tier caching the mappings read from the file, and rejects all mutations. Its key and
+ *   value serializers must read what the serializers given to the builder wrote.
+ * </P>
+ */
+public class MappedReadOnlyStoreConfiguration implements ServiceConfiguration<MappedReadOnlyStore.Provider> {
+
+  private final File file;
+
+  public MappedReadOnlyStoreConfiguration(File file) {
+    if (file == null) {
+      throw new NullPointerException("File cannot be null");
+    }
+    this.file = file;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  @Override
+  public Class<MappedReadOnlyStore.Provider> getServiceType() {
+    return MappedReadOnlyStore.Provider.class;
+  }
+}
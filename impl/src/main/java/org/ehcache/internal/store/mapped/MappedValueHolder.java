@@ -0,0 +1,44 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache.internal.store.mapped;
+
+import org.ehcache.spi.cache.AbstractValueHolder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Value holder of a mapping read from a mapped file, which never expires.
+ */
+final class MappedValueHolder<V> extends AbstractValueHolder<V> {
+
+  private final V value;
+
+  MappedValueHolder(long id, V value, long creationTime) {
+    super(id, creationTime);
+    this.value = value;
+  }
+
+  @Override
+  protected TimeUnit nativeTimeUnit() {
+    return TimeUnit.MILLISECONDS;
+  }
+
+  @Override
+  public V value() {
+    return value;
+  }
+}
@@ -16,11 +16,18 @@
 
 package org.ehcache.internal.store.offheap;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -32,13 +39,18 @@ import org.ehcache.events.StoreEventListener;
 import org.ehcache.exceptions.CacheAccessException;
 import org.ehcache.expiry.Duration;
 import org.ehcache.expiry.Expiry;
+import org.ehcache.function.Aggregator;
 import org.ehcache.function.BiFunction;
 import org.ehcache.function.Function;
 import org.ehcache.function.NullaryFunction;
 import org.ehcache.function.Predicate;
 import org.ehcache.internal.TimeSource;
+import org.ehcache.internal.concurrent.ForkJoinPool;
+import org.ehcache.internal.concurrent.ParallelTasks;
+import org.ehcache.internal.store.BulkComputeConfiguration;
 import org.ehcache.internal.store.offheap.factories.EhcacheSegmentFactory;
 import org.ehcache.spi.cache.CacheStoreHelper;
+import org.ehcache.spi.cache.ScannableStore;
 import org.ehcache.spi.cache.Store;
 import org.ehcache.spi.cache.tiering.AuthoritativeTier;
 import org.ehcache.spi.cache.tiering.CachingTier;
@@ -49,11 +61,17 @@ import org.terracotta.offheapstore.exceptions.OversizeMappingException;
 import static org.terracotta.statistics.StatisticBuilder.operation;
 import org.terracotta.statistics.observer.OperationObserver;
 
-public abstract class AbstractOffHeapStore<K, V> implements AuthoritativeTier<K, V>, LowerCachingTier<K, V> {
+public abstract class AbstractOffHeapStore<K, V> implements AuthoritativeTier<K, V>, LowerCachingTier<K, V>, ScannableStore<K, V> {
+
+  // id of the value holders computed while recovering, that never get installed
+  private static final long DETACHED_ID = -1L;
 
   private final Class<K> keyType;
   private final Class<V> valueType;
   private final TimeSource timeSource;
+  private final int bulkComputeBatchSize;
+  private final int bulkComputeParallelism;
+  private final int bulkComputeParallelThreshold;
 
   private final Expiry<? super K, ? super V> expiry;
 
@@ -62,17 +80,28 @@ public abstract class AbstractOffHeapStore<K, V> implements AuthoritativeTier<K,
   private final OperationObserver<StoreOperationOutcomes.RemoveOutcome> removeOperationObserver;
   private final OperationObserver<StoreOperationOutcomes.EvictionOutcome> evictionObserver;
 
+  private final ConcurrentMap<K, CountDownLatch> pendingLoads = new ConcurrentHashMap<K, CountDownLatch>();
+
+  private volatile ForkJoinPool bulkComputePool;
+
   private volatile Callable<Void> valve;
   private volatile StoreEventListener<K, V> eventListener = CacheEvents.nullStoreEventListener();
   protected BackingMapEvictionListener<K, V> mapEvictionListener;
   private volatile CachingTier.InvalidationListener<K, V> invalidationListener;
 
   public AbstractOffHeapStore(String statisticsTag, Configuration<K, V> config, TimeSource timeSource) {
+    this(statisticsTag, config, timeSource, new BulkComputeConfiguration());
+  }
+
+  public AbstractOffHeapStore(String statisticsTag, Configuration<K, V> config, TimeSource timeSource, BulkComputeConfiguration bulkComputeConfig) {
     keyType = config.getKeyType();
     valueType = config.getValueType();
     expiry = config.getExpiry();
 
     this.timeSource = timeSource;
+    this.bulkComputeBatchSize = bulkComputeConfig.batchSize();
+    this.bulkComputeParallelism = bulkComputeConfig.parallelism();
+    this.bulkComputeParallelThreshold = bulkComputeConfig.parallelThreshold();
 
     this.getOperationObserver = operation(StoreOperationOutcomes.GetOutcome.class).of(this).named("get").tag(statisticsTag).build();
     this.putOperationObserver = operation(StoreOperationOutcomes.PutOutcome.class).of(this).named("put").tag(statisticsTag).build();
@@ -86,6 +115,10 @@ public abstract class AbstractOffHeapStore<K, V> implements AuthoritativeTier<K,
   public Store.ValueHolder<V> get(K key) {
     checkKey(key);
     getOperationObserver.begin();
+    if (isRecovering() || isDefinitelyAbsent(key)) {
+      getOperationObserver.end(StoreOperationOutcomes.GetOutcome.MISS);
+      return null;
+    }
 
     Store.ValueHolder<V> result = internalGet(key, true);
     if (result == null) {
@@ -120,7 +153,7 @@ public abstract class AbstractOffHeapStore<K, V> implements AuthoritativeTier<K,
   @Override
   public boolean containsKey(K key) {
     checkKey(key);
-    return internalGet(key, false) != null;
+    return !isRecovering() && !isDefinitelyAbsent(key) && internalGet(key, false) != null;
   }
 
   @Override
@@ -135,6 +168,7 @@ public abstract class AbstractOffHeapStore<K, V> implements AuthoritativeTier<K,
         backingMap().compute(key, new BiFunction<K, OffHeapValueHolder<V>, OffHeapValueHolder<V>>() {
           @Override
           public OffHeapValueHolder<V> apply(K mappedKey, OffHeapValueHolder<V> mappedValue) {
+            checkNoPendingLoad(mappedKey, mappedValue);
             if (mappedValue != null && mappedValue.isExpired(now, TimeUnit.MILLISECONDS)) {
               mappedValue = null;
             }
@@ -147,6 +181,8 @@ public abstract class AbstractOffHeapStore<K, V> implements AuthoritativeTier<K,
           }
         }, false);
         return;
+      } catch (PendingLoadException e) {
+        awaitLoad(e.pendingLoad);
       } catch (OversizeMappingException ex) {
         handleOversizeMappingException(key, ex);
       }
@@ -165,6 +201,7 @@ public abstract class AbstractOffHeapStore<K, V> implements AuthoritativeTier<K,
         backingMap().compute(key, new BiFunction<K, OffHeapValueHolder<V>, OffHeapValueHolder<V>>() {
           @Override
           public OffHeapValueHolder<V> apply(K mappedKey, OffHeapValueHolder<V> mappedValue) {
+            checkNoPendingLoad(mappedKey, mappedValue);
             long now = timeSource.getTimeMillis();
 
             if (mappedValue == null || mappedValue.isExpired(now, TimeUnit.MILLISECONDS)) {
@@ -179,6 +216,8 @@ public abstract class AbstractOffHeapStore<K, V> implements AuthoritativeTier<K,
           }
         }, false);
         return returnValue.get();
+      } catch (PendingLoadException e) {
+        awaitLoad(e.pendingLoad);
       } catch (OversizeMappingException ex) {
         handleOversizeMappingException(key, ex);
       }
@@ -186,7 +225,7 @@ public abstract class AbstractOffHeapStore<K, V> implements AuthoritativeTier<K,
   }
 
   @Override
-  public void remove(K key) {
+  public void remove(K key) throws CacheAccessException {
     checkKey(key);
     removeOperationObserver.begin();
     try {
@@ -197,7 +236,7 @@ public abstract class AbstractOffHeapStore<K, V> implements AuthoritativeTier<K,
   }
 
   @Override
-  public boolean remove(final K key, final V value) throws NullPointerException {
+  public boolean remove(final K key, final V value) throws NullPointerException, CacheAccessException {
     checkKey(key);
     checkValue(value);
 
@@ -322,11 +361,16 @@ public abstract class AbstractOffHeapStore<K, V> implements AuthoritativeTier<K,
 
   @Override
   public ValueHolder<V> compute(final K key, final BiFunction<? super K, ? super V, ? extends V> mappingFunction, final NullaryFunction<Boolean> replaceEqual) throws CacheAccessException {
+    return internalCompute(key, mappingFunction, replaceEqual);
+  }
+
+  private ValueHolder<V> internalCompute(final K key, final BiFunction<? super K, ? super V, ? extends V> mappingFunction, final NullaryFunction<Boolean> replaceEqual) throws CacheAccessException {
     checkKey(key);
 
     BiFunction<K, OffHeapValueHolder<V>, OffHeapValueHolder<V>> computeFunction = new BiFunction<K, OffHeapValueHolder<V>, OffHeapValueHolder<V>>() {
       @Override
       public OffHeapValueHolder<V> apply(K mappedKey, OffHeapValueHolder<V> mappedValue) {
+        checkNoPendingLoad(mappedKey, mappedValue);
         long now = timeSource.getTimeMillis();
         V existingValue = null;
         if (mappedValue == null || mappedValue.isExpired(now, TimeUnit.MILLISECONDS)) {
@@ -360,6 +404,8 @@ public abstract class AbstractOffHeapStore<K, V> implements AuthoritativeTier<K,
       try {
         // TODO review as computeFunction can have side effects
         return backingMap().compute(key, computeFunction, false);
+      } catch (PendingLoadException e) {
+        awaitLoad(e.pendingLoad);
       } catch (OversizeMappingException e) {
         handleOversizeMappingException(key, e);
       }
@@ -371,27 +417,72 @@ public abstract class AbstractOffHeapStore<K, V> implements AuthoritativeTier<K,
     return internalComputeIfAbsent(key, mappingFunction, false);
   }
 
-  private Store.ValueHolder<V> internalComputeIfAbsent(final K key, final Function<? super K, ? extends V> mappingFunction, boolean fault) throws CacheAccessException {
+  /**
+   * Runs the mapping function outside of the segment lock.
+   * <P>
+   *   A miss registers a pending load for the key while holding the segment lock. Concurrent callers for the same key
+   *   then wait for that load and look the key up again, and writers that would create the mapping wait for it too,
+   *   which keeps the operation atomic with respect to them.
+   * </P>
+   */
+  private Store.ValueHolder<V> internalComputeIfAbsent(final K key, final Function<? super K, ? extends V> mappingFunction, final boolean fault) throws CacheAccessException {
     checkKey(key);
+    if (isRecovering()) {
+      // behave as empty without waiting for the backing map: serve the computed value, but don't install it
+      V computedValue = mappingFunction.apply(key);
+      if (computedValue == null) {
+        return null;
+      }
+      checkValue(computedValue);
+      return newCreateValueHolder(DETACHED_ID, key, computedValue, timeSource.getTimeMillis());
+    }
 
-    BiFunction<K, OffHeapValueHolder<V>, OffHeapValueHolder<V>> computeFunction = new BiFunction<K, OffHeapValueHolder<V>, OffHeapValueHolder<V>>() {
-      @Override
-      public OffHeapValueHolder<V> apply(K mappedKey, OffHeapValueHolder<V> mappedValue) {
-        long now = timeSource.getTimeMillis();
-        if (mappedValue == null || mappedValue.isExpired(now, TimeUnit.MILLISECONDS)) {
-          if (mappedValue != null) {
+    while (true) {
+      final CountDownLatch load = new CountDownLatch(1);
+      final AtomicReference<CountDownLatch> pending = new AtomicReference<CountDownLatch>();
+      ValueHolder<V> present = backingMap().compute(key, new BiFunction<K, OffHeapValueHolder<V>, OffHeapValueHolder<V>>() {
+        @Override
+        public OffHeapValueHolder<V> apply(K mappedKey, OffHeapValueHolder<V> mappedValue) {
+          long now = timeSource.getTimeMillis();
+          if (mappedValue != null && mappedValue.isExpired(now, TimeUnit.MILLISECONDS)) {
             eventListener.onExpiration(mappedKey, mappedValue);
+            mappedValue = null;
           }
-          V computedValue = mappingFunction.apply(mappedKey);
-          if (computedValue == null) {
+          if (mappedValue == null) {
+            pending.set(pendingLoads.putIfAbsent(mappedKey, load));
             return null;
           } else {
-            checkValue(computedValue);
-            return newCreateValueHolder(mappedKey, computedValue, now);
+            setAccessTimeAndExpiry(mappedKey, mappedValue, now);
+            return mappedValue;
           }
+        }
+      }, fault);
+
+      if (present != null) {
+        return present;
+      } else if (pending.get() != null) {
+        awaitLoad(pending.get());
+      } else {
+        try {
+          return installLoaded(key, mappingFunction.apply(key), fault);
+        } finally {
+          pendingLoads.remove(key, load);
+          load.countDown();
+        }
+      }
+    }
+  }
+
+  private Store.ValueHolder<V> installLoaded(K key, final V computedValue, boolean fault) throws CacheAccessException {
+    BiFunction<K, OffHeapValueHolder<V>, OffHeapValueHolder<V>> computeFunction = new BiFunction<K, OffHeapValueHolder<V>, OffHeapValueHolder<V>>() {
+      @Override
+      public OffHeapValueHolder<V> apply(K mappedKey, OffHeapValueHolder<V> mappedValue) {
+        // writers wait for the pending load, so the mapping is still absent
+        if (computedValue == null) {
+          return null;
         } else {
-          setAccessTimeAndExpiry(mappedKey, mappedValue, now);
-          return mappedValue;
+          checkValue(computedValue);
+          return newCreateValueHolder(mappedKey, computedValue, timeSource.getTimeMillis());
         }
       }
     };
@@ -405,6 +496,46 @@ public abstract class AbstractOffHeapStore<K, V> implements AuthoritativeTier<K,
     }
   }
 
+  /**
+   * Called under the segment lock by writers that could create a mapping, to have them wait for a pending load of it.
+   */
+  private void checkNoPendingLoad(K key, OffHeapValueHolder<V> mappedValue) {
+    if (mappedValue == null) {
+      CountDownLatch pendingLoad = pendingLoads.get(key);
+      if (pendingLoad != null) {
+        throw new PendingLoadException(pendingLoad);
+      }
+    }
+  }
+
+  private static void awaitLoad(CountDownLatch pendingLoad) throws CacheAccessException {
+    try {
+      pendingLoad.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CacheAccessException(e);
+    }
+  }
+
+  /**
+   * Unwinds a write out of the segment lock, so that it can wait for a pending load of the same key.
+   */
+  private static final class PendingLoadException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient CountDownLatch pendingLoad;
+
+    PendingLoadException(CountDownLatch pendingLoad) {
+      this.pendingLoad = pendingLoad;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+
   @Override
   public Store.ValueHolder<V> computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) throws CacheAccessException {
     return computeIfPresent(key, remappingFunction, REPLACE_EQUALS_TRUE);
@@ -455,7 +586,17 @@ public abstract class AbstractOffHeapStore<K, V> implements AuthoritativeTier<K,
   }
 
   @Override
-  public Map<K, ValueHolder<V>> bulkCompute(Set<? extends K> keys, final Function<Iterable<? extends Map.Entry<? extends K, ? extends V>>, Iterable<? extends Map.Entry<? extends K, ? extends V>>> remappingFunction, NullaryFunction<Boolean> replaceEqual) throws CacheAccessException {
+  public Map<K, ValueHolder<V>> bulkCompute(Set<? extends K> keys, final Function<Iterable<? extends Map.Entry<? extends K, ? extends V>>, Iterable<? extends Map.Entry<? extends K, ? extends V>>> remappingFunction, final NullaryFunction<Boolean> replaceEqual) throws CacheAccessException {
+    Map<K, ValueHolder<V>> result = inParallel(keys, new PartitionOperation<K, V>() {
+      @Override
+      public Map<K, ValueHolder<V>> apply(Set<K> partition) throws CacheAccessException {
+        return bulkComputePartition(partition, remappingFunction, replaceEqual);
+      }
+    });
+    return result != null ? result : bulkComputePartition(keys, remappingFunction, replaceEqual);
+  }
+
+  private Map<K, ValueHolder<V>> bulkComputePartition(Set<? extends K> keys, final Function<Iterable<? extends Map.Entry<? extends K, ? extends V>>, Iterable<? extends Map.Entry<? extends K, ? extends V>>> remappingFunction, NullaryFunction<Boolean> replaceEqual) throws CacheAccessException {
     Map<K, ValueHolder<V>> result = new HashMap<K, ValueHolder<V>>();
     for (K key : keys) {
       checkKey(key);
@@ -489,7 +630,8 @@ public abstract class AbstractOffHeapStore<K, V> implements AuthoritativeTier<K,
           }
         }
       };
-      ValueHolder<V> computed = compute(key, biFunction, replaceEqual);
+      // not the overridable compute, so that subclasses can make the whole bulk operation durable at once
+      ValueHolder<V> computed = internalCompute(key, biFunction, replaceEqual);
       result.put(key, computed);
     }
     return result;
@@ -497,32 +639,214 @@ public abstract class AbstractOffHeapStore<K, V> implements AuthoritativeTier<K,
 
   @Override
   public Map<K, ValueHolder<V>> bulkComputeIfAbsent(Set<? extends K> keys, final Function<Iterable<? extends K>, Iterable<? extends Map.Entry<? extends K, ? extends V>>> mappingFunction) throws CacheAccessException {
+    return internalBulkComputeIfAbsent(keys, mappingFunction, false);
+  }
+
+  @Override
+  public Map<K, ValueHolder<V>> bulkComputeIfAbsentAndFault(Set<? extends K> keys, final Function<Iterable<? extends K>, Iterable<? extends Map.Entry<? extends K, ? extends V>>> mappingFunction) throws CacheAccessException {
+    return internalBulkComputeIfAbsent(keys, mappingFunction, true);
+  }
+
+  private Map<K, ValueHolder<V>> internalBulkComputeIfAbsent(Set<? extends K> keys, final Function<Iterable<? extends K>, Iterable<? extends Map.Entry<? extends K, ? extends V>>> mappingFunction, final boolean fault) throws CacheAccessException {
+    Map<K, ValueHolder<V>> result = inParallel(keys, new PartitionOperation<K, V>() {
+      @Override
+      public Map<K, ValueHolder<V>> apply(Set<K> partition) throws CacheAccessException {
+        return bulkComputeIfAbsentPartition(partition, mappingFunction, fault);
+      }
+    });
+    return result != null ? result : bulkComputeIfAbsentPartition(keys, mappingFunction, fault);
+  }
+
+  private Map<K, ValueHolder<V>> bulkComputeIfAbsentPartition(Set<? extends K> keys, final Function<Iterable<? extends K>, Iterable<? extends Map.Entry<? extends K, ? extends V>>> mappingFunction, boolean fault) throws CacheAccessException {
     Map<K, ValueHolder<V>> result = new HashMap<K, ValueHolder<V>>();
+
+    // collect the absent keys of all segments first, so that the mapping function gets called once per batch rather than once per key
+    List<K> absentKeys = new ArrayList<K>();
     for (K key : keys) {
       checkKey(key);
-      Function<K, V> function = new Function<K, V>() {
+      ValueHolder<V> present;
+      if (fault) {
+        present = getAndFault(key);
+      } else {
+        present = isRecovering() || isDefinitelyAbsent(key) ? null : internalGet(key, true);
+      }
+      if (present == null) {
+        absentKeys.add(key);
+      } else {
+        result.put(key, present);
+      }
+    }
+
+    for (int from = 0; from < absentKeys.size(); from += bulkComputeBatchSize) {
+      List<K> batch = absentKeys.subList(from, Math.min(from + bulkComputeBatchSize, absentKeys.size()));
+      Map<K, V> computed = new HashMap<K, V>();
+      for (Map.Entry<? extends K, ? extends V> entry : mappingFunction.apply(batch)) {
+        checkKey(entry.getKey());
+        computed.put(entry.getKey(), entry.getValue());
+      }
+
+      for (K key : batch) {
+        final V computedValue = computed.get(key);
+        // a mapping installed concurrently while the batch was computed wins over the computed one
+        result.put(key, internalComputeIfAbsent(key, new Function<K, V>() {
+          @Override
+          public V apply(K k) {
+            return computedValue;
+          }
+        }, fault));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Starts the pool running the segment-parallel bulk operations, if these are enabled. Called when the store gets
+   * initialized.
+   */
+  protected void startBulkComputePool() {
+    if (bulkComputeParallelism > 1) {
+      bulkComputePool = new ForkJoinPool(bulkComputeParallelism);
+    }
+  }
+
+  /**
+   * Shuts the pool started by {@link #startBulkComputePool()} down. Called when the store gets closed.
+   */
+  protected void stopBulkComputePool() {
+    ForkJoinPool pool = bulkComputePool;
+    if (pool != null) {
+      bulkComputePool = null;
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Splits the keys by backing map segment, and applies the operation to all partitions concurrently.
+   *
+   * @return the merged results of all partitions, or {@code null} if the operation is better run on the calling thread
+   */
+  private Map<K, ValueHolder<V>> inParallel(Set<? extends K> keys, final PartitionOperation<K, V> operation) throws CacheAccessException {
+    ForkJoinPool pool = bulkComputePool;
+    if (pool == null || keys.size() < bulkComputeParallelThreshold) {
+      return null;
+    }
+    EhcacheOffHeapBackingMap<K, OffHeapValueHolder<V>> map = backingMap();
+    Map<Integer, Set<K>> partitions = new HashMap<Integer, Set<K>>();
+    for (K key : keys) {
+      checkKey(key);
+      Integer index = map.segmentIndexFor(key);
+      Set<K> partition = partitions.get(index);
+      if (partition == null) {
+        partition = new HashSet<K>();
+        partitions.put(index, partition);
+      }
+      partition.add(key);
+    }
+    if (partitions.size() < 2) {
+      return null;
+    }
+
+    List<Callable<Map<K, ValueHolder<V>>>> tasks = new ArrayList<Callable<Map<K, ValueHolder<V>>>>(partitions.size());
+    for (final Set<K> partition : partitions.values()) {
+      tasks.add(new Callable<Map<K, ValueHolder<V>>>() {
         @Override
-        public V apply(K k) {
-          java.util.Iterator<? extends Map.Entry<? extends K, ? extends V>> iterator = mappingFunction.apply(Collections.singleton(k)).iterator();
-          Map.Entry<? extends K, ? extends V> result = iterator.next();
-          if (result != null) {
-            checkKey(result.getKey());
-            return result.getValue();
-          } else {
-            return null;
+        public Map<K, ValueHolder<V>> call() throws CacheAccessException {
+          return operation.apply(partition);
+        }
+      });
+    }
+    try {
+      Map<K, ValueHolder<V>> result = new HashMap<K, ValueHolder<V>>();
+      for (Map<K, ValueHolder<V>> partitionResult : ParallelTasks.invokeAll(pool, tasks)) {
+        result.putAll(partitionResult);
+      }
+      return result;
+    } catch (ExecutionException e) {
+      throw partitionFailure(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CacheAccessException(e);
+    }
+  }
+
+  private interface PartitionOperation<K, V> {
+    Map<K, ValueHolder<V>> apply(Set<K> partition) throws CacheAccessException;
+  }
+
+  private static CacheAccessException partitionFailure(ExecutionException e) throws CacheAccessException {
+    ParallelTasks.rethrowCause(e, CacheAccessException.class);
+    return new CacheAccessException(e.getCause());
+  }
+
+  @Override
+  public <A> A scan(final Aggregator<? super K, ? super V, A> aggregator, final boolean keysOnly) throws CacheAccessException {
+    List<Segment<K, OffHeapValueHolder<V>>> segments = backingMap().getSegments();
+    A result = aggregator.identity();
+    ForkJoinPool pool = bulkComputePool;
+    if (pool == null || segments.size() < 2) {
+      for (Segment<K, OffHeapValueHolder<V>> segment : segments) {
+        result = aggregator.combine(result, scanSegment(segment, aggregator, keysOnly));
+      }
+      return result;
+    }
+
+    List<Callable<A>> tasks = new ArrayList<Callable<A>>(segments.size());
+    for (final Segment<K, OffHeapValueHolder<V>> segment : segments) {
+      tasks.add(new Callable<A>() {
+        @Override
+        public A call() {
+          return scanSegment(segment, aggregator, keysOnly);
+        }
+      });
+    }
+    try {
+      for (A segmentResult : ParallelTasks.invokeAll(pool, tasks)) {
+        result = aggregator.combine(result, segmentResult);
+      }
+      return result;
+    } catch (ExecutionException e) {
+      throw partitionFailure(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CacheAccessException(e);
+    }
+  }
+
+  /**
+   * Folds the mappings of a segment under its read lock, decoding the values only if needed.
+   */
+  private <A> A scanSegment(Segment<K, OffHeapValueHolder<V>> segment, Aggregator<? super K, ? super V, A> aggregator, boolean keysOnly) {
+    A accumulator = aggregator.identity();
+    long now = timeSource.getTimeMillis();
+    Lock lock = segment.readLock();
+    lock.lock();
+    try {
+      if (keysOnly) {
+        for (K key : segment.keySet()) {
+          accumulator = aggregator.accumulate(accumulator, key, null);
+        }
+      } else {
+        for (Map.Entry<K, OffHeapValueHolder<V>> entry : segment.entrySet()) {
+          OffHeapValueHolder<V> valueHolder = entry.getValue();
+          if (!valueHolder.isExpired(now, TimeUnit.MILLISECONDS)) {
+            accumulator = aggregator.accumulate(accumulator, entry.getKey(), valueHolder.value());
           }
         }
-      };
-      ValueHolder<V> computed = computeIfAbsent(key, function);
-      result.put(key, computed);
+      }
+    } finally {
+      lock.unlock();
     }
-    return result;
+    return accumulator;
   }
 
   @Override
   public ValueHolder<V> getAndFault(K key) throws CacheAccessException {
     getOperationObserver.begin();
     checkKey(key);
+    if (isDefinitelyAbsent(key)) {
+      getOperationObserver.end(StoreOperationOutcomes.GetOutcome.MISS);
+      return null;
+    }
     ValueHolder<V> mappedValue = backingMap().getAndPin(key);
 
     if(mappedValue != null && mappedValue.isExpired(timeSource.getTimeMillis(), TimeUnit.MILLISECONDS)) {
@@ -548,6 +872,9 @@ public abstract class AbstractOffHeapStore<K, V> implements AuthoritativeTier<K,
   @Override
   public boolean flush(K key, final ValueHolder<V> valueFlushed) {
     checkKey(key);
+    if (isRecovering()) {
+      return false;
+    }
     return backingMap().computeIfPinned(key, new BiFunction<K, OffHeapValueHolder<V>, OffHeapValueHolder<V>>() {
       @Override
       public OffHeapValueHolder<V> apply(K k, OffHeapValueHolder<V> valuePresent) {
@@ -596,6 +923,27 @@ public abstract class AbstractOffHeapStore<K, V> implements AuthoritativeTier<K,
     });
   }
 
+  @Override
+  public void bulkInvalidate(Set<? extends K> keys) throws CacheAccessException {
+    computeIfPresentAll(keys, new BiFunction<K, OffHeapValueHolder<V>, OffHeapValueHolder<V>>() {
+      @Override
+      public OffHeapValueHolder<V> apply(final K k, final OffHeapValueHolder<V> present) {
+        notifyInvalidation(k, present);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Applies the function to the present mappings of all the given keys. Stores whose backing map can lock a segment
+   * once for all of its keys override this.
+   */
+  protected void computeIfPresentAll(Set<? extends K> keys, BiFunction<K, OffHeapValueHolder<V>, OffHeapValueHolder<V>> mappingFunction) {
+    for (K key : keys) {
+      backingMap().computeIfPresent(key, mappingFunction);
+    }
+  }
+
   @Override
   public void invalidate(K key, final NullaryFunction<K> function) throws CacheAccessException {
     backingMap().compute(key, new BiFunction<K, OffHeapValueHolder<V>, OffHeapValueHolder<V>>() {
@@ -708,15 +1056,19 @@ public abstract class AbstractOffHeapStore<K, V> implements AuthoritativeTier<K,
   }
 
   private OffHeapValueHolder<V> newCreateValueHolder(K key, V value, long now) {
+    return newCreateValueHolder(backingMap().nextIdFor(key), key, value, now);
+  }
+
+  private OffHeapValueHolder<V> newCreateValueHolder(long id, K key, V value, long now) {
     Duration duration = expiry.getExpiryForCreation(key, value);
     if (Duration.ZERO.equals(duration)) {
       return null;
     }
 
     if (duration.isForever()) {
-      return new OffHeapValueHolder<V>(backingMap().nextIdFor(key), value, now, OffHeapValueHolder.NO_EXPIRE);
+      return new OffHeapValueHolder<V>(id, value, now, OffHeapValueHolder.NO_EXPIRE);
     } else {
-      return new OffHeapValueHolder<V>(backingMap().nextIdFor(key), value, now, safeExpireTime(now, duration));
+      return new OffHeapValueHolder<V>(id, value, now, safeExpireTime(now, duration));
     }
   }
 
@@ -737,7 +1089,7 @@ public abstract class AbstractOffHeapStore<K, V> implements AuthoritativeTier<K,
           lock.lock();
           try {
             for (K keyToEvict : segment.keySet()) {
-              if (backingMap().getAndSetMetadata(keyToEvict, EhcacheSegmentFactory.EhcacheSegment.VETOED, 0) == EhcacheSegmentFactory.EhcacheSegment.VETOED) {
+              if (segment.getAndSetMetadata(keyToEvict, EhcacheSegmentFactory.EhcacheSegment.VETOED, 0) == EhcacheSegmentFactory.EhcacheSegment.VETOED) {
                 return;
               }
             }
@@ -801,6 +1153,29 @@ public abstract class AbstractOffHeapStore<K, V> implements AuthoritativeTier<K,
 
   protected abstract EhcacheOffHeapBackingMap<K, OffHeapValueHolder<V>> backingMap();
 
+  /**
+   * Tells whether the backing map is still being recovered, or failed to be.
+   * <P>
+   *   The store then behaves as empty without waiting for the backing map: lookups miss, and computed values are
+   *   returned without being installed. Mutations are left to the backing map.
+   * </P>
+   *
+   * @return {@code true} if the backing map is not available yet
+   */
+  protected boolean isRecovering() {
+    return false;
+  }
+
+  /**
+   * Lets lookups of keys known to be absent return without reaching the backing map.
+   *
+   * @param key the key looked up
+   * @return {@code true} only if the store holds no mapping for the key
+   */
+  protected boolean isDefinitelyAbsent(K key) {
+    return false;
+  }
+
   protected static <K, V> Predicate<Map.Entry<K, OffHeapValueHolder<V>>> wrap(EvictionVeto<? super K, ? super V> delegate, TimeSource timeSource) {
     return new OffHeapEvictionVetoWrapper<K, V>(delegate, timeSource);
   }
@@ -822,11 +1197,15 @@ public abstract class AbstractOffHeapStore<K, V> implements AuthoritativeTier<K,
     }
   }
 
-  class OffHeapStoreIterator implements Iterator<Cache.Entry<K, ValueHolder<V>>> {
+  protected class OffHeapStoreIterator implements Iterator<Cache.Entry<K, ValueHolder<V>>> {
     private final java.util.Iterator<Map.Entry<K, OffHeapValueHolder<V>>> mapIterator;
 
     OffHeapStoreIterator() {
-      mapIterator = backingMap().entrySet().iterator();
+      this(backingMap().entrySet().iterator());
+    }
+
+    public OffHeapStoreIterator(java.util.Iterator<Map.Entry<K, OffHeapValueHolder<V>>> mapIterator) {
+      this.mapIterator = mapIterator;
     }
 
     @Override
@@ -24,7 +24,10 @@ import org.terracotta.offheapstore.concurrent.AbstractConcurrentOffHeapCache;
 import org.terracotta.offheapstore.pinning.PinnableSegment;
 import org.terracotta.offheapstore.util.Factory;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 
 /**
  * EhcacheConcurrentOffHeapClockCache
@@ -33,7 +36,7 @@ public class EhcacheConcurrentOffHeapClockCache<K, V> extends AbstractConcurrent
 
   private final AtomicLong[] counters;
 
-  protected EhcacheConcurrentOffHeapClockCache(Factory<? extends PinnableSegment<K, V>> segmentFactory, int ssize) {
+  public EhcacheConcurrentOffHeapClockCache(Factory<? extends PinnableSegment<K, V>> segmentFactory, int ssize) {
     super(segmentFactory, ssize);
     counters = new AtomicLong[segments.length];
     for(int i = 0; i < segments.length; i++) {
@@ -59,7 +62,44 @@ public class EhcacheConcurrentOffHeapClockCache<K, V> extends AbstractConcurrent
     return segment.computeIfPinned(key, remappingFunction, pinningFunction);
   }
 
+  /**
+   * Applies the function to the present mappings of all the given keys, locking each segment once for all of its keys.
+   *
+   * @param keys the keys
+   * @param mappingFunction the function, as for {@link #computeIfPresent(Object, BiFunction)}
+   */
+  public void computeIfPresentAll(Iterable<? extends K> keys, BiFunction<K, V, V> mappingFunction) {
+    List<List<K>> batches = new ArrayList<List<K>>(segments.length);
+    for (int i = 0; i < segments.length; i++) {
+      batches.add(new ArrayList<K>());
+    }
+    for (K key : keys) {
+      batches.get(getIndexFor(key.hashCode())).add(key);
+    }
+    for (int i = 0; i < segments.length; i++) {
+      List<K> batch = batches.get(i);
+      if (batch.isEmpty()) {
+        continue;
+      }
+      EhcacheSegmentFactory.EhcacheSegment<K, V> segment = (EhcacheSegmentFactory.EhcacheSegment) segments[i];
+      Lock lock = segment.writeLock();
+      lock.lock();
+      try {
+        for (K key : batch) {
+          segment.computeIfPresent(key, mappingFunction);
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
   public long nextIdFor(final K key) {
     return counters[getIndexFor(key.hashCode())].getAndIncrement();
   }
+
+  @Override
+  public int segmentIndexFor(K key) {
+    return getIndexFor(key.hashCode());
+  }
 }
@@ -33,6 +33,11 @@ public interface EhcacheOffHeapBackingMap<K, V> extends ConcurrentMap<K, V> {
   
   long nextIdFor(K key);
 
+  /**
+   * Returns the index, in {@link #getSegments()}, of the segment holding the given key.
+   */
+  int segmentIndexFor(K key);
+
   V getAndPin(K key);
 
   Integer getAndSetMetadata(K key, int mask, int metadata);
@@ -21,9 +21,11 @@ import org.ehcache.config.ResourcePool;
 import org.ehcache.config.ResourceType;
 import org.ehcache.config.units.MemoryUnit;
 import org.ehcache.exceptions.CacheAccessException;
+import org.ehcache.function.BiFunction;
 import org.ehcache.function.Predicate;
 import org.ehcache.internal.TimeSource;
 import org.ehcache.internal.TimeSourceService;
+import org.ehcache.internal.store.BulkComputeConfiguration;
 import org.ehcache.internal.store.offheap.factories.EhcacheSegmentFactory;
 import org.ehcache.internal.store.offheap.portability.OffHeapValueHolderPortability;
 import org.ehcache.internal.store.offheap.portability.SerializerPortability;
@@ -54,6 +56,7 @@ import org.ehcache.config.EvictionVeto;
 import org.ehcache.function.Predicates;
 
 import static org.ehcache.internal.store.offheap.OffHeapStoreUtils.getBufferSource;
+import static org.ehcache.spi.ServiceLocator.findSingletonAmongst;
 
 /**
  * OffHeapStore
@@ -68,7 +71,11 @@ public class OffHeapStore<K, V> extends AbstractOffHeapStore<K, V> {
   private volatile EhcacheConcurrentOffHeapClockCache<K, OffHeapValueHolder<V>> map;
 
   public OffHeapStore(final Configuration<K, V> config, TimeSource timeSource, long sizeInBytes) {
-    super("local-offheap", config, timeSource);
+    this(config, timeSource, sizeInBytes, new BulkComputeConfiguration());
+  }
+
+  public OffHeapStore(final Configuration<K, V> config, TimeSource timeSource, long sizeInBytes, BulkComputeConfiguration bulkComputeConfig) {
+    super("local-offheap", config, timeSource, bulkComputeConfig);
     EvictionVeto<? super K, ? super V> veto = config.getEvictionVeto();
     if (veto != null) {
       evictionVeto = wrap(veto, timeSource);
@@ -108,6 +115,11 @@ public class OffHeapStore<K, V> extends AbstractOffHeapStore<K, V> {
     return map;
   }
 
+  @Override
+  protected void computeIfPresentAll(Set<? extends K> keys, BiFunction<K, OffHeapValueHolder<V>, OffHeapValueHolder<V>> mappingFunction) {
+    map.computeIfPresentAll(keys, mappingFunction);
+  }
+
   @ServiceDependencies({TimeSourceService.class, SerializationProvider.class})
   public static class Provider implements Store.Provider, AuthoritativeTier.Provider, LowerCachingTier.Provider {
 
@@ -128,9 +140,12 @@ public class OffHeapStore<K, V> extends AbstractOffHeapStore<K, V> {
         throw new IllegalArgumentException("OffHeapStore only supports resources with memory unit");
       }
       MemoryUnit unit = (MemoryUnit)offHeapPool.getUnit();
+      BulkComputeConfiguration bulkComputeConfig = findSingletonAmongst(BulkComputeConfiguration.class, (Object[]) serviceConfigs);
+      if (bulkComputeConfig == null) {
+        bulkComputeConfig = new BulkComputeConfiguration();
+      }
 
-
-      OffHeapStore<K, V> offHeapStore = new OffHeapStore<K, V>(storeConfig, timeSource, unit.toBytes(offHeapPool.getSize()));
+      OffHeapStore<K, V> offHeapStore = new OffHeapStore<K, V>(storeConfig, timeSource, unit.toBytes(offHeapPool.getSize()), bulkComputeConfig);
       createdStores.add(offHeapStore);
       return offHeapStore;
     }
@@ -143,7 +158,9 @@ public class OffHeapStore<K, V> extends AbstractOffHeapStore<K, V> {
       close((OffHeapStore)resource);
     }
 
-    static void close(final OffHeapStore resource) {EhcacheConcurrentOffHeapClockCache<Object, OffHeapValueHolder<Object>> localMap = resource.map;
+    static void close(final OffHeapStore resource) {
+      resource.stopBulkComputePool();
+      EhcacheConcurrentOffHeapClockCache<Object, OffHeapValueHolder<Object>> localMap = resource.map;
       if (localMap != null) {
         resource.map = null;
         localMap.destroy();
@@ -160,6 +177,7 @@ public class OffHeapStore<K, V> extends AbstractOffHeapStore<K, V> {
 
     static <K, V> void init(final OffHeapStore<K, V> resource) {
       resource.map = resource.createBackingMap(resource.sizeInBytes, resource.keySerializer, resource.valueSerializer, resource.evictionVeto);
+      resource.startBulkComputePool();
     }
 
     @Override
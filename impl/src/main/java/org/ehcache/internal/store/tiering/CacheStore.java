@@ -19,10 +19,14 @@ import org.ehcache.Cache;
 import org.ehcache.CacheConfigurationChangeListener;
 import org.ehcache.events.StoreEventListener;
 import org.ehcache.exceptions.CacheAccessException;
+import org.ehcache.function.Aggregator;
 import org.ehcache.function.BiFunction;
 import org.ehcache.function.Function;
 import org.ehcache.function.NullaryFunction;
 import org.ehcache.spi.ServiceProvider;
+import org.ehcache.spi.cache.CacheStoreHelper;
+import org.ehcache.spi.cache.RecoverableStore;
+import org.ehcache.spi.cache.ScannableStore;
 import org.ehcache.spi.cache.Store;
 import org.ehcache.spi.cache.tiering.AuthoritativeTier;
 import org.ehcache.spi.cache.tiering.CachingTier;
@@ -42,30 +46,42 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static org.ehcache.spi.ServiceLocator.findSingletonAmongst;
 
 /**
  * @author Ludovic Orban
  */
-public class CacheStore<K, V> implements Store<K, V> {
+public class CacheStore<K, V> implements Store<K, V>, RecoverableStore, ScannableStore<K, V> {
 
   private static final Logger LOG = LoggerFactory.getLogger(CacheStore.class);
 
-  private final AtomicReference<CachingTier<K, V>> cachingTierRef;
-  private final CachingTier<K, V> noopCachingTier;
+  private final AtomicReference<ClearEpoch<K>> clearEpoch = new AtomicReference<ClearEpoch<K>>();
+  private final ReentrantReadWriteLock clearLock = new ReentrantReadWriteLock();
   private final CachingTier<K, V> realCachingTier;
   private final AuthoritativeTier<K, V> authoritativeTier;
+  private final PromotionPolicy promotionPolicy;
 
   private final CacheStoreStatsSettings cacheStoreStatsSettings;
 
 
   public CacheStore(CachingTier<K, V> cachingTier, AuthoritativeTier<K, V> authoritativeTier) {
-    this.cachingTierRef = new AtomicReference<CachingTier<K, V>>(cachingTier);
+    this(cachingTier, authoritativeTier, null);
+  }
+
+  /**
+   * @param promotionPolicy the policy deciding which authoritative hits get faulted into the caching tier,
+   *                        {@code null} to fault them all
+   */
+  public CacheStore(CachingTier<K, V> cachingTier, AuthoritativeTier<K, V> authoritativeTier, PromotionPolicy promotionPolicy) {
+    this.promotionPolicy = promotionPolicy;
     this.authoritativeTier = authoritativeTier;
     this.realCachingTier = cachingTier;
-    this.noopCachingTier = new NoopCachingTier<K, V>(authoritativeTier);
 
 
     this.realCachingTier.setInvalidationListener(new CachingTier.InvalidationListener<K, V>() {
@@ -84,6 +100,14 @@ public class CacheStore<K, V> implements Store<K, V> {
 
   @Override
   public ValueHolder<V> get(final K key) throws CacheAccessException {
+    ClearEpoch<K> epoch = clearEpoch.get();
+    if (epoch != null) {
+      // the caching tier stays out of the way until the clear completes
+      return epoch.isWritten(key) ? authoritativeTier.get(key) : null;
+    }
+    if (promotionPolicy != null) {
+      return getWithPromotionPolicy(key);
+    }
     try {
       return cachingTier().getOrComputeIfAbsent(key, new Function<K, ValueHolder<V>>() {
         @Override
@@ -100,6 +124,40 @@ public class CacheStore<K, V> implements Store<K, V> {
     }
   }
 
+  private ValueHolder<V> getWithPromotionPolicy(final K key) throws CacheAccessException {
+    final AtomicBoolean invoked = new AtomicBoolean();
+    final AtomicReference<ValueHolder<V>> unpromoted = new AtomicReference<ValueHolder<V>>();
+    ValueHolder<V> valueHolder;
+    try {
+      valueHolder = cachingTier().getOrComputeIfAbsent(key, new Function<K, ValueHolder<V>>() {
+        @Override
+        public ValueHolder<V> apply(K key) {
+          invoked.set(true);
+          try {
+            if (promotionPolicy.promote(key)) {
+              return authoritativeTier.getAndFault(key);
+            }
+            // served from the authoritative tier, the caching tier computing no mapping
+            unpromoted.set(authoritativeTier.get(key));
+            return null;
+          } catch (CacheAccessException cae) {
+            throw new ComputationException(cae);
+          }
+        }
+      });
+    } catch (ComputationException ce) {
+      throw ce.getCacheAccessException();
+    }
+    if (valueHolder != null) {
+      return valueHolder;
+    }
+    if (invoked.get()) {
+      return unpromoted.get();
+    }
+    // another thread may have declined to promote the mapping we waited on, read it where it lives
+    return authoritativeTier.get(key);
+  }
+
   static class ComputationException extends RuntimeException {
     public ComputationException(CacheAccessException cause) {
       super(cause);
@@ -117,24 +175,32 @@ public class CacheStore<K, V> implements Store<K, V> {
 
   @Override
   public boolean containsKey(K key) throws CacheAccessException {
+    ClearEpoch<K> epoch = clearEpoch.get();
+    if (epoch != null) {
+      return epoch.isWritten(key) && authoritativeTier.containsKey(key);
+    }
     return authoritativeTier.containsKey(key);
   }
 
   @Override
   public void put(final K key, final V value) throws CacheAccessException {
+    beforeWrite(key);
     try {
       authoritativeTier.put(key, value);
     } finally {
+      afterWrite();
       cachingTier().invalidate(key);
     }
   }
 
   @Override
   public ValueHolder<V> putIfAbsent(K key, V value) throws CacheAccessException {
+    beforeWrite(key);
     ValueHolder<V> previous = null;
     try {
       previous = authoritativeTier.putIfAbsent(key, value);
     } finally {
+      afterWrite();
       if (previous == null) {
         cachingTier().invalidate(key);
       }
@@ -144,20 +210,24 @@ public class CacheStore<K, V> implements Store<K, V> {
 
   @Override
   public void remove(K key) throws CacheAccessException {
+    beforeWrite(key);
     try {
       authoritativeTier.remove(key);
     } finally {
+      afterWrite();
       cachingTier().invalidate(key);
     }
   }
 
   @Override
   public boolean remove(K key, V value) throws CacheAccessException {
+    beforeWrite(key);
     boolean removed = true;
       try {
         removed = authoritativeTier.remove(key, value);
         return removed;
       } finally {
+        afterWrite();
         if (removed) {
           cachingTier().invalidate(key);
         }
@@ -166,12 +236,14 @@ public class CacheStore<K, V> implements Store<K, V> {
 
   @Override
   public ValueHolder<V> replace(K key, V value) throws CacheAccessException {
+    beforeWrite(key);
     ValueHolder<V> previous = null;
     boolean exceptionThrown = true;
     try {
       previous = authoritativeTier.replace(key, value);
       exceptionThrown = false;
     } finally {
+      afterWrite();
       if (exceptionThrown || previous != null) {
         cachingTier().invalidate(key);
       }
@@ -181,10 +253,12 @@ public class CacheStore<K, V> implements Store<K, V> {
 
   @Override
   public boolean replace(K key, V oldValue, V newValue) throws CacheAccessException {
+    beforeWrite(key);
     boolean replaced = true;
     try {
       replaced = authoritativeTier.replace(key, oldValue, newValue);
     } finally {
+      afterWrite();
       if (replaced) {
         cachingTier().invalidate(key);
       }
@@ -192,39 +266,97 @@ public class CacheStore<K, V> implements Store<K, V> {
     return replaced;
   }
 
+  /**
+   * {@inheritDoc}
+   * <P>
+   *   The store is logically empty as soon as the clear begins: until the authoritative tier is physically cleared,
+   *   reads of keys not written since are answered without touching any tier, while writes wait for the physical
+   *   clear to complete so that it cannot wipe them.
+   * </P>
+   */
   @Override
   public void clear() throws CacheAccessException {
-    boolean interrupted = false;
-    while(!cachingTierRef.compareAndSet(realCachingTier, noopCachingTier)) {
-      synchronized (noopCachingTier) {
-        if(cachingTierRef.get() == noopCachingTier) {
-          try {
-            noopCachingTier.wait();
-          } catch (InterruptedException e) {
-            interrupted = true;
-          }
-        }
-      }
-    }
-    if(interrupted) {
-      Thread.currentThread().interrupt();
-    }
+    ClearEpoch<K> epoch = beginClear();
     try {
-      authoritativeTier.clear();
-    } finally {
+      // in-flight writes complete before the physical clear, wiping them being equivalent to ordering them before it
+      clearLock.writeLock().lock();
       try {
-        realCachingTier.clear();
+        authoritativeTier.clear();
       } finally {
-        if(!cachingTierRef.compareAndSet(noopCachingTier, realCachingTier)) {
-          throw new AssertionError("Something bad happened");
-        }
-        synchronized (noopCachingTier) {
-          noopCachingTier.notify();
+        clearLock.writeLock().unlock();
+      }
+    } finally {
+      if (epoch.leave()) {
+        try {
+          // reads bypass the caching tier for the whole epoch, so it only needs clearing once, on the way out
+          realCachingTier.clear();
+        } finally {
+          clearEpoch.compareAndSet(epoch, null);
         }
       }
     }
   }
 
+  private ClearEpoch<K> beginClear() {
+    while (true) {
+      ClearEpoch<K> current = clearEpoch.get();
+      if (current != null && current.join()) {
+        return current;
+      }
+      ClearEpoch<K> epoch = new ClearEpoch<K>();
+      if (clearEpoch.compareAndSet(current, epoch)) {
+        return epoch;
+      }
+    }
+  }
+
+  /**
+   * Waits for any clear in progress to physically complete, then holds it off until {@link #afterWrite()}.
+   *
+   * @return the current epoch, already cleared, or {@code null} if there is none
+   */
+  private ClearEpoch<K> awaitClear() {
+    if (clearLock.getReadHoldCount() > 0) {
+      // nested in another write of this thread, which any pending clear is already waiting for: it will wipe this one too
+      clearLock.readLock().lock();
+      ClearEpoch<K> epoch = clearEpoch.get();
+      return epoch != null && epoch.isCleared() ? epoch : null;
+    }
+    while (true) {
+      ClearEpoch<K> epoch = clearEpoch.get();
+      if (epoch != null) {
+        epoch.awaitCleared();
+      }
+      clearLock.readLock().lock();
+      epoch = clearEpoch.get();
+      if (epoch == null || epoch.isCleared()) {
+        return epoch;
+      }
+      // a clear began in the meantime
+      clearLock.readLock().unlock();
+    }
+  }
+
+  private void beforeWrite(K key) {
+    ClearEpoch<K> epoch = awaitClear();
+    if (epoch != null) {
+      epoch.written(key);
+    }
+  }
+
+  private void beforeWrite(Set<? extends K> keys) {
+    ClearEpoch<K> epoch = awaitClear();
+    if (epoch != null) {
+      for (K key : keys) {
+        epoch.written(key);
+      }
+    }
+  }
+
+  private void afterWrite() {
+    clearLock.readLock().unlock();
+  }
+
   @Override
   public void enableStoreEventNotifications(StoreEventListener<K, V> listener) {
     authoritativeTier.enableStoreEventNotifications(listener);
@@ -240,89 +372,148 @@ public class CacheStore<K, V> implements Store<K, V> {
     return authoritativeTier.iterator();
   }
 
+  @Override
+  public <A> A scan(Aggregator<? super K, ? super V, A> aggregator, boolean keysOnly) throws CacheAccessException {
+    if (authoritativeTier instanceof ScannableStore) {
+      return ((ScannableStore<K, V>) authoritativeTier).scan(aggregator, keysOnly);
+    }
+    return CacheStoreHelper.scan(authoritativeTier, aggregator, keysOnly);
+  }
+
   @Override
   public ValueHolder<V> compute(final K key, final BiFunction<? super K, ? super V, ? extends V> mappingFunction) throws CacheAccessException {
+    beforeWrite(key);
     try {
       return authoritativeTier.compute(key, mappingFunction);
     } finally {
+      afterWrite();
       cachingTier().invalidate(key);
     }
   }
 
   @Override
   public ValueHolder<V> compute(final K key, final BiFunction<? super K, ? super V, ? extends V> mappingFunction, final NullaryFunction<Boolean> replaceEqual) throws CacheAccessException {
+    beforeWrite(key);
     try {
       return authoritativeTier.compute(key, mappingFunction, replaceEqual);
     } finally {
+      afterWrite();
       cachingTier().invalidate(key);
     }
   }
 
   public ValueHolder<V> computeIfAbsent(final K key, final Function<? super K, ? extends V> mappingFunction) throws CacheAccessException {
+    // installing a mapping is a write, which the physical clear must not wipe
+    ClearEpoch<K> epoch = awaitClear();
     try {
-      return cachingTier().getOrComputeIfAbsent(key, new Function<K, ValueHolder<V>>() {
-        @Override
-        public ValueHolder<V> apply(K k) {
-          try {
-            return authoritativeTier.computeIfAbsentAndFault(k, mappingFunction);
-          } catch (CacheAccessException cae) {
-            throw new ComputationException(cae);
-          }
+      if (epoch != null) {
+        epoch.written(key);
+        try {
+          return authoritativeTier.computeIfAbsent(key, mappingFunction);
+        } finally {
+          cachingTier().invalidate(key);
         }
-      });
-    } catch (ComputationException ce) {
-      throw ce.getCacheAccessException();
+      }
+      try {
+        return cachingTier().getOrComputeIfAbsent(key, new Function<K, ValueHolder<V>>() {
+          @Override
+          public ValueHolder<V> apply(K k) {
+            try {
+              return authoritativeTier.computeIfAbsentAndFault(k, mappingFunction);
+            } catch (CacheAccessException cae) {
+              throw new ComputationException(cae);
+            }
+          }
+        });
+      } catch (ComputationException ce) {
+        throw ce.getCacheAccessException();
+      }
+    } finally {
+      afterWrite();
     }
   }
 
   @Override
   public ValueHolder<V> computeIfPresent(final K key, final BiFunction<? super K, ? super V, ? extends V> remappingFunction) throws CacheAccessException {
+    beforeWrite(key);
     try {
       return authoritativeTier.computeIfPresent(key, remappingFunction);
     } finally {
+      afterWrite();
       cachingTier().invalidate(key);
     }
   }
 
   @Override
   public ValueHolder<V> computeIfPresent(final K key, final BiFunction<? super K, ? super V, ? extends V> remappingFunction, final NullaryFunction<Boolean> replaceEqual) throws CacheAccessException {
+    beforeWrite(key);
     try {
       return authoritativeTier.computeIfPresent(key, remappingFunction, replaceEqual);
     } finally {
+      afterWrite();
       cachingTier().invalidate(key);
     }
   }
 
   @Override
   public Map<K, ValueHolder<V>> bulkCompute(Set<? extends K> keys, Function<Iterable<? extends Map.Entry<? extends K, ? extends V>>, Iterable<? extends Map.Entry<? extends K, ? extends V>>> remappingFunction) throws CacheAccessException {
+    beforeWrite(keys);
     try {
       return authoritativeTier.bulkCompute(keys, remappingFunction);
     } finally {
-      for (K key : keys) {
-        cachingTier().invalidate(key);
-      }
+      afterWrite();
+      cachingTier().bulkInvalidate(keys);
     }
   }
 
   @Override
   public Map<K, ValueHolder<V>> bulkCompute(Set<? extends K> keys, Function<Iterable<? extends Map.Entry<? extends K, ? extends V>>, Iterable<? extends Map.Entry<? extends K, ? extends V>>> remappingFunction, NullaryFunction<Boolean> replaceEqual) throws CacheAccessException {
+    beforeWrite(keys);
     try {
       return authoritativeTier.bulkCompute(keys, remappingFunction, replaceEqual);
     } finally {
-      for (K key : keys) {
-        cachingTier().invalidate(key);
-      }
+      afterWrite();
+      cachingTier().bulkInvalidate(keys);
     }
   }
 
   @Override
-  public Map<K, ValueHolder<V>> bulkComputeIfAbsent(Set<? extends K> keys, Function<Iterable<? extends K>, Iterable<? extends Map.Entry<? extends K, ? extends V>>> mappingFunction) throws CacheAccessException {
+  public Map<K, ValueHolder<V>> bulkComputeIfAbsent(Set<? extends K> keys, final Function<Iterable<? extends K>, Iterable<? extends Map.Entry<? extends K, ? extends V>>> mappingFunction) throws CacheAccessException {
+    ClearEpoch<K> epoch = awaitClear();
     try {
-      return authoritativeTier.bulkComputeIfAbsent(keys, mappingFunction);
-    } finally {
-      for (K key : keys) {
-        cachingTier().invalidate(key);
+      if (epoch != null || promotionPolicy != null) {
+        if (epoch != null) {
+          for (K key : keys) {
+            epoch.written(key);
+          }
+        }
+        try {
+          return authoritativeTier.bulkComputeIfAbsent(keys, mappingFunction);
+        } finally {
+          cachingTier().bulkInvalidate(keys);
+        }
+      }
+      // serve the hits from the caching tier, only faulting the misses in from the authoritative tier
+      try {
+        return cachingTier().bulkGetOrComputeIfAbsent(keys, new Function<Iterable<? extends K>, Map<K, ValueHolder<V>>>() {
+          @Override
+          public Map<K, ValueHolder<V>> apply(Iterable<? extends K> missingKeys) {
+            Set<K> missing = new HashSet<K>();
+            for (K k : missingKeys) {
+              missing.add(k);
+            }
+            try {
+              return authoritativeTier.bulkComputeIfAbsentAndFault(missing, mappingFunction);
+            } catch (CacheAccessException cae) {
+              throw new ComputationException(cae);
+            }
+          }
+        });
+      } catch (ComputationException ce) {
+        throw ce.getCacheAccessException();
       }
+    } finally {
+      afterWrite();
     }
   }
 
@@ -335,8 +526,23 @@ public class CacheStore<K, V> implements Store<K, V> {
     return configurationChangeListenerList;
   }
 
+  @Override
+  public Future<Void> getRecoveryFuture() {
+    if (authoritativeTier instanceof RecoverableStore) {
+      return ((RecoverableStore) authoritativeTier).getRecoveryFuture();
+    }
+    FutureTask<Void> recovered = new FutureTask<Void>(new Runnable() {
+      @Override
+      public void run() {
+        // nothing to recover
+      }
+    }, null);
+    recovered.run();
+    return recovered;
+  }
+
   private CachingTier<K, V> cachingTier() {
-    return cachingTierRef.get();
+    return realCachingTier;
   }
 
   @SupplementaryService
@@ -372,7 +578,10 @@ public class CacheStore<K, V> implements Store<K, V> {
       CachingTier<K, V> cachingTier = cachingTierProvider.createCachingTier(storeConfig, serviceConfigs);
       AuthoritativeTier<K, V> authoritativeTier = authoritativeTierProvider.createAuthoritativeTier(storeConfig, serviceConfigs);
 
-      CacheStore<K, V> store = new CacheStore<K, V>(cachingTier, authoritativeTier);
+      TierPromotionConfiguration promotionConfig = findSingletonAmongst(TierPromotionConfiguration.class, (Object[])serviceConfigs);
+      PromotionPolicy promotionPolicy = promotionConfig == null ? null : promotionConfig.promotionPolicy();
+
+      CacheStore<K, V> store = new CacheStore<K, V>(cachingTier, authoritativeTier, promotionPolicy);
       registerStore(store, cachingTierProvider, authoritativeTierProvider);
       return store;
     }
@@ -427,45 +636,4 @@ public class CacheStore<K, V> implements Store<K, V> {
       this.authoritativeTier = authoritativeTier;
     }
   }
-
-  private static class NoopCachingTier<K, V> implements CachingTier<K, V> {
-
-    private final AuthoritativeTier<K, V> authoritativeTier;
-
-    public NoopCachingTier(final AuthoritativeTier<K, V> authoritativeTier) {
-      this.authoritativeTier = authoritativeTier;
-    }
-
-    @Override
-    public ValueHolder<V> getOrComputeIfAbsent(final K key, final Function<K, ValueHolder<V>> source) throws CacheAccessException {
-      final ValueHolder<V> apply = source.apply(key);
-      authoritativeTier.flush(key, apply);
-      return apply;
-    }
-
-    @Override
-    public void invalidate(final K key) throws CacheAccessException {
-      // noop
-    }
-
-    @Override
-    public void invalidate(K key, NullaryFunction<K> function) throws CacheAccessException {
-      function.apply();
-    }
-
-    @Override
-    public void clear() throws CacheAccessException {
-      // noop
-    }
-
-    @Override
-    public void setInvalidationListener(final InvalidationListener<K, V> invalidationListener) {
-      // noop
-    }
-
-    @Override
-    public List<CacheConfigurationChangeListener> getConfigurationChangeListeners() {
-      return null;
-    }
-  }
 }
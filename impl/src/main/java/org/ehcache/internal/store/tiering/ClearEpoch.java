@@ -0,0 +1,109 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ehcache.internal.store.tiering;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the keys written to a {@link CacheStore} while its authoritative tier is being cleared.
+ * <P>
+ *   Once a clear has begun, every mapping the authoritative tier still holds is logically gone. Writes wait for the
+ *   physical clear to complete, so that it can never wipe them, after which the authoritative tier holds the current
+ *   mapping of every key written. Overlapping clears share the same epoch.
+ * </P>
+ */
+final class ClearEpoch<K> {
+
+  private final AtomicInteger clears = new AtomicInteger(1);
+  private final CountDownLatch cleared = new CountDownLatch(1);
+  private final ConcurrentMap<K, Boolean> written = new ConcurrentHashMap<K, Boolean>();
+
+  /**
+   * Registers one more clear running during this epoch.
+   *
+   * @return {@code false} if the epoch already ended
+   */
+  boolean join() {
+    while (true) {
+      int current = clears.get();
+      if (current == 0) {
+        return false;
+      }
+      if (clears.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Unregisters a clear that completed.
+   *
+   * @return {@code true} if it was the last clear of this epoch
+   */
+  boolean leave() {
+    if (clears.decrementAndGet() == 0) {
+      cleared.countDown();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Tells whether all the clears of this epoch completed.
+   */
+  boolean isCleared() {
+    return cleared.getCount() == 0;
+  }
+
+  /**
+   * Waits for all the clears of this epoch to complete.
+   */
+  void awaitCleared() {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          cleared.await();
+          return;
+        } catch (InterruptedException ie) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Tells whether the key was written since the authoritative tier got cleared, in which case the authoritative tier
+   * holds its current mapping.
+   */
+  boolean isWritten(K key) {
+    return written.containsKey(key);
+  }
+
+  /**
+   * Records a write made once the authoritative tier got cleared.
+   */
+  void written(K key) {
+    written.putIfAbsent(key, Boolean.TRUE);
+  }
+}
@@ -29,11 +29,15 @@ import org.ehcache.util.ConcurrentWeakIdentityHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.ehcache.spi.ServiceLocator.findSingletonAmongst;
 
@@ -46,14 +50,30 @@ public class CompoundCachingTier<K, V> implements CachingTier<K, V> {
 
   private final CachingTier<K, V> higher;
   private final LowerCachingTier<K, V> lower;
+  private final PromotionPolicy promotionPolicy;
+  private final ThreadLocal<Boolean> bulkInvalidating = new ThreadLocal<Boolean>();
   private volatile InvalidationListener<K, V> invalidationListener;
 
   public CompoundCachingTier(CachingTier<K, V> higher, final LowerCachingTier<K, V> lower) {
+    this(higher, lower, null);
+  }
+
+  /**
+   * @param promotionPolicy the policy deciding which lower tier hits move up to the higher tier,
+   *                        {@code null} to move them all
+   */
+  public CompoundCachingTier(CachingTier<K, V> higher, final LowerCachingTier<K, V> lower, PromotionPolicy promotionPolicy) {
     this.higher = higher;
+    this.promotionPolicy = promotionPolicy;
     this.lower = lower;
     this.higher.setInvalidationListener(new InvalidationListener<K, V>() {
       @Override
       public void onInvalidation(final K key, final Store.ValueHolder<V> valueHolder) {
+        if (bulkInvalidating.get() != null) {
+          // the lower tier was already invalidated, overflowing the mapping into it would only resurrect it
+          notifyInvalidation(key, valueHolder);
+          return;
+        }
         try {
           CompoundCachingTier.this.lower.getOrComputeIfAbsent(key, new Function<K, Store.ValueHolder<V>>() {
             @Override
@@ -94,6 +114,9 @@ public class CompoundCachingTier<K, V> implements CachingTier<K, V> {
 
   @Override
   public Store.ValueHolder<V> getOrComputeIfAbsent(K key, final Function<K, Store.ValueHolder<V>> source) throws CacheAccessException {
+    if (promotionPolicy != null) {
+      return getOrComputeIfAbsentWithPromotionPolicy(key, source);
+    }
     try {
       return higher.getOrComputeIfAbsent(key, new Function<K, Store.ValueHolder<V>>() {
         @Override
@@ -115,6 +138,90 @@ public class CompoundCachingTier<K, V> implements CachingTier<K, V> {
     }
   }
 
+  private Store.ValueHolder<V> getOrComputeIfAbsentWithPromotionPolicy(K key, final Function<K, Store.ValueHolder<V>> source) throws CacheAccessException {
+    final AtomicBoolean invoked = new AtomicBoolean();
+    final AtomicReference<Store.ValueHolder<V>> unpromoted = new AtomicReference<Store.ValueHolder<V>>();
+    Store.ValueHolder<V> valueHolder;
+    try {
+      valueHolder = higher.getOrComputeIfAbsent(key, new Function<K, Store.ValueHolder<V>>() {
+        @Override
+        public Store.ValueHolder<V> apply(K k) {
+          invoked.set(true);
+          try {
+            Store.ValueHolder<V> valueHolder = lower.get(k);
+            if (valueHolder == null) {
+              return source.apply(k);
+            }
+            if (promotionPolicy.promote(k)) {
+              valueHolder = lower.getAndRemove(k);
+              if (valueHolder != null) {
+                return valueHolder;
+              }
+              return source.apply(k);
+            }
+            // served from the lower tier, the higher tier computing no mapping
+            unpromoted.set(valueHolder);
+            return null;
+          } catch (CacheAccessException cae) {
+            throw new ComputationException(cae);
+          }
+        }
+      });
+    } catch (ComputationException ce) {
+      throw ce.getCacheAccessException();
+    }
+    if (valueHolder != null || invoked.get()) {
+      return valueHolder != null ? valueHolder : unpromoted.get();
+    }
+    // another thread may have declined to promote the mapping we waited on, look it up in the lower tier only: the
+    // tiers below are left to our caller, as faulting from them would require installing the mapping here
+    return lower.get(key);
+  }
+
+  @Override
+  public Map<K, Store.ValueHolder<V>> bulkGetOrComputeIfAbsent(Set<? extends K> keys, final Function<Iterable<? extends K>, Map<K, Store.ValueHolder<V>>> source) throws CacheAccessException {
+    if (promotionPolicy != null) {
+      // lower tier hits are promoted one by one, at the policy's discretion
+      Map<K, Store.ValueHolder<V>> result = new HashMap<K, Store.ValueHolder<V>>();
+      for (K key : keys) {
+        result.put(key, getOrComputeIfAbsent(key, new Function<K, Store.ValueHolder<V>>() {
+          @Override
+          public Store.ValueHolder<V> apply(K k) {
+            return source.apply(Collections.singleton(k)).get(k);
+          }
+        }));
+      }
+      return result;
+    }
+    try {
+      return higher.bulkGetOrComputeIfAbsent(keys, new Function<Iterable<? extends K>, Map<K, Store.ValueHolder<V>>>() {
+        @Override
+        public Map<K, Store.ValueHolder<V>> apply(Iterable<? extends K> missingKeys) {
+          try {
+            Map<K, Store.ValueHolder<V>> result = new HashMap<K, Store.ValueHolder<V>>();
+            List<K> lowerMisses = new ArrayList<K>();
+            for (K k : missingKeys) {
+              Store.ValueHolder<V> valueHolder = lower.getAndRemove(k);
+              if (valueHolder != null) {
+                result.put(k, valueHolder);
+              } else {
+                lowerMisses.add(k);
+              }
+            }
+            if (!lowerMisses.isEmpty()) {
+              result.putAll(source.apply(lowerMisses));
+            }
+            return result;
+          } catch (CacheAccessException cae) {
+            throw new ComputationException(cae);
+          }
+        }
+      });
+    } catch (ComputationException ce) {
+      throw ce.getCacheAccessException();
+    }
+  }
+
   @Override
   public void invalidate(final K key) throws CacheAccessException {
     try {
@@ -134,6 +241,18 @@ public class CompoundCachingTier<K, V> implements CachingTier<K, V> {
     }
   }
 
+  @Override
+  public void bulkInvalidate(Set<? extends K> keys) throws CacheAccessException {
+    // lower tier first, so that a stale lower copy cannot be faulted back once the higher tier was invalidated
+    bulkInvalidating.set(Boolean.TRUE);
+    try {
+      lower.bulkInvalidate(keys);
+      higher.bulkInvalidate(keys);
+    } finally {
+      bulkInvalidating.remove();
+    }
+  }
+
   @Override
   public void invalidate(final K key, final NullaryFunction<K> function) throws CacheAccessException {
     try {
@@ -180,7 +299,7 @@ public class CompoundCachingTier<K, V> implements CachingTier<K, V> {
   @SupplementaryService
   public static class Provider implements CachingTier.Provider {
     private volatile ServiceProvider serviceProvider;
-    private final ConcurrentMap<CachingTier<?, ?>, Map.Entry<CachingTier.Provider, LowerCachingTier.Provider>> providersMap = new ConcurrentWeakIdentityHashMap<CachingTier<?, ?>, Map.Entry<CachingTier.Provider, LowerCachingTier.Provider>>();
+    private final ConcurrentMap<CachingTier<?, ?>, TierChain> chainsMap = new ConcurrentWeakIdentityHashMap<CachingTier<?, ?>, TierChain>();
 
     @Override
     public <K, V> CachingTier<K, V> createCachingTier(Store.Configuration<K, V> storeConfig, ServiceConfiguration<?>... serviceConfigs) {
@@ -192,40 +311,56 @@ public class CompoundCachingTier<K, V> implements CachingTier<K, V> {
       if (compoundCachingTierServiceConfiguration == null) {
         throw new IllegalArgumentException("Compound caching tier cannot be configured without explicit config");
       }
+      if (compoundCachingTierServiceConfiguration.lowerProviders().isEmpty()) {
+        throw new IllegalArgumentException("Compound caching tier needs at least one lower caching tier");
+      }
+
+      TierPromotionConfiguration promotionConfig = findSingletonAmongst(TierPromotionConfiguration.class, (Object[])serviceConfigs);
+      PromotionPolicy promotionPolicy = promotionConfig == null ? null : promotionConfig.promotionPolicy();
 
       CachingTier.Provider higherProvider = serviceProvider.getService(compoundCachingTierServiceConfiguration.higherProvider());
       CachingTier<K, V> higherCachingTier = higherProvider.createCachingTier(storeConfig);
+      TierChain chain = new TierChain(higherProvider, higherCachingTier);
+
+      // each lower tier is stacked underneath the compound of all the tiers above it
+      CachingTier<K, V> cachingTier = higherCachingTier;
+      for (Class<? extends LowerCachingTier.Provider> lowerProviderClass : compoundCachingTierServiceConfiguration.lowerProviders()) {
+        LowerCachingTier.Provider lowerProvider = serviceProvider.getService(lowerProviderClass);
+        LowerCachingTier<K, V> lowerCachingTier = lowerProvider.createCachingTier(storeConfig);
+        chain.lowerProviders.add(lowerProvider);
+        chain.lowerTiers.add(lowerCachingTier);
+        cachingTier = new CompoundCachingTier<K, V>(cachingTier, lowerCachingTier, promotionPolicy);
+      }
 
-      LowerCachingTier.Provider lowerProvider = serviceProvider.getService(compoundCachingTierServiceConfiguration.lowerProvider());
-      LowerCachingTier<K, V> lowerCachingTier = lowerProvider.createCachingTier(storeConfig);
-
-      CompoundCachingTier<K, V> compoundCachingTier = new CompoundCachingTier<K, V>(higherCachingTier, lowerCachingTier);
-      providersMap.put(compoundCachingTier, new AbstractMap.SimpleEntry<CachingTier.Provider, LowerCachingTier.Provider>(higherProvider, lowerProvider));
-      return compoundCachingTier;
+      chainsMap.put(cachingTier, chain);
+      return cachingTier;
     }
 
     @Override
     public void releaseCachingTier(CachingTier<?, ?> resource) {
-      if (!providersMap.containsKey(resource)) {
+      TierChain chain = chainsMap.get(resource);
+      if (chain == null) {
         throw new IllegalArgumentException("Given caching tier is not managed by this provider : " + resource);
       }
-      CompoundCachingTier compoundCachingTier = (CompoundCachingTier) resource;
-      Map.Entry<CachingTier.Provider, LowerCachingTier.Provider> entry = providersMap.get(resource);
 
-      entry.getKey().releaseCachingTier(compoundCachingTier.higher);
-      entry.getValue().releaseCachingTier(compoundCachingTier.lower);
+      // release from the top so that each tier can flush its content into the one below
+      chain.higherProvider.releaseCachingTier(chain.higherTier);
+      for (int i = 0; i < chain.lowerTiers.size(); i++) {
+        chain.lowerProviders.get(i).releaseCachingTier(chain.lowerTiers.get(i));
+      }
     }
 
     @Override
     public void initCachingTier(CachingTier<?, ?> resource) {
-      if (!providersMap.containsKey(resource)) {
+      TierChain chain = chainsMap.get(resource);
+      if (chain == null) {
         throw new IllegalArgumentException("Given caching tier is not managed by this provider : " + resource);
       }
-      CompoundCachingTier compoundCachingTier = (CompoundCachingTier) resource;
-      Map.Entry<CachingTier.Provider, LowerCachingTier.Provider> entry = providersMap.get(resource);
 
-      entry.getValue().initCachingTier(compoundCachingTier.lower);
-      entry.getKey().initCachingTier(compoundCachingTier.higher);
+      for (int i = chain.lowerTiers.size() - 1; i >= 0; i--) {
+        chain.lowerProviders.get(i).initCachingTier(chain.lowerTiers.get(i));
+      }
+      chain.higherProvider.initCachingTier(chain.higherTier);
     }
 
     @Override
@@ -236,7 +371,19 @@ public class CompoundCachingTier<K, V> implements CachingTier<K, V> {
     @Override
     public void stop() {
       this.serviceProvider = null;
-      this.providersMap.clear();
+      this.chainsMap.clear();
+    }
+
+    private static class TierChain {
+      private final CachingTier.Provider higherProvider;
+      private final CachingTier<?, ?> higherTier;
+      private final List<LowerCachingTier.Provider> lowerProviders = new ArrayList<LowerCachingTier.Provider>();
+      private final List<LowerCachingTier<?, ?>> lowerTiers = new ArrayList<LowerCachingTier<?, ?>>();
+
+      private TierChain(CachingTier.Provider higherProvider, CachingTier<?, ?> higherTier) {
+        this.higherProvider = higherProvider;
+        this.higherTier = higherTier;
+      }
     }
   }
 
@@ -19,13 +19,20 @@ import org.ehcache.spi.cache.tiering.CachingTier;
 import org.ehcache.spi.cache.tiering.LowerCachingTier;
 import org.ehcache.spi.service.ServiceConfiguration;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
+ * Configures a {@link CompoundCachingTier} out of a higher caching tier followed by one or more lower caching tiers,
+ * ordered from the fastest to the largest.
+ *
  * @author Ludovic Orban
  */
 public class CompoundCachingTierServiceConfiguration implements ServiceConfiguration<CompoundCachingTier.Provider> {
 
   private Class<? extends CachingTier.Provider> higherProvider;
-  private Class<? extends LowerCachingTier.Provider> lowerProvider;
+  private final List<Class<? extends LowerCachingTier.Provider>> lowerProviders = new ArrayList<Class<? extends LowerCachingTier.Provider>>();
 
   public Class<? extends CachingTier.Provider> higherProvider() {
     return higherProvider;
@@ -37,14 +44,41 @@ public class CompoundCachingTierServiceConfiguration implements ServiceConfigura
   }
 
   public Class<? extends LowerCachingTier.Provider> lowerProvider() {
-    return lowerProvider;
+    return lowerProviders.isEmpty() ? null : lowerProviders.get(0);
   }
 
+  /**
+   * Sets the single lower caching tier, replacing any already configured.
+   *
+   * @param lowerProvider the lower caching tier provider
+   * @return this configuration
+   */
   public CompoundCachingTierServiceConfiguration lowerProvider(Class<? extends LowerCachingTier.Provider> lowerProvider) {
-    this.lowerProvider = lowerProvider;
+    this.lowerProviders.clear();
+    if (lowerProvider != null) {
+      this.lowerProviders.add(lowerProvider);
+    }
     return this;
   }
 
+  /**
+   * Appends a lower caching tier underneath the ones already configured.
+   *
+   * @param lowerProvider the lower caching tier provider
+   * @return this configuration
+   */
+  public CompoundCachingTierServiceConfiguration addLowerProvider(Class<? extends LowerCachingTier.Provider> lowerProvider) {
+    if (lowerProvider == null) {
+      throw new NullPointerException("Lower caching tier provider cannot be null");
+    }
+    this.lowerProviders.add(lowerProvider);
+    return this;
+  }
+
+  public List<Class<? extends LowerCachingTier.Provider>> lowerProviders() {
+    return Collections.unmodifiableList(lowerProviders);
+  }
+
   @Override
   public Class<CompoundCachingTier.Provider> getServiceType() {
     return CompoundCachingTier.Provider.class;
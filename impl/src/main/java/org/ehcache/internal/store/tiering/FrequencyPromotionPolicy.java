@@ -0,0 +1,133 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ehcache.internal.store.tiering;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Promotes a mapping on its Nth lower tier hit, as estimated by a count-min sketch of the recent hits.
+ * <P>
+ *   All counters get halved once as many hits as the sketch has counters per row have been recorded, so that
+ *   frequencies reflect recent activity and a key that used to be hot does not stay promotable forever.
+ * </P>
+ */
+public class FrequencyPromotionPolicy implements PromotionPolicy {
+
+  private static final int DEPTH = 4;
+  private static final int DEFAULT_WIDTH = 1 << 16;
+  private static final int[] SEEDS = {0x97cb3127, 0xb70c3df1, 0x2f0e1f5b, 0xe95f9a4d};
+
+  private final int hitThreshold;
+  private final int mask;
+  private final AtomicIntegerArray counters;
+  private final AtomicInteger hits = new AtomicInteger();
+
+  /**
+   * Creates a policy promoting mappings on their Nth hit.
+   *
+   * @param hitThreshold the number of lower tier hits after which a mapping gets promoted
+   */
+  public FrequencyPromotionPolicy(int hitThreshold) {
+    this(hitThreshold, DEFAULT_WIDTH);
+  }
+
+  /**
+   * Creates a policy promoting mappings on their Nth hit, using a sketch of the given width.
+   *
+   * @param hitThreshold the number of lower tier hits after which a mapping gets promoted
+   * @param width the number of counters per sketch row, rounded up to a power of two
+   */
+  public FrequencyPromotionPolicy(int hitThreshold, int width) {
+    if (hitThreshold < 1) {
+      throw new IllegalArgumentException("Hit threshold must be at least 1, was " + hitThreshold);
+    }
+    if (width < 1 || width > (1 << 24)) {
+      throw new IllegalArgumentException("Sketch width must be between 1 and " + (1 << 24) + ", was " + width);
+    }
+    int size = Integer.highestOneBit(width);
+    if (size < width) {
+      size <<= 1;
+    }
+    this.hitThreshold = hitThreshold;
+    this.mask = size - 1;
+    this.counters = new AtomicIntegerArray(DEPTH * size);
+  }
+
+  public int hitThreshold() {
+    return hitThreshold;
+  }
+
+  @Override
+  public boolean promote(Object key) {
+    if (hitThreshold == 1) {
+      return true;
+    }
+    int hash = spread(key.hashCode());
+    int estimate = Integer.MAX_VALUE;
+    for (int i = 0; i < DEPTH; i++) {
+      estimate = Math.min(estimate, increment(index(hash, i)));
+    }
+    if (hits.incrementAndGet() > mask && hits.getAndSet(0) > mask) {
+      age();
+    }
+    return estimate >= hitThreshold;
+  }
+
+  int estimate(Object key) {
+    int hash = spread(key.hashCode());
+    int estimate = Integer.MAX_VALUE;
+    for (int i = 0; i < DEPTH; i++) {
+      estimate = Math.min(estimate, counters.get(index(hash, i)));
+    }
+    return estimate;
+  }
+
+  private int index(int hash, int row) {
+    int h = spread(hash ^ SEEDS[row]);
+    return row * (mask + 1) + (h & mask);
+  }
+
+  private int increment(int index) {
+    while (true) {
+      int current = counters.get(index);
+      if (current >= hitThreshold) {
+        // saturate, no need to count any higher than the threshold
+        return current;
+      }
+      if (counters.compareAndSet(index, current, current + 1)) {
+        return current + 1;
+      }
+    }
+  }
+
+  private void age() {
+    for (int i = 0; i < counters.length(); i++) {
+      int current;
+      do {
+        current = counters.get(i);
+      } while (current != 0 && !counters.compareAndSet(i, current, current >>> 1));
+    }
+  }
+
+  private static int spread(int h) {
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    return h ^ (h >>> 16);
+  }
+}
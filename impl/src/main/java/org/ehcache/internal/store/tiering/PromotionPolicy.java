@@ -0,0 +1,34 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ehcache.internal.store.tiering;
+
+/**
+ * Decides whether a mapping found in a lower tier gets promoted into the tier above it.
+ * <P>
+ *   A mapping that is not promoted is served from the tier it was found in, and stays there. Implementations are
+ *   consulted concurrently, on every lower tier hit, and must therefore be thread-safe and cheap.
+ * </P>
+ */
+public interface PromotionPolicy {
+
+  /**
+   * Records a lower tier hit on the given key, and tells whether its mapping should be promoted.
+   *
+   * @param key the key that was hit
+   * @return {@code true} if the mapping should move to the tier above
+   */
+  boolean promote(Object key);
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ehcache.internal.store.tiering;
+
+import org.ehcache.spi.service.ServiceConfiguration;
+
+/**
+ * Replaces the default promote-on-every-hit behaviour of a tiered cache with the given {@link PromotionPolicy}.
+ * <P>
+ *   The policy is consulted both when a caching tier would fault a mapping from the authoritative tier, and when a
+ *   compound caching tier would move a mapping up from one of its lower tiers. Policies keep per cache state, so a
+ *   configuration instance must not be shared between caches.
+ * </P>
+ */
+public class TierPromotionConfiguration implements ServiceConfiguration<CacheStore.Provider> {
+
+  private final PromotionPolicy promotionPolicy;
+
+  public TierPromotionConfiguration(PromotionPolicy promotionPolicy) {
+    if (promotionPolicy == null) {
+      throw new NullPointerException("Promotion policy cannot be null");
+    }
+    this.promotionPolicy = promotionPolicy;
+  }
+
+  public PromotionPolicy promotionPolicy() {
+    return promotionPolicy;
+  }
+
+  @Override
+  public Class<CacheStore.Provider> getServiceType() {
+    return CacheStore.Provider.class;
+  }
+}
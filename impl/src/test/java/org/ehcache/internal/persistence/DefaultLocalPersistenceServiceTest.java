@@ -16,13 +16,17 @@
 
 package org.ehcache.internal.persistence;
 
+import org.ehcache.config.persistence.CacheManagerPersistenceConfiguration;
 import org.ehcache.config.persistence.DefaultPersistenceConfiguration;
+import org.ehcache.config.persistence.PersistenceConfiguration;
+import org.ehcache.spi.service.FileBasedPersistenceContext;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 import org.ehcache.exceptions.CachePersistenceException;
 
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -92,4 +96,44 @@ public class DefaultLocalPersistenceServiceTest {
     service.stop();
     assertThat(service.getLockFile().exists(), is(false));
   }
+
+  @Test
+  public void testStripesRoundRobinOverRootDirectories() throws Exception {
+    File first = folder.newFolder("first");
+    File second = folder.newFolder("second");
+    DefaultLocalPersistenceService service = new DefaultLocalPersistenceService(
+        new CacheManagerPersistenceConfiguration(PersistenceConfiguration.StripingPolicy.ROUND_ROBIN, first, second));
+    service.start(null);
+    try {
+      assertThat(new File(second, ".lock").exists(), is(true));
+      FileBasedPersistenceContext context = service.createPersistenceContextWithin(service.getOrCreatePersistenceSpace("space"), "context");
+      List<File> stripes = context.getStripeDirectories(4);
+      assertThat(stripes.get(0), is(stripes.get(2)));
+      assertThat(stripes.get(1), is(stripes.get(3)));
+      assertThat(stripes.get(0).equals(stripes.get(1)), is(false));
+      assertThat(stripes.contains(context.getDirectory()), is(true));
+
+      service.destroyPersistenceSpace("space");
+      for (File stripe : stripes) {
+        assertThat(stripe.exists(), is(false));
+      }
+    } finally {
+      service.stop();
+    }
+    assertThat(new File(second, ".lock").exists(), is(false));
+  }
+
+  @Test
+  public void testSingleRootDirectoryHoldsAllStripes() throws Exception {
+    DefaultLocalPersistenceService service = new DefaultLocalPersistenceService(new DefaultPersistenceConfiguration(folder.newFolder()));
+    service.start(null);
+    try {
+      FileBasedPersistenceContext context = service.createPersistenceContextWithin(service.getOrCreatePersistenceSpace("space"), "context");
+      for (File stripe : context.getStripeDirectories(4)) {
+        assertThat(stripe, is(context.getDirectory()));
+      }
+    } finally {
+      service.stop();
+    }
+  }
 }
\ No newline at end of file
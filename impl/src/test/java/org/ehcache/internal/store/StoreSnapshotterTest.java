@@ -0,0 +1,118 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache.internal.store;
+
+import org.ehcache.Cache;
+import org.ehcache.CacheManagerBuilder;
+import org.ehcache.PersistentCacheManager;
+import org.ehcache.config.CacheConfigurationBuilder;
+import org.ehcache.config.ResourcePoolsBuilder;
+import org.ehcache.config.persistence.CacheManagerPersistenceConfiguration;
+import org.ehcache.config.units.EntryUnit;
+import org.ehcache.config.units.MemoryUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class StoreSnapshotterTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testHeapCacheIsRestoredFromSnapshotTakenOnClose() throws IOException {
+    File directory = folder.newFolder();
+    ResourcePoolsBuilder resources = ResourcePoolsBuilder.newResourcePoolsBuilder().heap(1000, EntryUnit.ENTRIES);
+
+    PersistentCacheManager cacheManager = createCacheManager(directory, resources, new StoreSnapshotConfiguration("heap-cache"));
+    Cache<Long, String> cache = cacheManager.getCache("heap-cache", Long.class, String.class);
+    for (long i = 0; i < 100; i++) {
+      cache.put(i, "value" + i);
+    }
+    cacheManager.close();
+
+    cacheManager = createCacheManager(directory, resources, new StoreSnapshotConfiguration("heap-cache"));
+    try {
+      cache = cacheManager.getCache("heap-cache", Long.class, String.class);
+      for (long i = 0; i < 100; i++) {
+        assertThat(cache.get(i), is("value" + i));
+      }
+    } finally {
+      cacheManager.close();
+    }
+  }
+
+  @Test
+  public void testOffHeapCacheIsRestoredFromSnapshot() throws IOException {
+    File directory = folder.newFolder();
+    ResourcePoolsBuilder resources = ResourcePoolsBuilder.newResourcePoolsBuilder()
+        .heap(10, EntryUnit.ENTRIES).offheap(1, MemoryUnit.MB);
+
+    PersistentCacheManager cacheManager = createCacheManager(directory, resources,
+        new StoreSnapshotConfiguration("offheap-cache").partitions(3));
+    Cache<Long, String> cache = cacheManager.getCache("offheap-cache", Long.class, String.class);
+    for (long i = 0; i < 100; i++) {
+      cache.put(i, "value" + i);
+    }
+    cacheManager.close();
+
+    cacheManager = createCacheManager(directory, resources, new StoreSnapshotConfiguration("offheap-cache"));
+    try {
+      cache = cacheManager.getCache("offheap-cache", Long.class, String.class);
+      for (long i = 0; i < 100; i++) {
+        assertThat(cache.get(i), is("value" + i));
+      }
+    } finally {
+      cacheManager.close();
+    }
+  }
+
+  @Test
+  public void testNoSnapshotOnCloseWhenDisabled() throws IOException {
+    File directory = folder.newFolder();
+    ResourcePoolsBuilder resources = ResourcePoolsBuilder.newResourcePoolsBuilder().heap(1000, EntryUnit.ENTRIES);
+
+    PersistentCacheManager cacheManager = createCacheManager(directory, resources,
+        new StoreSnapshotConfiguration("heap-cache").snapshotOnClose(false));
+    cacheManager.getCache("heap-cache", Long.class, String.class).put(1L, "one");
+    cacheManager.close();
+
+    cacheManager = createCacheManager(directory, resources, new StoreSnapshotConfiguration("heap-cache"));
+    try {
+      assertThat(cacheManager.getCache("heap-cache", Long.class, String.class).get(1L), nullValue());
+    } finally {
+      cacheManager.close();
+    }
+  }
+
+  private static PersistentCacheManager createCacheManager(File directory, ResourcePoolsBuilder resources, StoreSnapshotConfiguration snapshotConfig) {
+    return CacheManagerBuilder.newCacheManagerBuilder()
+        .with(new CacheManagerPersistenceConfiguration(directory))
+        .withCache(snapshotConfig.name(), CacheConfigurationBuilder.newCacheConfigurationBuilder()
+            .withResourcePools(resources)
+            .add(snapshotConfig)
+            .buildConfig(Long.class, String.class))
+        .build(true);
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache.internal.store.disk;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class DiskWriteThreadPoolTest {
+
+  @Test
+  public void testSegmentsAreSpreadRoundRobinOverWriters() {
+    DiskWriteThreadPool pool = new DiskWriteThreadPool("test", 2);
+    try {
+      ThreadPoolExecutor first = pool.newInstance();
+      ThreadPoolExecutor second = pool.newInstance();
+      assertThat(second, not(sameInstance(first)));
+      assertThat(pool.newInstance(), sameInstance(first));
+      assertThat(pool.newInstance(), sameInstance(second));
+      assertThat(pool.getWriterCount(), is(2));
+    } finally {
+      shutdown(pool, 2);
+    }
+  }
+
+  @Test
+  public void testFullQueueBlocksSubmitter() throws Exception {
+    DiskWriteThreadPool pool = new DiskWriteThreadPool("test", 1, 1);
+    final ThreadPoolExecutor writer = pool.newInstance();
+    final CountDownLatch release = new CountDownLatch(1);
+    try {
+      writer.execute(new Blocker(release));
+      writer.execute(new Blocker(release));
+      assertThat(pool.getTotalQueueSize(), is(1L));
+
+      final AtomicBoolean submitted = new AtomicBoolean();
+      Thread submitter = new Thread() {
+        @Override
+        public void run() {
+          writer.execute(new Blocker(release));
+          submitted.set(true);
+        }
+      };
+      submitter.start();
+      submitter.join(200);
+      assertThat(submitted.get(), is(false));
+
+      release.countDown();
+      submitter.join(TimeUnit.SECONDS.toMillis(10));
+      assertThat(submitted.get(), is(true));
+    } finally {
+      release.countDown();
+      shutdown(pool, 1);
+    }
+  }
+
+  @Test
+  public void testBlockedSubmitterIsRejectedOnShutdown() throws Exception {
+    DiskWriteThreadPool pool = new DiskWriteThreadPool("test", 1, 1);
+    final ThreadPoolExecutor writer = pool.newInstance();
+    final CountDownLatch release = new CountDownLatch(1);
+    try {
+      writer.execute(new Blocker(release));
+      writer.execute(new Blocker(release));
+
+      final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+      Thread submitter = new Thread() {
+        @Override
+        public void run() {
+          try {
+            writer.execute(new Blocker(release));
+          } catch (Throwable t) {
+            failure.set(t);
+          }
+        }
+      };
+      submitter.start();
+      submitter.join(200);
+      assertThat(submitter.isAlive(), is(true));
+
+      writer.shutdownNow();
+      submitter.join(TimeUnit.SECONDS.toMillis(10));
+      assertThat(submitter.isAlive(), is(false));
+      assertThat(failure.get(), instanceOf(RejectedExecutionException.class));
+      assertThat(writer.getQueue().isEmpty(), is(true));
+    } finally {
+      release.countDown();
+      shutdown(pool, 1);
+    }
+  }
+
+  private static void shutdown(DiskWriteThreadPool pool, int writers) {
+    for (int i = 0; i < writers; i++) {
+      pool.newInstance().shutdownNow();
+    }
+  }
+
+  private static class Blocker implements Runnable {
+
+    private final CountDownLatch latch;
+
+    Blocker(CountDownLatch latch) {
+      this.latch = latch;
+    }
+
+    @Override
+    public void run() {
+      try {
+        latch.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
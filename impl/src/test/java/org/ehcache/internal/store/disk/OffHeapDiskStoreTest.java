@@ -16,15 +16,21 @@
 
 package org.ehcache.internal.store.disk;
 
+import org.ehcache.Cache;
 import org.ehcache.config.EvictionVeto;
 import org.ehcache.config.ResourcePoolsBuilder;
 import org.ehcache.config.StoreConfigurationImpl;
+import org.ehcache.config.persistence.CacheManagerPersistenceConfiguration;
+import org.ehcache.config.persistence.PersistenceConfiguration;
 import org.ehcache.config.units.MemoryUnit;
 import org.ehcache.exceptions.CacheAccessException;
 import org.ehcache.exceptions.CachePersistenceException;
 import org.ehcache.expiry.Expiry;
+import org.ehcache.function.Aggregator;
+import org.ehcache.function.Function;
 import org.ehcache.internal.SystemTimeSource;
 import org.ehcache.internal.TimeSource;
+import org.ehcache.internal.persistence.DefaultLocalPersistenceService;
 import org.ehcache.internal.persistence.TestLocalPersistenceService;
 import org.ehcache.internal.store.offheap.AbstractOffHeapStore;
 import org.ehcache.internal.store.offheap.AbstractOffHeapStoreTest;
@@ -38,13 +44,31 @@ import org.ehcache.spi.service.LocalPersistenceService.PersistenceSpaceIdentifie
 import org.ehcache.spi.service.FileBasedPersistenceContext;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.ehcache.expiry.Expirations.noExpiration;
 import static org.ehcache.spi.TestServiceProvider.providerContaining;
 import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
@@ -54,6 +78,9 @@ public class OffHeapDiskStoreTest extends AbstractOffHeapStoreTest {
 
   @Rule
   public final TestLocalPersistenceService persistenceService = new TestLocalPersistenceService();
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
   
   @Test
   public void testRecovery() throws CacheAccessException, IOException {
@@ -71,6 +98,554 @@ public class OffHeapDiskStoreTest extends AbstractOffHeapStoreTest {
     }
   }
   
+  @Test
+  public void testRecoveryWithConcurrentWriters() throws CacheAccessException, IOException, UnsupportedTypeException {
+    OffHeapDiskStore<String, String> offHeapDiskStore = createStore(new OffHeapDiskStoreServiceConfiguration().writerConcurrency(4).writeQueueSize(1));
+    OffHeapDiskStore.Provider.init(offHeapDiskStore);
+    try {
+      for (int i = 0; i < 100; i++) {
+        offHeapDiskStore.put("key" + i, "value" + i);
+      }
+
+      OffHeapDiskStore.Provider.close(offHeapDiskStore);
+      assertThat(offHeapDiskStore.getWriteQueueSize(), is(0L));
+
+      OffHeapDiskStore.Provider.init(offHeapDiskStore);
+      for (int i = 0; i < 100; i++) {
+        assertThat(offHeapDiskStore.get("key" + i).value(), is("value" + i));
+      }
+    } finally {
+      destroyStore(offHeapDiskStore);
+    }
+  }
+
+  @Test
+  public void testIndexIsPersistedPerSegment() throws CacheAccessException, IOException {
+    OffHeapDiskStore<String, String> offHeapDiskStore = createAndInitStore(SystemTimeSource.INSTANCE, noExpiration());
+    try {
+      offHeapDiskStore.put("key1", "value1");
+    } finally {
+      destroyStore(offHeapDiskStore);
+    }
+
+    File directory = getPersistenceContext().getDirectory();
+    assertThat(new File(directory, "ehcache-disk-store.index").isFile(), is(true));
+    for (int i = 0; i < 16; i++) {
+      assertThat(new File(directory, "ehcache-disk-store.index." + i).isFile(), is(true));
+    }
+  }
+
+  @Test
+  public void testUnrecognizedIndexCreatesEmptyStore() throws CacheAccessException, IOException {
+    OffHeapDiskStore<String, String> offHeapDiskStore = createAndInitStore(SystemTimeSource.INSTANCE, noExpiration());
+    try {
+      offHeapDiskStore.put("key1", "value1");
+
+      OffHeapDiskStore.Provider.close(offHeapDiskStore);
+      FileOutputStream output = new FileOutputStream(new File(getPersistenceContext().getDirectory(), "ehcache-disk-store.index"));
+      try {
+        output.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+      } finally {
+        output.close();
+      }
+
+      OffHeapDiskStore.Provider.init(offHeapDiskStore);
+      assertThat(offHeapDiskStore.get("key1"), nullValue());
+    } finally {
+      destroyStore(offHeapDiskStore);
+    }
+  }
+
+  @Test
+  public void testRecoveryFromLegacyIndex() throws Exception {
+    OffHeapDiskStore<String, String> offHeapDiskStore = createAndInitStore(SystemTimeSource.INSTANCE, noExpiration());
+    try {
+      offHeapDiskStore.put("key1", "value1");
+
+      // a single object stream holding the timestamp and the whole map, as written before segments got persisted separately
+      Field mapField = OffHeapDiskStore.class.getDeclaredField("map");
+      mapField.setAccessible(true);
+      EhcachePersistentConcurrentOffHeapClockCache<?, ?> map = (EhcachePersistentConcurrentOffHeapClockCache<?, ?>) mapField.get(offHeapDiskStore);
+      map.flush();
+      ByteArrayOutputStream legacyIndex = new ByteArrayOutputStream();
+      ObjectOutputStream legacyOutput = new ObjectOutputStream(legacyIndex);
+      legacyOutput.writeLong(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1));
+      map.persist(legacyOutput);
+      legacyOutput.close();
+
+      OffHeapDiskStore.Provider.close(offHeapDiskStore);
+      File directory = getPersistenceContext().getDirectory();
+      for (File file : directory.listFiles()) {
+        if (file.getName().startsWith("ehcache-disk-store.index.") || file.getName().equals("ehcache-disk-store.filter")) {
+          assertThat(file.delete(), is(true));
+        }
+      }
+      FileOutputStream output = new FileOutputStream(new File(directory, "ehcache-disk-store.index"));
+      try {
+        output.write(legacyIndex.toByteArray());
+      } finally {
+        output.close();
+      }
+
+      OffHeapDiskStore.Provider.init(offHeapDiskStore);
+      assertThat(offHeapDiskStore.get("key1").value(), is("value1"));
+
+      // rewritten in the current format
+      OffHeapDiskStore.Provider.close(offHeapDiskStore);
+      assertThat(new File(directory, "ehcache-disk-store.index.0").isFile(), is(true));
+      OffHeapDiskStore.Provider.init(offHeapDiskStore);
+      assertThat(offHeapDiskStore.get("key1").value(), is("value1"));
+    } finally {
+      destroyStore(offHeapDiskStore);
+    }
+  }
+
+  @Test
+  public void testAsynchronousRecovery() throws Exception {
+    OffHeapDiskStore<String, String> offHeapDiskStore = createStore(new OffHeapDiskStoreServiceConfiguration().asynchronousRecovery(true));
+    OffHeapDiskStore.Provider.init(offHeapDiskStore);
+    try {
+      assertThat(offHeapDiskStore.getRecoveryFuture().isDone(), is(true));
+      offHeapDiskStore.put("key1", "value1");
+
+      OffHeapDiskStore.Provider.close(offHeapDiskStore);
+
+      OffHeapDiskStore.Provider.init(offHeapDiskStore);
+      offHeapDiskStore.getRecoveryFuture().get(10, TimeUnit.SECONDS);
+      assertThat(offHeapDiskStore.get("key1").value(), is("value1"));
+    } finally {
+      destroyStore(offHeapDiskStore);
+    }
+  }
+
+  @Test
+  public void testReadsDoNotWaitForAsynchronousRecovery() throws Exception {
+    final FileBasedPersistenceContext context = getPersistenceContext();
+    OffHeapDiskStore<String, String> offHeapDiskStore = createStore(context, new OffHeapDiskStoreServiceConfiguration().asynchronousRecovery(true));
+    OffHeapDiskStore.Provider.init(offHeapDiskStore);
+    offHeapDiskStore.put("key1", "value1");
+    OffHeapDiskStore.Provider.close(offHeapDiskStore);
+
+    final CountDownLatch recoveryRelease = new CountDownLatch(1);
+    FileBasedPersistenceContext slowContext = new FileBasedPersistenceContext() {
+      @Override
+      public File getDirectory() {
+        if (Thread.currentThread().getName().startsWith("Ehcache disk store recovery")) {
+          try {
+            recoveryRelease.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        return context.getDirectory();
+      }
+
+      @Override
+      public List<File> getStripeDirectories(int stripes) {
+        return context.getStripeDirectories(stripes);
+      }
+    };
+    offHeapDiskStore = createStore(slowContext, new OffHeapDiskStoreServiceConfiguration().asynchronousRecovery(true));
+    OffHeapDiskStore.Provider.init(offHeapDiskStore);
+    try {
+      assertThat(offHeapDiskStore.containsKey("key1"), is(false));
+      assertThat(offHeapDiskStore.get("key1"), nullValue());
+      Store.ValueHolder<String> loaded = offHeapDiskStore.computeIfAbsentAndFault("key2", new Function<String, String>() {
+        @Override
+        public String apply(String key) {
+          return "loaded";
+        }
+      });
+      assertThat(loaded.value(), is("loaded"));
+      assertThat(offHeapDiskStore.getRecoveryFuture().isDone(), is(false));
+
+      recoveryRelease.countDown();
+      offHeapDiskStore.getRecoveryFuture().get(10, TimeUnit.SECONDS);
+      assertThat(offHeapDiskStore.containsKey("key1"), is(true));
+      assertThat(offHeapDiskStore.get("key2"), nullValue());
+    } finally {
+      recoveryRelease.countDown();
+      destroyStore(offHeapDiskStore);
+    }
+  }
+
+  @Test
+  public void testScanWaitsForAsynchronousRecovery() throws Exception {
+    OffHeapDiskStore<String, String> offHeapDiskStore = createStore(new OffHeapDiskStoreServiceConfiguration().asynchronousRecovery(true));
+    OffHeapDiskStore.Provider.init(offHeapDiskStore);
+    try {
+      for (int i = 0; i < 100; i++) {
+        offHeapDiskStore.put("key" + i, "value" + i);
+      }
+
+      OffHeapDiskStore.Provider.close(offHeapDiskStore);
+
+      OffHeapDiskStore.Provider.init(offHeapDiskStore);
+      Integer count = offHeapDiskStore.scan(new Aggregator<String, String, Integer>() {
+        @Override
+        public Integer identity() {
+          return 0;
+        }
+
+        @Override
+        public Integer accumulate(Integer accumulator, String key, String value) {
+          return accumulator + 1;
+        }
+
+        @Override
+        public Integer combine(Integer left, Integer right) {
+          return left + right;
+        }
+      }, true);
+      assertThat(count, is(100));
+    } finally {
+      destroyStore(offHeapDiskStore);
+    }
+  }
+
+  @Test
+  public void testCompactionReclaimsSpace() throws Exception {
+    OffHeapDiskStore<String, String> offHeapDiskStore = createStore(new OffHeapDiskStoreServiceConfiguration().compactionThreshold(0.5));
+    OffHeapDiskStore.Provider.init(offHeapDiskStore);
+    try {
+      char[] chars = new char[1024];
+      Arrays.fill(chars, 'x');
+      String value = new String(chars);
+      for (int i = 0; i < 400; i++) {
+        offHeapDiskStore.put("key" + i, value);
+      }
+      for (int i = 10; i < 400; i++) {
+        offHeapDiskStore.remove("key" + i);
+      }
+      assertThat(offHeapDiskStore.getFragmentationRatio() > 0.5, is(true));
+
+      assertThat(offHeapDiskStore.compact(), is(true));
+
+      assertThat(offHeapDiskStore.getCompactionCount(), is(1L));
+      assertThat(offHeapDiskStore.getCompactionReclaimedBytes() > 0L, is(true));
+      assertThat(offHeapDiskStore.getCompactionMaxPause() > 0L, is(true));
+      for (int i = 0; i < 10; i++) {
+        assertThat(offHeapDiskStore.get("key" + i).value(), is(value));
+      }
+      assertThat(offHeapDiskStore.get("key10"), nullValue());
+      offHeapDiskStore.put("key10", value);
+
+      OffHeapDiskStore.Provider.close(offHeapDiskStore);
+      OffHeapDiskStore.Provider.init(offHeapDiskStore);
+      for (int i = 0; i < 11; i++) {
+        assertThat(offHeapDiskStore.get("key" + i).value(), is(value));
+      }
+    } finally {
+      destroyStore(offHeapDiskStore);
+    }
+  }
+
+  @Test
+  public void testRecoveryRestoresDataFileOfInterruptedCompaction() throws Exception {
+    OffHeapDiskStore<String, String> offHeapDiskStore = createAndInitStore(SystemTimeSource.INSTANCE, noExpiration());
+    try {
+      offHeapDiskStore.put("key1", "value1");
+
+      OffHeapDiskStore.Provider.close(offHeapDiskStore);
+      File directory = getPersistenceContext().getDirectory();
+      File dataFile = new File(directory, "ehcache-disk-store.data");
+      File previousFile = new File(directory, "ehcache-disk-store.data.previous");
+      File compactedFile = new File(directory, "ehcache-disk-store.data.compacted");
+      assertThat(dataFile.renameTo(previousFile), is(true));
+      FileOutputStream output = new FileOutputStream(compactedFile);
+      try {
+        output.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+      } finally {
+        output.close();
+      }
+
+      OffHeapDiskStore.Provider.init(offHeapDiskStore);
+      assertThat(offHeapDiskStore.get("key1").value(), is("value1"));
+      assertThat(previousFile.exists(), is(false));
+      assertThat(compactedFile.exists(), is(false));
+    } finally {
+      destroyStore(offHeapDiskStore);
+    }
+  }
+
+  @Test
+  public void testCompactionInvalidatesIndex() throws Exception {
+    OffHeapDiskStore<String, String> offHeapDiskStore = createStore(new OffHeapDiskStoreServiceConfiguration().compactionThreshold(0.5));
+    OffHeapDiskStore.Provider.init(offHeapDiskStore);
+    try {
+      offHeapDiskStore.put("key1", "value1");
+      OffHeapDiskStore.Provider.close(offHeapDiskStore);
+      OffHeapDiskStore.Provider.init(offHeapDiskStore);
+      File indexFile = new File(getPersistenceContext().getDirectory(), "ehcache-disk-store.index");
+      assertThat(indexFile.isFile(), is(true));
+
+      assertThat(offHeapDiskStore.compact(), is(true));
+
+      assertThat(indexFile.exists(), is(false));
+      assertThat(offHeapDiskStore.get("key1").value(), is("value1"));
+    } finally {
+      destroyStore(offHeapDiskStore);
+    }
+  }
+
+  @Test
+  public void testPhysicalOrderIteration() throws Exception {
+    OffHeapDiskStore<String, String> offHeapDiskStore = createStore(new OffHeapDiskStoreServiceConfiguration().physicalOrderIteration(true));
+    OffHeapDiskStore.Provider.init(offHeapDiskStore);
+    try {
+      Map<String, String> expected = new HashMap<String, String>();
+      for (int i = 0; i < 100; i++) {
+        offHeapDiskStore.put("key" + i, "value" + i);
+        expected.put("key" + i, "value" + i);
+      }
+      offHeapDiskStore.remove("key42");
+      expected.remove("key42");
+
+      Map<String, String> iterated = new HashMap<String, String>();
+      Store.Iterator<Cache.Entry<String, Store.ValueHolder<String>>> iterator = offHeapDiskStore.iterator();
+      while (iterator.hasNext()) {
+        Cache.Entry<String, Store.ValueHolder<String>> entry = iterator.next();
+        assertThat(iterated.put(entry.getKey(), entry.getValue().value()), nullValue());
+      }
+      assertThat(iterated, is(expected));
+    } finally {
+      destroyStore(offHeapDiskStore);
+    }
+  }
+
+  @Test
+  public void testGroupCommitFlushesBeforeReturning() throws Exception {
+    OffHeapDiskStore<String, String> offHeapDiskStore = createStore(new OffHeapDiskStoreServiceConfiguration()
+        .durability(OffHeapDiskStoreServiceConfiguration.Durability.GROUP_COMMIT));
+    OffHeapDiskStore.Provider.init(offHeapDiskStore);
+    try {
+      offHeapDiskStore.put("key1", "value1");
+      assertThat(offHeapDiskStore.getFlushCount(), is(1L));
+      offHeapDiskStore.putIfAbsent("key1", "value2");
+      assertThat(offHeapDiskStore.getFlushCount(), is(1L));
+      offHeapDiskStore.remove("key1");
+      assertThat(offHeapDiskStore.getFlushCount(), is(2L));
+
+      long flushes = 0;
+      for (long bucket : offHeapDiskStore.getFlushLatencyHistogram()) {
+        flushes += bucket;
+      }
+      assertThat(flushes, is(2L));
+      assertThat(offHeapDiskStore.getFlushMaxLatency() > 0L, is(true));
+    } finally {
+      destroyStore(offHeapDiskStore);
+    }
+  }
+
+  @Test
+  public void testGroupCommitFlushesBulkComputeOnce() throws Exception {
+    OffHeapDiskStore<String, String> offHeapDiskStore = createStore(new OffHeapDiskStoreServiceConfiguration()
+        .durability(OffHeapDiskStoreServiceConfiguration.Durability.GROUP_COMMIT));
+    OffHeapDiskStore.Provider.init(offHeapDiskStore);
+    try {
+      Set<String> keys = new HashSet<String>();
+      for (int i = 0; i < 10; i++) {
+        keys.add("key" + i);
+      }
+      offHeapDiskStore.bulkCompute(keys, new Function<Iterable<? extends Map.Entry<? extends String, ? extends String>>, Iterable<? extends Map.Entry<? extends String, ? extends String>>>() {
+        @Override
+        public Iterable<? extends Map.Entry<? extends String, ? extends String>> apply(Iterable<? extends Map.Entry<? extends String, ? extends String>> entries) {
+          Map<String, String> computed = new HashMap<String, String>();
+          for (Map.Entry<? extends String, ? extends String> entry : entries) {
+            computed.put(entry.getKey(), "value");
+          }
+          return computed.entrySet();
+        }
+      });
+      assertThat(offHeapDiskStore.getFlushCount(), is(1L));
+      for (String key : keys) {
+        assertThat(offHeapDiskStore.get(key).value(), is("value"));
+      }
+    } finally {
+      destroyStore(offHeapDiskStore);
+    }
+  }
+
+  @Test
+  public void testPeriodicFlush() throws Exception {
+    OffHeapDiskStore<String, String> offHeapDiskStore = createStore(new OffHeapDiskStoreServiceConfiguration()
+        .durability(OffHeapDiskStoreServiceConfiguration.Durability.PERIODIC).flushInterval(10, TimeUnit.MILLISECONDS));
+    OffHeapDiskStore.Provider.init(offHeapDiskStore);
+    try {
+      offHeapDiskStore.put("key1", "value1");
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (offHeapDiskStore.getFlushCount() == 0L && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      assertThat(offHeapDiskStore.getFlushCount() > 0L, is(true));
+    } finally {
+      destroyStore(offHeapDiskStore);
+    }
+  }
+
+  @Test
+  public void testNoDurabilityNeverFlushesOnMutation() throws Exception {
+    OffHeapDiskStore<String, String> offHeapDiskStore = createAndInitStore(SystemTimeSource.INSTANCE, noExpiration());
+    try {
+      offHeapDiskStore.put("key1", "value1");
+      assertThat(offHeapDiskStore.getFlushCount(), is(0L));
+    } finally {
+      destroyStore(offHeapDiskStore);
+    }
+  }
+
+  @Test
+  public void testKeyFilterShortCircuitsMisses() throws Exception {
+    OffHeapDiskStore<String, String> offHeapDiskStore = createStore(new OffHeapDiskStoreServiceConfiguration().keyFilter(1000, 0.01));
+    OffHeapDiskStore.Provider.init(offHeapDiskStore);
+    try {
+      for (int i = 0; i < 100; i++) {
+        offHeapDiskStore.put("key" + i, "value" + i);
+      }
+      for (int i = 0; i < 100; i++) {
+        assertThat(offHeapDiskStore.get("key" + i).value(), is("value" + i));
+      }
+      for (int i = 0; i < 1000; i++) {
+        assertThat(offHeapDiskStore.get("absent" + i), nullValue());
+      }
+      assertThat(offHeapDiskStore.getKeyFilterNegatives() + offHeapDiskStore.getKeyFilterFalsePositives(), is(1000L));
+      assertThat(offHeapDiskStore.getKeyFilterFalsePositiveRate() < 0.1, is(true));
+    } finally {
+      destroyStore(offHeapDiskStore);
+    }
+  }
+
+  @Test
+  public void testKeyFilterCoversBulkLoadedKeys() throws Exception {
+    OffHeapDiskStore<String, String> offHeapDiskStore = createStore(new OffHeapDiskStoreServiceConfiguration().keyFilter(1000, 0.01));
+    OffHeapDiskStore.Provider.init(offHeapDiskStore);
+    try {
+      Set<String> keys = new HashSet<String>();
+      for (int i = 0; i < 100; i++) {
+        keys.add("key" + i);
+      }
+      offHeapDiskStore.bulkComputeIfAbsent(keys, new Function<Iterable<? extends String>, Iterable<? extends Map.Entry<? extends String, ? extends String>>>() {
+        @Override
+        public Iterable<? extends Map.Entry<? extends String, ? extends String>> apply(Iterable<? extends String> absentKeys) {
+          List<Map.Entry<String, String>> loaded = new ArrayList<Map.Entry<String, String>>();
+          for (String key : absentKeys) {
+            loaded.add(new AbstractMap.SimpleEntry<String, String>(key, "value" + key.substring(3)));
+          }
+          return loaded;
+        }
+      });
+      for (int i = 0; i < 100; i++) {
+        assertThat(offHeapDiskStore.get("key" + i).value(), is("value" + i));
+      }
+    } finally {
+      destroyStore(offHeapDiskStore);
+    }
+  }
+
+  @Test
+  public void testKeyFilterIsPersistedWithIndex() throws Exception {
+    OffHeapDiskStore<String, String> offHeapDiskStore = createStore(new OffHeapDiskStoreServiceConfiguration().keyFilter(1000, 0.01));
+    OffHeapDiskStore.Provider.init(offHeapDiskStore);
+    try {
+      for (int i = 0; i < 100; i++) {
+        offHeapDiskStore.put("key" + i, "value" + i);
+      }
+      OffHeapDiskStore.Provider.close(offHeapDiskStore);
+      assertThat(new File(getPersistenceContext().getDirectory(), "ehcache-disk-store.filter").isFile(), is(true));
+
+      OffHeapDiskStore.Provider.init(offHeapDiskStore);
+      for (int i = 0; i < 100; i++) {
+        assertThat(offHeapDiskStore.get("key" + i).value(), is("value" + i));
+      }
+      assertThat(offHeapDiskStore.get("absent"), nullValue());
+    } finally {
+      destroyStore(offHeapDiskStore);
+    }
+  }
+
+  @Test
+  public void testKeyFilterIsRebuiltWhenMissing() throws Exception {
+    OffHeapDiskStore<String, String> offHeapDiskStore = createStore(new OffHeapDiskStoreServiceConfiguration().keyFilter(1000, 0.01));
+    OffHeapDiskStore.Provider.init(offHeapDiskStore);
+    try {
+      for (int i = 0; i < 100; i++) {
+        offHeapDiskStore.put("key" + i, "value" + i);
+      }
+      OffHeapDiskStore.Provider.close(offHeapDiskStore);
+      assertThat(new File(getPersistenceContext().getDirectory(), "ehcache-disk-store.filter").delete(), is(true));
+
+      OffHeapDiskStore.Provider.init(offHeapDiskStore);
+      for (int i = 0; i < 100; i++) {
+        assertThat(offHeapDiskStore.get("key" + i).value(), is("value" + i));
+      }
+      for (int i = 0; i < 100; i++) {
+        assertThat(offHeapDiskStore.containsKey("absent" + i), is(false));
+      }
+      assertThat(offHeapDiskStore.getKeyFilterNegatives() > 0L, is(true));
+    } finally {
+      destroyStore(offHeapDiskStore);
+    }
+  }
+
+  @Test
+  public void testDataFilesAreStripedOverRootDirectories() throws Exception {
+    File first = folder.newFolder();
+    File second = folder.newFolder();
+    DefaultLocalPersistenceService stripedService = new DefaultLocalPersistenceService(
+        new CacheManagerPersistenceConfiguration(PersistenceConfiguration.StripingPolicy.ROUND_ROBIN, first, second));
+    stripedService.start(null);
+    try {
+      FileBasedPersistenceContext context = stripedService.createPersistenceContextWithin(stripedService.getOrCreatePersistenceSpace("cache"), "store");
+      OffHeapDiskStore<String, String> offHeapDiskStore = createStore(context, new OffHeapDiskStoreServiceConfiguration().compactionThreshold(0.5));
+      OffHeapDiskStore.Provider.init(offHeapDiskStore);
+      try {
+        for (int i = 0; i < 100; i++) {
+          offHeapDiskStore.put("key" + i, "value" + i);
+        }
+        assertThat(offHeapDiskStore.compact(), is(true));
+        OffHeapDiskStore.Provider.close(offHeapDiskStore);
+
+        List<File> directories = context.getStripeDirectories(2);
+        assertThat(new File(directories.get(0), "ehcache-disk-store.data").isFile(), is(true));
+        assertThat(new File(directories.get(1), "ehcache-disk-store.data").isFile(), is(true));
+        assertThat(directories.get(0).getParentFile().getParentFile().equals(directories.get(1).getParentFile().getParentFile()), is(false));
+
+        OffHeapDiskStore.Provider.init(offHeapDiskStore);
+        for (int i = 0; i < 100; i++) {
+          assertThat(offHeapDiskStore.get("key" + i).value(), is("value" + i));
+        }
+      } finally {
+        OffHeapDiskStore.Provider.close(offHeapDiskStore);
+      }
+    } finally {
+      stripedService.stop();
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testCompactionRequiresEnabling() throws Exception {
+    OffHeapDiskStore<String, String> offHeapDiskStore = createAndInitStore(SystemTimeSource.INSTANCE, noExpiration());
+    try {
+      offHeapDiskStore.compact();
+    } finally {
+      destroyStore(offHeapDiskStore);
+    }
+  }
+
+  private OffHeapDiskStore<String, String> createStore(OffHeapDiskStoreServiceConfiguration diskStoreConfig) throws UnsupportedTypeException {
+    return createStore(getPersistenceContext(), diskStoreConfig);
+  }
+
+  private OffHeapDiskStore<String, String> createStore(FileBasedPersistenceContext persistenceContext, OffHeapDiskStoreServiceConfiguration diskStoreConfig) throws UnsupportedTypeException {
+    SerializationProvider serializationProvider = new DefaultSerializationProvider(null);
+    serializationProvider.start(providerContaining(persistenceService));
+    ClassLoader classLoader = getClass().getClassLoader();
+    Serializer<String> keySerializer = serializationProvider.createKeySerializer(String.class, classLoader);
+    Serializer<String> valueSerializer = serializationProvider.createValueSerializer(String.class, classLoader);
+    StoreConfigurationImpl<String, String> storeConfiguration = new StoreConfigurationImpl<String, String>(String.class, String.class, null, null, classLoader, noExpiration(), null, keySerializer, valueSerializer);
+    return new OffHeapDiskStore<String, String>(persistenceContext, storeConfiguration, SystemTimeSource.INSTANCE, MemoryUnit.MB.toBytes(1), diskStoreConfig);
+  }
+
   @Override
   protected OffHeapDiskStore<String, String> createAndInitStore(final TimeSource timeSource, final Expiry<? super String, ? super String> expiry) {
     try {
@@ -0,0 +1,112 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache.internal.store.disk;
+
+import org.ehcache.internal.store.offheap.EhcacheOffHeapBackingMap;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class RecoveringBackingMapTest {
+
+  @Test
+  public void testReadsMissUntilPublished() {
+    RecoveringBackingMap<String, String> map = new RecoveringBackingMap<String, String>();
+
+    assertThat(map.get("key"), nullValue());
+    assertThat(map.containsKey("key"), is(false));
+    assertThat(map.isEmpty(), is(true));
+  }
+
+  @Test
+  public void testMutationsWaitUntilPublished() throws Exception {
+    final RecoveringBackingMap<String, String> map = new RecoveringBackingMap<String, String>();
+    @SuppressWarnings("unchecked")
+    EhcacheOffHeapBackingMap<String, String> recovered = mock(EhcacheOffHeapBackingMap.class);
+    when(recovered.putIfAbsent("key", "value")).thenReturn("recovered");
+
+    final AtomicReference<String> result = new AtomicReference<String>();
+    Thread writer = new Thread() {
+      @Override
+      public void run() {
+        result.set(map.putIfAbsent("key", "value"));
+      }
+    };
+    writer.start();
+    writer.join(100);
+    assertThat(writer.isAlive(), is(true));
+    verifyZeroInteractions(recovered);
+
+    map.publish(recovered);
+    writer.join(TimeUnit.SECONDS.toMillis(10));
+    assertThat(result.get(), is("recovered"));
+    verify(recovered).putIfAbsent("key", "value");
+  }
+
+  @Test
+  public void testMutationsFailOnceRecoveryFailed() {
+    RecoveringBackingMap<String, String> map = new RecoveringBackingMap<String, String>();
+    map.fail(new RuntimeException("corrupted index"));
+
+    try {
+      map.put("key", "value");
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      assertThat(e.getCause(), notNullValue());
+    }
+    assertThat(map.get("key"), nullValue());
+  }
+
+  @Test
+  public void testClearIsAppliedOnPublish() {
+    RecoveringBackingMap<String, String> map = new RecoveringBackingMap<String, String>();
+    map.clear();
+
+    @SuppressWarnings("unchecked")
+    EhcacheOffHeapBackingMap<String, String> recovered = mock(EhcacheOffHeapBackingMap.class);
+    map.publish(recovered);
+
+    verify(recovered).clear();
+  }
+
+  @Test
+  public void testForwardsOncePublished() {
+    RecoveringBackingMap<String, String> map = new RecoveringBackingMap<String, String>();
+
+    @SuppressWarnings("unchecked")
+    EhcacheOffHeapBackingMap<String, String> recovered = mock(EhcacheOffHeapBackingMap.class);
+    when(recovered.get("key")).thenReturn("value");
+    map.publish(recovered);
+
+    assertThat(map.get("key"), is("value"));
+    map.put("key", "other");
+    verify(recovered).put("key", "other");
+    verify(recovered, never()).clear();
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache.internal.store.disk;
+
+import org.ehcache.Cache;
+import org.ehcache.CacheManager;
+import org.ehcache.CacheManagerBuilder;
+import org.ehcache.config.CacheConfigurationBuilder;
+import org.ehcache.config.EvictionVeto;
+import org.ehcache.config.ResourcePoolsBuilder;
+import org.ehcache.config.StoreConfigurationImpl;
+import org.ehcache.config.persistence.CacheManagerPersistenceConfiguration;
+import org.ehcache.config.units.EntryUnit;
+import org.ehcache.config.units.MemoryUnit;
+import org.ehcache.exceptions.CacheAccessException;
+import org.ehcache.expiry.Expiry;
+import org.ehcache.internal.SystemTimeSource;
+import org.ehcache.internal.TimeSource;
+import org.ehcache.internal.store.offheap.AbstractOffHeapStore;
+import org.ehcache.internal.store.offheap.AbstractOffHeapStoreTest;
+import org.ehcache.spi.serialization.DefaultSerializationProvider;
+import org.ehcache.spi.serialization.SerializationProvider;
+import org.ehcache.spi.serialization.Serializer;
+import org.ehcache.spi.serialization.UnsupportedTypeException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.ehcache.expiry.Expirations.noExpiration;
+import static org.ehcache.spi.TestServiceProvider.providerContaining;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class SwapDiskStoreTest extends AbstractOffHeapStoreTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testSwapFileIsDeletedOnClose() throws CacheAccessException {
+    SwapDiskStore<String, String> swapStore = createAndInitStore(SystemTimeSource.INSTANCE, noExpiration());
+    File swapFile = swapStore.getSwapFile();
+    try {
+      swapStore.put("key1", "value1");
+      assertThat(swapFile.getParentFile(), is(folder.getRoot()));
+      assertThat(swapFile.isFile(), is(true));
+    } finally {
+      destroyStore(swapStore);
+    }
+    assertThat(swapFile.exists(), is(false));
+  }
+
+  @Test
+  public void testContentIsNotRecovered() throws CacheAccessException {
+    SwapDiskStore<String, String> swapStore = createAndInitStore(SystemTimeSource.INSTANCE, noExpiration());
+    try {
+      swapStore.put("key1", "value1");
+      assertThat(swapStore.get("key1"), notNullValue());
+
+      SwapDiskStore.Provider.close(swapStore);
+      SwapDiskStore.Provider.init(swapStore);
+      assertThat(swapStore.get("key1"), nullValue());
+      assertThat(folder.getRoot().listFiles().length, is(1));
+    } finally {
+      destroyStore(swapStore);
+    }
+  }
+
+  @Test
+  public void testCacheWithSwapDiskTierNeedsNoPersistence() throws IOException {
+    CacheManager cacheManager = CacheManagerBuilder.newCacheManagerBuilder()
+        .withCache("swapped", CacheConfigurationBuilder.newCacheConfigurationBuilder()
+            .withResourcePools(ResourcePoolsBuilder.newResourcePoolsBuilder().heap(10, EntryUnit.ENTRIES).disk(1, MemoryUnit.MB))
+            .add(new SwapDiskStoreConfiguration().directory(folder.getRoot()))
+            .buildConfig(Long.class, String.class))
+        .build(true);
+    try {
+      Cache<Long, String> cache = cacheManager.getCache("swapped", Long.class, String.class);
+      for (long i = 0; i < 100; i++) {
+        cache.put(i, "value" + i);
+      }
+      for (long i = 0; i < 100; i++) {
+        assertThat(cache.get(i), is("value" + i));
+      }
+      assertThat(folder.getRoot().listFiles().length, is(1));
+    } finally {
+      cacheManager.close();
+    }
+    assertThat(folder.getRoot().listFiles().length, is(0));
+  }
+
+  @Test
+  public void testPersistentDiskResourceIsRejected() throws Exception {
+    try {
+      CacheManagerBuilder.newCacheManagerBuilder()
+          .with(new CacheManagerPersistenceConfiguration(folder.newFolder()))
+          .withCache("swapped", CacheConfigurationBuilder.newCacheConfigurationBuilder()
+              .withResourcePools(ResourcePoolsBuilder.newResourcePoolsBuilder().heap(10, EntryUnit.ENTRIES).disk(1, MemoryUnit.MB, true))
+              .add(new SwapDiskStoreConfiguration().directory(folder.getRoot()))
+              .buildConfig(Long.class, String.class))
+          .build(true);
+      fail("Expected IllegalArgumentException");
+    } catch (Exception e) {
+      Throwable cause = e;
+      while (cause != null && !(cause instanceof IllegalArgumentException)) {
+        cause = cause.getCause();
+      }
+      assertThat(cause, notNullValue());
+      assertThat(cause.getMessage(), containsString("persistent disk resource"));
+    }
+  }
+
+  @Override
+  protected SwapDiskStore<String, String> createAndInitStore(TimeSource timeSource, Expiry<? super String, ? super String> expiry) {
+    try {
+      SerializationProvider serializationProvider = new DefaultSerializationProvider(null);
+      serializationProvider.start(providerContaining());
+      ClassLoader classLoader = getClass().getClassLoader();
+      Serializer<String> keySerializer = serializationProvider.createKeySerializer(String.class, classLoader);
+      Serializer<String> valueSerializer = serializationProvider.createValueSerializer(String.class, classLoader);
+      StoreConfigurationImpl<String, String> storeConfiguration = new StoreConfigurationImpl<String, String>(String.class, String.class, null, null, classLoader, expiry, null, keySerializer, valueSerializer);
+      SwapDiskStore<String, String> swapStore = new SwapDiskStore<String, String>(storeConfiguration, timeSource, MemoryUnit.MB.toBytes(1),
+          new SwapDiskStoreConfiguration().directory(folder.getRoot()));
+      SwapDiskStore.Provider.init(swapStore);
+      return swapStore;
+    } catch (UnsupportedTypeException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  @Override
+  protected SwapDiskStore<String, byte[]> createAndInitStore(TimeSource timeSource, Expiry<? super String, ? super byte[]> expiry, EvictionVeto<? super String, ? super byte[]> evictionVeto) {
+    try {
+      SerializationProvider serializationProvider = new DefaultSerializationProvider(null);
+      serializationProvider.start(providerContaining());
+      ClassLoader classLoader = getClass().getClassLoader();
+      Serializer<String> keySerializer = serializationProvider.createKeySerializer(String.class, classLoader);
+      Serializer<byte[]> valueSerializer = serializationProvider.createValueSerializer(byte[].class, classLoader);
+      StoreConfigurationImpl<String, byte[]> storeConfiguration = new StoreConfigurationImpl<String, byte[]>(String.class, byte[].class, evictionVeto, null, classLoader, expiry, null, keySerializer, valueSerializer);
+      SwapDiskStore<String, byte[]> swapStore = new SwapDiskStore<String, byte[]>(storeConfiguration, timeSource, MemoryUnit.MB.toBytes(1),
+          new SwapDiskStoreConfiguration().directory(folder.getRoot()));
+      SwapDiskStore.Provider.init(swapStore);
+      return swapStore;
+    } catch (UnsupportedTypeException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  @Override
+  protected void destroyStore(AbstractOffHeapStore<?, ?> store) {
+    SwapDiskStore.Provider.close((SwapDiskStore<?, ?>) store);
+  }
+}
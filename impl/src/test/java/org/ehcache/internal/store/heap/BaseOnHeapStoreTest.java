@@ -34,9 +34,14 @@ import org.junit.Test;
 import org.mockito.ArgumentMatcher;
 import org.mockito.Matchers;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -49,6 +54,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public abstract class BaseOnHeapStoreTest {
 
@@ -811,6 +817,44 @@ public abstract class BaseOnHeapStoreTest {
     assertThat(storeSize(store), is(0));
   }
 
+  @Test
+  public void testBulkGetOrComputeIfAbsentFaultsAllMissesAtOnce() throws Exception {
+    OnHeapStore<String, String> store = newStore();
+    store.put("hit", "value");
+
+    final List<Set<String>> batches = new ArrayList<Set<String>>();
+    Map<String, ValueHolder<String>> result = store.bulkGetOrComputeIfAbsent(new HashSet<String>(Arrays.asList("hit", "miss1", "miss2", "absent")),
+        new Function<Iterable<? extends String>, Map<String, ValueHolder<String>>>() {
+          @Override
+          public Map<String, ValueHolder<String>> apply(Iterable<? extends String> keys) {
+            Set<String> batch = new HashSet<String>();
+            Map<String, ValueHolder<String>> faulted = new HashMap<String, ValueHolder<String>>();
+            for (String key : keys) {
+              batch.add(key);
+              if (key.startsWith("miss")) {
+                ValueHolder<String> valueHolder = mock(ValueHolder.class);
+                when(valueHolder.value()).thenReturn(key + "-value");
+                when(valueHolder.expirationTime(Matchers.any(TimeUnit.class))).thenReturn(ValueHolder.NO_EXPIRE);
+                faulted.put(key, valueHolder);
+              }
+            }
+            batches.add(batch);
+            return faulted;
+          }
+        });
+
+    assertThat(batches.size(), is(1));
+    assertThat(batches.get(0), equalTo((Set<String>) new HashSet<String>(Arrays.asList("miss1", "miss2", "absent"))));
+    assertThat(result.size(), is(4));
+    assertThat(result.get("hit").value(), equalTo("value"));
+    assertThat(result.get("miss1").value(), equalTo("miss1-value"));
+    assertThat(result.get("miss2").value(), equalTo("miss2-value"));
+    assertThat(result.get("absent"), nullValue());
+    assertThat(store.get("miss1").value(), equalTo("miss1-value"));
+    assertThat(store.get("absent"), nullValue());
+    assertThat(storeSize(store), is(3));
+  }
+
   public static <V> ValueHolder<V> valueHolderValueEq(final V value) {
     return argThat(new ArgumentMatcher<ValueHolder<V>>() {
 
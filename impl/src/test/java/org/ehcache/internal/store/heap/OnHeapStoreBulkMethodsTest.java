@@ -21,13 +21,16 @@ import org.ehcache.expiry.Expirations;
 import org.ehcache.function.Function;
 import org.ehcache.internal.SystemTimeSource;
 import org.ehcache.internal.concurrent.ConcurrentHashMap;
+import org.ehcache.internal.store.BulkComputeConfiguration;
 import org.ehcache.spi.cache.Store;
 import org.hamcrest.Matchers;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
@@ -344,4 +347,37 @@ public class OnHeapStoreBulkMethodsTest {
     assertThat(store.get(5), is(nullValue()));
   }
 
+  @Test
+  public void testBulkComputeIfAbsentCallsMappingFunctionOncePerBatch() throws Exception {
+    Store.Configuration<Number, CharSequence> configuration = mockStoreConfig();
+
+    OnHeapStore<Number, CharSequence> store = new OnHeapStore<Number, CharSequence>(configuration, SystemTimeSource.INSTANCE, false,
+        new BulkComputeConfiguration().batchSize(2));
+    store.put(1, "one");
+
+    final List<Integer> batchSizes = new ArrayList<Integer>();
+    Map<Number, Store.ValueHolder<CharSequence>> result = store.bulkComputeIfAbsent(new HashSet<Number>(Arrays.asList(1, 2, 3, 4, 5, 6)), new Function<Iterable<? extends Number>, Iterable<? extends Map.Entry<? extends Number, ? extends CharSequence>>>() {
+      @Override
+      public Iterable<? extends Map.Entry<? extends Number, ? extends CharSequence>> apply(Iterable<? extends Number> numbers) {
+        Map<Number, CharSequence> result = new HashMap<Number, CharSequence>();
+        for (Number key : numbers) {
+          if (key.equals(1)) {
+            fail();
+          }
+          result.put(key, "value" + key);
+        }
+        batchSizes.add(result.size());
+        return result.entrySet();
+      }
+    });
+
+    assertThat(batchSizes, Matchers.contains(2, 2, 1));
+    assertThat(result.size(), is(6));
+    assertThat(result.get(1).value(), Matchers.<CharSequence>equalTo("one"));
+    for (int i = 2; i <= 6; i++) {
+      assertThat(result.get(i).value(), Matchers.<CharSequence>equalTo("value" + i));
+      assertThat(store.get(i).value(), Matchers.<CharSequence>equalTo("value" + i));
+    }
+  }
+
 }
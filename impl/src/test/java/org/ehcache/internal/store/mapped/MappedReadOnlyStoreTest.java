@@ -0,0 +1,234 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ehcache.internal.store.mapped;
+
+import org.ehcache.Cache;
+import org.ehcache.CacheManager;
+import org.ehcache.CacheManagerBuilder;
+import org.ehcache.config.CacheConfigurationBuilder;
+import org.ehcache.config.ResourcePoolsBuilder;
+import org.ehcache.config.SerializerConfiguration;
+import org.ehcache.config.StoreConfigurationImpl;
+import org.ehcache.config.serializer.DefaultSerializerConfiguration;
+import org.ehcache.config.units.EntryUnit;
+import org.ehcache.config.units.MemoryUnit;
+import org.ehcache.exceptions.CacheWritingException;
+import org.ehcache.exceptions.StateTransitionException;
+import org.ehcache.function.BiFunction;
+import org.ehcache.function.Function;
+import org.ehcache.internal.serialization.JavaSerializer;
+import org.ehcache.spi.cache.Store;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class MappedReadOnlyStoreTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testGetHitsAndMisses() throws Exception {
+    MappedReadOnlyStore<Long, String> store = createStore(buildFile(1000));
+    try {
+      assertThat(store.getMappingCount(), is(1000L));
+      for (long i = 0; i < 1000; i++) {
+        assertThat(store.get(i).value(), is("value" + i));
+        assertThat(store.containsKey(i), is(true));
+      }
+      assertThat(store.get(1000L), nullValue());
+      assertThat(store.containsKey(-1L), is(false));
+    } finally {
+      MappedReadOnlyStore.Provider.close(store);
+    }
+  }
+
+  @Test
+  public void testIteratorReturnsAllMappings() throws Exception {
+    MappedReadOnlyStore<Long, String> store = createStore(buildFile(100));
+    try {
+      Map<Long, String> seen = new HashMap<Long, String>();
+      Store.Iterator<Cache.Entry<Long, Store.ValueHolder<String>>> iterator = store.iterator();
+      while (iterator.hasNext()) {
+        Cache.Entry<Long, Store.ValueHolder<String>> entry = iterator.next();
+        seen.put(entry.getKey(), entry.getValue().value());
+      }
+      assertThat(seen.size(), is(100));
+      for (long i = 0; i < 100; i++) {
+        assertThat(seen.get(i), is("value" + i));
+      }
+    } finally {
+      MappedReadOnlyStore.Provider.close(store);
+    }
+  }
+
+  @Test
+  public void testMutationsAreRejected() throws Exception {
+    MappedReadOnlyStore<Long, String> store = createStore(buildFile(10));
+    try {
+      try {
+        store.put(1L, "other");
+        fail("Expected UnsupportedOperationException");
+      } catch (UnsupportedOperationException e) {
+        // expected
+      }
+      try {
+        store.remove(1L);
+        fail("Expected UnsupportedOperationException");
+      } catch (UnsupportedOperationException e) {
+        // expected
+      }
+      assertThat(store.get(1L).value(), is("value1"));
+    } finally {
+      MappedReadOnlyStore.Provider.close(store);
+    }
+  }
+
+  @Test
+  public void testComputeIfAbsentOnlyFailsWhenInstallingAMapping() throws Exception {
+    MappedReadOnlyStore<Long, String> store = createStore(buildFile(10));
+    try {
+      Function<Long, String> nullFunction = new Function<Long, String>() {
+        @Override
+        public String apply(Long key) {
+          return null;
+        }
+      };
+      assertThat(store.computeIfAbsent(1L, nullFunction).value(), is("value1"));
+      assertThat(store.computeIfAbsent(42L, nullFunction), nullValue());
+      try {
+        store.computeIfAbsent(42L, new Function<Long, String>() {
+          @Override
+          public String apply(Long key) {
+            return "loaded";
+          }
+        });
+        fail("Expected UnsupportedOperationException");
+      } catch (UnsupportedOperationException e) {
+        // expected
+      }
+    } finally {
+      MappedReadOnlyStore.Provider.close(store);
+    }
+  }
+
+  @Test
+  public void testComputeOnlyFailsWhenChangingAMapping() throws Exception {
+    MappedReadOnlyStore<Long, String> store = createStore(buildFile(10));
+    try {
+      BiFunction<Long, String, String> sameValueFunction = new BiFunction<Long, String, String>() {
+        @Override
+        public String apply(Long key, String value) {
+          return value == null ? null : new String(value);
+        }
+      };
+      assertThat(store.compute(1L, sameValueFunction).value(), is("value1"));
+      assertThat(store.computeIfPresent(1L, sameValueFunction).value(), is("value1"));
+      assertThat(store.compute(42L, sameValueFunction), nullValue());
+      try {
+        store.computeIfPresent(1L, new BiFunction<Long, String, String>() {
+          @Override
+          public String apply(Long key, String value) {
+            return "other";
+          }
+        });
+        fail("Expected UnsupportedOperationException");
+      } catch (UnsupportedOperationException e) {
+        // expected
+      }
+    } finally {
+      MappedReadOnlyStore.Provider.close(store);
+    }
+  }
+
+  @Test
+  public void testCacheBackedByMappedFile() throws Exception {
+    File file = buildFile(100);
+    CacheManager cacheManager = CacheManagerBuilder.newCacheManagerBuilder()
+        .withCache("reference", CacheConfigurationBuilder.newCacheConfigurationBuilder()
+            .withResourcePools(ResourcePoolsBuilder.newResourcePoolsBuilder().heap(10, EntryUnit.ENTRIES))
+            .add(new MappedReadOnlyStoreConfiguration(file))
+            .add(new DefaultSerializerConfiguration<Long>((Class) JavaSerializer.class, SerializerConfiguration.Type.KEY))
+            .add(new DefaultSerializerConfiguration<String>((Class) JavaSerializer.class, SerializerConfiguration.Type.VALUE))
+            .buildConfig(Long.class, String.class))
+        .build(true);
+    try {
+      Cache<Long, String> cache = cacheManager.getCache("reference", Long.class, String.class);
+      for (long i = 0; i < 100; i++) {
+        assertThat(cache.get(i), is("value" + i));
+      }
+      assertThat(cache.get(100L), nullValue());
+      try {
+        cache.put(1L, "other");
+        fail("Expected the put to fail");
+      } catch (UnsupportedOperationException e) {
+        // expected
+      } catch (CacheWritingException e) {
+        // expected
+      }
+    } finally {
+      cacheManager.close();
+    }
+  }
+
+  @Test
+  public void testOffHeapResourceIsRejected() throws Exception {
+    try {
+      CacheManagerBuilder.newCacheManagerBuilder()
+          .withCache("reference", CacheConfigurationBuilder.newCacheConfigurationBuilder()
+              .withResourcePools(ResourcePoolsBuilder.newResourcePoolsBuilder().heap(10, EntryUnit.ENTRIES).offheap(1, MemoryUnit.MB))
+              .add(new MappedReadOnlyStoreConfiguration(buildFile(1)))
+              .buildConfig(Long.class, String.class))
+          .build(true);
+      fail("Expected StateTransitionException");
+    } catch (StateTransitionException e) {
+      assertThat(e.getCause().getCause(), instanceOf(IllegalArgumentException.class));
+    }
+  }
+
+  private File buildFile(int count) throws IOException {
+    File file = new File(folder.newFolder(), "reference.data");
+    MappedReadOnlyFileBuilder<Long, String> builder = new MappedReadOnlyFileBuilder<Long, String>(file,
+        new JavaSerializer<Long>(getClass().getClassLoader()), new JavaSerializer<String>(getClass().getClassLoader()));
+    for (long i = 0; i < count; i++) {
+      builder.put(i, "value" + i);
+    }
+    builder.build();
+    return file;
+  }
+
+  private MappedReadOnlyStore<Long, String> createStore(File file) throws IOException {
+    ClassLoader classLoader = getClass().getClassLoader();
+    Store.Configuration<Long, String> config = new StoreConfigurationImpl<Long, String>(Long.class, String.class, null, null,
+        classLoader, null, ResourcePoolsBuilder.newResourcePoolsBuilder().heap(10, EntryUnit.ENTRIES).build(),
+        new JavaSerializer<Long>(classLoader), new JavaSerializer<String>(classLoader));
+    MappedReadOnlyStore<Long, String> store = new MappedReadOnlyStore<Long, String>(config, file);
+    MappedReadOnlyStore.Provider.init(store);
+    return store;
+  }
+}
@@ -17,7 +17,14 @@
 package org.ehcache.internal.store.offheap;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -157,6 +164,40 @@ public abstract class AbstractOffHeapStoreTest {
     }
   }
 
+  @Test
+  public void testBulkInvalidateKeys() throws Exception {
+    final TestTimeSource timeSource = new TestTimeSource();
+    AbstractOffHeapStore<String, String> offHeapStore = createAndInitStore(timeSource, Expirations.noExpiration());
+
+    try {
+      final List<String> invalidated = new ArrayList<String>();
+      offHeapStore.setInvalidationListener(new CachingTier.InvalidationListener<String, String>() {
+        @Override
+        public void onInvalidation(String key, Store.ValueHolder<String> valueHolder) {
+          invalidated.add(key);
+        }
+      });
+
+      Set<String> keys = new HashSet<String>();
+      for (int i = 0; i < 100; i++) {
+        offHeapStore.put("key" + i, "value" + i);
+        if (i % 2 == 0) {
+          keys.add("key" + i);
+        }
+      }
+      keys.add("absent");
+
+      offHeapStore.bulkInvalidate(keys);
+
+      assertThat(invalidated.size(), is(50));
+      for (int i = 0; i < 100; i++) {
+        assertThat(offHeapStore.get("key" + i) == null, is(i % 2 == 0));
+      }
+    } finally {
+      destroyStore(offHeapStore);
+    }
+  }
+
   @Test
   public void testInvalidateAll() throws Exception {
     final TestTimeSource timeSource = new TestTimeSource();
@@ -303,6 +344,70 @@ public abstract class AbstractOffHeapStoreTest {
     }
   }
 
+  @Test
+  public void testComputeIfAbsentLoadsOutsideTheSegmentLockAndSharesTheLoad() throws Exception {
+    final AbstractOffHeapStore<String, String> store = createAndInitStore(new TestTimeSource(), Expirations.noExpiration());
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      final String key = "key";
+      String otherKey = null;
+      for (int i = 0; otherKey == null; i++) {
+        if (store.backingMap().segmentIndexFor("other" + i) == store.backingMap().segmentIndexFor(key)) {
+          otherKey = "other" + i;
+        }
+      }
+      final String sameSegmentKey = otherKey;
+
+      final CountDownLatch loading = new CountDownLatch(1);
+      final CountDownLatch release = new CountDownLatch(1);
+      Future<Store.ValueHolder<String>> load = executor.submit(new Callable<Store.ValueHolder<String>>() {
+        @Override
+        public Store.ValueHolder<String> call() throws Exception {
+          return store.computeIfAbsent(key, new Function<String, String>() {
+            @Override
+            public String apply(String k) {
+              loading.countDown();
+              try {
+                release.await();
+              } catch (InterruptedException e) {
+                throw new AssertionError(e);
+              }
+              return "loaded";
+            }
+          });
+        }
+      });
+      assertThat(loading.await(10, TimeUnit.SECONDS), is(true));
+
+      executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          store.put(sameSegmentKey, "value");
+          return null;
+        }
+      }).get(10, TimeUnit.SECONDS);
+      assertThat(store.get(sameSegmentKey).value(), equalTo("value"));
+
+      Future<Store.ValueHolder<String>> sharedLoad = executor.submit(new Callable<Store.ValueHolder<String>>() {
+        @Override
+        public Store.ValueHolder<String> call() throws Exception {
+          return store.computeIfAbsent(key, new Function<String, String>() {
+            @Override
+            public String apply(String k) {
+              throw new AssertionError("Pending load was not shared");
+            }
+          });
+        }
+      });
+      release.countDown();
+      assertThat(load.get(10, TimeUnit.SECONDS).value(), equalTo("loaded"));
+      assertThat(sharedLoad.get(10, TimeUnit.SECONDS).value(), equalTo("loaded"));
+    } finally {
+      executor.shutdownNow();
+      destroyStore(store);
+    }
+  }
+
   protected abstract AbstractOffHeapStore<String, String> createAndInitStore(final TimeSource timeSource, final Expiry<? super String, ? super String> expiry);
 
   protected abstract AbstractOffHeapStore<String, byte[]> createAndInitStore(final TimeSource timeSource, final Expiry<? super String, ? super byte[]> expiry, EvictionVeto<? super String, ? super byte[]> evictionVeto);
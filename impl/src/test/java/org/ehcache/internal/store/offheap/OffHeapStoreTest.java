@@ -19,18 +19,136 @@ package org.ehcache.internal.store.offheap;
 import org.ehcache.config.EvictionVeto;
 import org.ehcache.config.StoreConfigurationImpl;
 import org.ehcache.config.units.MemoryUnit;
+import org.ehcache.expiry.Expirations;
 import org.ehcache.expiry.Expiry;
+import org.ehcache.function.Aggregator;
+import org.ehcache.function.Function;
+import org.ehcache.internal.SystemTimeSource;
 import org.ehcache.internal.TimeSource;
+import org.ehcache.internal.store.BulkComputeConfiguration;
+import org.ehcache.spi.cache.Store;
 import static org.ehcache.spi.TestServiceProvider.providerContaining;
 import org.ehcache.spi.serialization.DefaultSerializationProvider;
 import org.ehcache.spi.serialization.SerializationProvider;
 import org.ehcache.spi.serialization.Serializer;
 import org.ehcache.spi.serialization.UnsupportedTypeException;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
 
 public class OffHeapStoreTest extends AbstractOffHeapStoreTest {
 
+  @Test
+  public void testBulkComputeIfAbsentSplitsLargeBulkOperationsBySegment() throws Exception {
+    OffHeapStore<String, String> offHeapStore = createAndInitStore(SystemTimeSource.INSTANCE, Expirations.noExpiration(),
+        new BulkComputeConfiguration().parallelism(4).parallelThreshold(0));
+    try {
+      Set<String> keys = new HashSet<String>();
+      for (int i = 0; i < 100; i++) {
+        keys.add("key" + i);
+      }
+      final AtomicInteger invocations = new AtomicInteger();
+      final Set<String> mapped = Collections.synchronizedSet(new HashSet<String>());
+      Map<String, Store.ValueHolder<String>> result = offHeapStore.bulkComputeIfAbsent(keys, new Function<Iterable<? extends String>, Iterable<? extends Map.Entry<? extends String, ? extends String>>>() {
+        @Override
+        public Iterable<? extends Map.Entry<? extends String, ? extends String>> apply(Iterable<? extends String> absentKeys) {
+          invocations.incrementAndGet();
+          Map<String, String> values = new HashMap<String, String>();
+          for (String key : absentKeys) {
+            assertThat(mapped.add(key), is(true));
+            values.put(key, "value-" + key);
+          }
+          return values.entrySet();
+        }
+      });
+
+      assertThat(invocations.get(), greaterThan(1));
+      assertThat(mapped, is(keys));
+      assertThat(result.keySet(), is(keys));
+      for (String key : keys) {
+        assertThat(offHeapStore.get(key).value(), is("value-" + key));
+      }
+    } finally {
+      destroyStore(offHeapStore);
+    }
+  }
+
+  @Test
+  public void testScanFoldsSegmentsInParallel() throws Exception {
+    OffHeapStore<String, String> offHeapStore = createAndInitStore(SystemTimeSource.INSTANCE, Expirations.noExpiration(),
+        new BulkComputeConfiguration().parallelism(4));
+    try {
+      Set<String> keys = new HashSet<String>();
+      for (int i = 0; i < 100; i++) {
+        keys.add("key" + i);
+        offHeapStore.put("key" + i, "value-key" + i);
+      }
+      final AtomicInteger partitions = new AtomicInteger();
+      Aggregator<String, String, Set<String>> collector = new Aggregator<String, String, Set<String>>() {
+        @Override
+        public Set<String> identity() {
+          partitions.incrementAndGet();
+          return new HashSet<String>();
+        }
+
+        @Override
+        public Set<String> accumulate(Set<String> accumulator, String key, String value) {
+          assertThat(value, is("value-" + key));
+          accumulator.add(key);
+          return accumulator;
+        }
+
+        @Override
+        public Set<String> combine(Set<String> left, Set<String> right) {
+          left.addAll(right);
+          return left;
+        }
+      };
+
+      assertThat(offHeapStore.scan(collector, false), is(keys));
+      assertThat(partitions.get(), greaterThan(2));
+
+      Set<String> scannedKeys = offHeapStore.scan(new Aggregator<String, String, Set<String>>() {
+        @Override
+        public Set<String> identity() {
+          return new HashSet<String>();
+        }
+
+        @Override
+        public Set<String> accumulate(Set<String> accumulator, String key, String value) {
+          assertThat(value, nullValue());
+          accumulator.add(key);
+          return accumulator;
+        }
+
+        @Override
+        public Set<String> combine(Set<String> left, Set<String> right) {
+          left.addAll(right);
+          return left;
+        }
+      }, true);
+      assertThat(scannedKeys, is(keys));
+    } finally {
+      destroyStore(offHeapStore);
+    }
+  }
+
   @Override
   protected OffHeapStore<String, String> createAndInitStore(TimeSource timeSource, Expiry<? super String, ? super String> expiry) {
+    return createAndInitStore(timeSource, expiry, new BulkComputeConfiguration());
+  }
+
+  private OffHeapStore<String, String> createAndInitStore(TimeSource timeSource, Expiry<? super String, ? super String> expiry, BulkComputeConfiguration bulkComputeConfig) {
     try {
       SerializationProvider serializationProvider = new DefaultSerializationProvider(null);
       serializationProvider.start(providerContaining());
@@ -38,7 +156,7 @@ public class OffHeapStoreTest extends AbstractOffHeapStoreTest {
       Serializer<String> keySerializer = serializationProvider.createKeySerializer(String.class, classLoader);
       Serializer<String> valueSerializer = serializationProvider.createValueSerializer(String.class, classLoader);
       StoreConfigurationImpl<String, String> storeConfiguration = new StoreConfigurationImpl<String, String>(String.class, String.class, null, null, classLoader, expiry, null, keySerializer, valueSerializer);
-      OffHeapStore<String, String> offHeapStore = new OffHeapStore<String, String>(storeConfiguration, timeSource, MemoryUnit.MB.toBytes(1));
+      OffHeapStore<String, String> offHeapStore = new OffHeapStore<String, String>(storeConfiguration, timeSource, MemoryUnit.MB.toBytes(1), bulkComputeConfig);
       OffHeapStore.Provider.init(offHeapStore);
       return offHeapStore;
     } catch (UnsupportedTypeException e) {
@@ -15,10 +15,17 @@
  */
 package org.ehcache.internal.store.tiering;
 
+import org.ehcache.config.StoreConfigurationImpl;
+import org.ehcache.config.units.MemoryUnit;
 import org.ehcache.exceptions.CacheAccessException;
+import org.ehcache.expiry.Expirations;
 import org.ehcache.function.BiFunction;
 import org.ehcache.function.Function;
 import org.ehcache.function.NullaryFunction;
+import org.ehcache.internal.SystemTimeSource;
+import org.ehcache.internal.serialization.JavaSerializer;
+import org.ehcache.internal.store.offheap.OffHeapStore;
+import org.ehcache.internal.store.offheap.OffHeapStoreLifecycleHelper;
 import org.ehcache.spi.ServiceLocator;
 import org.ehcache.spi.cache.Store;
 import org.ehcache.spi.cache.tiering.AuthoritativeTier;
@@ -26,6 +33,7 @@ import org.ehcache.spi.cache.tiering.CachingTier;
 import org.ehcache.spi.service.ServiceConfiguration;
 import org.hamcrest.Matchers;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
@@ -44,9 +52,11 @@ import java.util.concurrent.TimeUnit;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -96,6 +106,32 @@ public class CacheStoreTest {
     verify(authoritativeTier, times(1)).getAndFault(any(Number.class));
   }
 
+  @Test
+  public void testGetServesUnpromotedHitFromAuthoritativeTier() throws Exception {
+    CachingTier<Number, CharSequence> cachingTier = mock(CachingTier.class);
+    AuthoritativeTier<Number, CharSequence> authoritativeTier = mock(AuthoritativeTier.class);
+
+    Store.ValueHolder<CharSequence> valueHolder = newValueHolder("one");
+    when(authoritativeTier.get(eq(1))).thenReturn(valueHolder);
+    when(authoritativeTier.getAndFault(eq(1))).thenReturn(valueHolder);
+    when(cachingTier.getOrComputeIfAbsent(any(Number.class), any(Function.class))).then(new Answer<Store.ValueHolder<CharSequence>>() {
+      @Override
+      public Store.ValueHolder<CharSequence> answer(InvocationOnMock invocation) throws Throwable {
+        Number key = (Number) invocation.getArguments()[0];
+        Function<Number, Store.ValueHolder<CharSequence>> function = (Function<Number, Store.ValueHolder<CharSequence>>) invocation.getArguments()[1];
+        return function.apply(key);
+      }
+    });
+
+    CacheStore<Number, CharSequence> cacheStore = new CacheStore<Number, CharSequence>(cachingTier, authoritativeTier, new FrequencyPromotionPolicy(2));
+
+    assertThat(cacheStore.get(1).value(), Matchers.<CharSequence>equalTo("one"));
+    verify(authoritativeTier, never()).getAndFault(any(Number.class));
+
+    assertThat(cacheStore.get(1).value(), Matchers.<CharSequence>equalTo("one"));
+    verify(authoritativeTier, times(1)).getAndFault(eq(1));
+  }
+
   @Test
   public void testGetMisses() throws Exception {
     CachingTier<Number, CharSequence> cachingTier = mock(CachingTier.class);
@@ -496,9 +532,7 @@ public class CacheStoreTest {
     assertThat(result.get(2).value(), Matchers.<CharSequence>equalTo("two"));
     assertThat(result.get(3).value(), Matchers.<CharSequence>equalTo("three"));
 
-    verify(cachingTier, times(1)).invalidate(1);
-    verify(cachingTier, times(1)).invalidate(2);
-    verify(cachingTier, times(1)).invalidate(3);
+    verify(cachingTier, times(1)).bulkInvalidate(new HashSet<Number>(Arrays.asList(1, 2, 3)));
     verify(authoritativeTier, times(1)).bulkCompute(any(Set.class), any(Function.class));
   }
 
@@ -548,9 +582,7 @@ public class CacheStoreTest {
     assertThat(result.get(2).value(), Matchers.<CharSequence>equalTo("two"));
     assertThat(result.get(3).value(), Matchers.<CharSequence>equalTo("three"));
 
-    verify(cachingTier, times(1)).invalidate(1);
-    verify(cachingTier, times(1)).invalidate(2);
-    verify(cachingTier, times(1)).invalidate(3);
+    verify(cachingTier, times(1)).bulkInvalidate(new HashSet<Number>(Arrays.asList(1, 2, 3)));
     verify(authoritativeTier, times(1)).bulkCompute(any(Set.class), any(Function.class), any(NullaryFunction.class));
   }
 
@@ -559,24 +591,34 @@ public class CacheStoreTest {
     CachingTier<Number, CharSequence> cachingTier = mock(CachingTier.class);
     AuthoritativeTier<Number, CharSequence> authoritativeTier = mock(AuthoritativeTier.class);
 
-    when(authoritativeTier.bulkComputeIfAbsent(any(Set.class), any(Function.class))).thenAnswer(new Answer<Map<Number, Store.ValueHolder<CharSequence>>>() {
+    when(cachingTier.bulkGetOrComputeIfAbsent(any(Set.class), any(Function.class))).thenAnswer(new Answer<Map<Number, Store.ValueHolder<CharSequence>>>() {
       @Override
       public Map<Number, Store.ValueHolder<CharSequence>> answer(InvocationOnMock invocation) throws Throwable {
         Set<Number> keys = (Set) invocation.getArguments()[0];
-        Function<Iterable<? extends Map.Entry<? extends Number, ? extends CharSequence>>, Iterable<? extends Map.Entry<? extends Number, ? extends CharSequence>>> function = (Function<Iterable<? extends Map.Entry<? extends Number, ? extends CharSequence>>, Iterable<? extends Map.Entry<? extends Number, ? extends CharSequence>>>) invocation.getArguments()[1];
+        Function<Iterable<? extends Number>, Map<Number, Store.ValueHolder<CharSequence>>> source = (Function<Iterable<? extends Number>, Map<Number, Store.ValueHolder<CharSequence>>>) invocation.getArguments()[1];
 
-        List<Map.Entry<? extends Number, ? extends CharSequence>> functionArg = new ArrayList<Map.Entry<? extends Number, ? extends CharSequence>>();
+        // 1 is a caching tier hit, the others get faulted in
+        List<Number> missingKeys = new ArrayList<Number>();
         for (Number key : keys) {
-          functionArg.add(newMapEntry(key, null));
+          if (!key.equals(1)) {
+            missingKeys.add(key);
+          }
         }
-
-        Iterable<? extends Map.Entry<? extends Number, ? extends CharSequence>> functionResult = function.apply(functionArg);
+        Map<Number, Store.ValueHolder<CharSequence>> result = new HashMap<Number, Store.ValueHolder<CharSequence>>(source.apply(missingKeys));
+        result.put(1, newValueHolder("one"));
+        return result;
+      }
+    });
+    when(authoritativeTier.bulkComputeIfAbsentAndFault(any(Set.class), any(Function.class))).thenAnswer(new Answer<Map<Number, Store.ValueHolder<CharSequence>>>() {
+      @Override
+      public Map<Number, Store.ValueHolder<CharSequence>> answer(InvocationOnMock invocation) throws Throwable {
+        Set<Number> keys = (Set) invocation.getArguments()[0];
+        Function<Iterable<? extends Number>, Iterable<? extends Map.Entry<? extends Number, ? extends CharSequence>>> function = (Function<Iterable<? extends Number>, Iterable<? extends Map.Entry<? extends Number, ? extends CharSequence>>>) invocation.getArguments()[1];
 
         Map<Number, Store.ValueHolder<CharSequence>> result = new HashMap<Number, Store.ValueHolder<CharSequence>>();
-        for (Map.Entry<? extends Number, ? extends CharSequence> entry : functionResult) {
+        for (Map.Entry<? extends Number, ? extends CharSequence> entry : function.apply(keys)) {
           result.put(entry.getKey(), newValueHolder(entry.getValue()));
         }
-
         return result;
       }
     });
@@ -587,7 +629,14 @@ public class CacheStoreTest {
     Map<Number, Store.ValueHolder<CharSequence>> result = cacheStore.bulkComputeIfAbsent(new HashSet<Number>(Arrays.asList(1, 2, 3)), new Function<Iterable<? extends Number>, Iterable<? extends Map.Entry<? extends Number, ? extends CharSequence>>>() {
       @Override
       public Iterable<? extends Map.Entry<? extends Number, ? extends CharSequence>> apply(Iterable<? extends Number> numbers) {
-        return Arrays.asList(newMapEntry(1, "one"), newMapEntry(2, "two"), newMapEntry(3, "three"));
+        List<Map.Entry<? extends Number, ? extends CharSequence>> entries = new ArrayList<Map.Entry<? extends Number, ? extends CharSequence>>();
+        for (Number number : numbers) {
+          if (number.equals(1)) {
+            fail();
+          }
+          entries.add(newMapEntry(number, number.equals(2) ? "two" : "three"));
+        }
+        return entries;
       }
     });
 
@@ -596,10 +645,9 @@ public class CacheStoreTest {
     assertThat(result.get(2).value(), Matchers.<CharSequence>equalTo("two"));
     assertThat(result.get(3).value(), Matchers.<CharSequence>equalTo("three"));
 
-    verify(cachingTier, times(1)).invalidate(1);
-    verify(cachingTier, times(1)).invalidate(2);
-    verify(cachingTier, times(1)).invalidate(3);
-    verify(authoritativeTier, times(1)).bulkComputeIfAbsent(any(Set.class), any(Function.class));
+    verify(cachingTier, never()).bulkInvalidate(any(Set.class));
+    verify(authoritativeTier, times(1)).bulkComputeIfAbsentAndFault(eq(new HashSet<Number>(Arrays.asList(2, 3))), any(Function.class));
+    verify(authoritativeTier, never()).bulkComputeIfAbsent(any(Set.class), any(Function.class));
   }
 
   @Test
@@ -641,6 +689,134 @@ public class CacheStoreTest {
         org.mockito.Matchers.<String>any(), org.mockito.Matchers.<Function<String, Store.ValueHolder<String>>>anyObject());
   }
 
+  @Test
+  public void testOperationsDuringClearSeeAnEmptyStore() throws Exception {
+    final CachingTier<String, String> cachingTier = mock(CachingTier.class);
+    final AuthoritativeTier<String, String> authoritativeTier = mock(AuthoritativeTier.class);
+    final Store.ValueHolder<String> valueHolder = mock(Store.ValueHolder.class);
+    when(authoritativeTier.get("bar")).thenReturn(valueHolder);
+
+    final CacheStore<String, String> cacheStore = new CacheStore<String, String>(cachingTier, authoritativeTier);
+
+    final CyclicBarrier barrier = new CyclicBarrier(2);
+
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(final InvocationOnMock invocation) throws Throwable {
+        barrier.await();
+        barrier.await();
+        return null;
+      }
+    }).when(authoritativeTier).clear();
+    Thread t = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          cacheStore.clear();
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+
+    Thread writer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          cacheStore.put("bar", "one");
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+
+    t.start();
+    barrier.await();
+    assertThat(cacheStore.get("foo"), is(nullValue()));
+    assertThat(cacheStore.containsKey("foo"), is(false));
+    writer.start();
+    awaitBlocked(writer);
+    assertThat(cacheStore.get("bar"), is(nullValue()));
+    barrier.await();
+    t.join();
+    writer.join();
+
+    InOrder inOrder = inOrder(authoritativeTier);
+    inOrder.verify(authoritativeTier).clear();
+    inOrder.verify(authoritativeTier).put("bar", "one");
+    verify(authoritativeTier, never()).get("foo");
+    verify(authoritativeTier, never()).containsKey("foo");
+    verify(cachingTier, times(1)).clear();
+  }
+
+  @Test
+  public void testWritesDuringClearSurviveThePhysicalClear() throws Exception {
+    final CyclicBarrier barrier = new CyclicBarrier(2);
+    Store.Configuration<String, String> config = new StoreConfigurationImpl<String, String>(String.class, String.class,
+        null, null, getClass().getClassLoader(), Expirations.noExpiration(), null,
+        new JavaSerializer<String>(getClass().getClassLoader()), new JavaSerializer<String>(getClass().getClassLoader()));
+    OffHeapStore<String, String> offHeapStore = new OffHeapStore<String, String>(config, SystemTimeSource.INSTANCE, MemoryUnit.MB.toBytes(1)) {
+      @Override
+      public void clear() throws CacheAccessException {
+        try {
+          barrier.await();
+          barrier.await();
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+        super.clear();
+      }
+    };
+    OffHeapStoreLifecycleHelper.init(offHeapStore);
+    try {
+      final CachingTier<String, String> cachingTier = mock(CachingTier.class);
+      final CacheStore<String, String> cacheStore = new CacheStore<String, String>(cachingTier, offHeapStore);
+      cacheStore.put("foo", "old");
+      cacheStore.put("bar", "old");
+
+      Thread clearer = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            cacheStore.clear();
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      });
+      Thread writer = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            cacheStore.put("bar", "new");
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      });
+
+      clearer.start();
+      barrier.await();
+      assertThat(cacheStore.get("bar"), is(nullValue()));
+      writer.start();
+      awaitBlocked(writer);
+      barrier.await();
+      clearer.join();
+      writer.join();
+
+      assertThat(offHeapStore.get("foo"), is(nullValue()));
+      assertThat(offHeapStore.get("bar").value(), is("new"));
+    } finally {
+      OffHeapStoreLifecycleHelper.close(offHeapStore);
+    }
+  }
+
+  private static void awaitBlocked(Thread thread) throws InterruptedException {
+    while (thread.getState() != Thread.State.WAITING && thread.getState() != Thread.State.TERMINATED) {
+      Thread.sleep(10);
+    }
+  }
+
   @Test
   public void testReleaseStoreFlushes () throws CacheAccessException {
     final CachingTier<String, String> cachingTier = mock(CachingTier.class);
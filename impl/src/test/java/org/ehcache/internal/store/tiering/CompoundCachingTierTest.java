@@ -22,9 +22,13 @@ import org.ehcache.spi.cache.tiering.CachingTier;
 import org.ehcache.spi.cache.tiering.LowerCachingTier;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -35,7 +39,9 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -131,6 +137,42 @@ public class CompoundCachingTierTest {
     assertThat(computed.get(), is(false));
   }
 
+  @Test
+  public void testGetOrComputeIfAbsentFaultsFromLowestTierOfChain() throws Exception {
+    CachingTier<String, String> higherTier = mock(CachingTier.class);
+    LowerCachingTier<String, String> middleTier = mock(LowerCachingTier.class);
+    LowerCachingTier<String, String> lowestTier = mock(LowerCachingTier.class);
+    final Store.ValueHolder<String> valueHolder = mock(Store.ValueHolder.class);
+
+    final ArgumentCaptor<Function> functionArg = ArgumentCaptor.forClass(Function.class);
+    final ArgumentCaptor<String> keyArg = ArgumentCaptor.forClass(String.class);
+    when(higherTier.getOrComputeIfAbsent(keyArg.capture(), functionArg.capture())).then(new Answer<Object>() {
+      @Override
+      public Object answer(InvocationOnMock invocation) throws Throwable {
+        return functionArg.getValue().apply(keyArg.getValue());
+      }
+    });
+    when(middleTier.getAndRemove(anyString())).thenReturn(null);
+    when(lowestTier.getAndRemove(anyString())).thenReturn(valueHolder);
+
+
+    CompoundCachingTier<String, String> compoundCachingTier = new CompoundCachingTier<String, String>(
+        new CompoundCachingTier<String, String>(higherTier, middleTier), lowestTier);
+
+    final AtomicBoolean computed = new AtomicBoolean(false);
+
+    assertThat(compoundCachingTier.getOrComputeIfAbsent("1", new Function<String, Store.ValueHolder<String>>() {
+      @Override
+      public Store.ValueHolder<String> apply(String s) {
+        computed.set(true);
+        return valueHolder;
+      }
+    }), is(valueHolder));
+    assertThat(computed.get(), is(false));
+    verify(middleTier).getAndRemove("1");
+    verify(lowestTier).getAndRemove("1");
+  }
+
   @Test
   public void testGetOrComputeIfAbsentComputesWhenLowerTierExpires() throws Exception {
     CachingTier<String, String> higherTier = mock(CachingTier.class);
@@ -326,4 +368,41 @@ public class CompoundCachingTierTest {
     assertThat(lowerTierValueHolder.get(), is(nullValue()));
   }
 
+  @Test
+  public void testBulkInvalidateDoesNotOverflowIntoLowerTier() throws Exception {
+    CachingTier<String, String> higherTier = mock(CachingTier.class);
+    LowerCachingTier<String, String> lowerTier = mock(LowerCachingTier.class);
+
+    final Store.ValueHolder<String> valueHolder = mock(Store.ValueHolder.class);
+    final Set<String> keys = new HashSet<String>(Arrays.asList("1", "2"));
+
+    final ArgumentCaptor<CachingTier.InvalidationListener> higherTierInvalidationListenerArg = ArgumentCaptor.forClass(CachingTier.InvalidationListener.class);
+    doNothing().when(higherTier).setInvalidationListener(higherTierInvalidationListenerArg.capture());
+    doAnswer(new Answer() {
+      @Override
+      public Object answer(InvocationOnMock invocation) throws Throwable {
+        higherTierInvalidationListenerArg.getValue().onInvalidation("1", valueHolder);
+        return null;
+      }
+    }).when(higherTier).bulkInvalidate(keys);
+
+    final AtomicReference<Store.ValueHolder<String>> invalidated = new AtomicReference<Store.ValueHolder<String>>();
+
+    CompoundCachingTier<String, String> compoundCachingTier = new CompoundCachingTier<String, String>(higherTier, lowerTier);
+    compoundCachingTier.setInvalidationListener(new CachingTier.InvalidationListener<String, String>() {
+      @Override
+      public void onInvalidation(String key, Store.ValueHolder<String> valueHolder) {
+        invalidated.set(valueHolder);
+      }
+    });
+
+    compoundCachingTier.bulkInvalidate(keys);
+
+    InOrder inOrder = inOrder(lowerTier, higherTier);
+    inOrder.verify(lowerTier).bulkInvalidate(keys);
+    inOrder.verify(higherTier).bulkInvalidate(keys);
+    verify(lowerTier, never()).getOrComputeIfAbsent(anyString(), any(Function.class));
+    assertThat(invalidated.get(), is(valueHolder));
+  }
+
 }
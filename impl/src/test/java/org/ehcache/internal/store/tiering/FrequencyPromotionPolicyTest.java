@@ -0,0 +1,68 @@
+/*
+ * Copyright Terracotta, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ehcache.internal.store.tiering;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+
+public class FrequencyPromotionPolicyTest {
+
+  @Test
+  public void testPromotesOnNthHit() {
+    FrequencyPromotionPolicy policy = new FrequencyPromotionPolicy(3);
+    assertThat(policy.promote("key"), is(false));
+    assertThat(policy.promote("key"), is(false));
+    assertThat(policy.promote("key"), is(true));
+    assertThat(policy.promote("key"), is(true));
+  }
+
+  @Test
+  public void testThresholdOfOneAlwaysPromotes() {
+    FrequencyPromotionPolicy policy = new FrequencyPromotionPolicy(1);
+    assertThat(policy.promote("key"), is(true));
+  }
+
+  @Test
+  public void testOneHitWondersAreNotPromoted() {
+    FrequencyPromotionPolicy policy = new FrequencyPromotionPolicy(2, 1 << 12);
+    int promoted = 0;
+    for (int i = 0; i < 1000; i++) {
+      if (policy.promote("key" + i)) {
+        promoted++;
+      }
+    }
+    assertThat(promoted, lessThan(10));
+  }
+
+  @Test
+  public void testFrequenciesAge() {
+    FrequencyPromotionPolicy policy = new FrequencyPromotionPolicy(1000, 16);
+    for (int i = 0; i < 15; i++) {
+      policy.promote("hot");
+    }
+    assertThat(policy.estimate("hot"), is(15));
+    policy.promote("hot");
+    assertThat(policy.estimate("hot"), is(8));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsZeroThreshold() {
+    new FrequencyPromotionPolicy(0);
+  }
+}
@@ -229,7 +229,7 @@ public class EhcacheBulkMethodsITest {
     assertThat(fewEntries.size(), is(2));
     assertThat(fewEntries.get("key0"), is("value0"));
     assertThat(fewEntries.get("key2"), is("value2"));
-
+    verify(cacheLoaderWriter, times(1)).loadAll(Matchers.any(Iterable.class));
   }
 
   @Test
@@ -244,8 +244,8 @@ public class EhcacheBulkMethodsITest {
     CacheManagerBuilder<CacheManager> managerBuilder = CacheManagerBuilder.newCacheManagerBuilder().using(cacheLoaderWriterProvider);
     CacheManager cacheManager = managerBuilder.withCache("myCache", cacheConfiguration).build(true);
 
-    when(cacheLoaderWriter.loadAll(argThat(hasItem("key0")))).thenReturn( new HashMap(){{put("key0","value0");}});
-    when(cacheLoaderWriter.loadAll(argThat(hasItem("key2")))).thenReturn( new HashMap(){{put("key2","value2");}});
+    // absent keys are loaded in batches, so both keys are expected in a single loadAll call
+    when(cacheLoaderWriter.loadAll(argThat(hasItem("key0")))).thenReturn( new HashMap(){{put("key0","value0"); put("key2","value2");}});
 
     Cache<String, String> myCache = cacheManager.getCache("myCache", String.class, String.class);
 
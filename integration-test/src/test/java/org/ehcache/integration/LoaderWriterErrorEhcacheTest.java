@@ -41,7 +41,6 @@ import org.ehcache.exceptions.BulkCacheWritingException;
 import org.ehcache.exceptions.CacheWritingException;
 
 import static org.ehcache.CacheManagerBuilder.newCacheManagerBuilder;
-import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsNull.notNullValue;
 import static org.junit.Assert.assertThat;
@@ -132,10 +131,10 @@ public class LoaderWriterErrorEhcacheTest {
       testCache.getAll(new HashSet<Number>(Arrays.asList(1, 2, 3, 4)));
       fail("expected BulkCacheLoadingException");
     } catch (BulkCacheLoadingException ex) {
-      assertThat(ex.getFailures().size(), is(1));
+      // all absent keys are loaded in one batch, which fails as a whole
+      assertThat(ex.getFailures().size(), is(4));
       assertThat(ex.getFailures().get(2), is(notNullValue()));
-      assertThat(ex.getSuccesses().size(), is(lessThan(4)));
-      assertThat(ex.getSuccesses().containsKey(2), is(false));
+      assertThat(ex.getSuccesses().isEmpty(), is(true));
     }
   }
 
@@ -19,6 +19,9 @@ import org.ehcache.Ehcache;
 import org.ehcache.management.annotations.Exposed;
 import org.ehcache.management.annotations.Named;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
 import static org.ehcache.management.utils.ConversionHelper.convert;
 
 /**
@@ -56,4 +59,21 @@ public class EhcacheActionWrapper {
     ehcache.put(convertedKey, convertedValue);
   }
 
+  @Exposed
+  public String readiness() {
+    Future<?> readiness = ehcache.getReadiness();
+    if (!readiness.isDone()) {
+      return "RECOVERING";
+    }
+    try {
+      readiness.get();
+      return "READY";
+    } catch (ExecutionException e) {
+      return "FAILED";
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return "RECOVERING";
+    }
+  }
+
 }